@@ -0,0 +1,340 @@
+import java.lang.reflect.Method;
+import java.util.Calendar;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A non-blocking facade over a contact manager.
+ *
+ * Every operation returns a future instead of blocking the caller. Reads run
+ * on a read executor, which starts a virtual thread per read by default where
+ * the JDK has them (21 and later). Changes are queued and made one at a time
+ * by a single writer thread, in the order they were submitted, so a read
+ * sees a change once the future of the change completed. Flushes run on
+ * their own thread, after the changes submitted before them, so changes can
+ * still be made while data is being saved.
+ *
+ * Errors thrown by the contact manager complete the futures exceptionally,
+ * wrapped in a CompletionException.
+ *
+ * @see ContactManagerImpl
+ */
+public class AsyncContactManager implements AutoCloseable {
+  /**
+   * The contact manager.
+   */
+  private final ContactManagerImpl manager;
+
+  /**
+   * The executor of reads.
+   */
+  private final Executor readExecutor;
+
+  /**
+   * The executor of reads if it was created by this facade, null otherwise.
+   */
+  private final ExecutorService ownReadExecutor;
+
+  /**
+   * The single thread making changes.
+   */
+  private final ExecutorService writeExecutor;
+
+  /**
+   * The single thread flushing data.
+   */
+  private final ExecutorService flushExecutor;
+
+  /**
+   * Creates a facade running reads on virtual threads, or on a pool of
+   * threads where virtual threads are not available.
+   *
+   * @param manager The contact manager.
+   * @throws NullPointerException If the contact manager is null.
+   */
+  public AsyncContactManager(ContactManagerImpl manager) {
+    this(manager, null);
+  }
+
+  /**
+   * Creates a facade running reads on the specified executor.
+   *
+   * @param manager The contact manager.
+   * @param readExecutor The executor of reads or null to use the default
+   *        one.
+   * @throws NullPointerException If the contact manager is null.
+   */
+  public AsyncContactManager(ContactManagerImpl manager,
+                             Executor readExecutor) {
+    if (manager == null)
+      throw new NullPointerException("manager must not be null");
+
+    this.manager = manager;
+    if (readExecutor == null) {
+      this.ownReadExecutor = defaultReadExecutor();
+      this.readExecutor = ownReadExecutor;
+    } else {
+      this.ownReadExecutor = null;
+      this.readExecutor = readExecutor;
+    }
+    this.writeExecutor = Executors.newSingleThreadExecutor(
+      daemonThreads("ContactManager writer"));
+    this.flushExecutor = Executors.newSingleThreadExecutor(
+      daemonThreads("ContactManager flusher"));
+  }
+
+  /**
+   * Returns the contact manager.
+   *
+   * @return The contact manager.
+   */
+  public ContactManagerImpl getContactManager() {
+    return manager;
+  }
+
+  /**
+   * Adds a meeting to be held in the future.
+   *
+   * @param contacts A set of contacts that will participate in the meeting.
+   * @param date The date on which the meeting will take place.
+   * @return A future of the meeting ID.
+   * @see ContactManager#addFutureMeeting(Set, Calendar)
+   */
+  public CompletableFuture<Integer> addFutureMeeting(Set<Contact> contacts,
+                                                     Calendar date) {
+    return CompletableFuture.supplyAsync(
+      () -> manager.addFutureMeeting(contacts, date), writeExecutor);
+  }
+
+  /**
+   * Returns the past meeting with the specified ID.
+   *
+   * @param id The meeting ID.
+   * @return A future of the meeting or of null if there is none.
+   * @see ContactManager#getPastMeeting(int)
+   */
+  public CompletableFuture<PastMeeting> getPastMeeting(int id) {
+    return CompletableFuture.supplyAsync(() -> manager.getPastMeeting(id),
+      readExecutor);
+  }
+
+  /**
+   * Returns the future meeting with the specified ID.
+   *
+   * @param id The meeting ID.
+   * @return A future of the meeting or of null if there is none.
+   * @see ContactManager#getFutureMeeting(int)
+   */
+  public CompletableFuture<FutureMeeting> getFutureMeeting(int id) {
+    return CompletableFuture.supplyAsync(() -> manager.getFutureMeeting(id),
+      readExecutor);
+  }
+
+  /**
+   * Returns the meeting with the specified ID.
+   *
+   * @param id The meeting ID.
+   * @return A future of the meeting or of null if there is none.
+   * @see ContactManager#getMeeting(int)
+   */
+  public CompletableFuture<Meeting> getMeeting(int id) {
+    return CompletableFuture.supplyAsync(() -> manager.getMeeting(id),
+      readExecutor);
+  }
+
+  /**
+   * Returns the future meetings of a contact.
+   *
+   * @param contact The contact.
+   * @return A future of the chronological list of meetings.
+   * @see ContactManager#getFutureMeetingList(Contact)
+   */
+  public CompletableFuture<List<Meeting>> getFutureMeetingList(
+    Contact contact)
+  {
+    return CompletableFuture.supplyAsync(
+      () -> manager.getFutureMeetingList(contact), readExecutor);
+  }
+
+  /**
+   * Returns the meetings held on a date.
+   *
+   * @param date The date.
+   * @return A future of the chronological list of meetings.
+   * @see ContactManager#getMeetingListOn(Calendar)
+   */
+  public CompletableFuture<List<Meeting>> getMeetingListOn(Calendar date) {
+    return CompletableFuture.supplyAsync(() -> manager.getMeetingListOn(date),
+      readExecutor);
+  }
+
+  /**
+   * Returns the past meetings of a contact.
+   *
+   * @param contact The contact.
+   * @return A future of the chronological list of meetings.
+   * @see ContactManager#getPastMeetingListFor(Contact)
+   */
+  public CompletableFuture<List<PastMeeting>> getPastMeetingListFor(
+    Contact contact)
+  {
+    return CompletableFuture.supplyAsync(
+      () -> manager.getPastMeetingListFor(contact), readExecutor);
+  }
+
+  /**
+   * Adds a meeting that took place in the past.
+   *
+   * @param contacts A set of contacts that participated in the meeting.
+   * @param date The date on which the meeting took place.
+   * @param text Notes to be added about the meeting.
+   * @return A future completed once the meeting is added.
+   * @see ContactManager#addNewPastMeeting(Set, Calendar, String)
+   */
+  public CompletableFuture<Void> addNewPastMeeting(Set<Contact> contacts,
+                                                   Calendar date,
+                                                   String text) {
+    return CompletableFuture.runAsync(
+      () -> manager.addNewPastMeeting(contacts, date, text), writeExecutor);
+  }
+
+  /**
+   * Adds notes to a meeting.
+   *
+   * @param id The meeting ID.
+   * @param text Notes to be added about the meeting.
+   * @return A future of the past meeting.
+   * @see ContactManager#addMeetingNotes(int, String)
+   */
+  public CompletableFuture<PastMeeting> addMeetingNotes(int id, String text) {
+    return CompletableFuture.supplyAsync(
+      () -> manager.addMeetingNotes(id, text), writeExecutor);
+  }
+
+  /**
+   * Adds a new contact.
+   *
+   * @param name Contact name.
+   * @param notes Contact notes.
+   * @return A future of the contact ID.
+   * @see ContactManager#addNewContact(String, String)
+   */
+  public CompletableFuture<Integer> addNewContact(String name, String notes) {
+    return CompletableFuture.supplyAsync(
+      () -> manager.addNewContact(name, notes), writeExecutor);
+  }
+
+  /**
+   * Returns the contacts whose name contains a specified string.
+   *
+   * @param name The search string.
+   * @return A future of the set of contacts.
+   * @see ContactManager#getContacts(String)
+   */
+  public CompletableFuture<Set<Contact>> getContacts(String name) {
+    return CompletableFuture.supplyAsync(() -> manager.getContacts(name),
+      readExecutor);
+  }
+
+  /**
+   * Returns the contacts that correspond to the IDs.
+   *
+   * @param ids An arbitrary number of contact IDs.
+   * @return A future of the set of contacts.
+   * @see ContactManager#getContacts(int...)
+   */
+  public CompletableFuture<Set<Contact>> getContacts(int... ids) {
+    return CompletableFuture.supplyAsync(() -> manager.getContacts(ids),
+      readExecutor);
+  }
+
+  /**
+   * Saves all data to disk, including the changes submitted before.
+   *
+   * @return A future completed once the data is saved.
+   * @see ContactManager#flush()
+   */
+  public CompletableFuture<Void> flush() {
+    // wait for the queued changes, without blocking the writer thread
+    return CompletableFuture.runAsync(() -> { }, writeExecutor)
+      .thenRunAsync(manager::flush, flushExecutor);
+  }
+
+  /**
+   * Returns a future completed once the changes submitted before are saved
+   * to disk, as the durability policy of the contact manager saves them.
+   *
+   * @return A future completed once the changes are saved.
+   * @see ContactManagerImpl#sync()
+   */
+  public CompletableFuture<Void> sync() {
+    return CompletableFuture.supplyAsync(manager::sync, writeExecutor)
+      .thenCompose(future -> future);
+  }
+
+  /**
+   * Makes the submitted changes, saves them and stops the threads of the
+   * facade. The read executor is shut down only if it was created by the
+   * facade. An interrupt doesn't stop the wait for the threads, it's kept
+   * as the interrupt status of the thread instead.
+   */
+  public void close() {
+    writeExecutor.shutdown();
+    boolean interrupted = awaitTermination(writeExecutor);
+    flushExecutor.shutdown();
+    interrupted |= awaitTermination(flushExecutor);
+    if (ownReadExecutor != null)
+      ownReadExecutor.shutdown();
+    manager.close();
+    if (interrupted)
+      Thread.currentThread().interrupt();
+  }
+
+  // Waits for an executor to stop, returning whether the thread was
+  // interrupted meanwhile.
+  private static boolean awaitTermination(ExecutorService executor) {
+    boolean interrupted = false;
+    while (true) {
+      try {
+        executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+        return interrupted;
+      } catch (InterruptedException e) {
+        interrupted = true;
+      }
+    }
+  }
+
+  // Returns an executor starting a virtual thread per task where the JDK has
+  // them, or a pool of a thread per processor otherwise. Virtual threads are
+  // looked up by reflection so that the code still runs on older JDKs.
+  private static ExecutorService defaultReadExecutor() {
+    try {
+      Method method = Executors.class.getMethod(
+        "newVirtualThreadPerTaskExecutor");
+      return (ExecutorService)method.invoke(null);
+    } catch (ReflectiveOperationException | RuntimeException e) {
+      return Executors.newFixedThreadPool(
+        Runtime.getRuntime().availableProcessors(),
+        daemonThreads("ContactManager reader"));
+    }
+  }
+
+  // Returns a factory of daemon threads, so that the facade does not keep
+  // the program running.
+  private static ThreadFactory daemonThreads(String name) {
+    AtomicInteger count = new AtomicInteger();
+    return runnable -> {
+      Thread thread = new Thread(runnable, name + " " +
+        count.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    };
+  }
+}
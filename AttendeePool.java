@@ -0,0 +1,51 @@
+import java.lang.ref.WeakReference;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+
+/**
+ * A pool of canonical attendee sets.
+ *
+ * Meetings with the same attendees share a single immutable attendee set.
+ * Sets are only weakly referenced by the pool, so they are dropped once no
+ * meeting uses them anymore.
+ *
+ * @see AttendeeSet
+ */
+public class AttendeePool {
+  /**
+   * The canonical attendee sets.
+   */
+  private final Map<AttendeeSet, WeakReference<AttendeeSet>>
+    sets = new WeakHashMap<>();
+
+  /**
+   * Returns the canonical attendee set with the specified contacts.
+   *
+   * @param contacts The set of contacts.
+   * @return The canonical attendee set.
+   * @throws IllegalArgumentException If two contacts have the same ID.
+   * @throws NullPointerException If the set or any contact is null.
+   */
+  public synchronized AttendeeSet intern(Set<? extends Contact> contacts) {
+    AttendeeSet set = (contacts instanceof AttendeeSet ?
+      (AttendeeSet)contacts : new AttendeeSet(contacts));
+
+    WeakReference<AttendeeSet> reference = sets.get(set);
+    AttendeeSet canonical = (reference == null ? null : reference.get());
+    if (canonical == null) {
+      sets.put(set, new WeakReference<>(set));
+      canonical = set;
+    }
+    return canonical;
+  }
+
+  /**
+   * Returns the number of attendee sets in the pool.
+   *
+   * @return The number of attendee sets.
+   */
+  public synchronized int size() {
+    return sets.size();
+  }
+}
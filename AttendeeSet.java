@@ -0,0 +1,148 @@
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * An immutable set of meeting attendees.
+ *
+ * The contacts are stored sorted by ID next to a sorted array of their IDs,
+ * so membership tests are binary searches on the IDs instead of hashing
+ * contacts. Instances are usually shared between meetings through an
+ * attendee pool.
+ *
+ * @see AttendeePool
+ */
+public class AttendeeSet extends AbstractSet<Contact> {
+  /**
+   * The sorted contact IDs.
+   */
+  private final int[] ids;
+
+  /**
+   * The contacts, in the same order as their IDs.
+   */
+  private final Contact[] contacts;
+
+  /**
+   * The cached hash code.
+   */
+  private final int hash;
+
+  /**
+   * Creates a new attendee set from a set of contacts.
+   *
+   * @param contacts The set of contacts.
+   * @throws IllegalArgumentException If two contacts have the same ID.
+   * @throws NullPointerException If the set or any contact is null.
+   */
+  public AttendeeSet(Set<? extends Contact> contacts) {
+    Contact[] sorted = contacts.toArray(new Contact[contacts.size()]);
+    Arrays.sort(sorted, (c1, c2) -> Integer.compare(c1.getId(), c2.getId()));
+
+    int[] ids = new int[sorted.length];
+    int hash = 0;
+    for (int i = 0; i < sorted.length; i++) {
+      ids[i] = sorted[i].getId();
+      if (i > 0 && ids[i] == ids[i - 1])
+        throw new IllegalArgumentException("contact ids must be unique");
+      hash += sorted[i].hashCode();
+    }
+
+    this.ids = ids;
+    this.contacts = sorted;
+    this.hash = hash;
+  }
+
+  /**
+   * Returns whether the set contains a contact with the specified ID.
+   *
+   * @param id The contact ID.
+   * @return true If the set contains a contact with that ID, false
+   *         otherwise.
+   */
+  public boolean containsId(int id) {
+    return Arrays.binarySearch(ids, id) >= 0;
+  }
+
+  /**
+   * Returns the sorted IDs of the contacts in the set.
+   *
+   * @return A copy of the contact IDs.
+   */
+  public int[] getIds() {
+    return ids.clone();
+  }
+
+  /**
+   * Returns whether the set contains the specified contact.
+   *
+   * @param object The contact.
+   * @return true If the set contains the contact, false otherwise.
+   */
+  public boolean contains(Object object) {
+    if (!(object instanceof Contact))
+      return false;
+
+    int index = Arrays.binarySearch(ids, ((Contact)object).getId());
+    return (index >= 0 && contacts[index].equals(object));
+  }
+
+  /**
+   * Returns the number of contacts in the set.
+   *
+   * @return The number of contacts.
+   */
+  public int size() {
+    return contacts.length;
+  }
+
+  /**
+   * Returns an iterator over the contacts, sorted by ID.
+   *
+   * @return The iterator.
+   */
+  public Iterator<Contact> iterator() {
+    return new Iterator<Contact>() {
+      private int index = 0;
+
+      public boolean hasNext() {
+        return index < contacts.length;
+      }
+
+      public Contact next() {
+        if (index >= contacts.length)
+          throw new NoSuchElementException();
+        return contacts[index++];
+      }
+    };
+  }
+
+  /**
+   * Indicates whether some other object is "equal to" this one.
+   *
+   * @param object The reference object with which to compare.
+   * @return true If the object is a set with the same contacts, false
+   *         otherwise.
+   */
+  public boolean equals(Object object) {
+    if (object == this)
+      return true;
+    if (object instanceof AttendeeSet) {
+      AttendeeSet set = (AttendeeSet)object;
+      return (hash == set.hash && Arrays.equals(ids, set.ids) &&
+        Arrays.equals(contacts, set.contacts));
+    }
+    return super.equals(object);
+  }
+
+  /**
+   * Returns a hash code value for the set.
+   *
+   * @return The sum of the hash codes of the contacts.
+   */
+  public int hashCode() {
+    return hash;
+  }
+}
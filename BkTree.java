@@ -0,0 +1,237 @@
+import java.util.Arrays;
+import java.util.function.ObjIntConsumer;
+
+/**
+ * An immutable BK-tree of terms identified by IDs, finding the terms within
+ * an edit distance of a term.
+ *
+ * Each node holds a term and the IDs of that term, and its children are
+ * keyed by their Levenshtein distance to it. As the distance is a metric,
+ * the terms within distance k of a query at distance d of a node can only be
+ * under the children keyed d - k to d + k, so a search skips the other
+ * subtrees and compares the query with a small part of the terms when k is
+ * small.
+ *
+ * Like IntervalTree, adding or removing an ID copies the nodes on the path
+ * to its term, so a version can be read by any number of threads while
+ * newer versions are created. Nodes left without IDs are kept, as their
+ * children are keyed by their term.
+ *
+ * @see IntervalTree
+ */
+public final class BkTree {
+  /**
+   * The empty tree.
+   */
+  private static final BkTree EMPTY = new BkTree(null);
+
+  /**
+   * The root or null if the tree is empty.
+   */
+  private final Node root;
+
+  // Creates a tree.
+  private BkTree(Node root) {
+    this.root = root;
+  }
+
+  /**
+   * Returns the empty tree.
+   *
+   * @return The empty tree.
+   */
+  public static BkTree empty() {
+    return EMPTY;
+  }
+
+  /**
+   * Returns the Levenshtein distance between two strings, the least number
+   * of characters to insert, delete or substitute to turn one into the
+   * other.
+   *
+   * @param a The first string.
+   * @param b The second string.
+   * @return The distance.
+   */
+  public static int distance(String a, String b) {
+    if (a.length() < b.length()) {
+      String swapped = a;
+      a = b;
+      b = swapped;
+    }
+
+    // the distances to the prefixes of b, row by row
+    int[] previous = new int[b.length() + 1];
+    int[] current = new int[b.length() + 1];
+    for (int j = 0; j <= b.length(); j++)
+      previous[j] = j;
+    for (int i = 1; i <= a.length(); i++) {
+      current[0] = i;
+      char c = a.charAt(i - 1);
+      for (int j = 1; j <= b.length(); j++) {
+        int substitution = previous[j - 1] + (c == b.charAt(j - 1) ? 0 : 1);
+        current[j] = Math.min(substitution,
+          Math.min(previous[j], current[j - 1]) + 1);
+      }
+      int[] swapped = previous;
+      previous = current;
+      current = swapped;
+    }
+    return previous[b.length()];
+  }
+
+  /**
+   * Returns whether the tree is empty.
+   *
+   * @return true if the tree has no nodes, false otherwise.
+   */
+  public boolean isEmpty() {
+    return (root == null);
+  }
+
+  /**
+   * Returns a tree with an ID added to a term.
+   *
+   * @param term The term.
+   * @param id The ID.
+   * @return The new tree.
+   * @throws NullPointerException If the term is null.
+   */
+  public BkTree add(String term, int id) {
+    if (term == null)
+      throw new NullPointerException("term must not be null");
+
+    if (root == null)
+      return new BkTree(new Node(term, IdBitmap.of(id), Node.LEAF));
+    Node newRoot = add(root, term, id);
+    return (newRoot == root ? this : new BkTree(newRoot));
+  }
+
+  /**
+   * Returns a tree with an ID removed from a term.
+   *
+   * @param term The term.
+   * @param id The ID.
+   * @return The new tree, or this tree if the term does not have the ID.
+   * @throws NullPointerException If the term is null.
+   */
+  public BkTree remove(String term, int id) {
+    if (term == null)
+      throw new NullPointerException("term must not be null");
+
+    Node newRoot = remove(root, term, id);
+    return (newRoot == root ? this : new BkTree(newRoot));
+  }
+
+  /**
+   * Reports the IDs of the terms within an edit distance of a term, with
+   * their distance, in no particular order.
+   *
+   * @param term The term.
+   * @param maxDistance The maximum distance.
+   * @param action The action receiving the IDs of each term found and its
+   *        distance.
+   * @throws NullPointerException If the term is null.
+   */
+  public void forEachWithin(String term, int maxDistance,
+                            ObjIntConsumer<IdBitmap> action) {
+    if (term == null)
+      throw new NullPointerException("term must not be null");
+
+    if (root != null && maxDistance >= 0)
+      forEachWithin(root, term, maxDistance, action);
+  }
+
+  // Adds an ID to a term under a node.
+  private static Node add(Node node, String term, int id) {
+    int distance = distance(term, node.term);
+    if (distance == 0) {
+      IdBitmap ids = node.ids.add(id);
+      return (ids == node.ids ? node : new Node(node.term, ids,
+        node.children));
+    }
+
+    Node child = node.child(distance);
+    Node newChild = (child == null ?
+      new Node(term, IdBitmap.of(id), Node.LEAF) : add(child, term, id));
+    return (newChild == child ? node : node.withChild(distance, newChild));
+  }
+
+  // Removes an ID from a term under a node.
+  private static Node remove(Node node, String term, int id) {
+    if (node == null)
+      return null;
+
+    int distance = distance(term, node.term);
+    if (distance == 0) {
+      IdBitmap ids = node.ids.remove(id);
+      return (ids == node.ids ? node : new Node(node.term, ids,
+        node.children));
+    }
+
+    Node child = node.child(distance);
+    Node newChild = remove(child, term, id);
+    return (newChild == child ? node : node.withChild(distance, newChild));
+  }
+
+  // Reports the terms within a distance under a node.
+  private static void forEachWithin(Node node, String term, int maxDistance,
+                                    ObjIntConsumer<IdBitmap> action) {
+    int distance = distance(term, node.term);
+    if (distance <= maxDistance && !node.ids.isEmpty())
+      action.accept(node.ids, distance);
+
+    int high = Math.min(distance + maxDistance, node.children.length - 1);
+    for (int i = Math.max(distance - maxDistance, 1); i <= high; i++) {
+      if (node.children[i] != null)
+        forEachWithin(node.children[i], term, maxDistance, action);
+    }
+  }
+
+  /**
+   * A node of the tree.
+   */
+  private static final class Node {
+    /**
+     * The children of a leaf.
+     */
+    static final Node[] LEAF = new Node[0];
+
+    /**
+     * The term.
+     */
+    final String term;
+
+    /**
+     * The IDs of the term, which may be empty.
+     */
+    final IdBitmap ids;
+
+    /**
+     * The children indexed by distance to the term, null where there is
+     * none. Distances are at most the length of the longest term, so the
+     * array stays short.
+     */
+    final Node[] children;
+
+    // Creates a node.
+    Node(String term, IdBitmap ids, Node[] children) {
+      this.term = term;
+      this.ids = ids;
+      this.children = children;
+    }
+
+    // Returns the child at a distance or null if there is none.
+    Node child(int distance) {
+      return (distance < children.length ? children[distance] : null);
+    }
+
+    // Returns a copy of the node with a child replaced.
+    Node withChild(int distance, Node child) {
+      Node[] newChildren = Arrays.copyOf(children,
+        Math.max(children.length, distance + 1));
+      newChildren[distance] = child;
+      return new Node(term, ids, newChildren);
+    }
+  }
+}
@@ -0,0 +1,283 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.zip.CRC32C;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * A reader of block-compressed contact files.
+ *
+ * Blocks are decompressed in parallel ahead of the block being decoded, and
+ * records are reported to the handler in file order from the calling thread.
+ * A range of records can also be read, in which case only the blocks holding
+ * them are decompressed.
+ *
+ * @see BlockContactsWriter
+ */
+public class BlockContactsReader implements ContactsReader {
+  /**
+   * The size of the trailer at the end of the file.
+   */
+  private static final int TRAILER_SIZE = 16;
+
+  /**
+   * The number of values of each block in the index.
+   */
+  private static final int ENTRY = BlockContactsWriter.INDEX_ENTRY;
+
+  /**
+   * The executor decompressing blocks.
+   */
+  private final Executor executor;
+
+  /**
+   * The maximum number of blocks decompressed ahead.
+   */
+  private final int readAhead;
+
+  /**
+   * The codec decoding records.
+   */
+  private final RecordCodec codec = new RecordCodec();
+
+  /**
+   * Creates a reader decompressing blocks in the common fork/join pool.
+   */
+  public BlockContactsReader() {
+    this(ForkJoinPool.commonPool(), 2 * ForkJoinPool.getCommonPoolParallelism()
+      + 1);
+  }
+
+  /**
+   * Creates a reader decompressing blocks with the specified executor.
+   *
+   * @param executor The executor.
+   * @param readAhead The maximum number of blocks decompressed ahead.
+   * @throws NullPointerException If the executor is null.
+   * @throws IllegalArgumentException If readAhead is not positive.
+   */
+  public BlockContactsReader(Executor executor, int readAhead) {
+    if (executor == null)
+      throw new NullPointerException("executor must not be null");
+    else if (readAhead <= 0)
+      throw new IllegalArgumentException("readAhead must be greater than 0");
+
+    this.executor = executor;
+    this.readAhead = readAhead;
+  }
+
+  /**
+   * Returns whether a file is a block file.
+   *
+   * @param file The file.
+   * @return true if the file starts like a block file, false otherwise.
+   */
+  public static boolean isBlockFile(File file) {
+    try (InputStream input = Files.newInputStream(file.toPath())) {
+      byte[] magic = new byte[4];
+      return (input.read(magic) == 4 &&
+        ByteBuffer.wrap(magic).getInt() == BlockContactsWriter.MAGIC);
+    } catch (IOException e) {
+      return false;
+    }
+  }
+
+  /**
+   * Reads a file.
+   *
+   * @param file The file.
+   * @param handler The handler receiving the contacts and meetings.
+   * @throws IOException If the file can't be read or is malformed.
+   */
+  public void read(File file, Handler handler) throws IOException {
+    read(file, 0, Long.MAX_VALUE, handler);
+  }
+
+  /**
+   * Reads a range of records of a file.
+   *
+   * @param file The file.
+   * @param first The index of the first record.
+   * @param count The maximum number of records.
+   * @param handler The handler receiving the contacts and meetings.
+   * @throws IOException If the file can't be read or is malformed.
+   * @throws IllegalArgumentException If first or count is negative.
+   */
+  public void read(File file, long first, long count, Handler handler)
+    throws IOException
+  {
+    if (first < 0 || count < 0)
+      throw new IllegalArgumentException(
+        "first and count must not be negative");
+
+    try (FileChannel channel = FileChannel.open(file.toPath(),
+           StandardOpenOption.READ)) {
+      long[] index = readIndex(channel);
+      int blockCount = index.length / ENTRY;
+
+      // find the block of the first record
+      int block = 0;
+      long record = 0;
+      while (block < blockCount &&
+             record + index[block * ENTRY + 3] <= first) {
+        record += index[block * ENTRY + 3];
+        block++;
+      }
+
+      // decompress blocks ahead and decode them in order
+      ArrayDeque<CompletableFuture<byte[]>> pending = new ArrayDeque<>();
+      long end = (count > Long.MAX_VALUE - first ? Long.MAX_VALUE :
+        first + count);
+      int next = block;
+      while (record < end && block < blockCount) {
+        while (next < blockCount && pending.size() < readAhead) {
+          int current = next++;
+          pending.add(CompletableFuture.supplyAsync(
+            () -> inflate(channel, index, current), executor));
+        }
+
+        byte[] bytes = join(pending.remove());
+        record = decode(bytes, (int)index[block * ENTRY + 3], record, first,
+          end, handler);
+        block++;
+      }
+
+      // let running decompressions finish before closing the channel
+      for (CompletableFuture<byte[]> future : pending)
+        future.handle((bytes, e) -> null).join();
+    }
+  }
+
+  // Reads and verifies the block index as (offset, compressed length,
+  // length, record count, checksum) entries.
+  private static long[] readIndex(FileChannel channel) throws IOException {
+    long size = channel.size();
+    if (size < 4 + 4 + TRAILER_SIZE)
+      throw new IOException("block file is too short");
+
+    ByteBuffer trailer = readFully(channel, size - TRAILER_SIZE, TRAILER_SIZE);
+    long indexOffset = trailer.getLong();
+    int indexCrc = trailer.getInt();
+    if (trailer.getInt() != BlockContactsWriter.MAGIC || indexOffset < 4 ||
+        indexOffset > size - TRAILER_SIZE - 4) {
+      throw new IOException("block file has no valid trailer");
+    }
+
+    ByteBuffer buffer = readFully(channel, indexOffset,
+      (int)(size - TRAILER_SIZE - indexOffset));
+    CRC32C crc = new CRC32C();
+    crc.update(buffer.array());
+    if ((int)crc.getValue() != indexCrc)
+      throw new IOException("block file index has an invalid checksum");
+
+    int blockCount = buffer.getInt();
+    if (blockCount < 0 || buffer.remaining() != blockCount * 24L)
+      throw new IOException("block file has an invalid index");
+
+    long[] index = new long[blockCount * ENTRY];
+    for (int i = 0; i < index.length; i += ENTRY) {
+      index[i] = buffer.getLong();
+      index[i + 1] = buffer.getInt();
+      index[i + 2] = buffer.getInt();
+      index[i + 3] = buffer.getInt();
+      index[i + 4] = buffer.getInt();
+      if (index[i] < 4 || index[i + 1] < 0 || index[i + 2] < 0 ||
+          index[i + 3] < 0 || index[i] + index[i + 1] > indexOffset) {
+        throw new IOException("block file has an invalid index");
+      }
+    }
+    return index;
+  }
+
+  // Reads, verifies and decompresses a block, throwing unchecked exceptions
+  // so it can run asynchronously.
+  private static byte[] inflate(FileChannel channel, long[] index, int block) {
+    int entry = block * ENTRY;
+    Inflater inflater = new Inflater();
+    try {
+      ByteBuffer compressed = readFully(channel, index[entry],
+        (int)index[entry + 1]);
+      CRC32C crc = new CRC32C();
+      crc.update(compressed.array());
+      if ((int)crc.getValue() != (int)index[entry + 4]) {
+        throw new CompletionException(new IOException(
+          "block " + block + " has an invalid checksum"));
+      }
+
+      byte[] bytes = new byte[(int)index[entry + 2]];
+      inflater.setInput(compressed.array());
+      int length = 0;
+      while (length < bytes.length && !inflater.finished()) {
+        int inflated = inflater.inflate(bytes, length, bytes.length - length);
+        if (inflated == 0 && (inflater.needsInput() ||
+                              inflater.needsDictionary())) {
+          break;
+        }
+        length += inflated;
+      }
+      // the end of the stream may only be seen once the output is full
+      if (!inflater.finished() && inflater.inflate(new byte[1]) != 0)
+        length++;
+      if (length != bytes.length || !inflater.finished())
+        throw new CompletionException(new IOException(
+          "block " + block + " is corrupt"));
+      return bytes;
+    } catch (IOException | DataFormatException e) {
+      throw new CompletionException(new IOException(
+        "block " + block + " is corrupt", e));
+    } finally {
+      inflater.end();
+    }
+  }
+
+  // Waits for a block, unwrapping I/O errors.
+  private static byte[] join(CompletableFuture<byte[]> future)
+    throws IOException
+  {
+    try {
+      return future.join();
+    } catch (CompletionException e) {
+      if (e.getCause() instanceof IOException)
+        throw (IOException)e.getCause();
+      throw e;
+    }
+  }
+
+  // Decodes the records of a block that are in [first, end) and returns the
+  // index of the record following the block.
+  private long decode(byte[] bytes, int recordCount, long record, long first,
+                      long end, Handler handler) throws IOException {
+    ByteBuffer buffer = ByteBuffer.wrap(bytes);
+
+    for (int i = 0; i < recordCount; i++, record++) {
+      boolean skip = (record < first || record >= end);
+      codec.read(buffer, (skip ? null : handler));
+    }
+
+    if (buffer.hasRemaining())
+      throw new IOException("block has extra bytes");
+    return record;
+  }
+
+  // Reads bytes at a position of a channel.
+  private static ByteBuffer readFully(FileChannel channel, long position,
+                                      int length) throws IOException {
+    ByteBuffer buffer = ByteBuffer.allocate(length);
+    while (buffer.hasRemaining()) {
+      if (channel.read(buffer, position + buffer.position()) < 0)
+        throw new IOException("block file is truncated");
+    }
+    buffer.flip();
+    return buffer;
+  }
+}
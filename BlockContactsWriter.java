@@ -0,0 +1,330 @@
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.time.Period;
+import java.util.Arrays;
+import java.util.zip.CRC32C;
+import java.util.zip.Deflater;
+
+/**
+ * A writer of contacts and meetings to a block-compressed file.
+ *
+ * Records are encoded in binary and grouped in blocks of a fixed number of
+ * records, and each block is compressed on its own, so blocks can be
+ * decompressed in parallel and a record can be found without decompressing
+ * the blocks before it. The file has the following structure (all numbers
+ * are big-endian):
+ *
+ * <pre>
+ * "CMB1"                                   magic
+ * block...                                 deflated records
+ * int blockCount                           block index
+ * (long offset, int compressedLength,
+ *  int length, int recordCount, int crc)...
+ * long indexOffset, int indexCrc, "CMB1"   trailer
+ * </pre>
+ *
+ * where each block holds records encoded by RecordCodec.
+ *
+ * The CRC32C checksums of each compressed block and of the index let the
+ * reader detect corrupt or partially written files.
+ *
+ * The writer is a handler, so a ContactsReader can feed it directly. As the
+ * handler methods can't throw IOException, I/O errors are thrown as
+ * UncheckedIOException.
+ *
+ * @see BlockContactsReader
+ * @see RecordCodec
+ */
+public class BlockContactsWriter implements ContactsReader.Handler, Closeable {
+  /**
+   * The magic number at the start and end of a block file ("CMB1").
+   */
+  static final int MAGIC = 0x434d4231;
+
+  /**
+   * The default number of records per block.
+   */
+  public static final int DEFAULT_BLOCK_SIZE = 1024;
+
+  /**
+   * The file output.
+   */
+  private final DataOutputStream output;
+
+  /**
+   * The number of records per block.
+   */
+  private final int blockSize;
+
+  /**
+   * The records of the current block.
+   */
+  private final ByteArrayOutputStream block = new ByteArrayOutputStream();
+
+  /**
+   * The output of the records of the current block.
+   */
+  private final DataOutputStream records = new DataOutputStream(block);
+
+  /**
+   * The number of records in the current block.
+   */
+  private int recordCount;
+
+  /**
+   * The compressor.
+   */
+  private final Deflater deflater = new Deflater();
+
+  /**
+   * The compressed block buffer.
+   */
+  private byte[] compressed = new byte[65536];
+
+  /**
+   * The number of values of each block in the index.
+   */
+  static final int INDEX_ENTRY = 5;
+
+  /**
+   * The block index: offset, compressed length, length, record count and
+   * checksum of each written block.
+   */
+  private long[] index = new long[INDEX_ENTRY * 16];
+
+  /**
+   * The checksum calculator.
+   */
+  private final CRC32C crc = new CRC32C();
+
+  /**
+   * The number of written blocks.
+   */
+  private int blockCount;
+
+  /**
+   * The number of bytes written to the file.
+   */
+  private long offset;
+
+  /**
+   * Creates a file with the default number of records per block.
+   *
+   * @param file The file, which is truncated.
+   * @throws IOException If the file can't be created.
+   */
+  public BlockContactsWriter(File file) throws IOException {
+    this(file, DEFAULT_BLOCK_SIZE);
+  }
+
+  /**
+   * Creates a file.
+   *
+   * @param file The file, which is truncated.
+   * @param blockSize The number of records per block.
+   * @throws IOException If the file can't be created.
+   * @throws IllegalArgumentException If the block size is not positive.
+   */
+  public BlockContactsWriter(File file, int blockSize) throws IOException {
+    this(new BufferedOutputStream(new FileOutputStream(file), 65536),
+      blockSize);
+  }
+
+  /**
+   * Writes a block file to a stream.
+   *
+   * @param output The stream.
+   * @param blockSize The number of records per block.
+   * @throws IOException If the stream can't be written.
+   * @throws IllegalArgumentException If the block size is not positive.
+   */
+  public BlockContactsWriter(OutputStream output, int blockSize)
+    throws IOException
+  {
+    if (blockSize <= 0)
+      throw new IllegalArgumentException("blockSize must be greater than 0");
+
+    this.output = new DataOutputStream(output);
+    this.blockSize = blockSize;
+    this.output.writeInt(MAGIC);
+    this.offset = 4;
+  }
+
+  /**
+   * Writes a contact.
+   *
+   * @param id The contact ID.
+   * @param name The contact name.
+   * @param notes The contact notes or null if there are none.
+   * @throws UncheckedIOException If the file can't be written.
+   */
+  public void contact(int id, String name, String notes) {
+    try {
+      RecordCodec.writeContact(records, id, name, notes);
+      endRecord();
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  /**
+   * Writes a meeting.
+   *
+   * @param id The meeting ID.
+   * @param time The meeting time in milliseconds.
+   * @param notes The meeting notes or null if there are none.
+   * @param contactIds The IDs of the meeting contacts.
+   * @param contactCount The number of contact IDs.
+   * @throws UncheckedIOException If the file can't be written.
+   */
+  public void meeting(int id, long time, String notes, int[] contactIds,
+                      int contactCount) {
+    meeting(id, time, time, notes, contactIds, contactCount);
+  }
+
+  /**
+   * Writes a meeting with its end time.
+   *
+   * @param id The meeting ID.
+   * @param time The meeting time in milliseconds.
+   * @param endTime The meeting end time in milliseconds, or the meeting
+   *        time if the meeting has no end date.
+   * @param notes The meeting notes or null if there are none.
+   * @param contactIds The IDs of the meeting contacts.
+   * @param contactCount The number of contact IDs.
+   * @throws UncheckedIOException If the file can't be written.
+   */
+  public void meeting(int id, long time, long endTime, String notes,
+                      int[] contactIds, int contactCount) {
+    try {
+      RecordCodec.writeMeeting(records, id, time, endTime, notes, contactIds,
+        contactCount);
+      endRecord();
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  /**
+   * Writes a series of recurring meetings.
+   *
+   * @param id The ID of the first occurrence.
+   * @param time The time of the first occurrence in milliseconds.
+   * @param interval The interval between occurrences.
+   * @param count The number of occurrences.
+   * @param next The index of the next occurrence, yet to take place.
+   * @param contactIds The IDs of the contacts.
+   * @param contactCount The number of contact IDs.
+   * @throws UncheckedIOException If the file can't be written.
+   */
+  public void recurrence(int id, long time, Period interval, int count,
+                         int next, int[] contactIds, int contactCount) {
+    try {
+      RecordCodec.writeRecurrence(records, id, time, interval, count, next,
+        contactIds, contactCount);
+      endRecord();
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  /**
+   * Writes the next IDs to assign.
+   *
+   * @param contactId The next contact ID.
+   * @param meetingId The next meeting ID.
+   * @throws UncheckedIOException If the file can't be written.
+   */
+  public void nextIds(int contactId, int meetingId) {
+    try {
+      RecordCodec.writeNextIds(records, contactId, meetingId);
+      endRecord();
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  /**
+   * Writes the last block and the block index, then closes the file.
+   *
+   * @throws IOException If the file can't be written.
+   */
+  public void close() throws IOException {
+    try {
+      if (recordCount > 0)
+        writeBlock();
+
+      ByteBuffer buffer = ByteBuffer.allocate(4 + blockCount * 24);
+      buffer.putInt(blockCount);
+      for (int i = 0; i < blockCount * INDEX_ENTRY; i += INDEX_ENTRY) {
+        buffer.putLong(index[i]);
+        buffer.putInt((int)index[i + 1]);
+        buffer.putInt((int)index[i + 2]);
+        buffer.putInt((int)index[i + 3]);
+        buffer.putInt((int)index[i + 4]);
+      }
+      crc.reset();
+      crc.update(buffer.array());
+
+      long indexOffset = offset;
+      output.write(buffer.array());
+      output.writeLong(indexOffset);
+      output.writeInt((int)crc.getValue());
+      output.writeInt(MAGIC);
+      output.flush();
+    } finally {
+      deflater.end();
+      output.close();
+    }
+  }
+
+  // Ends a record, writing the block if it is full.
+  private void endRecord() throws IOException {
+    recordCount++;
+    if (recordCount == blockSize)
+      writeBlock();
+  }
+
+  // Compresses and writes the current block.
+  private void writeBlock() throws IOException {
+    records.flush();
+    byte[] bytes = block.toByteArray();
+
+    deflater.reset();
+    deflater.setInput(bytes);
+    deflater.finish();
+    int length = 0;
+    while (!deflater.finished()) {
+      if (length == compressed.length)
+        compressed = Arrays.copyOf(compressed, length * 2);
+      length += deflater.deflate(compressed, length,
+        compressed.length - length);
+    }
+    output.write(compressed, 0, length);
+
+    crc.reset();
+    crc.update(compressed, 0, length);
+
+    int entry = blockCount * INDEX_ENTRY;
+    if (entry + INDEX_ENTRY > index.length)
+      index = Arrays.copyOf(index, index.length * 2);
+    index[entry] = offset;
+    index[entry + 1] = length;
+    index[entry + 2] = bytes.length;
+    index[entry + 3] = recordCount;
+    index[entry + 4] = (int)crc.getValue();
+    blockCount++;
+
+    offset += length;
+    block.reset();
+    recordCount = 0;
+  }
+}
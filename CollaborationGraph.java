@@ -0,0 +1,173 @@
+import java.util.Iterator;
+
+/**
+ * A weighted graph of the contacts meeting together.
+ *
+ * The weight of an edge between two contacts is the number of meetings they
+ * both attended. Each contact keeps the weights of its edges by neighbour and
+ * ranked by decreasing weight, so the contacts it meets most often are read
+ * off the top of the ranking, and adding a meeting only updates the edges
+ * between its attendees.
+ *
+ * The graph is backed by persistent maps, so a snapshot of the graph costs
+ * nothing and stays unchanged, and safe to read from any thread, while the
+ * graph is modified.
+ */
+public class CollaborationGraph {
+  /**
+   * The edges of each contact.
+   */
+  private PersistentTreeMap<Integer, Edges> edges;
+
+  /**
+   * Creates an empty graph.
+   */
+  public CollaborationGraph() {
+    clear();
+  }
+
+  // Creates a snapshot of a graph.
+  private CollaborationGraph(CollaborationGraph graph) {
+    this.edges = graph.edges;
+  }
+
+  /**
+   * Adds a meeting to the graph, adding one to the weights of the edges
+   * between its attendees.
+   *
+   * @param meeting The meeting.
+   */
+  public void add(Meeting meeting) {
+    change(meeting, 1);
+  }
+
+  /**
+   * Removes a meeting from the graph, subtracting one from the weights of
+   * the edges between its attendees.
+   *
+   * @param meeting The meeting.
+   */
+  public void remove(Meeting meeting) {
+    change(meeting, -1);
+  }
+
+  /**
+   * Removes all meetings from the graph.
+   */
+  public void clear() {
+    edges = PersistentTreeMap.empty();
+  }
+
+  /**
+   * Returns a snapshot of the graph, which the changes made to the graph
+   * afterwards don't affect. Taking a snapshot takes constant time.
+   *
+   * @return The snapshot.
+   */
+  public CollaborationGraph snapshot() {
+    return new CollaborationGraph(this);
+  }
+
+  /**
+   * Returns the number of meetings two contacts attended together.
+   *
+   * @param id The ID of a contact.
+   * @param otherId The ID of the other contact.
+   * @return The weight of the edge between the contacts.
+   */
+  public int weight(int id, int otherId) {
+    Edges contactEdges = edges.get(id);
+    if (contactEdges == null)
+      return 0;
+
+    Integer weight = contactEdges.weights.get(otherId);
+    return (weight == null ? 0 : weight);
+  }
+
+  /**
+   * Returns the contacts a contact met most often, by decreasing number of
+   * meetings and then by ID. It takes O(log n + k) time.
+   *
+   * @param id The ID of the contact.
+   * @param k The maximum number of contacts to return.
+   * @return The IDs of at most k contacts.
+   */
+  public int[] top(int id, int k) {
+    Edges contactEdges = edges.get(id);
+    if (contactEdges == null || k == 0)
+      return new int[0];
+
+    int[] ids = new int[Math.min(k, contactEdges.weights.size())];
+    Iterator<Integer> ranking = contactEdges.ranking.values().iterator();
+    for (int i = 0; i < ids.length; i++)
+      ids[i] = ranking.next();
+    return ids;
+  }
+
+  // Adds a delta to the weights of the edges between the attendees of a
+  // meeting, in both directions.
+  private void change(Meeting meeting, int delta) {
+    for (Contact contact : meeting.getContacts()) {
+      Edges contactEdges = edges.get(contact.getId());
+      if (contactEdges == null)
+        contactEdges = Edges.EMPTY;
+
+      for (Contact other : meeting.getContacts()) {
+        if (other.getId() != contact.getId())
+          contactEdges = contactEdges.add(other.getId(), delta);
+      }
+      edges = (contactEdges.weights.isEmpty() ?
+        edges.remove(contact.getId()) :
+        edges.put(contact.getId(), contactEdges));
+    }
+  }
+
+  /**
+   * The edges of a contact.
+   */
+  private static final class Edges {
+    /**
+     * The contact without edges.
+     */
+    static final Edges EMPTY = new Edges(PersistentTreeMap.empty(),
+      PersistentTreeMap.empty());
+
+    /**
+     * The weights by neighbour ID.
+     */
+    final PersistentTreeMap<Integer, Integer> weights;
+
+    /**
+     * The neighbour IDs by rank, a key sorting by decreasing weight and then
+     * by ID.
+     */
+    final PersistentTreeMap<Long, Integer> ranking;
+
+    // Creates edges.
+    Edges(PersistentTreeMap<Integer, Integer> weights,
+          PersistentTreeMap<Long, Integer> ranking) {
+      this.weights = weights;
+      this.ranking = ranking;
+    }
+
+    // Returns the edges with a delta added to the weight of a neighbour.
+    // Edges whose weight drops to 0 are removed.
+    Edges add(int id, int delta) {
+      Integer oldWeight = weights.get(id);
+      int weight = (oldWeight == null ? 0 : oldWeight) + delta;
+
+      PersistentTreeMap<Long, Integer> newRanking = ranking;
+      if (oldWeight != null)
+        newRanking = newRanking.remove(rank(oldWeight, id));
+      if (weight <= 0)
+        return new Edges(weights.remove(id), newRanking);
+      return new Edges(weights.put(id, weight),
+        newRanking.put(rank(weight, id), id));
+    }
+
+    // Returns the rank key of a neighbour.
+    static long rank(int weight, int id) {
+      return ((long)-weight << 32) | (id & 0xffffffffL);
+    }
+  }
+}
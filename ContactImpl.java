@@ -1,3 +1,6 @@
+import java.util.List;
+import java.util.function.ObjIntConsumer;
+
 /**
  * The contact implementation class.
  *
@@ -6,22 +9,30 @@
  * Contacts have an ID (unique, a non-zero positive integer),
  * a name (not necessarily unique), and notes that the user
  * may want to save about them.
+ *
+ * The ID and name of a contact are immutable and its notes can only be
+ * appended to, safely from any thread.
  */
 public class ContactImpl implements Contact {
   /**
    * The contact id.
    */
-  private int id;
+  private final int id;
   
   /**
    * The contact name.
    */
-  private String name;
+  private final String name;
   
   /**
    * The contact notes.
    */
-  private String notes;
+  private final Notes notes;
+  
+  /**
+   * The listener notified when notes are added or null if there is none.
+   */
+  private volatile ObjIntConsumer<String> notesListener;
   
   /**
    * Creates a new contact by passing the contact id, name and the notes.
@@ -34,6 +45,25 @@ public class ContactImpl implements Contact {
    * @throws NullPointerException If the name or notes are null.
    */
   public ContactImpl(int id, String name, String notes) {
+    this(id, name, notes, null);
+  }
+  
+  /**
+   * Creates a new contact by passing the contact id, name, notes and the
+   * store in which to keep the notes.
+   *
+   * @param id The contact id.
+   * @param name The contact name.
+   * @param notes The contact notes.
+   * @param notesStore The notes store or null to keep the notes on the heap.
+   * @throws IllegalArgumentException if the id invalid
+   *         (less than or equal to 0).
+   * @throws NullPointerException If the name or notes are null.
+   * @see NotesStore
+   */
+  public ContactImpl(int id, String name, String notes,
+    NotesStore notesStore)
+  {
     if (id <= 0)
       throw new IllegalArgumentException("id must be greater than 0");
     else if (name == null || notes == null) {
@@ -42,7 +72,7 @@ public class ContactImpl implements Contact {
     
     this.id = id;
     this.name = name;
-    this.notes = notes;
+    this.notes = new Notes(notes, notesStore);
   }
   
   /**
@@ -85,7 +115,26 @@ public class ContactImpl implements Contact {
    * @return The contact notes, maybe empty.
    */
   public String getNotes() {
-    return this.notes;
+    return this.notes.toString();
+  }
+  
+  /**
+   * Returns the length of the contact notes, without joining them.
+   *
+   * @return The length of the notes.
+   */
+  public int getNotesLength() {
+    return this.notes.length();
+  }
+  
+  /**
+   * Gets the contact notes as text segments, which concatenated form the
+   * notes.
+   *
+   * @return An unmodifiable list of the contact notes segments.
+   */
+  public List<String> getNoteSegments() {
+    return this.notes.getSegments();
   }
   
   /**
@@ -95,11 +144,25 @@ public class ContactImpl implements Contact {
    * notes already stored.
    *
    * @param note The notes to add.
+   * @throws NullPointerException If the note is null.
    */
   public void addNotes(String note) {
-    if (!this.notes.equals(""))
-      this.notes += "\n";
+    this.notes.append(note);
     
-    this.notes += note;
+    ObjIntConsumer<String> listener = notesListener;
+    if (listener != null)
+      listener.accept(note, getId());
+  }
+  
+  /**
+   * Sets the listener notified when notes are added about the contact.
+   *
+   * The listener receives the added notes and the contact ID, after the
+   * notes are added.
+   *
+   * @param listener The listener or null to remove it.
+   */
+  public void setNotesListener(ObjIntConsumer<String> listener) {
+    this.notesListener = listener;
   }
 }
@@ -1,29 +1,55 @@
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
-import java.lang.StringBuilder;
-import java.text.SimpleDateFormat;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.time.Duration;
+import java.time.Period;
+import java.time.ZonedDateTime;
 import java.util.ArrayList;
 import java.util.Calendar;
-import java.util.Date;
+import java.util.Collections;
 import java.util.Comparator;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
 import java.util.Set;
+import java.util.SortedMap;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.TimeZone;
 
 import java.util.TreeMap;
-import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
+import java.util.zip.CRC32C;
+import java.util.zip.CheckedOutputStream;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
-import javax.xml.stream.XMLInputFactory;
 import javax.xml.stream.XMLOutputFactory;
 import javax.xml.stream.XMLStreamException;
-import javax.xml.stream.XMLStreamReader;
 import javax.xml.stream.XMLStreamWriter;
 
 /**
  * Class to manage contacts and meetings.
+ *
+ * The contact manager is thread-safe. Changes are made under a lock, which
+ * reads don't take: the data is kept in persistent maps, and each change
+ * publishes an immutable view sharing the unchanged parts with the previous
+ * one, which reads use. Streams read the view they started from, so they can
+ * be consumed while the contact manager is changed.
  */
-public class ContactManagerImpl implements ContactManager {
+public class ContactManagerImpl implements ContactManager, AutoCloseable {
   /**
    * The next contact ID.
    */
@@ -37,524 +63,3211 @@ public class ContactManagerImpl implements ContactManager {
   /**
    * The set of contacts.
    */
-  private final TreeMap<Integer, Contact> contacts = new TreeMap<>();
+  private PersistentTreeMap<Integer, ContactImpl> contacts =
+    PersistentTreeMap.empty();
+  
+  /**
+   * The words of the contact names, for fuzzy matching.
+   */
+  private BkTree names = BkTree.empty();
   
   /**
    * The map of future meetings.
    */
-  private final TreeMap<Integer, FutureMeetingImpl>
-    futureMeetings = new TreeMap<>();
+  private PersistentTreeMap<Integer, FutureMeetingImpl> futureMeetings =
+    PersistentTreeMap.empty();
   
   /**
    * The map of past meetings.
    */
-  private final TreeMap<Integer, PastMeetingImpl> pastMeetings = new TreeMap<>();
+  private PersistentTreeMap<Integer, PastMeetingImpl> pastMeetings =
+    PersistentTreeMap.empty();
+  
+  /**
+   * The chronological index of future meetings.
+   */
+  private final MeetingIndex<FutureMeetingImpl> futureIndex =
+    new MeetingIndex<>();
+  
+  /**
+   * The chronological index of past meetings.
+   */
+  private final MeetingIndex<PastMeetingImpl> pastIndex = new MeetingIndex<>();
+  
+  /**
+   * The IDs of the past meetings of each contact.
+   */
+  private PersistentTreeMap<Integer, IdBitmap> attendance =
+    PersistentTreeMap.empty();
+  
+  /**
+   * The graph of the contacts attending past meetings together.
+   */
+  private final CollaborationGraph collaborations = new CollaborationGraph();
+  
+  /**
+   * The meetings with an end date of each contact, by time interval.
+   */
+  private PersistentTreeMap<Integer, IntervalTree<MeetingImpl>> schedules =
+    PersistentTreeMap.empty();
+  
+  /**
+   * The series of recurring meetings with occurrences yet to take place, by
+   * the ID of their first occurrence.
+   */
+  private PersistentTreeMap<Integer, RecurringMeeting> recurrences =
+    PersistentTreeMap.empty();
+  
+  /**
+   * The IDs of the first occurrences of the series of each contact.
+   */
+  private PersistentTreeMap<Integer, IdBitmap> contactRecurrences =
+    PersistentTreeMap.empty();
+  
+  /**
+   * The IDs of the first occurrences of the series, by the time of their
+   * next occurrence.
+   */
+  private PersistentTreeMap<Long, IdBitmap> recurrenceQueue =
+    PersistentTreeMap.empty();
+  
+  /**
+   * The series, by the interval from their next occurrence to their last
+   * one.
+   */
+  private IntervalTree<RecurringMeeting> recurrenceSpans =
+    IntervalTree.empty();
+  
+  /**
+   * The time of the next occurrence of any series.
+   */
+  private long nextRecurrenceTime = Long.MAX_VALUE;
+  
+  /**
+   * The inverted index of the notes of past meetings.
+   */
+  private TextIndex meetingText = new TextIndex();
+  
+  /**
+   * The inverted index of the notes of contacts.
+   */
+  private TextIndex contactText = new TextIndex();
+  
+  /**
+   * Whether notes are indexed as they are added, which they are not while
+   * loading: the saved indexes are brought up to date once loaded instead.
+   */
+  private boolean indexing = true;
+  
+  /**
+   * The latest published view of the data, read without locking.
+   */
+  private volatile View view;
+  
+  /**
+   * The number of changes made to meetings, which stamps the generations.
+   */
+  private long generation = 0;
+  
+  /**
+   * The generation of the last change to the meetings of each contact.
+   */
+  private PersistentTreeMap<Integer, Long> contactGenerations =
+    PersistentTreeMap.empty();
+  
+  /**
+   * The generation of the last change to the meetings held at each time.
+   */
+  private PersistentTreeMap<Long, Long> timeGenerations =
+    PersistentTreeMap.empty();
+  
+  /**
+   * The generation of the last change to the series of recurring meetings.
+   */
+  private long recurrenceGeneration = 0;
+  
+  /**
+   * The cache of meeting lists or null if they are not cached.
+   */
+  private volatile QueryCache<List<Object>, List<?>> queryCache;
   
   /**
    * The database file.
    */
   private final File file = new File("contacts.txt");
   
+  /**
+   * The snapshots of the database file.
+   */
+  private final SnapshotFile snapshot = new SnapshotFile(file);
+  
+  /**
+   * The magic number starting the file of the notes indexes.
+   */
+  private static final int TEXT_INDEX_MAGIC = 0x434d5449;
+  
+  /**
+   * The notes indexes saved with each snapshot.
+   */
+  private final SnapshotFile textIndexFile = new SnapshotFile(
+    new File("contacts.txt.index"));
+  
+  /**
+   * Whether the database file was loaded or written successfully, in which
+   * case it becomes the previous snapshot when flushing.
+   */
+  private boolean fileValid = false;
+  
+  /**
+   * The journal of the records changed since the last snapshot.
+   */
+  private final Journal journal = new Journal(new File("contacts.txt.journal"),
+    file);
+  
+  /**
+   * Whether anything changed since the last flush.
+   */
+  private boolean dirty = false;
+  
+  /**
+   * Whether the next flush must write a new snapshot rather than journal
+   * the changes, because the snapshot is missing, corrupt or in another
+   * format.
+   */
+  private boolean snapshotStale = true;
+  
+  /**
+   * The IDs of the contacts changed since the last flush.
+   */
+  private final Set<Integer> dirtyContacts = new HashSet<>();
+  
+  /**
+   * The IDs of the meetings changed since the last flush.
+   */
+  private final Set<Integer> dirtyMeetings = new HashSet<>();
+  
+  /**
+   * The series of recurring meetings changed since the last flush, by the ID
+   * of their first occurrence, including the ones that finished.
+   */
+  private final Map<Integer, RecurringMeeting> dirtyRecurrences =
+    new HashMap<>();
+  
+  /**
+   * When changes are saved to disk.
+   */
+  private volatile DurabilityPolicy durabilityPolicy =
+    DurabilityPolicy.manual();
+  
+  /**
+   * The lock serialising flushes, which write the journal without holding
+   * the lock of the contact manager.
+   */
+  private final Object flushLock = new Object();
+  
+  /**
+   * The number of changes made so far.
+   */
+  private long changeCount = 0;
+  
+  /**
+   * The number of changes saved to disk.
+   */
+  private long savedCount = 0;
+  
+  /**
+   * The number of changes made when the last flush started.
+   */
+  private long flushedCount = 0;
+  
+  /**
+   * The time in milliseconds when the oldest unsaved change was made.
+   */
+  private long dirtySince;
+  
+  /**
+   * The futures to complete once the changes up to a count are saved.
+   */
+  private final TreeMap<Long, CompletableFuture<Void>> syncs = new TreeMap<>();
+  
+  /**
+   * The writer thread of the group commit policy or null if there is none.
+   */
+  private Thread writer;
+  
+  /**
+   * Whether the writer thread waits for a change.
+   */
+  private boolean writerIdle = false;
+  
+  /**
+   * The pool of attendee sets shared between meetings.
+   */
+  private final AttendeePool attendeePool = new AttendeePool();
+  
+  /**
+   * The codec of meeting dates.
+   */
+  private final DateCodec dateCodec = new DateCodec();
+  
+  /**
+   * The time zone of loaded meetings.
+   */
+  private final TimeZone zone = TimeZone.getDefault();
+  
+  /**
+   * The directory of the archive of sealed months.
+   */
+  private final File archiveDirectory = new File("contacts.txt.archive");
+  
+  /**
+   * The archive of the past meetings of sealed months.
+   */
+  private MeetingArchive archive = new MeetingArchive(archiveDirectory, zone);
+  
+  /**
+   * The age of the past meetings sealed into the archive or null if
+   * meetings are not sealed.
+   */
+  private Period archivePeriod;
+  
+  /**
+   * The cache of the meetings read from the archive, by segment.
+   */
+  private volatile QueryCache<List<Integer>, Map<Integer, PastMeetingImpl>>
+    archiveCache = new QueryCache<>(12);
+  
+  /**
+   * The generation of the contacts of the sealed meetings, which the cached
+   * meetings must match.
+   */
+  private long archiveGeneration = 0;
+  
+  /**
+   * The segments replaced since the manifest was last saved, guarded by the
+   * flush lock.
+   */
+  private List<MeetingArchive.Segment> obsoleteSegments = new ArrayList<>();
+  
+  /**
+   * The segments only listed by the previous manifest, deleted once the
+   * manifest is saved again, guarded by the flush lock.
+   */
+  private List<MeetingArchive.Segment> unlistedSegments = new ArrayList<>();
+  
+  /**
+   * Whether dates are saved in the precise format.
+   */
+  private boolean preciseDates = false;
+  
+  /**
+   * The number of records per compressed block or 0 to save as XML.
+   */
+  private int blockSize = 0;
+  
+  /**
+   * The store in which notes are kept or null if they are kept on the heap.
+   */
+  private final NotesStore notesStore;
+  
   /**
    * Constructs a new contact manager.
    */
   public ContactManagerImpl() {
-    load();
+    this(null);
   }
   
   /**
-   * Returns the ID of the last added meeting.
+   * Constructs a new contact manager that keeps the notes of contacts and
+   * past meetings in the specified store instead of the heap.
    *
-   * @return The last added meeting ID or 0 if there's no meetings.
+   * @param notesStore The notes store or null to keep the notes on the heap.
+   * @see NotesStore
    */
-  public int getLastMeetingId() {
-    return (nextMeetingId - 1);
+  public ContactManagerImpl(NotesStore notesStore) {
+    this.notesStore = notesStore;
+    load();
+    publish();
+    
+    // the loaded records are saved already
+    savedCount = changeCount;
+    flushedCount = changeCount;
   }
   
   /**
-   * Adds a meeting to be held in the future.
+   * Sets whether meeting dates are saved in the precise format.
    *
-   * An ID is returned when the meeting is added to the system. This ID will
-   * be positive and non-zero.
+   * The precise format is ISO-8601 in UTC and keeps the milliseconds, while
+   * the default format "dd-MM-yyyy HH:mm:ss" is in the local time zone and
+   * drops them. Both formats can be loaded.
    *
-   * @param contacts A set of contacts that will participate in the meeting.
-   * @param date The date on which the meeting will take place.
-   * @return The meeting ID.
-   * @throws IllegalArgumentException If the meeting is set for a time
-   *         in the past or if any contact is unknown.
-   * @throws NullPointerException If the contacts or date are null.
-   * @see Contact
-   * @see FutureMeeting
+   * @param preciseDates Whether to save dates in the precise format.
+   * @see DateCodec
    */
-  public int addFutureMeeting(Set<Contact> contacts, Calendar date) {
-    if (contacts == null || date == null) {
-      throw new NullPointerException("contacts or date must not be null");
-    } else if (!this.contacts.values().containsAll(contacts)) {
-      throw new IllegalArgumentException("contacts must not be unknown");
-    } else if (date.compareTo(Calendar.getInstance()) < 0) {
-      throw new IllegalArgumentException(
-        "date must be set for a time in the future");
+  public synchronized void setPreciseDates(boolean preciseDates) {
+    if (preciseDates != this.preciseDates) {
+      changed();
+      snapshotStale = true;
     }
-    
-    // create future meeting
-    FutureMeetingImpl futureMeeting = new FutureMeetingImpl(nextMeetingId,
-      date, contacts);
-    
-    // add meeting to map
-    futureMeetings.put(nextMeetingId, futureMeeting);
-    
-    // increment next meeting ID
-    return nextMeetingId++;
+    this.preciseDates = preciseDates;
+    publish();
   }
   
   /**
-   * Returns the past meeting with the specified ID, or null if there is none.
+   * Sets whether data is saved as compressed blocks instead of XML.
    *
-   * The meeting must have happened at a past date.
+   * Compressed blocks of records are smaller to write and faster to load, as
+   * blocks are decompressed in parallel. Both formats can be loaded.
    *
-   * @param id The meeting ID.
-   * @return The meeting with the specified ID or null if there is none.
-   * @throws IllegalStateException If there is a meeting with that ID
-   *         happening in the future.
-   * @see PastMeeting
+   * @param blockSize The number of records per block or 0 to save as XML.
+   * @throws IllegalArgumentException If the block size is negative.
+   * @see BlockContactsWriter
    */
-  public PastMeeting getPastMeeting(int id) {
-    PastMeeting pastMeeting = pastMeetings.get(id);
+  public synchronized void setCompressedBlocks(int blockSize) {
+    if (blockSize < 0)
+      throw new IllegalArgumentException("blockSize must not be negative");
     
-    // if not found, make sure it's not in the past meeting map
-    if (pastMeeting == null && futureMeetings.get(id) != null) {
-      throw new IllegalArgumentException(
-        "meeting id must not be of meeting to be held in the future");
+    if (blockSize != this.blockSize) {
+      changed();
+      snapshotStale = true;
     }
-    return pastMeeting;
+    this.blockSize = blockSize;
+    publish();
   }
   
   /**
-   * Returns the future meeting with the specified ID or null if there is
-   * none.
+   * Sets the number of meeting lists kept in the query cache.
    *
-   * @param id The meeting ID.
-   * @return The meeting with the specified ID or null if there is none.
-   * @throws IllegalArgumentException If there is a meeting with that ID
-   *         happening in the past.
-   * @see FutureMeeting
+   * The lists of future and past meetings of a contact and the lists of
+   * meetings held on a date are cached, and the least recently used ones are
+   * evicted. A cached list is returned until a meeting of its contact or
+   * date is added, changed or converted to a past meeting, and it is not
+   * returned anymore from then on: each contact and date has a generation
+   * bumped by such changes, which a cached list must match.
+   *
+   * @param size The maximum number of cached lists or 0 to disable caching.
+   * @throws IllegalArgumentException If the size is negative.
+   * @see QueryCache
    */
-  public FutureMeeting getFutureMeeting(int id) {
-    FutureMeeting futureMeeting = futureMeetings.get(id);
+  public void setQueryCacheSize(int size) {
+    if (size < 0)
+      throw new IllegalArgumentException("size must not be negative");
     
-    // if not found, make sure it's not in the past meeting map
-    if (futureMeeting == null && pastMeetings.get(id) != null) {
-      throw new IllegalArgumentException(
-        "meeting id must not be of meeting held in the past");
-    }
-    return futureMeeting;
+    queryCache = (size == 0 ? null : new QueryCache<>(size));
   }
   
   /**
-   * Returns the meeting with the specified ID or null if there is none.
+   * Sets the age of the past meetings sealed into the archive.
    *
-   * @param id The meeting ID.
-   * @return The meeting with the requested ID or null if there is none.
-   * @see Meeting
+   * When data is flushed, the past meetings of the months ending before
+   * that age are written to a segment file of their month in the
+   * contacts.txt.archive directory, and a new snapshot leaves them out, so
+   * the database file and the heap only hold recent meetings. The IDs,
+   * attendance, collaborations and notes index of sealed meetings stay in
+   * memory, and their notes are read back a month at a time when they are
+   * queried. Changing a sealed meeting or adding notes to it moves it back
+   * to the database file, where it stays until compact() seals its month
+   * again.
+   *
+   * Sealed meetings are not considered by getConflicts() and
+   * findFreeSlots().
+   *
+   * @param period The age of the sealed meetings or null to stop sealing
+   *        meetings; sealed meetings stay sealed.
+   * @throws IllegalArgumentException If the period is negative.
+   * @see MeetingArchive
    */
-  public Meeting getMeeting(int id) {
-    Meeting meeting = futureMeetings.get(id);
-    if (meeting == null)
-      meeting = pastMeetings.get(id);
-    return meeting;
+  public synchronized void setArchivePeriod(Period period) {
+    if (period != null && period.isNegative())
+      throw new IllegalArgumentException("period must not be negative");
+    
+    archivePeriod = period;
   }
   
   /**
-   * Returns a list of future meetings scheduled for this contact.
+   * Sets the number of months of sealed meetings kept in the archive cache.
    *
-   * If there are none, the returned list will be empty. Otherwise, it will be
-   * chronologically sorted and will not contain any duplicates.
+   * The least recently used months are evicted, and evicted months are
+   * read again from the archive when needed.
    *
-   * @param contact The contact.
-   * @return A list of future meeting(s) scheduled for this contact (can be
-   *         empty).
-   * @throws IllegalArgumentException If the contact does not exist.
-   * @throws NullPointerException If the contact is null.
-   * @see Contact
-   * @see Meeting
+   * @param size The maximum number of cached months.
+   * @throws IllegalArgumentException If the size is not positive.
+   * @see #setArchivePeriod(Period)
    */
-  public List<Meeting> getFutureMeetingList(Contact contact) {
-    if (contact == null)
-      throw new NullPointerException("contact must not be null");
-    else if (!contacts.containsKey(contact.getId()))
-      throw new IllegalArgumentException("contact must not be unknown");
-    
-    updateMeetings();
-    
-    // create a sorted set with a custom comparator than compares the dates
-    // of two past meetings
-    // by using a set we also remove duplicates
-    TreeSet<Meeting> sortedSet = new TreeSet<>(new Comparator<Meeting>() {
-      public int compare(Meeting m1, Meeting m2) {
-        if (m1.equals(m2))
-          return 0;
-        return m1.getDate().compareTo(m2.getDate());
-      }
-    });
+  public void setArchiveCacheSize(int size) {
+    if (size <= 0)
+      throw new IllegalArgumentException("size must be positive");
     
-    // add the future meetings to the set
-    for (FutureMeeting futureMeeting : futureMeetings.values()) {
-      if (futureMeeting.getContacts().contains(contact))
-        sortedSet.add(futureMeeting);
-    }
-    return new ArrayList<Meeting>(sortedSet);
+    archiveCache = new QueryCache<>(size);
   }
   
   /**
-   * Returns a list of meetings scheduled for or that took place on the
-   * specified date.
-   *
-   * If there are none, the returned list will be empty. Otherwise, it will be
-   * sorted by id and will not contain any duplicates.
+   * Returns the statistics of the archive cache.
    *
-   * @param date The date.
-   * @return A list of meeting(s) schedule for or that took place on the
-   *         specified date (can be empty).
-   * @throws NullPointerException If the date is null.
-   * @see Meeting
+   * @return The statistics.
+   * @see #setArchiveCacheSize(int)
    */
-  public List<Meeting> getMeetingListOn(Calendar date) {
-    if (date == null)
-      throw new NullPointerException("date must not be null");
-    
-    updateMeetings();
-    
-    // create a sorted set with a custom comparator than compares the IDs
-    // of two meetings
-    // by using a set we also remove duplicates
-    TreeSet<Meeting> sortedSet = new TreeSet<>(new Comparator<Meeting>() {
-      public int compare(Meeting m1, Meeting m2) {
-        if (m1.equals(m2))
-          return 0;
-        return Integer.compare(m1.getId(), m2.getId());
-      }
-    });
-    
-    if (date.before(Calendar.getInstance())) {
-      // add the past meetings to the set
-      for (PastMeeting pastMeeting : pastMeetings.values()) {
-        if (pastMeeting.getDate().equals(date))
-          sortedSet.add(pastMeeting);
-      }
-    } else {
-      // add the future meetings to the set
-      for (FutureMeeting futureMeeting : futureMeetings.values()) {
-        if (futureMeeting.getDate().equals(date))
-          sortedSet.add(futureMeeting);
-      }
-    }
-    return new ArrayList<Meeting>(sortedSet);
+  public QueryCache.Stats getArchiveCacheStats() {
+    return archiveCache.getStats();
   }
   
   /**
-   * Returns a list of past meetings in which this contact participated.
+   * Returns the statistics of the query cache.
    *
-   * If there are none, the returned list will be empty. Otherwise, it will be
-   * chronologically sorted and will not contain any duplicates.
+   * @return The statistics or null if caching is disabled.
+   * @see #setQueryCacheSize(int)
+   */
+  public QueryCache.Stats getQueryCacheStats() {
+    QueryCache<List<Object>, List<?>> cache = queryCache;
+    return (cache == null ? null : cache.getStats());
+  }
+  
+  /**
+   * Returns the ID of the last added meeting.
    *
-   * @param contact The contact.
-   * @return A list of past meeting(s) in which the contact participated (can
-   *         be empty).
-   * @throws IllegalArgumentException If the contact does not exist.
-   * @throws NullPointerException If the contact is null.
+   * @return The last added meeting ID or 0 if there's no meetings.
+   */
+  public int getLastMeetingId() {
+    return (view.nextMeetingId - 1);
+  }
+  
+  /**
+   * Returns the latest published view of the data. Views are immutable, so
+   * the view can be read by any thread and later changes don't affect it.
+   *
+   * @return The view.
+   */
+  View getView() {
+    return view;
+  }
+  
+  /**
+   * Adds a meeting to be held in the future.
+   *
+   * An ID is returned when the meeting is added to the system. This ID will
+   * be positive and non-zero.
+   *
+   * @param contacts A set of contacts that will participate in the meeting.
+   * @param date The date on which the meeting will take place.
+   * @return The meeting ID.
+   * @throws IllegalArgumentException If the meeting is set for a time
+   *         in the past or if any contact is unknown.
+   * @throws NullPointerException If the contacts or date are null.
    * @see Contact
-   * @see PastMeeting
+   * @see FutureMeeting
    */
-  public List<PastMeeting> getPastMeetingListFor(Contact contact) {
-    if (contact == null)
-      throw new NullPointerException("contact must not be null");
-    else if (!contacts.containsKey(contact.getId()))
-      throw new IllegalArgumentException("contact must not be unknown");
+  public int addFutureMeeting(Set<Contact> contacts, Calendar date) {
+    return addFutureMeeting(contacts, date, null);
+  }
+  
+  /**
+   * Adds a meeting to be held in the future, lasting until an end date.
+   *
+   * The meeting is rejected if it overlaps a meeting with an end date of
+   * any of its contacts, as in [date, end date). Meetings without an end
+   * date never overlap. The meetings with an end date of each contact are
+   * kept in an interval tree, so the check takes O(log n + k) time.
+   *
+   * @param contacts A set of contacts that will participate in the meeting.
+   * @param date The date on which the meeting will take place.
+   * @param endDate The date on which the meeting will end or null if it has
+   *        no end date.
+   * @return The meeting ID.
+   * @throws IllegalArgumentException If the meeting is set for a time
+   *         in the past, if any contact is unknown, if the end date is
+   *         before the date or if the meeting overlaps another meeting of
+   *         its contacts.
+   * @throws NullPointerException If the contacts or date are null.
+   * @see #getConflicts(Set, Calendar, Calendar)
+   */
+  public int addFutureMeeting(Set<Contact> contacts, Calendar date,
+                              Calendar endDate) {
+    int result;
+    synchronized (this) {
+      if (contacts == null || date == null) {
+        throw new NullPointerException("contacts or date must not be null");
+      } else if (!containsContacts(contacts)) {
+        throw new IllegalArgumentException("contacts must not be unknown");
+      } else if (date.compareTo(Calendar.getInstance()) < 0) {
+        throw new IllegalArgumentException(
+          "date must be set for a time in the future");
+      } else if (endDate != null && endDate.before(date)) {
+        throw new IllegalArgumentException("end date must not be before date");
+      } else if (endDate != null && !conflicts(schedules, contacts,
+          date.getTimeInMillis(), endDate.getTimeInMillis()).isEmpty()) {
+        throw new IllegalArgumentException(
+          "meeting must not overlap another meeting of its contacts");
+      }
     
-    updateMeetings();
+      // create future meeting
+      FutureMeetingImpl futureMeeting = new FutureMeetingImpl(nextMeetingId,
+        date, endDate, attendeePool.intern(contacts));
     
-    // create a sorted set with a custom comparator than compares the dates
-    // of two past meetings
-    // by using a set we also remove duplicates
-    TreeSet<PastMeeting> sortedSet = new TreeSet<>(
-      new Comparator<PastMeeting>()
-    {
-      public int compare(PastMeeting m1, PastMeeting m2) {
-        if (m1.equals(m2))
-          return 0;
-        return m1.getDate().compareTo(m2.getDate());
-      }
-    });
+      // add meeting to map
+      putFutureMeeting(futureMeeting);
     
-    // add the past meetings to the set
-    for (PastMeeting pastMeeting : pastMeetings.values()) {
-      if (pastMeeting.getContacts().contains(contact))
-        sortedSet.add(pastMeeting);
+      // increment next meeting ID
+      result = nextMeetingId++;
+      publish();
     }
-    return new ArrayList<PastMeeting>(sortedSet);
+    committed();
+    return result;
   }
   
   /**
-   * Adds a new record for a meeting held in the past.
+   * Adds a series of meetings to be held in the future at a regular
+   * interval.
    *
-   * @param contacts A set of participants.
-   * @param date The date on which the meeting took place.
-   * @param notes Notes to be added about the meeting.
-   * @throws IllegalArgumentException If the list of contacts is empty or any
-   *         of the contacts does not exist.
+   * The series is stored as a single rule rather than as meetings: its
+   * occurrences are created when future meeting queries read them, and are
+   * only stored once they take place and become past meetings. Occurrences
+   * have consecutive IDs starting from the returned one, and no end date, so
+   * they never overlap other meetings.
+   *
+   * @param contacts A set of contacts that will participate in the meetings.
+   * @param date The date of the first occurrence.
+   * @param interval The interval between occurrences.
+   * @param count The number of occurrences.
+   * @return The ID of the first occurrence.
+   * @throws IllegalArgumentException If the first occurrence is set for a
+   *         time in the past, if any contact is unknown, if the set of
+   *         contacts is empty, if the interval or the count is not positive
+   *         or if the meeting IDs or dates would overflow.
+   * @throws NullPointerException If the contacts, date or interval are null.
+   * @see RecurringMeeting
+   */
+  public int addRecurringMeeting(Set<Contact> contacts, Calendar date,
+                                 Period interval, int count) {
+    int result;
+    synchronized (this) {
+      if (contacts == null || date == null || interval == null) {
+        throw new NullPointerException(
+          "contacts, date or interval must not be null");
+      } else if (!containsContacts(contacts)) {
+        throw new IllegalArgumentException("contacts must not be unknown");
+      } else if (date.compareTo(Calendar.getInstance()) < 0) {
+        throw new IllegalArgumentException(
+          "date must be set for a time in the future");
+      }
+      
+      // create series
+      RecurringMeeting series = new RecurringMeeting(nextMeetingId,
+        date.getTimeInMillis(), date.getTimeZone(), interval, count, 0,
+        attendeePool.intern(contacts));
+      
+      // add series to map
+      putRecurrence(series);
+      
+      // reserve the IDs of the occurrences
+      result = nextMeetingId;
+      nextMeetingId += count;
+      publish();
+    }
+    committed();
+    return result;
+  }
+  
+  /**
+   * Adds a series of meetings to be held in the future at a regular
+   * interval, until a date.
+   *
+   * @param contacts A set of contacts that will participate in the meetings.
+   * @param date The date of the first occurrence.
+   * @param interval The interval between occurrences.
+   * @param until The date after which no occurrence is held.
+   * @return The ID of the first occurrence.
+   * @throws IllegalArgumentException If the first occurrence is set for a
+   *         time in the past, if any contact is unknown, if the set of
+   *         contacts is empty, if the interval is not positive or if the
+   *         until date is before the date.
    * @throws NullPointerException If any of the arguments are null.
-   * @see Contact
-   * @see PastMeeting
+   * @see #addRecurringMeeting(Set, Calendar, Period, int)
    */
-  public void addNewPastMeeting(Set<Contact> contacts, Calendar date,
-                                String notes) {
-    if (contacts == null || date == null || notes == null) {
+  public int addRecurringMeeting(Set<Contact> contacts, Calendar date,
+                                 Period interval, Calendar until) {
+    if (date == null || interval == null || until == null) {
       throw new NullPointerException(
-        "contacts, date or notes must not be null");
-    } else if (!this.contacts.values().containsAll(contacts)) {
-      throw new IllegalArgumentException(
-        "contacts must not be unknown or non-existent");
-    } else if (date.compareTo(Calendar.getInstance()) >= 0) {
-      throw new IllegalArgumentException(
-        "date must be set for a time in the past");
+        "date, interval or until must not be null");
+    } else if (until.before(date)) {
+      throw new IllegalArgumentException("until must not be before date");
     }
     
-    // create past meeting
-    PastMeetingImpl pastMeeting = new PastMeetingImpl(nextMeetingId, date,
-      contacts, notes);
-    
-    // add meeting to map
-    pastMeetings.put(nextMeetingId, pastMeeting);
-    
-    // increment next meeting ID
-    nextMeetingId++;
+    int count = RecurringMeeting.countUntil(date.getTimeInMillis(),
+      date.getTimeZone(), interval, until.getTimeInMillis());
+    return addRecurringMeeting(contacts, date, interval, count);
   }
   
   /**
-   * Adds notes to a meeting.
+   * Moves a future meeting to another date, keeping its duration if it has
+   * an end date.
    *
-   * This method is used when a future meeting takes place and is
-   * then converted to a past meeting (with notes) and returned.
+   * @param id The meeting ID.
+   * @param date The new date.
+   * @throws IllegalArgumentException If there is no future meeting with the
+   *         ID, if the date is in the past or if the meeting would overlap
+   *         another meeting of its contacts.
+   * @throws NullPointerException If the date is null.
+   * @see #rescheduleFutureMeeting(int, Calendar, Calendar)
+   */
+  public void rescheduleFutureMeeting(int id, Calendar date) {
+    reschedule(id, date, null, true);
+  }
+  
+  /**
+   * Moves a future meeting to another date and end date.
    *
-   * It can be also used to add notes to a past meeting at a later date.
+   * Occurrences of a series of meetings can't be moved alone.
    *
    * @param id The meeting ID.
-   * @param notes Meeting notes to be added.
-   * @return The past meeting.
-   * @throws IllegalArgumentException If the meeting does not exist.
-   * @throws IllegalStateException If the meeting is set for a date in the
-   *         future.
-   * @throws NullPointerException If the notes is null.
-   * @see FutureMeeting
-   * @see PastMeeting
+   * @param date The new date.
+   * @param endDate The new end date or null if the meeting has no end date.
+   * @throws IllegalArgumentException If there is no future meeting with the
+   *         ID, if the date is in the past, if the end date is before the
+   *         date or if the meeting would overlap another meeting of its
+   *         contacts.
+   * @throws NullPointerException If the date is null.
    */
-  public PastMeeting addMeetingNotes(int id, String notes) {
-    if (notes == null)
-      throw new NullPointerException("notes must not be null");
-    
-    PastMeetingImpl pastMeeting = pastMeetings.get(id);
-    if (pastMeeting != null) {
-      pastMeeting.addNotes(notes);
-    } else {
+  public void rescheduleFutureMeeting(int id, Calendar date,
+                                      Calendar endDate) {
+    reschedule(id, date, endDate, false);
+  }
+  
+  // Moves a future meeting to another date and end date. If its duration
+  // is kept, the end date is computed from the meeting read under the lock,
+  // so that a concurrent change can't make the duration stale.
+  private void reschedule(int id, Calendar date, Calendar endDate,
+                          boolean keepDuration) {
+    synchronized (this) {
       FutureMeetingImpl futureMeeting = futureMeetings.get(id);
-      if (futureMeeting == null) {
+      if (date == null) {
+        throw new NullPointerException("date must not be null");
+      } else if (futureMeeting == null ||
+                 futureMeeting.getTime() < System.currentTimeMillis()) {
+        throw new IllegalArgumentException(
+          "id must correspond to a future meeting");
+      } else if (date.compareTo(Calendar.getInstance()) < 0) {
         throw new IllegalArgumentException(
-          "id must correspond to a known meeting");
+          "date must be set for a time in the future");
+      } else if (endDate != null && endDate.before(date)) {
+        throw new IllegalArgumentException("end date must not be before date");
       }
       
-      // validate date
-      Calendar date = futureMeeting.getDate();
-      if (date.compareTo(Calendar.getInstance()) >= 0)
-        throw new IllegalStateException("meeting hasn't take place yet");
-      
-      // remove from future meetings
-      futureMeetings.remove(id);
+      if (keepDuration && futureMeeting.hasEndDate()) {
+        endDate = (Calendar)date.clone();
+        endDate.setTimeInMillis(date.getTimeInMillis() +
+          futureMeeting.getEndTime() - futureMeeting.getTime());
+      }
       
-      // create past meeting
-      pastMeeting = new PastMeetingImpl(id, futureMeeting.getDate(),
-        futureMeeting.getContacts(), notes);
+      // the meeting doesn't conflict with itself
+      if (endDate != null) {
+        for (Meeting meeting : conflicts(schedules,
+               futureMeeting.getContacts(), date.getTimeInMillis(),
+               endDate.getTimeInMillis())) {
+          if (meeting.getId() != id) {
+            throw new IllegalArgumentException(
+              "meeting must not overlap another meeting of its contacts");
+          }
+        }
+      }
       
-      // add meeting to map
-      pastMeetings.put(id, pastMeeting);
+      removeFutureMeeting(futureMeeting);
+      putFutureMeeting(new FutureMeetingImpl(id, date, endDate,
+        futureMeeting.getContacts()));
+      publish();
     }
-    return pastMeeting;
+    committed();
   }
   
   /**
-   * Adds a new contact with the specified name and notes.
+   * Returns the meetings of any of these contacts overlapping a time
+   * interval, [date, end date), which a meeting held then would conflict
+   * with. Only meetings with an end date can overlap.
    *
-   * @param name Contact name.
-   * @param notes Contact notes to be added.
-   * @return The contact id.
-   * @throws IllegalArgumentException If the name or the notes are empty
-   *         strings.
-   * @throws NullPointerException If the name or notes are null.
-   * @see Contact
+   * @param contacts The contacts.
+   * @param date The start of the interval.
+   * @param endDate The end of the interval.
+   * @return A list of the overlapping meeting(s), chronologically sorted
+   *         (meetings held at the same time are sorted by ID) and without
+   *         duplicates (can be empty).
+   * @throws IllegalArgumentException If any contact is unknown or the end
+   *         date is before the date.
+   * @throws NullPointerException If the contacts or dates are null.
+   * @see #addFutureMeeting(Set, Calendar, Calendar)
    */
-  public int addNewContact(String name, String notes) {
-    if (name.isEmpty() || notes.isEmpty())
-      throw new IllegalArgumentException("name or notes must not be empty");
+  public List<Meeting> getConflicts(Set<Contact> contacts, Calendar date,
+                                    Calendar endDate) {
+    if (contacts == null || date == null || endDate == null)
+      throw new NullPointerException("contacts or dates must not be null");
+    else if (endDate.before(date))
+      throw new IllegalArgumentException("end date must not be before date");
     
-    // create contact
-    Contact contact = new ContactImpl(nextContactId, name, notes);
-    
-    // add contact to set
-    contacts.put(nextContactId, contact);
-    
-    // increment next contact ID
-    return nextContactId++;
+    View current = updatedView();
+    for (Contact contact : contacts) {
+      if (contact == null || !current.contacts.containsKey(contact.getId()))
+        throw new IllegalArgumentException("contacts must not be unknown");
+    }
+    return conflicts(current.schedules, contacts, date.getTimeInMillis(),
+      endDate.getTimeInMillis());
   }
   
   /**
-   * Returns a set with the contacts whose name contains a specified string.
+   * Returns the windows between two dates in which all of these contacts are
+   * free for at least a specified length of time.
    *
-   * If the specified string is empty, this methods returns the set that
-   * contains all contacts.
+   * Contacts are busy during their meetings with an end date, ongoing past
+   * meetings included. The busy intervals of each contact are read in order
+   * from its interval tree and merged across contacts with a priority queue,
+   * so the call takes O(m log k) time for m meetings of k contacts in the
+   * range, whatever the number of meetings outside it.
    *
-   * @param name The search string.
-   * @return A list with the contacts whose name contains the specified string.
-   * @throws NullPointerException If the name is null.
-   * @see Contact
+   * @param contacts The contacts.
+   * @param from The start of the range.
+   * @param to The end of the range, excluded.
+   * @param length The minimum length of a window.
+   * @return A chronological list of the maximal free windows at least as
+   *         long as the length (can be empty).
+   * @throws IllegalArgumentException If any contact is unknown, the range
+   *         ends before it starts or the length is not positive.
+   * @throws NullPointerException If the contacts, dates or length are null.
+   * @see TimeSlot
    */
-  public Set<Contact> getContacts(String name) {
-    if (name == null)
-      throw new NullPointerException("name must not be null");
+  public List<TimeSlot> findFreeSlots(Set<Contact> contacts, Calendar from,
+                                      Calendar to, Duration length) {
+    if (contacts == null || from == null || to == null || length == null) {
+      throw new NullPointerException(
+        "contacts, dates or length must not be null");
+    } else if (to.before(from)) {
+      throw new IllegalArgumentException("to must not be before from");
+    } else if (length.isNegative() || length.isZero()) {
+      throw new IllegalArgumentException("length must be positive");
+    }
     
-    Set<Contact> newContacts = new HashSet<Contact>();
-    if (name.isEmpty()) {
-      newContacts.addAll(contacts.values());
-    } else {
-      name = name.toLowerCase();
+    View current = updatedView();
+    long start = from.getTimeInMillis();
+    long end = to.getTimeInMillis();
+    
+    // the busy intervals of each contact, sorted by start
+    PriorityQueue<Busy> queue = new PriorityQueue<>();
+    for (Contact contact : contacts) {
+      if (contact == null || !current.contacts.containsKey(contact.getId()))
+        throw new IllegalArgumentException("contacts must not be unknown");
       
-      for (Contact contact : contacts.values()) {
-        if (contact.getName().toLowerCase().contains(name))
-          newContacts.add(contact);
-      }
+      IntervalTree<MeetingImpl> schedule = current.schedules.get(
+        contact.getId());
+      if (schedule == null)
+        continue;
+      
+      List<MeetingImpl> meetings = new ArrayList<>();
+      schedule.forEachOverlapping(start, end, meetings::add);
+      if (!meetings.isEmpty())
+        queue.add(new Busy(meetings));
     }
-    return newContacts;
+    
+    // sweep the busy intervals, reporting the gaps between them
+    List<TimeSlot> slots = new ArrayList<>();
+    long minLength = length.toMillis();
+    long free = start;
+    while (!queue.isEmpty()) {
+      Busy busy = queue.poll();
+      MeetingImpl meeting = busy.meetings.get(busy.index);
+      if (meeting.getTime() - free >= minLength)
+        slots.add(new TimeSlot(free, meeting.getTime(), from.getTimeZone()));
+      free = Math.max(free, meeting.getEndTime());
+      
+      if (++busy.index < busy.meetings.size())
+        queue.add(busy);
+    }
+    if (end - free >= minLength)
+      slots.add(new TimeSlot(free, end, from.getTimeZone()));
+    return slots;
   }
   
   /**
-   * Returns a list containing the contacts that correspond to the IDs.
+   * Returns the past meeting with the specified ID, or null if there is none.
    *
-   * Note that this method can be used to retrieve just one contact by passing
-   * only one ID.
+   * The meeting must have happened at a past date.
    *
-   * @param ids An arbitrary number of contact IDs.
-   * @return A set containing the contacts that correspond to the IDs.
-   * @throws IllegalArgumentException If no IDs are provided or if any of the
-   *         provided IDs do not correspond to a real contact.
-   * @see Contact
+   * @param id The meeting ID.
+   * @return The meeting with the specified ID or null if there is none.
+   * @throws IllegalStateException If there is a meeting with that ID
+   *         happening in the future.
+   * @see PastMeeting
    */
-  public Set<Contact> getContacts(int... ids) {
-    if (ids == null)
-      throw new NullPointerException("ids must not be null");
-    
-    Set<Contact> newContacts = new HashSet<Contact>();
+  public PastMeeting getPastMeeting(int id) {
+    return getPastMeeting(view, id);
+  }
+  
+  /**
+   * Returns the past meeting with the specified ID in a view, or null if
+   * there is none. Sealed meetings are read from the archive on demand.
+   *
+   * @param current The view.
+   * @param id The meeting ID.
+   * @return The meeting with the specified ID or null if there is none.
+   * @throws IllegalArgumentException If there is a meeting with that ID
+   *         happening in the future.
+   * @see #getPastMeeting(int)
+   */
+  PastMeeting getPastMeeting(View current, int id) {
+    PastMeeting pastMeeting = current.pastMeetings.get(id);
+    if (pastMeeting == null)
+      pastMeeting = sealedMeeting(current, id);
     
-    for (int id : ids) {
-      Contact contact = contacts.get(id);
-      if (contact != null)
-        newContacts.add(contact);
+    // if not found, make sure it's not in the past meeting map
+    if (pastMeeting == null && (current.futureMeetings.get(id) != null ||
+                                current.occurrence(id) != null)) {
+      throw new IllegalArgumentException(
+        "meeting id must not be of meeting to be held in the future");
     }
+    return pastMeeting;
+  }
+  
+  /**
+   * Returns the future meeting with the specified ID or null if there is
+   * none.
+   *
+   * @param id The meeting ID.
+   * @return The meeting with the specified ID or null if there is none.
+   * @throws IllegalArgumentException If there is a meeting with that ID
+   *         happening in the past.
+   * @see FutureMeeting
+   */
+  public FutureMeeting getFutureMeeting(int id) {
+    return getFutureMeeting(view, id);
+  }
+  
+  /**
+   * Returns the future meeting with the specified ID in a view, or null if
+   * there is none. Occurrences of recurring meetings are created on demand.
+   *
+   * @param current The view.
+   * @param id The meeting ID.
+   * @return The meeting with the specified ID or null if there is none.
+   * @throws IllegalArgumentException If there is a meeting with that ID
+   *         happening in the past.
+   * @see #getFutureMeeting(int)
+   */
+  FutureMeeting getFutureMeeting(View current, int id) {
+    FutureMeeting futureMeeting = current.futureMeetings.get(id);
+    if (futureMeeting == null)
+      futureMeeting = current.occurrence(id);
     
-    if (newContacts.isEmpty()) {
+    // if not found, make sure it's not in the past meeting map
+    if (futureMeeting == null && (current.pastMeetings.get(id) != null ||
+                                  current.archive.contains(id))) {
       throw new IllegalArgumentException(
-        "no id provided or non existing contact");
+        "meeting id must not be of meeting held in the past");
     }
-    return newContacts;
+    return futureMeeting;
+  }
+  
+  /**
+   * Returns the meeting with the specified ID or null if there is none.
+   *
+   * @param id The meeting ID.
+   * @return The meeting with the requested ID or null if there is none.
+   * @see Meeting
+   */
+  public Meeting getMeeting(int id) {
+    return getMeeting(view, id);
+  }
+  
+  /**
+   * Returns the meeting with the specified ID in a view, or null if there is
+   * none. Occurrences of recurring meetings are created and sealed meetings
+   * read from the archive on demand.
+   *
+   * @param current The view.
+   * @param id The meeting ID.
+   * @return The meeting with the requested ID or null if there is none.
+   * @see #getMeeting(int)
+   */
+  Meeting getMeeting(View current, int id) {
+    Meeting meeting = current.futureMeetings.get(id);
+    if (meeting == null)
+      meeting = current.pastMeetings.get(id);
+    if (meeting == null)
+      meeting = current.occurrence(id);
+    if (meeting == null)
+      meeting = sealedMeeting(current, id);
+    return meeting;
+  }
+  
+  /**
+   * Returns a list of future meetings scheduled for this contact.
+   *
+   * If there are none, the returned list will be empty. Otherwise, it will be
+   * chronologically sorted and will not contain any duplicates.
+   *
+   * @param contact The contact.
+   * @return A list of future meeting(s) scheduled for this contact (can be
+   *         empty).
+   * @throws IllegalArgumentException If the contact does not exist.
+   * @throws NullPointerException If the contact is null.
+   * @see Contact
+   * @see Meeting
+   */
+  public List<Meeting> getFutureMeetingList(Contact contact) {
+    View current = updatedView();
+    checkContact(current, contact);
+    
+    return cached(List.of("future", contact.getId()),
+      current.contactGeneration(contact.getId()),
+      () -> streamFutureMeetingList(current, contact, null, 0)
+        .collect(Collectors.toList()));
+  }
+  
+  /**
+   * Returns a list of future meetings scheduled for this contact in a view.
+   * The view is read as is, so future meetings that took place since it was
+   * published are listed too.
+   *
+   * @param current The view.
+   * @param contact The contact.
+   * @return A chronological list of future meeting(s) scheduled for this
+   *         contact (can be empty).
+   * @throws IllegalArgumentException If the contact does not exist.
+   * @throws NullPointerException If the contact is null.
+   * @see #getFutureMeetingList(Contact)
+   */
+  List<Meeting> getFutureMeetingList(View current, Contact contact) {
+    return streamFutureMeetingList(current, contact, null, 0)
+      .collect(Collectors.toList());
+  }
+  
+  /**
+   * Returns a page of the future meetings scheduled for this contact.
+   *
+   * The page is chronologically sorted (meetings held at the same time are
+   * sorted by ID) and starts right after the meeting identified by the
+   * specified date and ID, which is usually the last meeting of the previous
+   * page. The cost of the call is proportional to the page size.
+   *
+   * @param contact The contact.
+   * @param afterDate The date of the last meeting of the previous page or
+   *        null to return the first page.
+   * @param afterId The ID of the last meeting of the previous page.
+   * @param limit The maximum number of meetings to return.
+   * @return A page of future meeting(s) scheduled for this contact (can be
+   *         empty).
+   * @throws IllegalArgumentException If the contact does not exist or the
+   *         limit is negative.
+   * @throws NullPointerException If the contact is null.
+   * @see #getFutureMeetingList(Contact)
+   */
+  public List<Meeting> getFutureMeetingList(Contact contact,
+                                            Calendar afterDate, int afterId,
+                                            int limit) {
+    if (limit < 0)
+      throw new IllegalArgumentException("limit must not be negative");
+    
+    return streamFutureMeetingList(updatedView(), contact, afterDate, afterId)
+      .limit(limit)
+      .collect(Collectors.toList());
+  }
+  
+  /**
+   * Returns a lazy stream of the future meetings scheduled for this contact.
+   *
+   * The stream is chronologically sorted and does not contain any
+   * duplicates. It walks a snapshot of the meeting index as it is consumed,
+   * so later changes to the contact manager don't affect it.
+   *
+   * @param contact The contact.
+   * @return A stream of future meeting(s) scheduled for this contact.
+   * @throws IllegalArgumentException If the contact does not exist.
+   * @throws NullPointerException If the contact is null.
+   * @see #getFutureMeetingList(Contact)
+   */
+  public Stream<Meeting> streamFutureMeetingList(Contact contact) {
+    return streamFutureMeetingList(updatedView(), contact, null, 0);
+  }
+  
+  /**
+   * Returns a list of meetings scheduled for or that took place on the
+   * specified date.
+   *
+   * If there are none, the returned list will be empty. Otherwise, it will be
+   * sorted by id and will not contain any duplicates.
+   *
+   * @param date The date.
+   * @return A list of meeting(s) schedule for or that took place on the
+   *         specified date (can be empty).
+   * @throws NullPointerException If the date is null.
+   * @see Meeting
+   */
+  public List<Meeting> getMeetingListOn(Calendar date) {
+    if (date == null)
+      throw new NullPointerException("date must not be null");
+    
+    View current = updatedView();
+    long time = date.getTimeInMillis();
+    boolean past = date.before(Calendar.getInstance());
+    long generation = Math.max(current.timeGeneration(time),
+      current.recurrenceGeneration);
+    return cached(List.of("on", time, past), generation,
+      () -> streamMeetingListOn(current, date, 0)
+        .collect(Collectors.toList()));
+  }
+  
+  /**
+   * Returns a list of meetings scheduled for or that took place on the
+   * specified date in a view. Sealed meetings are read from the archive on
+   * demand.
+   *
+   * @param current The view.
+   * @param date The date.
+   * @return A list of meeting(s) sorted by ID (can be empty).
+   * @throws NullPointerException If the date is null.
+   * @see #getMeetingListOn(Calendar)
+   */
+  List<Meeting> getMeetingListOn(View current, Calendar date) {
+    return streamMeetingListOn(current, date, 0)
+      .collect(Collectors.toList());
+  }
+  
+  /**
+   * Returns a page of the meetings scheduled for or that took place on the
+   * specified date.
+   *
+   * The page is sorted by ID and starts right after the specified meeting
+   * ID, which is usually the ID of the last meeting of the previous page.
+   *
+   * @param date The date.
+   * @param afterId The ID of the last meeting of the previous page or 0 to
+   *        return the first page.
+   * @param limit The maximum number of meetings to return.
+   * @return A page of meeting(s) scheduled for or that took place on the
+   *         specified date (can be empty).
+   * @throws IllegalArgumentException If the limit is negative.
+   * @throws NullPointerException If the date is null.
+   * @see #getMeetingListOn(Calendar)
+   */
+  public List<Meeting> getMeetingListOn(Calendar date, int afterId,
+                                        int limit) {
+    if (limit < 0)
+      throw new IllegalArgumentException("limit must not be negative");
+    
+    return streamMeetingListOn(updatedView(), date, afterId).limit(limit)
+      .collect(Collectors.toList());
+  }
+  
+  /**
+   * Returns a lazy stream of the meetings scheduled for or that took place
+   * on the specified date.
+   *
+   * The stream is sorted by ID and does not contain any duplicates. It walks
+   * a snapshot of the meeting index as it is consumed, so later changes to
+   * the contact manager don't affect it.
+   *
+   * @param date The date.
+   * @return A stream of meeting(s) schedule for or that took place on the
+   *         specified date.
+   * @throws NullPointerException If the date is null.
+   * @see #getMeetingListOn(Calendar)
+   */
+  public Stream<Meeting> streamMeetingListOn(Calendar date) {
+    return streamMeetingListOn(updatedView(), date, 0);
+  }
+  
+  /**
+   * Returns a list of past meetings in which this contact participated.
+   *
+   * If there are none, the returned list will be empty. Otherwise, it will be
+   * chronologically sorted and will not contain any duplicates.
+   *
+   * @param contact The contact.
+   * @return A list of past meeting(s) in which the contact participated (can
+   *         be empty).
+   * @throws IllegalArgumentException If the contact does not exist.
+   * @throws NullPointerException If the contact is null.
+   * @see Contact
+   * @see PastMeeting
+   */
+  public List<PastMeeting> getPastMeetingListFor(Contact contact) {
+    View current = updatedView();
+    checkContact(current, contact);
+    
+    return cached(List.of("past", contact.getId()),
+      current.contactGeneration(contact.getId()),
+      () -> streamPastMeetingListFor(current, contact, null, 0)
+        .collect(Collectors.toList()));
+  }
+  
+  /**
+   * Returns a list of past meetings in which this contact participated in a
+   * view. Sealed meetings are read from the archive on demand.
+   *
+   * @param current The view.
+   * @param contact The contact.
+   * @return A chronological list of past meeting(s) in which the contact
+   *         participated (can be empty).
+   * @throws IllegalArgumentException If the contact does not exist.
+   * @throws NullPointerException If the contact is null.
+   * @see #getPastMeetingListFor(Contact)
+   */
+  List<PastMeeting> getPastMeetingListFor(View current, Contact contact) {
+    return streamPastMeetingListFor(current, contact, null, 0)
+      .collect(Collectors.toList());
+  }
+  
+  /**
+   * Returns a page of the past meetings in which this contact participated.
+   *
+   * The page is chronologically sorted (meetings held at the same time are
+   * sorted by ID) and starts right after the meeting identified by the
+   * specified date and ID, which is usually the last meeting of the previous
+   * page. The cost of the call is proportional to the page size.
+   *
+   * @param contact The contact.
+   * @param afterDate The date of the last meeting of the previous page or
+   *        null to return the first page.
+   * @param afterId The ID of the last meeting of the previous page.
+   * @param limit The maximum number of meetings to return.
+   * @return A page of past meeting(s) in which the contact participated (can
+   *         be empty).
+   * @throws IllegalArgumentException If the contact does not exist or the
+   *         limit is negative.
+   * @throws NullPointerException If the contact is null.
+   * @see #getPastMeetingListFor(Contact)
+   */
+  public List<PastMeeting> getPastMeetingListFor(Contact contact,
+                                                 Calendar afterDate,
+                                                 int afterId, int limit) {
+    if (limit < 0)
+      throw new IllegalArgumentException("limit must not be negative");
+    
+    return streamPastMeetingListFor(updatedView(), contact, afterDate,
+      afterId).limit(limit)
+      .collect(Collectors.toList());
+  }
+  
+  /**
+   * Returns a lazy stream of the past meetings in which this contact
+   * participated.
+   *
+   * The stream is chronologically sorted and does not contain any
+   * duplicates. It walks a snapshot of the meeting index as it is consumed,
+   * so later changes to the contact manager don't affect it.
+   *
+   * @param contact The contact.
+   * @return A stream of past meeting(s) in which the contact participated.
+   * @throws IllegalArgumentException If the contact does not exist.
+   * @throws NullPointerException If the contact is null.
+   * @see #getPastMeetingListFor(Contact)
+   */
+  public Stream<PastMeeting> streamPastMeetingListFor(Contact contact) {
+    return streamPastMeetingListFor(updatedView(), contact, null, 0);
+  }
+  
+  /**
+   * Returns a list of past meetings in which all of these contacts
+   * participated.
+   *
+   * The past meetings of each contact are kept in a compressed bitmap of
+   * their IDs, so the meetings are found by intersecting the bitmaps, from
+   * the smallest one, without visiting the meetings of a single contact.
+   *
+   * If there are none, the returned list will be empty. Otherwise, it will be
+   * chronologically sorted (meetings held at the same time are sorted by ID)
+   * and will not contain any duplicates.
+   *
+   * @param contacts The contacts.
+   * @return A list of past meeting(s) in which all the contacts participated
+   *         (empty if there are no contacts).
+   * @throws IllegalArgumentException If a contact is null or does not exist.
+   * @throws NullPointerException If the set of contacts is null.
+   * @see IdBitmap
+   */
+  public List<PastMeeting> getPastMeetingListForAll(Set<Contact> contacts) {
+    View current = updatedView();
+    List<IdBitmap> bitmaps = attendance(current, contacts);
+    if (bitmaps.isEmpty())
+      return new ArrayList<>();
+    
+    bitmaps.sort(Comparator.comparingInt(IdBitmap::cardinality));
+    IdBitmap ids = bitmaps.get(0);
+    for (int i = 1; i < bitmaps.size() && !ids.isEmpty(); i++)
+      ids = ids.and(bitmaps.get(i));
+    return pastMeetings(current, ids);
+  }
+  
+  /**
+   * Returns a list of past meetings in which any of these contacts
+   * participated.
+   *
+   * The meetings are found by joining the compressed bitmaps of the IDs of
+   * the past meetings of the contacts.
+   *
+   * If there are none, the returned list will be empty. Otherwise, it will be
+   * chronologically sorted (meetings held at the same time are sorted by ID)
+   * and will not contain any duplicates.
+   *
+   * @param contacts The contacts.
+   * @return A list of past meeting(s) in which any of the contacts
+   *         participated (can be empty).
+   * @throws IllegalArgumentException If a contact is null or does not exist.
+   * @throws NullPointerException If the set of contacts is null.
+   * @see IdBitmap
+   */
+  public List<PastMeeting> getPastMeetingListForAny(Set<Contact> contacts) {
+    View current = updatedView();
+    IdBitmap ids = IdBitmap.empty();
+    for (IdBitmap bitmap : attendance(current, contacts))
+      ids = ids.or(bitmap);
+    return pastMeetings(current, ids);
+  }
+  
+  /**
+   * Returns the contacts this contact met most often in past meetings.
+   *
+   * The number of past meetings attended by each pair of contacts is kept
+   * up to date as meetings are added and take place, and each contact ranks
+   * the others by it, so the call takes O(log n + k) time.
+   *
+   * @param contact The contact.
+   * @param k The maximum number of contacts to return.
+   * @return A list of at most k contacts, sorted by decreasing number of
+   *         past meetings with the contact and then by ID (can be empty).
+   * @throws IllegalArgumentException If the contact does not exist or k is
+   *         negative.
+   * @throws NullPointerException If the contact is null.
+   * @see CollaborationGraph
+   */
+  public List<Contact> getTopCollaborators(Contact contact, int k) {
+    if (k < 0)
+      throw new IllegalArgumentException("k must not be negative");
+    
+    View current = updatedView();
+    checkContact(current, contact);
+    
+    List<Contact> collaborators = new ArrayList<>();
+    for (int id : current.collaborations.top(contact.getId(), k))
+      collaborators.add(current.contacts.get(id));
+    return collaborators;
+  }
+  
+  /**
+   * Returns the list of past meetings whose notes match a query.
+   *
+   * The query is a list of words the notes must all contain, optionally
+   * separated by AND; lists separated by OR are alternatives. Words are
+   * matched case-insensitively against an inverted index of the notes, so
+   * the notes themselves are not read.
+   *
+   * @param query The query.
+   * @return The list of past meeting(s) whose notes match the query, most
+   *         relevant first and then by ID (can be empty).
+   * @throws NullPointerException If the query is null.
+   * @see TextIndex
+   */
+  public List<PastMeeting> searchMeetingNotes(String query) {
+    View current = updatedView();
+    List<PastMeeting> meetings = new ArrayList<>();
+    for (int id : current.meetingText.search(query)) {
+      PastMeeting pastMeeting = current.pastMeetings.get(id);
+      meetings.add(pastMeeting != null ? pastMeeting :
+        sealedMeeting(current, id));
+    }
+    return meetings;
+  }
+  
+  /**
+   * Returns the list of contacts whose notes match a query.
+   *
+   * The query is a list of words the notes must all contain, optionally
+   * separated by AND; lists separated by OR are alternatives. Words are
+   * matched case-insensitively against an inverted index of the notes.
+   *
+   * @param query The query.
+   * @return The list of contact(s) whose notes match the query, most
+   *         relevant first and then by ID (can be empty).
+   * @throws NullPointerException If the query is null.
+   * @see TextIndex
+   */
+  public List<Contact> searchContactNotes(String query) {
+    View current = view;
+    List<Contact> contacts = new ArrayList<>();
+    for (int id : current.contactText.search(query))
+      contacts.add(current.contacts.get(id));
+    return contacts;
+  }
+  
+  /**
+   * Adds a new record for a meeting held in the past.
+   *
+   * @param contacts A set of participants.
+   * @param date The date on which the meeting took place.
+   * @param notes Notes to be added about the meeting.
+   * @throws IllegalArgumentException If the list of contacts is empty or any
+   *         of the contacts does not exist.
+   * @throws NullPointerException If any of the arguments are null.
+   * @see Contact
+   * @see PastMeeting
+   */
+  public void addNewPastMeeting(Set<Contact> contacts, Calendar date,
+                                String notes) {
+    synchronized (this) {
+      if (contacts == null || date == null || notes == null) {
+        throw new NullPointerException(
+          "contacts, date or notes must not be null");
+      } else if (!containsContacts(contacts)) {
+        throw new IllegalArgumentException(
+          "contacts must not be unknown or non-existent");
+      } else if (date.compareTo(Calendar.getInstance()) >= 0) {
+        throw new IllegalArgumentException(
+          "date must be set for a time in the past");
+      }
+    
+      // create past meeting
+      PastMeetingImpl pastMeeting = new PastMeetingImpl(nextMeetingId, date,
+        attendeePool.intern(contacts), notes, notesStore);
+    
+      // add meeting to map
+      putPastMeeting(pastMeeting);
+    
+      // increment next meeting ID
+      nextMeetingId++;
+      publish();
+    }
+    committed();
+  }
+  
+  /**
+   * Adds notes to a meeting.
+   *
+   * This method is used when a future meeting takes place and is
+   * then converted to a past meeting (with notes) and returned.
+   *
+   * It can be also used to add notes to a past meeting at a later date.
+   *
+   * @param id The meeting ID.
+   * @param notes Meeting notes to be added.
+   * @return The past meeting.
+   * @throws IllegalArgumentException If the meeting does not exist.
+   * @throws IllegalStateException If the meeting is set for a date in the
+   *         future.
+   * @throws NullPointerException If the notes is null.
+   * @see FutureMeeting
+   * @see PastMeeting
+   */
+  public PastMeeting addMeetingNotes(int id, String notes) {
+    PastMeeting result;
+    synchronized (this) {
+      if (notes == null)
+        throw new NullPointerException("notes must not be null");
+    
+      // occurrences are only stored once they took place
+      if (nextRecurrenceTime < System.currentTimeMillis()) {
+        updateRecurrences(System.currentTimeMillis());
+        publish();
+      }
+    
+      PastMeetingImpl pastMeeting = pastMeetings.get(id);
+      if (pastMeeting == null && archive.contains(id)) {
+        // notes are only added to meetings in the database file
+        pastMeeting = sealedMeeting(new View(this), id);
+        unseal(pastMeeting);
+      }
+      if (pastMeeting != null) {
+        pastMeeting.addNotes(notes);
+      } else {
+        FutureMeetingImpl futureMeeting = futureMeetings.get(id);
+        RecurringMeeting series = recurrences.floorValue(id);
+        if (futureMeeting == null && series != null && series.contains(id)) {
+          throw new IllegalStateException("meeting hasn't take place yet");
+        } else if (futureMeeting == null) {
+          throw new IllegalArgumentException(
+            "id must correspond to a known meeting");
+        }
+      
+        // validate date
+        if (futureMeeting.getTime() >= System.currentTimeMillis())
+          throw new IllegalStateException("meeting hasn't take place yet");
+      
+        // remove from future meetings
+        removeFutureMeeting(futureMeeting);
+      
+        // create past meeting
+        pastMeeting = toPastMeeting(futureMeeting, notes);
+      
+        // add meeting to map
+        putPastMeeting(pastMeeting);
+      }
+      result = pastMeeting;
+      publish();
+    }
+    committed();
+    return result;
+  }
+  
+  /**
+   * Removes a future or past meeting.
+   *
+   * The removal is journaled as a tombstone, and the space of the meeting is
+   * reclaimed when the journal is compacted. The ID of the meeting is never
+   * assigned again.
+   *
+   * @param id The meeting ID.
+   * @throws IllegalArgumentException If there is no future or past meeting
+   *         with the ID, or if it is an occurrence of a series of meetings
+   *         yet to take place, which can't be removed alone.
+   */
+  public void removeMeeting(int id) {
+    synchronized (this) {
+      updateMeetings();
+      FutureMeetingImpl futureMeeting = futureMeetings.get(id);
+      PastMeetingImpl pastMeeting = pastMeetings.get(id);
+      if (pastMeeting == null && archive.contains(id))
+        pastMeeting = sealedMeeting(new View(this), id);
+      if (futureMeeting != null) {
+        removeFutureMeeting(futureMeeting);
+      } else if (pastMeeting != null) {
+        removePastMeeting(pastMeeting);
+        archive.remove(id);
+      } else {
+        throw new IllegalArgumentException(
+          "id must correspond to a future or past meeting");
+      }
+      meetingChanged(id);
+      publish();
+    }
+    committed();
+  }
+  
+  /**
+   * Adds a new contact with the specified name and notes.
+   *
+   * @param name Contact name.
+   * @param notes Contact notes to be added.
+   * @return The contact id.
+   * @throws IllegalArgumentException If the name or the notes are empty
+   *         strings.
+   * @throws NullPointerException If the name or notes are null.
+   * @see Contact
+   */
+  public int addNewContact(String name, String notes) {
+    int result;
+    synchronized (this) {
+      if (name.isEmpty() || notes.isEmpty())
+        throw new IllegalArgumentException("name or notes must not be empty");
+    
+      // create contact
+      ContactImpl contact = new ContactImpl(nextContactId, name, notes,
+        notesStore);
+    
+      // add contact to set
+      putContact(contact);
+    
+      // increment next contact ID
+      result = nextContactId++;
+      publish();
+    }
+    committed();
+    return result;
+  }
+  
+  /**
+   * Returns a set with the contacts whose name contains a specified string.
+   *
+   * If the specified string is empty, this methods returns the set that
+   * contains all contacts.
+   *
+   * @param name The search string.
+   * @return A list with the contacts whose name contains the specified string.
+   * @throws NullPointerException If the name is null.
+   * @see Contact
+   */
+  public Set<Contact> getContacts(String name) {
+    if (name == null)
+      throw new NullPointerException("name must not be null");
+    
+    View current = view;
+    Set<Contact> newContacts = new HashSet<Contact>();
+    if (name.isEmpty()) {
+      newContacts.addAll(current.contacts.values());
+    } else {
+      name = name.toLowerCase();
+      
+      for (Contact contact : current.contacts.values()) {
+        if (contact.getName().toLowerCase().contains(name))
+          newContacts.add(contact);
+      }
+    }
+    return newContacts;
+  }
+  
+  /**
+   * Returns the contacts whose name is close to a specified name, which may
+   * be misspelt.
+   *
+   * Names are compared word by word, case-insensitively: a contact matches
+   * if each word of the specified name is at most maxEdits character
+   * insertions, deletions or substitutions away from a word of its name.
+   * The words of the contact names are kept in a BK-tree, so only the words
+   * close to the searched ones are compared rather than every name.
+   *
+   * @param name The name.
+   * @param maxEdits The maximum number of edits of each word.
+   * @param limit The maximum number of contacts to return.
+   * @return A list of at most limit contacts, sorted by increasing number of
+   *         edits and then by ID (empty if the name has no words).
+   * @throws IllegalArgumentException If maxEdits or limit is negative.
+   * @throws NullPointerException If the name is null.
+   * @see BkTree
+   */
+  public List<Contact> findContactsFuzzy(String name, int maxEdits,
+                                         int limit) {
+    if (name == null)
+      throw new NullPointerException("name must not be null");
+    else if (maxEdits < 0 || limit < 0)
+      throw new IllegalArgumentException("maxEdits or limit is negative");
+    
+    View current = view;
+    List<String> words = TextIndex.terms(name);
+    if (words.isEmpty())
+      return new ArrayList<>();
+    
+    // the fewest edits of the contacts matching each word so far
+    Map<Integer, Integer> edits = null;
+    for (String word : words) {
+      Map<Integer, Integer> wordEdits = new HashMap<>();
+      current.names.forEachWithin(word, maxEdits, (ids, distance) ->
+        ids.forEach(id -> wordEdits.merge(id, distance, Math::min)));
+      if (edits != null) {
+        wordEdits.keySet().retainAll(edits.keySet());
+        for (Map.Entry<Integer, Integer> entry : wordEdits.entrySet())
+          entry.setValue(entry.getValue() + edits.get(entry.getKey()));
+      }
+      edits = wordEdits;
+    }
+    
+    Map<Integer, Integer> totals = edits;
+    List<Integer> ids = new ArrayList<>(totals.keySet());
+    ids.sort(Comparator.comparing((Integer id) -> totals.get(id))
+      .thenComparing(id -> id));
+    List<Contact> matches = new ArrayList<>();
+    for (int id : ids.subList(0, Math.min(limit, ids.size())))
+      matches.add(current.contacts.get(id));
+    return matches;
+  }
+  
+  /**
+   * Finds the clusters of contacts that are likely duplicates of each other,
+   * with the default settings of DuplicateFinder.
+   *
+   * @return The clusters of two or more contacts (can be empty).
+   * @see #findDuplicateContacts(DuplicateFinder)
+   */
+  public List<Set<Contact>> findDuplicateContacts() {
+    return findDuplicateContacts(new DuplicateFinder());
+  }
+  
+  /**
+   * Finds the clusters of contacts that are likely duplicates of each other.
+   *
+   * The contacts are compared by MinHash signatures of their names and
+   * notes, in parallel and without comparing every pair, so the job scales
+   * to large books. It reads a snapshot of the contacts and doesn't block
+   * changes.
+   *
+   * @param finder The duplicate finder.
+   * @return The clusters of two or more contacts, each sorted by ID, sorted
+   *         by the ID of their first contact (can be empty).
+   * @throws NullPointerException If the finder is null.
+   * @see DuplicateFinder
+   * @see #mergeContacts(Set)
+   */
+  public List<Set<Contact>> findDuplicateContacts(DuplicateFinder finder) {
+    if (finder == null)
+      throw new NullPointerException("finder must not be null");
+    
+    return finder.find(view.contacts.values());
+  }
+  
+  /**
+   * Merges duplicate contacts into the one with the lowest ID.
+   *
+   * The notes of the other contacts are added to the kept contact, which
+   * replaces them in the attendees of their meetings and series of meetings,
+   * and the other contacts are removed. The attendee sets are rewritten in
+   * one pass over the future meetings and the past meetings of the merged
+   * contacts.
+   *
+   * @param duplicates The contacts to merge.
+   * @return The kept contact.
+   * @throws IllegalArgumentException If the set is empty or any of the
+   *         contacts does not exist.
+   * @throws NullPointerException If the set is null.
+   * @see #findDuplicateContacts()
+   */
+  public Contact mergeContacts(Set<Contact> duplicates) {
+    ContactImpl kept;
+    synchronized (this) {
+      if (duplicates == null) {
+        throw new NullPointerException("duplicates must not be null");
+      } else if (duplicates.isEmpty() || !containsContacts(duplicates)) {
+        throw new IllegalArgumentException(
+          "duplicates must not be empty or unknown");
+      }
+      
+      Set<Integer> mergedIds = new HashSet<>();
+      for (Contact contact : duplicates)
+        mergedIds.add(contact.getId());
+      kept = contacts.get(Collections.min(mergedIds));
+      mergedIds.remove(kept.getId());
+      if (mergedIds.isEmpty())
+        return kept;
+      
+      for (int id : mergedIds) {
+        String notes = contacts.get(id).getNotes();
+        if (!notes.isEmpty())
+          kept.addNotes(notes);
+      }
+      
+      replaceAttendees(mergedIds, kept);
+      for (int id : mergedIds)
+        dropContact(contacts.get(id));
+      publish();
+    }
+    committed();
+    return kept;
+  }
+  
+  /**
+   * Returns a page of the contacts whose name contains a specified string.
+   *
+   * The page is sorted by ID and starts right after the specified contact ID,
+   * which is usually the ID of the last contact of the previous page.
+   *
+   * @param name The search string.
+   * @param afterId The ID of the last contact of the previous page or 0 to
+   *        return the first page.
+   * @param limit The maximum number of contacts to return.
+   * @return A page of the contacts whose name contains the specified string.
+   * @throws IllegalArgumentException If the limit is negative.
+   * @throws NullPointerException If the name is null.
+   * @see #getContacts(String)
+   */
+  public List<Contact> getContacts(String name, int afterId, int limit) {
+    if (limit < 0)
+      throw new IllegalArgumentException("limit must not be negative");
+    
+    return streamContacts(name, afterId).limit(limit)
+      .collect(Collectors.toList());
+  }
+  
+  /**
+   * Returns a lazy stream of the contacts whose name contains a specified
+   * string.
+   *
+   * The stream is sorted by ID. It reads a snapshot of the contacts, so
+   * later changes to the contact manager don't affect it.
+   *
+   * @param name The search string.
+   * @return A stream of the contacts whose name contains the specified
+   *         string.
+   * @throws NullPointerException If the name is null.
+   * @see #getContacts(String)
+   */
+  public Stream<Contact> streamContacts(String name) {
+    return streamContacts(name, 0);
+  }
+  
+  /**
+   * Returns a list containing the contacts that correspond to the IDs.
+   *
+   * Note that this method can be used to retrieve just one contact by passing
+   * only one ID.
+   *
+   * @param ids An arbitrary number of contact IDs.
+   * @return A set containing the contacts that correspond to the IDs.
+   * @throws IllegalArgumentException If no IDs are provided or if any of the
+   *         provided IDs do not correspond to a real contact.
+   * @see Contact
+   */
+  public Set<Contact> getContacts(int... ids) {
+    if (ids == null)
+      throw new NullPointerException("ids must not be null");
+    
+    View current = view;
+    Set<Contact> newContacts = new HashSet<Contact>();
+    
+    for (int id : ids) {
+      Contact contact = current.contacts.get(id);
+      if (contact != null)
+        newContacts.add(contact);
+    }
+    
+    if (newContacts.isEmpty()) {
+      throw new IllegalArgumentException(
+        "no id provided or non existing contact");
+    }
+    return newContacts;
+  }
+  
+  /**
+   * Returns the contact that correspond to the ID.
+   *
+   * @param id The contact ID.
+   * @return The contact.
+   * @throws IllegalArgumentException If the ID does not correspond to a known
+   *         contact.
+   * @see Contact
+   */
+  public Contact getContact(int id) {
+    Contact contact = view.contacts.get(id);
+    if (contact == null) {
+      throw new IllegalArgumentException(
+        "id must correspond to a known contact");
+    }
+    return contact;
+  }
+  
+  /**
+   * Replaces the name and notes of a contact.
+   *
+   * Contacts are immutable apart from their notes, so the contact is
+   * replaced by a new instance, which getContact returns from then on, in
+   * the attendees of its meetings and series of meetings too. The old
+   * instance is no longer a known contact.
+   *
+   * @param id The contact ID.
+   * @param name The new name.
+   * @param notes The new notes.
+   * @return The updated contact.
+   * @throws IllegalArgumentException If the ID does not correspond to a known
+   *         contact or if the name or the notes are empty strings.
+   * @throws NullPointerException If the name or notes are null.
+   */
+  public Contact updateContact(int id, String name, String notes) {
+    ContactImpl contact;
+    synchronized (this) {
+      if (name == null || notes == null) {
+        throw new NullPointerException("name or notes must not be null");
+      } else if (name.isEmpty() || notes.isEmpty()) {
+        throw new IllegalArgumentException("name or notes must not be empty");
+      } else if (contacts.get(id) == null) {
+        throw new IllegalArgumentException(
+          "id must correspond to a known contact");
+      }
+      
+      contacts.get(id).setNotesListener(null);
+      contact = new ContactImpl(id, name, notes, notesStore);
+      putContact(contact);
+      replaceAttendees(Set.of(id), contact);
+      publish();
+    }
+    committed();
+    return contact;
+  }
+  
+  /**
+   * Removes a contact.
+   *
+   * The contact is removed from the attendees of its meetings and series of
+   * meetings; the meetings it attended alone are removed and the series it
+   * attended alone end. The removal is journaled as a tombstone, and the
+   * space of the contact is reclaimed when the journal is compacted. The ID
+   * of the contact is never assigned again.
+   *
+   * @param id The contact ID.
+   * @throws IllegalArgumentException If the ID does not correspond to a known
+   *         contact.
+   */
+  public void removeContact(int id) {
+    synchronized (this) {
+      ContactImpl contact = contacts.get(id);
+      if (contact == null) {
+        throw new IllegalArgumentException(
+          "id must correspond to a known contact");
+      }
+      
+      replaceAttendees(Set.of(id), null);
+      dropContact(contact);
+      publish();
+    }
+    committed();
+  }
+  
+  /**
+   * Sets when changes are saved to disk.
+   *
+   * Under the default manual policy, changes are saved when flush() is
+   * called. Under the every write policy, each change is saved before the
+   * method making it returns, and changes made concurrently are saved
+   * together. Under a group commit policy, a writer thread saves the changes
+   * in batches, and sync() tells when a change is saved.
+   *
+   * Pending changes are saved when switching to the every write policy or
+   * away from a group commit policy.
+   *
+   * @param policy The durability policy.
+   * @throws NullPointerException If the policy is null.
+   * @see DurabilityPolicy
+   */
+  public void setDurabilityPolicy(DurabilityPolicy policy) {
+    if (policy == null)
+      throw new NullPointerException("policy must not be null");
+    
+    boolean stopped = false;
+    synchronized (this) {
+      durabilityPolicy = policy;
+      if (policy.getMode() == DurabilityPolicy.Mode.GROUP_COMMIT) {
+        if (writer == null) {
+          writer = new Thread(this::runWriter, "ContactManager writer");
+          writer.setDaemon(true);
+          writer.start();
+        }
+      } else if (writer != null) {
+        writer = null;
+        stopped = true;
+      }
+      // wake the writer up to apply the new policy
+      notifyAll();
+    }
+    
+    if (stopped || policy.getMode() == DurabilityPolicy.Mode.EVERY_WRITE)
+      flush();
+  }
+  
+  /**
+   * Returns when changes are saved to disk.
+   *
+   * @return The durability policy.
+   */
+  public DurabilityPolicy getDurabilityPolicy() {
+    return durabilityPolicy;
+  }
+  
+  /**
+   * Returns a future completed once the changes made so far are saved to
+   * disk.
+   *
+   * The future completes exceptionally if saving the changes fails. Under
+   * the manual policy, it completes on the next flush.
+   *
+   * @return A future completed once the changes are saved.
+   */
+  public synchronized CompletableFuture<Void> sync() {
+    if (savedCount >= changeCount)
+      return CompletableFuture.completedFuture(null);
+    return syncs.computeIfAbsent(changeCount,
+      count -> new CompletableFuture<>());
+  }
+  
+  /**
+   * Saves all data to disk.
+   *
+   * This method must be executed when the program is
+   * closed and when/if the user requests it.
+   *
+   * Nothing is written if nothing changed since the last flush, and when
+   * only a few records changed they are appended to a journal instead of
+   * writing everything again. The journal or snapshot is written without
+   * blocking the contact manager, the snapshot from a view of the data taken
+   * when the flush started, so changes can be made while their predecessors
+   * are being saved.
+   */
+  public void flush() {
+    flush(false);
+  }
+  
+  /**
+   * Saves all data to disk as a new snapshot, replacing the journal of
+   * changes.
+   *
+   * flush() saves the changed records only, to a journal replayed when
+   * loading, until the journal grows bigger than a snapshot. This method
+   * compacts the journal into a new snapshot straight away.
+   */
+  public void compact() {
+    flush(true);
+  }
+  
+  /**
+   * Saves the pending changes and stops the writer thread, if any.
+   *
+   * The contact manager can still be used afterwards, under the manual
+   * policy.
+   */
+  public void close() {
+    setDurabilityPolicy(DurabilityPolicy.manual());
+    flush();
+  }
+  
+  // Saves the changes to the journal, or all data to a new snapshot. The
+  // changes are taken under the lock, as a view of the data or an encoded
+  // journal batch, and written without holding it.
+  private void flush(boolean compact) {
+    synchronized (flushLock) {
+      // seal the old months first, so that a snapshot leaves them out
+      Exception sealError = null;
+      try {
+        seal(compact);
+      } catch (IOException | RuntimeException e) {
+        sealError = e;
+      }
+      
+      long count;
+      View snapshotView = null;
+      boolean keepCurrent = false;
+      Journal.Batch batch = null;
+      Set<Integer> contactIds = null;
+      Set<Integer> meetingIds = null;
+      Map<Integer, RecurringMeeting> changedRecurrences = null;
+      Exception error = null;
+      
+      synchronized (this) {
+        count = changeCount;
+        flushedCount = changeCount;
+        
+        // journal the changed records, unless the journal would hold more
+        // records than a new snapshot
+        int records = contacts.size() + futureMeetings.size() +
+          pastMeetings.size() + recurrences.size();
+        int changes = dirtyContacts.size() + dirtyMeetings.size() +
+          dirtyRecurrences.size();
+        if (compact || (dirty && (snapshotStale ||
+                        journal.getRecordCount() + changes > records))) {
+          snapshotView = view;
+          keepCurrent = fileValid;
+        } else if (dirty) {
+          try {
+            batch = writeJournal();
+          } catch (IOException | RuntimeException e) {
+            error = e;
+            dirtySince = System.currentTimeMillis();
+          }
+        }
+        
+        if (error == null) {
+          contactIds = new HashSet<>(dirtyContacts);
+          meetingIds = new HashSet<>(dirtyMeetings);
+          changedRecurrences = new HashMap<>(dirtyRecurrences);
+          clean();
+        }
+      }
+      
+      try {
+        if (snapshotView != null)
+          writeSnapshot(snapshotView, keepCurrent);
+        else if (batch != null)
+          journal.append(batch);
+      } catch (IOException | RuntimeException e) {
+        // keep the changes for the next flush
+        error = e;
+        synchronized (this) {
+          changed();
+          dirtySince = System.currentTimeMillis();
+          dirtyContacts.addAll(contactIds);
+          dirtyMeetings.addAll(meetingIds);
+          // series changed since are newer
+          for (RecurringMeeting series : changedRecurrences.values())
+            dirtyRecurrences.putIfAbsent(series.getId(), series);
+        }
+      }
+      
+      // The interface does not specify what to do in case of errors when
+      // flushing the data so they are only reported to sync() futures
+      synced(count, (error != null ? error : sealError));
+    }
+  }
+  
+  // Writes a view of the data to a new snapshot and deletes the journal,
+  // which a new snapshot makes obsolete anyway. The archive manifest is
+  // saved first, as the database file holds the meetings it no longer
+  // lists, and the replaced segments are deleted once neither manifest nor
+  // the previous one lists them.
+  private void writeSnapshot(View current, boolean keepCurrent)
+    throws IOException
+  {
+    current.archive.save(current.nextMeetingId);
+    if (current.blockSize > 0)
+      snapshot.write(output -> writeBlocks(current, output), keepCurrent);
+    else
+      snapshot.write(output -> writeXml(current, output), keepCurrent);
+    saveTextIndexes(current);
+    
+    synchronized (this) {
+      fileValid = true;
+      // a format set while writing needs another snapshot
+      if (current.preciseDates == preciseDates &&
+          current.blockSize == blockSize) {
+        snapshotStale = false;
+      }
+    }
+    journal.reset();
+    
+    unlistedSegments.forEach(current.archive::delete);
+    unlistedSegments = obsoleteSegments;
+    obsoleteSegments = new ArrayList<>();
+  }
+  
+  // Seals the past meetings of the months ending before the archive period
+  // into new segments, with the current meetings of the segments they
+  // replace. The meetings are taken from a view under the lock and written
+  // without holding it, and only the ones left unchanged meanwhile are
+  // then moved out of the maps, which a new snapshot must save. Sealed
+  // meetings changed since stay in the database file, and their months are
+  // only sealed again when compacting or when meetings never sealed join
+  // them, so that changing old meetings doesn't rewrite whole months.
+  // Called with the flush lock held.
+  private void seal(boolean compact) throws IOException {
+    View current;
+    long cutoff;
+    synchronized (this) {
+      PastMeetingImpl first = pastIndex.first();
+      if (archivePeriod == null || first == null || archive.isReadOnly())
+        return;
+      long limit = ZonedDateTime.now(zone.toZoneId()).minus(archivePeriod)
+        .toInstant().toEpochMilli();
+      cutoff = archive.startOf(archive.monthOf(limit));
+      if (first.getTime() >= cutoff)
+        return;
+      current = new View(this);
+    }
+    
+    // the notes length tells whether notes were added since
+    TreeMap<Integer, List<PastMeetingImpl>> months = new TreeMap<>();
+    Map<Integer, Integer> notesLengths = new HashMap<>();
+    Iterator<PastMeetingImpl> meetings = current.pastIndex.stream(
+      Long.MIN_VALUE, 0).iterator();
+    while (meetings.hasNext()) {
+      PastMeetingImpl pastMeeting = meetings.next();
+      if (pastMeeting.getTime() >= cutoff)
+        break;
+      notesLengths.put(pastMeeting.getId(), pastMeeting.getNotesLength());
+      months.computeIfAbsent(current.archive.monthOf(pastMeeting.getTime()),
+        month -> new ArrayList<>()).add(pastMeeting);
+    }
+    if (!compact) {
+      months.values().removeIf(month -> month.stream().allMatch(
+        pastMeeting -> current.archive.wasSealed(pastMeeting.getId())));
+    }
+    
+    List<MeetingArchive.Segment> written = new ArrayList<>();
+    try {
+      for (Map.Entry<Integer, List<PastMeetingImpl>> entry :
+           months.entrySet()) {
+        MeetingArchive.Segment previous = current.archive.getSegment(
+          entry.getKey());
+        if (previous != null) {
+          entry.getValue().addAll(sealedMeetings(current, previous,
+            previous.getIds()));
+        }
+        written.add(current.archive.write(entry.getKey(), entry.getValue()));
+      }
+    } catch (IOException | RuntimeException e) {
+      written.forEach(current.archive::delete);
+      throw e;
+    }
+    
+    synchronized (this) {
+      boolean sealed = false;
+      for (MeetingArchive.Segment segment : written) {
+        MeetingArchive.Segment previous = archive.getSegment(
+          segment.getMonth());
+        Map<Integer, PastMeetingImpl> month = new HashMap<>();
+        IdBitmap ids = IdBitmap.empty();
+        int moved = 0;
+        for (int id : segment.getIds().toArray()) {
+          PastMeetingImpl pastMeeting = current.pastMeetings.get(id);
+          if (pastMeeting == null) {
+            // sealed again, unless superseded or removed meanwhile
+            if (previous != null && previous.getIds().contains(id)) {
+              ids = ids.add(id);
+              month.put(id, sealedMeeting(current, id));
+            }
+          } else if (pastMeetings.get(id) == pastMeeting &&
+                     pastMeeting.getNotesLength() == notesLengths.get(id)) {
+            pastMeetings = pastMeetings.remove(id);
+            pastIndex.remove(pastMeeting);
+            unschedule(pastMeeting);
+            pastMeeting.setNotesListener((note, meetingId) ->
+              sealedNotesAdded(pastMeeting, note));
+            ids = ids.add(id);
+            month.put(id, pastMeeting);
+            moved++;
+          }
+        }
+        // the previous segment stays if all the meetings changed meanwhile
+        if (moved == 0) {
+          archive.delete(segment);
+          continue;
+        }
+        
+        sealed = true;
+        segment = segment.withIds(ids);
+        archive.put(segment);
+        if (previous != null)
+          obsoleteSegments.add(previous);
+        // the meetings just sealed need not be read again
+        archiveCache.put(List.of(segment.getMonth(), segment.getSequence()),
+          current.archiveGeneration, month);
+      }
+      if (sealed) {
+        changed();
+        snapshotStale = true;
+        publish();
+      }
+    }
+  }
+  
+  // Encodes the changed records as a journal batch, contacts first so that
+  // meetings can be resolved when the journal is replayed.
+  private Journal.Batch writeJournal() throws IOException {
+    Journal.Batch batch = new Journal.Batch();
+    try {
+      int[] contactIds = new int[16];
+      
+      for (int id : dirtyContacts) {
+        ContactImpl contact = contacts.get(id);
+        if (contact != null)
+          batch.contact(id, contact.getName(), contact.getNotes());
+      }
+      
+      // changed records that no longer exist were removed
+      for (int id : dirtyMeetings) {
+        PastMeetingImpl pastMeeting = pastMeetings.get(id);
+        FutureMeetingImpl futureMeeting = futureMeetings.get(id);
+        if (pastMeeting != null) {
+          contactIds = write(batch, pastMeeting, pastMeeting.getNotes(),
+            contactIds);
+        } else if (futureMeeting != null) {
+          contactIds = write(batch, futureMeeting, null, contactIds);
+        } else if (!archive.contains(id)) {
+          batch.meetingRemoved(id);
+        }
+      }
+      
+      // finished series are journaled too, so that replaying drops them
+      for (RecurringMeeting series : dirtyRecurrences.values())
+        contactIds = write(batch, series, contactIds);
+      
+      // contacts are removed last, as the series ended by their removal
+      // refer to them
+      for (int id : dirtyContacts) {
+        if (contacts.get(id) == null)
+          batch.contactRemoved(id);
+      }
+    } catch (UncheckedIOException e) {
+      throw e.getCause();
+    }
+    return batch;
+  }
+  
+  // Records that the changes up to a count are saved, unless saving them
+  // failed, and completes the futures waiting for them.
+  private void synced(long count, Exception error) {
+    List<CompletableFuture<Void>> futures;
+    synchronized (this) {
+      if (error == null && count > savedCount)
+        savedCount = count;
+      
+      SortedMap<Long, CompletableFuture<Void>> done =
+        syncs.headMap(count, true);
+      futures = new ArrayList<>(done.values());
+      done.clear();
+    }
+    
+    // complete the futures without holding the lock, as they run callbacks
+    for (CompletableFuture<Void> future : futures) {
+      if (error == null)
+        future.complete(null);
+      else
+        future.completeExceptionally(error);
+    }
+  }
+  
+  // Saves a change just made as the durability policy requires. Changes
+  // made while holding the lock are saved by the outermost method instead.
+  private void committed() {
+    if (Thread.holdsLock(this))
+      return;
+    
+    DurabilityPolicy policy = durabilityPolicy;
+    if (policy.getMode() == DurabilityPolicy.Mode.EVERY_WRITE) {
+      flush();
+    } else if (policy.getMode() == DurabilityPolicy.Mode.GROUP_COMMIT) {
+      synchronized (this) {
+        if (writerIdle || changeCount - flushedCount >= policy.getMaxChanges())
+          notifyAll();
+      }
+    }
+  }
+  
+  // Runs the writer thread of the group commit policy, which flushes once
+  // enough changes are pending or the oldest one waited for the interval.
+  private void runWriter() {
+    while (true) {
+      synchronized (this) {
+        try {
+          while (true) {
+            if (writer != Thread.currentThread())
+              return;
+            
+            DurabilityPolicy policy = durabilityPolicy;
+            if (!dirty) {
+              writerIdle = true;
+              wait();
+              writerIdle = false;
+              continue;
+            }
+            
+            long delay = dirtySince + policy.getIntervalMillis() -
+              System.currentTimeMillis();
+            if (delay <= 0 ||
+                changeCount - flushedCount >= policy.getMaxChanges()) {
+              break;
+            }
+            wait(delay);
+          }
+        } catch (InterruptedException e) {
+          return;
+        }
+      }
+      flush();
+    }
+  }
+  
+  // Forgets the changes, once saved.
+  private void clean() {
+    dirty = false;
+    dirtyContacts.clear();
+    dirtyMeetings.clear();
+    dirtyRecurrences.clear();
+  }
+  
+  // Records that something changed since the last flush.
+  private void changed() {
+    if (!dirty)
+      dirtySince = System.currentTimeMillis();
+    dirty = true;
+    changeCount++;
+  }
+  
+  // Records that a contact changed since the last flush.
+  private void contactChanged(int id) {
+    changed();
+    dirtyContacts.add(id);
+  }
+  
+  // Records that a meeting changed since the last flush.
+  private void meetingChanged(int id) {
+    changed();
+    dirtyMeetings.add(id);
+  }
+  
+  // Records that a series of recurring meetings changed since the last
+  // flush.
+  private void recurrenceChanged(RecurringMeeting series) {
+    changed();
+    dirtyRecurrences.put(series.getId(), series);
+  }
+  
+  // Records that notes were added to a contact, which may happen without
+  // holding the lock.
+  private void contactNotesAdded(String note, int id) {
+    synchronized (this) {
+      if (indexing) {
+        addText(contactText, id, note);
+        publish();
+      }
+      contactChanged(id);
+    }
+    committed();
+  }
+  
+  // Records that notes were added to a past meeting, which may happen
+  // without holding the lock.
+  private void meetingNotesAdded(String note, int id) {
+    synchronized (this) {
+      if (indexing) {
+        addText(meetingText, id, note);
+        publish();
+      }
+      meetingChanged(id);
+    }
+    committed();
+  }
+  
+  // Records that notes were added to a sealed meeting, which may happen
+  // without holding the lock, by moving the meeting back to the maps.
+  private void sealedNotesAdded(PastMeetingImpl pastMeeting, String note) {
+    synchronized (this) {
+      if (archive.contains(pastMeeting.getId())) {
+        unseal(pastMeeting);
+        meetingNotesAdded(note, pastMeeting.getId());
+        publish();
+      }
+    }
+    committed();
+  }
+  
+  // Indexes notes appended to the notes of an ID, separated from them by a
+  // new line as the notes are.
+  private static void addText(TextIndex index, int id, String note) {
+    index.add(id, (index.length(id) > 0 ? "\n" + note : note));
+  }
+  
+  // Writes a view of the data as XML, followed by its checksum.
+  private void writeXml(View current, OutputStream output)
+    throws IOException
+  {
+    XMLOutputFactory factory = XMLOutputFactory.newInstance();
+    XMLStreamWriter writer = null;
+    XmlChecksum checksum = new XmlChecksum(output);
+    
+    // Write data as XML to disk
+    try {
+      writer = factory.createXMLStreamWriter(checksum.getOutputStream(),
+        "utf-8");
+      
+      writer.writeStartDocument("utf-8", "1.0");
+      serialise(current, writer);
+      writer.writeEndDocument();
+      
+      writer.flush();
+      checksum.finish();
+    } catch (XMLStreamException e) {
+      throw new IOException(e);
+    } finally {
+      if (writer != null) {
+        try {
+          writer.close();
+        } catch (Exception e) {
+          e.printStackTrace();
+        }
+      }
+    }
+  }
+  
+  // Writes a view of the data as compressed blocks.
+  private static void writeBlocks(View current, OutputStream output)
+    throws IOException
+  {
+    try (BlockContactsWriter writer = new BlockContactsWriter(output,
+           current.blockSize)) {
+      writer.nextIds(current.nextContactId, current.nextMeetingId);
+      for (ContactImpl contact : current.contacts.values())
+        writer.contact(contact.getId(), contact.getName(), contact.getNotes());
+      
+      int[] contactIds = new int[16];
+      for (PastMeetingImpl pastMeeting : current.pastMeetings.values())
+        contactIds = write(writer, pastMeeting, pastMeeting.getNotes(),
+          contactIds);
+      for (FutureMeetingImpl futureMeeting : current.futureMeetings.values())
+        contactIds = write(writer, futureMeeting, null, contactIds);
+      for (RecurringMeeting series : current.recurrences.values())
+        contactIds = write(writer, series, contactIds);
+    } catch (UncheckedIOException e) {
+      throw e.getCause();
+    }
+  }
+  
+  // Writes a meeting to a handler and returns the contact ID buffer, which
+  // grows if needed.
+  private static int[] write(ContactsReader.Handler handler,
+                             MeetingImpl meeting, String notes,
+                             int[] contactIds) {
+    Set<Contact> meetingContacts = meeting.getContacts();
+    if (contactIds.length < meetingContacts.size())
+      contactIds = new int[meetingContacts.size()];
+    
+    int count = 0;
+    for (Contact contact : meetingContacts)
+      contactIds[count++] = contact.getId();
+    
+    handler.meeting(meeting.getId(), meeting.getTime(), meeting.getEndTime(),
+      notes, contactIds, count);
+    return contactIds;
+  }
+  
+  // Writes a series of recurring meetings to a handler and returns the
+  // contact ID buffer, which grows if needed.
+  private static int[] write(ContactsReader.Handler handler,
+                             RecurringMeeting series, int[] contactIds) {
+    Set<Contact> seriesContacts = series.getContacts();
+    if (contactIds.length < seriesContacts.size())
+      contactIds = new int[seriesContacts.size()];
+    
+    int count = 0;
+    for (Contact contact : seriesContacts)
+      contactIds[count++] = contact.getId();
+    
+    handler.recurrence(series.getId(), series.getTime(),
+      series.getInterval(), series.getCount(), series.getNext(), contactIds,
+      count);
+    return contactIds;
+  }
+  
+  // Converts the future meetings that already took place to past meetings.
+  // The index is chronological so only the promoted meetings are visited.
+  private void updateMeetings() {
+    long now = System.currentTimeMillis();
+    
+    FutureMeetingImpl futureMeeting = futureIndex.first();
+    if ((futureMeeting == null || futureMeeting.getTime() >= now) &&
+        nextRecurrenceTime >= now) {
+      return;
+    }
+    
+    while (futureMeeting != null && futureMeeting.getTime() < now) {
+      // remove from future meetings
+      removeFutureMeeting(futureMeeting);
+      
+      // create past meeting
+      PastMeetingImpl pastMeeting = toPastMeeting(futureMeeting, "");
+      
+      // add meeting to map
+      putPastMeeting(pastMeeting);
+      
+      futureMeeting = futureIndex.first();
+    }
+    updateRecurrences(now);
+    publish();
+  }
+  
+  // Converts the occurrences of recurring meetings that already took place
+  // to past meetings, earliest first, advancing their series.
+  private void updateRecurrences(long now) {
+    while (nextRecurrenceTime < now) {
+      RecurringMeeting series = recurrences.get(
+        recurrenceQueue.firstEntry().getValue().first());
+      
+      // an occurrence replayed from the journal is already stored
+      int id = series.getId() + series.getNext();
+      if (pastMeetings.get(id) == null && !archive.contains(id)) {
+        putPastMeeting(new PastMeetingImpl(id, nextRecurrenceTime,
+          series.getTimeZone(), series.getContacts(), "", notesStore));
+      }
+      putRecurrence(series.advance());
+    }
+  }
+  
+  // Converts a future meeting that took place to a past meeting.
+  private PastMeetingImpl toPastMeeting(FutureMeetingImpl futureMeeting,
+                                        String notes) {
+    return new PastMeetingImpl(futureMeeting.getId(), futureMeeting.getTime(),
+      futureMeeting.getEndTime(), futureMeeting.getTimeZone(),
+      futureMeeting.getContacts(), notes, notesStore);
+  }
+  
+  // Returns the current view, once the future meetings that already took
+  // place are converted to past meetings, which only then takes the lock.
+  private View updatedView() {
+    View current = view;
+    if (current.nextPromotion() < System.currentTimeMillis()) {
+      synchronized (this) {
+        updateMeetings();
+        current = view;
+      }
+    }
+    return current;
+  }
+  
+  // Publishes a view of the current data. The maps and indexes are
+  // persistent, so this takes constant time.
+  private void publish() {
+    view = new View(this);
+  }
+  
+  // Adds a future meeting to the map and the index.
+  private void putFutureMeeting(FutureMeetingImpl futureMeeting) {
+    futureMeetings = futureMeetings.put(futureMeeting.getId(), futureMeeting);
+    futureIndex.add(futureMeeting);
+    meetingChanged(futureMeeting.getId());
+    bumpGenerations(futureMeeting);
+    schedule(futureMeeting);
+  }
+  
+  // Removes a future meeting from the map and the index.
+  private void removeFutureMeeting(FutureMeetingImpl futureMeeting) {
+    futureMeetings = futureMeetings.remove(futureMeeting.getId());
+    futureIndex.remove(futureMeeting);
+    bumpGenerations(futureMeeting);
+    unschedule(futureMeeting);
+  }
+  
+  // Adds a past meeting to the map and the index.
+  private void putPastMeeting(PastMeetingImpl pastMeeting) {
+    pastMeetings = pastMeetings.put(pastMeeting.getId(), pastMeeting);
+    pastIndex.add(pastMeeting);
+    pastMeeting.setNotesListener(this::meetingNotesAdded);
+    if (indexing)
+      meetingText.set(pastMeeting.getId(), pastMeeting.getNotes());
+    meetingChanged(pastMeeting.getId());
+    bumpGenerations(pastMeeting);
+    schedule(pastMeeting);
+    collaborations.add(pastMeeting);
+    addAttendance(pastMeeting);
+  }
+  
+  // Adds a past meeting to the attendance of its contacts.
+  private void addAttendance(PastMeetingImpl pastMeeting) {
+    for (Contact contact : pastMeeting.getContacts()) {
+      IdBitmap bitmap = attendance.get(contact.getId());
+      if (bitmap == null)
+        bitmap = IdBitmap.empty();
+      attendance = attendance.put(contact.getId(),
+        bitmap.add(pastMeeting.getId()));
+    }
+  }
+  
+  // Moves a sealed meeting back to the maps, so that it is saved to the
+  // database file again, superseding its sealed copy. Its attendance,
+  // collaborations and notes are indexed already.
+  private void unseal(PastMeetingImpl pastMeeting) {
+    archive.supersede(pastMeeting.getId());
+    pastMeetings = pastMeetings.put(pastMeeting.getId(), pastMeeting);
+    pastIndex.add(pastMeeting);
+    pastMeeting.setNotesListener(this::meetingNotesAdded);
+    meetingChanged(pastMeeting.getId());
+    schedule(pastMeeting);
+  }
+  
+  // Removes a past meeting from the map and the index.
+  private void removePastMeeting(PastMeetingImpl pastMeeting) {
+    pastMeetings = pastMeetings.remove(pastMeeting.getId());
+    pastIndex.remove(pastMeeting);
+    pastMeeting.setNotesListener(null);
+    if (indexing)
+      meetingText.remove(pastMeeting.getId());
+    bumpGenerations(pastMeeting);
+    unschedule(pastMeeting);
+    collaborations.remove(pastMeeting);
+    for (Contact contact : pastMeeting.getContacts()) {
+      IdBitmap bitmap = attendance.get(contact.getId());
+      if (bitmap == null)
+        continue;
+      bitmap = bitmap.remove(pastMeeting.getId());
+      attendance = (bitmap.isEmpty() ? attendance.remove(contact.getId()) :
+        attendance.put(contact.getId(), bitmap));
+    }
+  }
+  
+  // Adds a meeting with an end date to the schedules of its contacts.
+  private void schedule(MeetingImpl meeting) {
+    if (!meeting.hasEndDate())
+      return;
+    
+    for (Contact contact : meeting.getContacts()) {
+      IntervalTree<MeetingImpl> schedule = schedules.get(contact.getId());
+      if (schedule == null)
+        schedule = IntervalTree.empty();
+      schedules = schedules.put(contact.getId(), schedule.add(
+        meeting.getTime(), meeting.getEndTime(), meeting.getId(), meeting));
+    }
+  }
+  
+  // Removes a meeting with an end date from the schedules of its contacts.
+  private void unschedule(MeetingImpl meeting) {
+    if (!meeting.hasEndDate())
+      return;
+    
+    for (Contact contact : meeting.getContacts()) {
+      IntervalTree<MeetingImpl> schedule = schedules.get(contact.getId());
+      if (schedule == null)
+        continue;
+      schedule = schedule.remove(meeting.getTime(), meeting.getId());
+      schedules = (schedule.isEmpty() ? schedules.remove(contact.getId()) :
+        schedules.put(contact.getId(), schedule));
+    }
+  }
+  
+  // Adds or replaces a series of recurring meetings, which is dropped once
+  // all its occurrences took place.
+  private void putRecurrence(RecurringMeeting series) {
+    RecurringMeeting oldSeries = recurrences.get(series.getId());
+    if (oldSeries != null) {
+      for (Contact contact : oldSeries.getContacts()) {
+        IdBitmap bitmap = contactRecurrences.get(contact.getId()).remove(
+          series.getId());
+        contactRecurrences = (bitmap.isEmpty() ?
+          contactRecurrences.remove(contact.getId()) :
+          contactRecurrences.put(contact.getId(), bitmap));
+      }
+      IdBitmap queued = recurrenceQueue.get(oldSeries.nextTime()).remove(
+        series.getId());
+      recurrenceQueue = (queued.isEmpty() ?
+        recurrenceQueue.remove(oldSeries.nextTime()) :
+        recurrenceQueue.put(oldSeries.nextTime(), queued));
+      recurrenceSpans = recurrenceSpans.remove(oldSeries.nextTime(),
+        series.getId());
+    }
+    
+    if (series.isFinished()) {
+      recurrences = recurrences.remove(series.getId());
+    } else {
+      recurrences = recurrences.put(series.getId(), series);
+      IdBitmap queued = recurrenceQueue.get(series.nextTime());
+      if (queued == null)
+        queued = IdBitmap.empty();
+      recurrenceQueue = recurrenceQueue.put(series.nextTime(),
+        queued.add(series.getId()));
+      recurrenceSpans = recurrenceSpans.add(series.nextTime(),
+        series.timeOf(series.getCount() - 1) + 1, series.getId(), series);
+      for (Contact contact : series.getContacts()) {
+        IdBitmap bitmap = contactRecurrences.get(contact.getId());
+        if (bitmap == null)
+          bitmap = IdBitmap.empty();
+        contactRecurrences = contactRecurrences.put(contact.getId(),
+          bitmap.add(series.getId()));
+      }
+    }
+    recurrenceChanged(series);
+    
+    // the lists of the contacts and of any date may hold occurrences
+    Long stamp = ++generation;
+    recurrenceGeneration = stamp;
+    for (Contact contact : series.getContacts())
+      contactGenerations = contactGenerations.put(contact.getId(), stamp);
+    
+    nextRecurrenceTime = (recurrenceQueue.isEmpty() ? Long.MAX_VALUE :
+      recurrenceQueue.firstEntry().getKey());
+  }
+  
+  // Bumps the generations of the contacts and the time of a meeting, so
+  // that the cached lists containing it or missing it are not returned.
+  private void bumpGenerations(MeetingImpl meeting) {
+    Long stamp = ++generation;
+    for (Contact contact : meeting.getContacts())
+      contactGenerations = contactGenerations.put(contact.getId(), stamp);
+    timeGenerations = timeGenerations.put(meeting.getTime(), stamp);
+  }
+  
+  // Adds a contact to the map.
+  private void putContact(ContactImpl contact) {
+    ContactImpl previous = contacts.get(contact.getId());
+    if (previous != null) {
+      for (String word : TextIndex.terms(previous.getName()))
+        names = names.remove(word, previous.getId());
+    }
+    for (String word : TextIndex.terms(contact.getName()))
+      names = names.add(word, contact.getId());
+    contacts = contacts.put(contact.getId(), contact);
+    contact.setNotesListener(this::contactNotesAdded);
+    if (indexing)
+      contactText.set(contact.getId(), contact.getNotes());
+    contactChanged(contact.getId());
+  }
+  
+  // Removes a contact that attends no meeting from the map and the indexes.
+  private void dropContact(ContactImpl contact) {
+    int id = contact.getId();
+    contacts = contacts.remove(id);
+    contact.setNotesListener(null);
+    for (String word : TextIndex.terms(contact.getName()))
+      names = names.remove(word, id);
+    if (indexing)
+      contactText.remove(id);
+    attendance = attendance.remove(id);
+    contactRecurrences = contactRecurrences.remove(id);
+    schedules = schedules.remove(id);
+    contactGenerations = contactGenerations.put(id, ++generation);
+    contactChanged(id);
+  }
+  
+  // Replaces contacts in the attendees of the meetings and series by
+  // another contact, or removes them if it is null, walking only the
+  // meetings and series of the contacts. Meetings left without attendees
+  // are removed and series end. Sealed meetings are moved back to the maps,
+  // unless a contact is only renamed.
+  private void replaceAttendees(Set<Integer> ids, ContactImpl replacement) {
+    // a meeting shared by several of the contacts is replaced once
+    Map<Integer, FutureMeetingImpl> futureAffected = new HashMap<>();
+    for (int id : ids) {
+      futureIndex.streamAllFor(id).forEach(futureMeeting ->
+        futureAffected.put(futureMeeting.getId(), futureMeeting));
+    }
+    for (FutureMeetingImpl futureMeeting : futureAffected.values()) {
+      Set<Contact> attendees = replaceAttendees(futureMeeting.getContacts(),
+        ids, replacement);
+      if (attendees == null)
+        continue;
+      
+      removeFutureMeeting(futureMeeting);
+      if (attendees.isEmpty()) {
+        meetingChanged(futureMeeting.getId());
+      } else {
+        putFutureMeeting(new FutureMeetingImpl(futureMeeting.getId(),
+          futureMeeting.getTime(), futureMeeting.getEndTime(),
+          futureMeeting.getTimeZone(), attendees));
+      }
+    }
+    
+    IdBitmap pastIds = IdBitmap.empty();
+    IdBitmap seriesIds = IdBitmap.empty();
+    for (int id : ids) {
+      IdBitmap bitmap = attendance.get(id);
+      if (bitmap != null)
+        pastIds = pastIds.or(bitmap);
+      bitmap = contactRecurrences.get(id);
+      if (bitmap != null)
+        seriesIds = seriesIds.or(bitmap);
+    }
+    boolean renamed = (replacement != null && ids.size() == 1 &&
+                       ids.contains(replacement.getId()));
+    View sealedView = new View(this);
+    pastIds.forEach(id -> {
+      PastMeetingImpl pastMeeting = pastMeetings.get(id);
+      if (pastMeeting == null) {
+        // sealed meetings refer to their contacts by ID, so they are read
+        // with the renamed contact once the cached ones are stale
+        pastMeeting = sealedMeeting(sealedView, id);
+        if (pastMeeting == null)
+          return;
+        if (renamed) {
+          bumpGenerations(pastMeeting);
+          archiveGeneration = sealedView.archiveGeneration + 1;
+          return;
+        }
+        archive.supersede(id);
+      }
+      
+      Set<Contact> attendees = replaceAttendees(pastMeeting.getContacts(),
+        ids, replacement);
+      removePastMeeting(pastMeeting);
+      if (attendees.isEmpty()) {
+        archive.remove(id);
+        meetingChanged(id);
+      } else {
+        putPastMeeting(new PastMeetingImpl(id, pastMeeting.getTime(),
+          pastMeeting.getEndTime(), pastMeeting.getTimeZone(), attendees,
+          pastMeeting.getNotes(), notesStore));
+      }
+    });
+    seriesIds.forEach(id -> {
+      RecurringMeeting series = recurrences.get(id);
+      Set<Contact> attendees = replaceAttendees(series.getContacts(), ids,
+        replacement);
+      // a finished series is dropped, and journaled so that replaying drops
+      // it too
+      putRecurrence(new RecurringMeeting(id, series.getTime(),
+        series.getTimeZone(), series.getInterval(), series.getCount(),
+        (attendees.isEmpty() ? series.getCount() : series.getNext()),
+        (attendees.isEmpty() ? series.getContacts() : attendees)));
+    });
+  }
+  
+  // Returns a set of attendees with contacts replaced by another contact,
+  // or removed if it is null, or null if none of them attends.
+  private Set<Contact> replaceAttendees(Set<Contact> attendees,
+                                        Set<Integer> ids,
+                                        Contact replacement) {
+    Set<Contact> newAttendees = new HashSet<>();
+    boolean replaced = false;
+    for (Contact contact : attendees) {
+      if (!ids.contains(contact.getId())) {
+        newAttendees.add(contact);
+      } else {
+        replaced = true;
+        if (replacement != null)
+          newAttendees.add(replacement);
+      }
+    }
+    if (!replaced)
+      return null;
+    return (newAttendees.isEmpty() ? newAttendees :
+      attendeePool.intern(newAttendees));
+  }
+  
+  // Returns the known contacts of a meeting, sharing the attendee set with
+  // other meetings.
+  private Set<Contact> knownContacts(
+    PersistentTreeMap<Integer, ContactImpl> contacts, int[] contactIds,
+    int contactCount)
+  {
+    Set<Contact> meetingContacts = new HashSet<>();
+    for (int i = 0; i < contactCount; i++) {
+      Contact contact = contacts.get(contactIds[i]);
+      if (contact != null)
+        meetingContacts.add(contact);
+    }
+    return (meetingContacts.isEmpty() ? meetingContacts :
+      attendeePool.intern(meetingContacts));
+  }
+  
+  // Returns whether all the contacts are known. Contacts are looked up by ID
+  // rather than by scanning all contacts.
+  private boolean containsContacts(Set<Contact> contacts) {
+    for (Contact contact : contacts) {
+      if (contact == null || this.contacts.get(contact.getId()) != contact)
+        return false;
+    }
+    return true;
+  }
+  
+  // Validates the contact of a list query.
+  private static void checkContact(View current, Contact contact) {
+    if (contact == null)
+      throw new NullPointerException("contact must not be null");
+    else if (!current.contacts.containsKey(contact.getId()))
+      throw new IllegalArgumentException("contact must not be unknown");
+  }
+  
+  // Streams the future meetings of a contact after a (date, ID) key.
+  private static Stream<Meeting> streamFutureMeetingList(View current,
+                                                         Contact contact,
+                                                         Calendar afterDate,
+                                                         int afterId) {
+    checkContact(current, contact);
+    
+    long afterTime = (afterDate == null ? Long.MIN_VALUE :
+      afterDate.getTimeInMillis());
+    Stream<FutureMeetingImpl> meetings = current.futureIndex.streamFor(
+      contact.getId(), afterTime, afterId);
+    
+    // merge in the occurrences of the series of the contact
+    IdBitmap seriesIds = current.contactRecurrences.get(contact.getId());
+    if (seriesIds != null) {
+      List<Iterator<FutureMeetingImpl>> sources = new ArrayList<>();
+      sources.add(meetings.iterator());
+      seriesIds.forEach(id -> sources.add(
+        current.recurrences.get(id).iterator(afterTime, afterId)));
+      meetings = merge(sources);
+    }
+    return meetings.map(meeting -> meeting);
+  }
+  
+  // Streams the past meetings of a contact after a (date, ID) key, merging
+  // in the sealed meetings of the months from the date on, which are only
+  // read once the stream reaches them.
+  private Stream<PastMeeting> streamPastMeetingListFor(View current,
+                                                       Contact contact,
+                                                       Calendar afterDate,
+                                                       int afterId) {
+    checkContact(current, contact);
+    
+    long afterTime = (afterDate == null ? Long.MIN_VALUE :
+      afterDate.getTimeInMillis());
+    IdBitmap attended = current.attendance.get(contact.getId());
+    if (current.archive.isEmpty() || attended == null) {
+      return current.pastIndex.streamFor(contact.getId(), afterTime, afterId)
+        .map(meeting -> meeting);
+    }
+    
+    // the whole time group of the key is merged, so that the meetings equal
+    // to a meeting before the key are skipped too
+    int fromMonth = (afterDate == null ? Integer.MIN_VALUE :
+      current.archive.monthOf(afterTime));
+    Stream<PastMeetingImpl> sealed = current.archive.segments(fromMonth)
+      .flatMap(segment -> sealedMeetings(current, segment,
+        segment.getIds().and(attended)).stream())
+      .filter(meeting -> meeting.getTime() >= afterTime);
+    Stream<PastMeetingImpl> meetings = merge(List.of(
+      current.pastIndex.streamFor(contact.getId(), afterTime, 0).iterator(),
+      sealed.iterator()));
+    return distinct(meetings)
+      .filter(meeting -> meeting.getTime() > afterTime ||
+                         meeting.getId() > afterId)
+      .map(meeting -> meeting);
+  }
+  
+  // Streams the meetings held on a date after an ID.
+  private Stream<Meeting> streamMeetingListOn(View current, Calendar date,
+                                              int afterId) {
+    if (date == null)
+      throw new NullPointerException("date must not be null");
+    
+    long time = date.getTimeInMillis();
+    if (date.before(Calendar.getInstance())) {
+      MeetingArchive.Segment segment = current.archive.getSegment(
+        current.archive.monthOf(time));
+      if (segment == null) {
+        return current.pastIndex.streamOn(time, afterId)
+          .map(meeting -> meeting);
+      }
+      
+      // merge in the sealed meetings of the month held at that time
+      List<PastMeetingImpl> meetings = current.pastIndex.streamOn(time, 0)
+        .collect(Collectors.toList());
+      Map<Integer, PastMeetingImpl> month = sealedMonth(current, segment);
+      segment.getIds().forEach(id -> {
+        PastMeetingImpl pastMeeting = month.get(id);
+        if (pastMeeting != null && pastMeeting.getTime() == time)
+          meetings.add(pastMeeting);
+      });
+      meetings.sort(Comparator.comparingInt(PastMeetingImpl::getId));
+      return distinct(meetings.stream())
+        .filter(meeting -> meeting.getId() > afterId)
+        .map(meeting -> meeting);
+    }
+    
+    // merge in the occurrences held at that time
+    List<Iterator<FutureMeetingImpl>> sources = new ArrayList<>();
+    current.recurrenceSpans.forEachOverlapping(time, time + 1, series -> {
+      int index = series.indexAt(time);
+      if (index >= 0 && series.getId() + index > afterId)
+        sources.add(List.of(series.occurrence(index)).iterator());
+    });
+    Stream<FutureMeetingImpl> meetings = current.futureIndex.streamOn(time,
+      afterId);
+    if (!sources.isEmpty()) {
+      sources.add(meetings.iterator());
+      meetings = merge(sources);
+    }
+    return meetings.map(meeting -> meeting);
+  }
+  
+  // Merges chronological sources of meetings (meetings held at the same
+  // time are sorted by ID) into a stream, which only reads the sources once
+  // consumed.
+  private static <T extends MeetingImpl> Stream<T> merge(
+    List<Iterator<T>> sources)
+  {
+    return StreamSupport.stream(() -> {
+      PriorityQueue<Cursor<T>> queue = new PriorityQueue<>();
+      for (Iterator<T> source : sources) {
+        if (source.hasNext())
+          queue.add(new Cursor<>(source));
+      }
+      
+      return Spliterators.spliteratorUnknownSize(
+        new Iterator<T>() {
+          public boolean hasNext() {
+            return !queue.isEmpty();
+          }
+          
+          public T next() {
+            Cursor<T> cursor = queue.poll();
+            if (cursor == null)
+              throw new NoSuchElementException();
+            
+            T meeting = cursor.meeting;
+            if (cursor.advance())
+              queue.add(cursor);
+            return meeting;
+          }
+        }, Spliterator.ORDERED | Spliterator.NONNULL);
+    }, Spliterator.ORDERED | Spliterator.NONNULL, false);
+  }
+  
+  // Skips the meetings of a chronological stream equal to an earlier
+  // meeting held at the same time, as the meeting index does within its
+  // time groups.
+  private static <T extends MeetingImpl> Stream<T> distinct(
+    Stream<T> stream)
+  {
+    Iterator<T> meetings = stream.iterator();
+    return StreamSupport.stream(Spliterators.spliteratorUnknownSize(
+      new Iterator<T>() {
+        // the meetings returned of the current time group
+        final List<T> group = new ArrayList<>();
+        T next;
+        
+        public boolean hasNext() {
+          while (next == null && meetings.hasNext()) {
+            T meeting = meetings.next();
+            if (!group.isEmpty() &&
+                group.get(0).getTime() != meeting.getTime()) {
+              group.clear();
+            }
+            if (!group.contains(meeting)) {
+              group.add(meeting);
+              next = meeting;
+            }
+          }
+          return (next != null);
+        }
+        
+        public T next() {
+          if (!hasNext())
+            throw new NoSuchElementException();
+          
+          T meeting = next;
+          next = null;
+          return meeting;
+        }
+      }, Spliterator.ORDERED | Spliterator.NONNULL), false);
+  }
+  
+  // Returns a copy of a cached meeting list if it was computed from the
+  // specified generation, or runs the query and caches its result.
+  private <T> List<T> cached(List<Object> key, long generation,
+                             Supplier<List<T>> query) {
+    QueryCache<List<Object>, List<?>> cache = queryCache;
+    if (cache == null)
+      return query.get();
+    
+    @SuppressWarnings("unchecked")
+    List<T> list = (List<T>)cache.get(key, generation);
+    if (list == null) {
+      list = query.get();
+      cache.put(key, generation, list);
+    }
+    // callers own the returned list, so the cached one is never shared
+    return new ArrayList<>(list);
+  }
+  
+  // Returns the bitmaps of the past meetings of contacts.
+  private static List<IdBitmap> attendance(View current,
+                                           Set<Contact> contacts) {
+    if (contacts == null)
+      throw new NullPointerException("contacts must not be null");
+    
+    List<IdBitmap> bitmaps = new ArrayList<>(contacts.size());
+    for (Contact contact : contacts) {
+      if (contact == null || !current.contacts.containsKey(contact.getId()))
+        throw new IllegalArgumentException("contacts must not be unknown");
+      
+      IdBitmap bitmap = current.attendance.get(contact.getId());
+      bitmaps.add(bitmap == null ? IdBitmap.empty() : bitmap);
+    }
+    return bitmaps;
+  }
+  
+  // Returns the past meetings with the specified IDs, chronologically. The
+  // sealed ones are read a segment at a time.
+  private List<PastMeeting> pastMeetings(View current, IdBitmap ids) {
+    List<PastMeetingImpl> meetings = new ArrayList<>(ids.cardinality());
+    ids.forEach(id -> {
+      PastMeetingImpl pastMeeting = current.pastMeetings.get(id);
+      if (pastMeeting != null)
+        meetings.add(pastMeeting);
+    });
+    if (meetings.size() < ids.cardinality()) {
+      current.archive.segments(Integer.MIN_VALUE).forEach(segment ->
+        meetings.addAll(sealedMeetings(current, segment,
+          ids.and(segment.getIds()))));
+    }
+    meetings.sort(Comparator.comparingLong(PastMeetingImpl::getTime)
+      .thenComparingInt(PastMeetingImpl::getId));
+    return new ArrayList<>(meetings);
+  }
+  
+  // Returns the sealed meeting with an ID or null if there is none.
+  private PastMeetingImpl sealedMeeting(View current, int id) {
+    MeetingArchive.Segment segment = current.archive.segmentOf(id);
+    return (segment == null ? null : sealedMonth(current, segment).get(id));
   }
   
-  /**
-   * Returns the contact that correspond to the ID.
-   *
-   * @param id The contact ID.
-   * @return The contact.
-   * @throws IllegalArgumentException If the ID does not correspond to a known
-   *         contact.
-   * @see Contact
-   */
-  public Contact getContact(int id) {
-    Contact contact = contacts.get(id);
-    if (contact == null) {
-      throw new IllegalArgumentException(
-        "id must correspond to a known contact");
-    }
-    return contact;
+  // Returns the sealed meetings of a segment with the specified IDs, among
+  // its current meetings, chronologically.
+  private List<PastMeetingImpl> sealedMeetings(View current,
+                                               MeetingArchive.Segment segment,
+                                               IdBitmap ids) {
+    List<PastMeetingImpl> meetings = new ArrayList<>(ids.cardinality());
+    if (ids.isEmpty())
+      return meetings;
+    
+    Map<Integer, PastMeetingImpl> month = sealedMonth(current, segment);
+    ids.forEach(id -> {
+      PastMeetingImpl pastMeeting = month.get(id);
+      if (pastMeeting != null)
+        meetings.add(pastMeeting);
+    });
+    meetings.sort(Comparator.comparingLong(PastMeetingImpl::getTime)
+      .thenComparingInt(PastMeetingImpl::getId));
+    return meetings;
   }
   
-  /**
-   * Saves all data to disk.
-   *
-   * This method must be executed when the program is
-   * closed and when/if the user requests it.
-   */
-  public void flush() {
-    XMLOutputFactory factory = XMLOutputFactory.newInstance();
-    XMLStreamWriter writer = null;
+  // Returns the meetings of a segment by ID, with the contacts of a view,
+  // from the archive cache or read from the archive. Their notes are kept
+  // on the heap, so they only take memory while cached, and adding notes to
+  // them moves them back to the maps.
+  private Map<Integer, PastMeetingImpl> sealedMonth(
+    View current, MeetingArchive.Segment segment)
+  {
+    QueryCache<List<Integer>, Map<Integer, PastMeetingImpl>> cache =
+      archiveCache;
+    List<Integer> key = List.of(segment.getMonth(), segment.getSequence());
+    Map<Integer, PastMeetingImpl> month = cache.get(key,
+      current.archiveGeneration);
+    if (month != null)
+      return month;
     
-    // Write data as XML to disk
+    Map<Integer, PastMeetingImpl> meetings = new HashMap<>();
     try {
-      writer = factory.createXMLStreamWriter(new FileOutputStream(file));
-      
-      writer.writeStartDocument("utf-8", "1.0");
-      serialise(writer);
-      writer.writeEndDocument();
-      
-      writer.flush();
-    } catch (Exception e) {
-      // The interface does not specify what to do in case of errors when
-      // flushing the data so we ignore them
-    } finally {
-      if (writer != null) {
-        try {
-          writer.close();
-        } catch (Exception e) {
-          e.printStackTrace();
+      current.archive.read(segment, new ContactsReader.Handler() {
+        public void contact(int id, String name, String notes) {
         }
-      }
+        
+        public void meeting(int id, long time, String notes,
+                            int[] contactIds, int contactCount) {
+          meeting(id, time, time, notes, contactIds, contactCount);
+        }
+        
+        public void meeting(int id, long time, long endTime, String notes,
+                            int[] contactIds, int contactCount) {
+          Set<Contact> meetingContacts = knownContacts(current.contacts,
+            contactIds, contactCount);
+          if (meetingContacts.isEmpty())
+            return;
+          
+          PastMeetingImpl pastMeeting = new PastMeetingImpl(id, time,
+            endTime, zone, meetingContacts, (notes == null ? "" : notes),
+            null);
+          pastMeeting.setNotesListener((note, meetingId) ->
+            sealedNotesAdded(pastMeeting, note));
+          meetings.put(id, pastMeeting);
+        }
+      });
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
     }
+    cache.put(key, current.archiveGeneration, meetings);
+    return meetings;
   }
   
-  // Loops thru future meetings looking for meetings that already took place
-  // and converts them to past meetings.
-  private void updateMeetings() {
-    for (FutureMeeting futureMeeting : futureMeetings.values()) {
-      // validate date
-      Calendar date = futureMeeting.getDate();
-      if (date.compareTo(Calendar.getInstance()) >= 0)
+  // Returns the meetings of contacts overlapping a time interval,
+  // chronologically.
+  private static List<Meeting> conflicts(
+    PersistentTreeMap<Integer, IntervalTree<MeetingImpl>> schedules,
+    Set<Contact> contacts, long start, long end)
+  {
+    TreeMap<Long, TreeMap<Integer, Meeting>> found = new TreeMap<>();
+    for (Contact contact : contacts) {
+      IntervalTree<MeetingImpl> schedule = schedules.get(contact.getId());
+      if (schedule == null)
         continue;
       
-      // remove from future meetings
-      int id = futureMeeting.getId();
-      futureMeetings.remove(id);
-      
-      // create past meeting
-      PastMeetingImpl pastMeeting = new PastMeetingImpl(id,
-        futureMeeting.getDate(), futureMeeting.getContacts(), "");
-      
-      // add meeting to map
-      pastMeetings.put(id, pastMeeting);
+      schedule.forEachOverlapping(start, end, meeting ->
+        found.computeIfAbsent(meeting.getTime(), time -> new TreeMap<>())
+          .put(meeting.getId(), meeting));
     }
+    
+    List<Meeting> meetings = new ArrayList<>();
+    for (TreeMap<Integer, Meeting> group : found.values())
+      meetings.addAll(group.values());
+    return meetings;
+  }
+  
+  // Streams the contacts whose name contains a string after an ID.
+  private Stream<Contact> streamContacts(String name, int afterId) {
+    if (name == null)
+      throw new NullPointerException("name must not be null");
+    
+    String search = name.toLowerCase();
+    return view.contacts.tailValues(afterId, false)
+      .filter(contact -> contact.getName().toLowerCase().contains(search))
+      .map(contact -> contact);
   }
   
-  // Serialises the contact manager data as XML.
-  private void serialise(XMLStreamWriter writer) throws XMLStreamException {
+  // Serialises a view of the contact manager data as XML.
+  private void serialise(View current, XMLStreamWriter writer)
+    throws XMLStreamException
+  {
     writer.writeStartElement("ContactManager");
+    writer.writeAttribute("nextContactId",
+      Integer.toString(current.nextContactId));
+    writer.writeAttribute("nextMeetingId",
+      Integer.toString(current.nextMeetingId));
     
-    serialiseContacts(writer);
-    serialiseMeetings(writer);
+    serialiseContacts(current, writer);
+    serialiseMeetings(current, writer);
     
     writer.writeEndElement();
   }
   
   // Serialises the contacts.
-  private void serialiseContacts(XMLStreamWriter writer)
+  private void serialiseContacts(View current, XMLStreamWriter writer)
     throws XMLStreamException
   {
     writer.writeStartElement("Contacts");
     
-    for (Contact contact : contacts.values()) {
+    for (ContactImpl contact : current.contacts.values()) {
       writer.writeStartElement("Contact");
       writer.writeAttribute("id", Integer.toString(contact.getId()));
       
@@ -563,7 +3276,7 @@ public class ContactManagerImpl implements ContactManager {
       writer.writeEndElement();
       
       writer.writeStartElement("Notes");
-      writer.writeCharacters(contact.getNotes());
+      serialiseNotes(writer, contact.getNoteSegments());
       writer.writeEndElement();
       
       writer.writeEndElement();
@@ -573,219 +3286,420 @@ public class ContactManagerImpl implements ContactManager {
   }
   
   // Serialises the meetings.
-  private void serialiseMeetings(XMLStreamWriter writer)
+  private void serialiseMeetings(View current, XMLStreamWriter writer)
     throws XMLStreamException
   {
     writer.writeStartElement("Meetings");
     
-    for (PastMeeting pastMeeting : pastMeetings.values())
-      serialiseMeeting(writer, pastMeeting);
+    for (PastMeetingImpl pastMeeting : current.pastMeetings.values())
+      serialiseMeeting(current, writer, pastMeeting);
+    
+    for (FutureMeetingImpl futureMeeting : current.futureMeetings.values())
+      serialiseMeeting(current, writer, futureMeeting);
     
-    for (FutureMeeting futureMeeting : futureMeetings.values())
-      serialiseMeeting(writer, futureMeeting);
+    for (RecurringMeeting series : current.recurrences.values())
+      serialiseRecurrence(current, writer, series);
     
     writer.writeEndElement();
   }
   
   // Serialises a meeting.
-  private void serialiseMeeting(XMLStreamWriter writer, Meeting meeting)
+  private void serialiseMeeting(View current, XMLStreamWriter writer,
+                                MeetingImpl meeting)
     throws XMLStreamException
   {
     writer.writeStartElement("Meeting");
     writer.writeAttribute("id", Integer.toString(meeting.getId()));
     
-    SimpleDateFormat formatter = new SimpleDateFormat("dd-MM-yyyy HH:mm:ss");
-    writer.writeStartElement("Date");
-    writer.writeCharacters(formatter.format(meeting.getDate().getTime()));
-    writer.writeEndElement();
+    serialiseDate(current, writer, "Date", meeting.getTime());
+    if (meeting.hasEndDate())
+      serialiseDate(current, writer, "End", meeting.getEndTime());
     
-    if (meeting instanceof PastMeeting) {
-      PastMeeting pastMeeting = (PastMeeting)meeting;
+    if (meeting instanceof PastMeetingImpl) {
+      PastMeetingImpl pastMeeting = (PastMeetingImpl)meeting;
       writer.writeStartElement("Notes");
-      writer.writeCharacters(pastMeeting.getNotes());
+      serialiseNotes(writer, pastMeeting.getNoteSegments());
       writer.writeEndElement();
     }
     
+    serialiseMeetingContacts(writer, meeting.getContacts());
+    
+    writer.writeEndElement();
+  }
+  
+  // Serialises a series of recurring meetings.
+  private void serialiseRecurrence(View current, XMLStreamWriter writer,
+                                   RecurringMeeting series)
+    throws XMLStreamException
+  {
+    writer.writeStartElement("Recurrence");
+    writer.writeAttribute("id", Integer.toString(series.getId()));
+    
+    serialiseDate(current, writer, "Date", series.getTime());
+    
+    writer.writeStartElement("Interval");
+    writer.writeCharacters(series.getInterval().toString());
+    writer.writeEndElement();
+    
+    writer.writeStartElement("Count");
+    writer.writeCharacters(Integer.toString(series.getCount()));
+    writer.writeEndElement();
+    
+    writer.writeStartElement("Next");
+    writer.writeCharacters(Integer.toString(series.getNext()));
+    writer.writeEndElement();
+    
+    serialiseMeetingContacts(writer, series.getContacts());
+    
+    writer.writeEndElement();
+  }
+  
+  // Serialises a date element in the format of a view.
+  private void serialiseDate(View current, XMLStreamWriter writer,
+                             String name, long time)
+    throws XMLStreamException
+  {
+    writer.writeStartElement(name);
+    if (current.preciseDates)
+      writer.writeCharacters(dateCodec.formatPrecise(time));
+    else
+      writer.writeCharacters(dateCodec.format(time));
+    writer.writeEndElement();
+  }
+  
+  // Serialises the IDs of the contacts of a meeting.
+  private void serialiseMeetingContacts(XMLStreamWriter writer,
+                                        Set<Contact> contacts)
+    throws XMLStreamException
+  {
     writer.writeStartElement("Contacts");
-    Set<Contact> contacts = meeting.getContacts();
     for (Contact contact : contacts) {
       writer.writeStartElement("Id");
       writer.writeCharacters(Integer.toString(contact.getId()));
       writer.writeEndElement();
     }
     writer.writeEndElement();
-    
-    writer.writeEndElement();
   }
   
-  // Loads the contact manager data from XML.
+  // Serialises notes segment by segment, without joining them first.
+  private void serialiseNotes(XMLStreamWriter writer, List<String> segments)
+    throws XMLStreamException
+  {
+    for (String segment : segments)
+      writer.writeCharacters(segment);
+  }
+  
+  // Loads the contact manager data and the notes indexes saved with it,
+  // then indexes the notes changed since the indexes were saved.
   private void load() {
-    XMLInputFactory factory = XMLInputFactory.newInstance();
-    XMLStreamReader reader = null;
+    if (!file.exists())
+      return;
     
-    // Write data as XML to disk
+    boolean indexed = loadTextIndexes();
+    indexing = false;
     try {
-      reader = factory.createXMLStreamReader(new FileInputStream(file));
-      
-      // Skip start of document and validate root object
-      reader.next();
-      if (reader.getLocalName().equals("ContactManager"))
-        loadDocument(reader);
-    } catch (Exception e) {
-      // The interface does not specify what to do in case of errors when
-      // loading the data so we ignore them
+      loadData();
+      loadArchive();
     } finally {
-      if (reader != null) {
-        try {
-          reader.close();
-        } catch (Exception e) {
-          e.printStackTrace();
-        }
-      }
+      indexing = true;
     }
+    updateTextIndexes(indexed);
   }
   
-  // Loads the contacts and meetings.
-  private void loadDocument(XMLStreamReader reader) throws XMLStreamException {
-    boolean contactsLoaded = false;
-    boolean meetingsLoaded = false;
+  // Loads the archive of sealed months. If it is corrupt, it is left as is
+  // for recovery and its meetings are missing.
+  private void loadArchive() {
+    try {
+      archive.load(new SealedLoader());
+    } catch (IOException e) {
+      System.err.println("Could not load " + archiveDirectory + ": " +
+        e.getMessage());
+    }
+  }
+  
+  // Loads the contact manager data from the database file and replays the
+  // journal over it. A corrupt journal record ends the replay, keeping the
+  // records before it. If the database file is corrupt, the previous
+  // snapshot is loaded instead, to which the journal doesn't apply. Either
+  // way the next flush writes a new snapshot, rather than journal changes
+  // against a snapshot that doesn't hold the loaded data.
+  private void loadData() {
+    try {
+      load(file);
+    } catch (Exception e) {
+      clear();
+      System.err.println("Could not load " + file + ": " + e.getMessage());
+      loadPrevious();
+      return;
+    }
+    fileValid = true;
     
-    while (reader.hasNext()) {
-      switch (reader.next()) {
-        case XMLStreamReader.START_ELEMENT:
-          String elementName = reader.getLocalName();
-          if (elementName.equals("Contacts") && !contactsLoaded) {
-            loadContacts(reader);
-            contactsLoaded = true;
-          } else if (elementName.equals("Meetings") && !meetingsLoaded) {
-            loadMeetings(reader);
-            meetingsLoaded = true;
-          }
-          break;
-        case XMLStreamReader.END_ELEMENT:
-          break;
-        default:
-          break;
-      }
+    try {
+      journal.read(new Loader());
+      snapshotStale = false;
+    } catch (Exception e) {
+      System.err.println("Could not replay all of " + journal.getFile() +
+        ": " + e.getMessage());
     }
+    clean();
   }
   
-  private void loadContacts(XMLStreamReader reader) throws XMLStreamException {
-    while (reader.hasNext()) {
-      switch (reader.next()) {
-        case XMLStreamReader.START_ELEMENT:
-          String name = reader.getLocalName();
-          if (name.equals("Contact"))
-            loadContact(reader);
-          break;
-        case XMLStreamReader.END_ELEMENT:
-          return;
-        default:
-          break;
+  // Loads the previous snapshot, once the database file turned out to be
+  // corrupt.
+  private void loadPrevious() {
+    fileValid = false;
+    snapshotStale = true;
+    File previous = snapshot.getPreviousFile();
+    if (previous.exists()) {
+      try {
+        load(previous);
+        System.err.println("Loaded the previous snapshot " + previous);
+      } catch (Exception e) {
+        clear();
+        System.err.println("Could not load " + previous + ": " +
+          e.getMessage());
       }
     }
+    clean();
   }
   
-  private void loadContact(XMLStreamReader reader) throws XMLStreamException {
-    String name = null, notes = null;
-    int id = -1;
+  // Loads a snapshot, verifying its checksums. Empty files are empty
+  // snapshots. Block files are read with the block reader. XML files are
+  // read with the fast reader first and, if they have content the fast
+  // reader does not understand, read again from scratch with StAX.
+  private void load(File snapshotFile) throws Exception {
+    if (snapshotFile.length() == 0)
+      return;
     
-    try {
-      id = Integer.parseInt(reader.getAttributeValue(null, "id"));
-    } catch (Exception e) {
+    if (BlockContactsReader.isBlockFile(snapshotFile)) {
+      new BlockContactsReader().read(snapshotFile, new Loader());
       return;
     }
     
-    boolean done = false;
-    while (!done && reader.hasNext()) {
-      switch (reader.next()) {
-        case XMLStreamReader.START_ELEMENT:
-          String elementName = reader.getLocalName();
-          if (elementName.equals("Name") && name == null)
-            name = readText(reader);
-          else if (elementName.equals("Notes") && notes == null)
-            notes = readText(reader);
-          break;
-        case XMLStreamReader.END_ELEMENT:
-          done = true;
-          break;
-        default:
-          break;
+    XmlChecksum.verify(snapshotFile);
+    try {
+      new FastContactsReader(dateCodec).read(snapshotFile, new Loader());
+    } catch (IOException e) {
+      clear();
+      new StaxContactsReader(dateCodec).read(snapshotFile, new Loader());
+    }
+  }
+  
+  // Saves the notes indexes of a view, stamped with the snapshot just
+  // written so that they are not used with another one. Failing to save them
+  // only means indexing the notes again when loading.
+  private void saveTextIndexes(View current) {
+    long length = file.length();
+    long modified = file.lastModified();
+    try {
+      textIndexFile.write(output -> {
+        CheckedOutputStream checked = new CheckedOutputStream(output,
+          new CRC32C());
+        DataOutputStream data = new DataOutputStream(checked);
+        data.writeInt(TEXT_INDEX_MAGIC);
+        data.writeLong(length);
+        data.writeLong(modified);
+        current.meetingText.write(data);
+        current.contactText.write(data);
+        data.flush();
+        data.writeInt((int)checked.getChecksum().getValue());
+        data.flush();
+      }, false);
+    } catch (IOException e) {
+      textIndexFile.getFile().delete();
+      System.err.println("Could not save " + textIndexFile.getFile() + ": " +
+        e.getMessage());
+    }
+  }
+  
+  // Loads the notes indexes, if they are intact and were saved with the
+  // database file, and returns whether they were loaded.
+  private boolean loadTextIndexes() {
+    File indexFile = textIndexFile.getFile();
+    if (!indexFile.exists())
+      return false;
+    
+    try {
+      byte[] bytes = Files.readAllBytes(indexFile.toPath());
+      if (bytes.length < 24)
+        throw new IOException("index is truncated");
+      CRC32C crc = new CRC32C();
+      crc.update(bytes, 0, bytes.length - 4);
+      if ((int)crc.getValue() != ByteBuffer.wrap(bytes).getInt(
+            bytes.length - 4)) {
+        throw new IOException("checksum mismatch");
+      }
+      
+      DataInputStream input = new DataInputStream(new ByteArrayInputStream(
+        bytes, 0, bytes.length - 4));
+      if (input.readInt() != TEXT_INDEX_MAGIC)
+        throw new IOException("not an index file");
+      if (input.readLong() != file.length() ||
+          input.readLong() != file.lastModified()) {
+        return false;
+      }
+      TextIndex meetings = TextIndex.read(input);
+      TextIndex contacts = TextIndex.read(input);
+      meetingText = meetings;
+      contactText = contacts;
+      return true;
+    } catch (IOException e) {
+      System.err.println("Could not load " + indexFile + ": " +
+        e.getMessage());
+      return false;
+    }
+  }
+  
+  // Brings the notes indexes up to date with the loaded notes. Notes are
+  // only appended to, so the notes whose length is not the indexed length
+  // are the ones to index again; the notes of updated contacts were dropped
+  // from the index when replaying the journal. Sealed notes never change,
+  // so they are only read if the indexes were not loaded.
+  private void updateTextIndexes(boolean indexed) {
+    for (ContactImpl contact : contacts.values()) {
+      if (contactText.length(contact.getId()) != contact.getNotesLength())
+        contactText.set(contact.getId(), contact.getNotes());
+    }
+    for (PastMeetingImpl pastMeeting : pastMeetings.values()) {
+      if (meetingText.length(pastMeeting.getId()) !=
+          pastMeeting.getNotesLength()) {
+        meetingText.set(pastMeeting.getId(), pastMeeting.getNotes());
+      }
+    }
+    
+    if (!indexed) {
+      try {
+        indexSealedNotes();
+      } catch (IOException e) {
+        System.err.println("Could not index " + archiveDirectory + ": " +
+          e.getMessage());
       }
     }
     
-    if (id > 0 && name != null) {
+    // drop the IDs that no longer exist
+    IdBitmap sealed = archive.ids();
+    List<Integer> removed = new ArrayList<>();
+    contactText.forEachId(id -> {
+      if (!contacts.containsKey(id))
+        removed.add(id);
+    });
+    removed.forEach(contactText::remove);
+    removed.clear();
+    meetingText.forEachId(id -> {
+      if (!pastMeetings.containsKey(id) && !sealed.contains(id))
+        removed.add(id);
+    });
+    removed.forEach(meetingText::remove);
+  }
+  
+  // Indexes the notes of the sealed meetings, reading the segments one at a
+  // time.
+  private void indexSealedNotes() throws IOException {
+    for (MeetingArchive.Segment segment : archive.segments(Integer.MIN_VALUE)
+           .collect(Collectors.toList())) {
+      archive.read(segment, new ContactsReader.Handler() {
+        public void contact(int id, String name, String notes) {
+        }
+        
+        public void meeting(int id, long time, String notes,
+                            int[] contactIds, int contactCount) {
+          meeting(id, time, time, notes, contactIds, contactCount);
+        }
+        
+        public void meeting(int id, long time, long endTime, String notes,
+                            int[] contactIds, int contactCount) {
+          if (segment.getIds().contains(id) && notes != null)
+            meetingText.set(id, notes);
+        }
+      });
+    }
+  }
+  
+  // Forgets all contacts and meetings.
+  private void clear() {
+    contacts = PersistentTreeMap.empty();
+    names = BkTree.empty();
+    futureMeetings = PersistentTreeMap.empty();
+    pastMeetings = PersistentTreeMap.empty();
+    futureIndex.clear();
+    pastIndex.clear();
+    attendance = PersistentTreeMap.empty();
+    collaborations.clear();
+    schedules = PersistentTreeMap.empty();
+    recurrences = PersistentTreeMap.empty();
+    contactRecurrences = PersistentTreeMap.empty();
+    recurrenceQueue = PersistentTreeMap.empty();
+    recurrenceSpans = IntervalTree.empty();
+    nextRecurrenceTime = Long.MAX_VALUE;
+    nextContactId = 1;
+    nextMeetingId = 1;
+    archive = new MeetingArchive(archiveDirectory, zone);
+  }
+  
+  /**
+   * Adds the contacts and meetings read from the file.
+   */
+  private class Loader implements ContactsReader.Handler {
+    public void contact(int id, String name, String notes) {
+      if (id <= 0)
+        return;
       if (notes == null)
         notes = "";
       
-      // Add contact
-      contacts.put(id, new ContactImpl(id, name, notes));
+      // Add contact, or update it when replaying the journal
+      ContactImpl contact = contacts.get(id);
+      if (contact == null) {
+        putContact(new ContactImpl(id, name, notes, notesStore));
+      } else if (!contact.getName().equals(name)) {
+        replace(contact, name, notes);
+      } else if (!contact.getNotes().equals(notes)) {
+        // notes are appended to unless the contact is updated, so only the
+        // new ones are added
+        String oldNotes = contact.getNotes();
+        if (oldNotes.isEmpty())
+          contact.addNotes(notes);
+        else if (notes.startsWith(oldNotes + "\n"))
+          contact.addNotes(notes.substring(oldNotes.length() + 1));
+        else
+          replace(contact, name, notes);
+      }
       
       // Update next contact id
       id++;
       if (id > nextContactId)
         nextContactId = id;
     }
-  }
-  
-  private void loadMeetings(XMLStreamReader reader) throws XMLStreamException {
-    while (reader.hasNext()) {
-      switch (reader.next()) {
-        case XMLStreamReader.START_ELEMENT:
-          String name = reader.getLocalName();
-          if (name.equals("Meeting"))
-            loadMeeting(reader);
-          break;
-        case XMLStreamReader.END_ELEMENT:
-          break;
-        default:
-          break;
-      }
-    }
-  }
-  
-  private void loadMeeting(XMLStreamReader reader) throws XMLStreamException {
-    Set<Contact> contacts = null;
-    Calendar date = null;
-    String notes = null;
-    int id = -1;
-    
-    try {
-      id = Integer.parseInt(reader.getAttributeValue(null, "id"));
-    } catch (Exception e) {
-      return;
-    }
     
-    boolean done = false;
-    while (!done && reader.hasNext()) {
-      switch (reader.next()) {
-        case XMLStreamReader.START_ELEMENT:
-          String elementName = reader.getLocalName();
-          if (elementName.equals("Date") && date == null)
-            date = readDate(reader);
-          else if (elementName.equals("Notes") && notes == null)
-            notes = readText(reader);
-          else if (elementName.equals("Contacts") && contacts == null)
-            contacts = readMeetingContacts(reader);
-          break;
-        case XMLStreamReader.END_ELEMENT:
-          done = true;
-          break;
-        default:
-          break;
-      }
+    public void meeting(int id, long date, String notes, int[] contactIds,
+                        int contactCount) {
+      meeting(id, date, date, notes, contactIds, contactCount);
     }
     
-    if (id > 0 && date != null && contacts != null && !contacts.isEmpty()) {
+    public void meeting(int id, long date, long endDate, String notes,
+                        int[] contactIds, int contactCount) {
+      Set<Contact> meetingContacts = knownContacts(contacts, contactIds,
+        contactCount);
+      if (id <= 0 || meetingContacts.isEmpty())
+        return;
       if (notes == null)
         notes = "";
       
-      if (date.before(Calendar.getInstance())) {
+      // Replace the meeting when replaying the journal
+      FutureMeetingImpl futureMeeting = futureMeetings.get(id);
+      if (futureMeeting != null)
+        removeFutureMeeting(futureMeeting);
+      PastMeetingImpl pastMeeting = pastMeetings.get(id);
+      if (pastMeeting != null)
+        removePastMeeting(pastMeeting);
+      
+      if (date < System.currentTimeMillis()) {
         // Add past meeting
-        pastMeetings.put(id, new PastMeetingImpl(id, date, contacts, notes));
+        putPastMeeting(new PastMeetingImpl(id, date, endDate, zone,
+          meetingContacts, notes, notesStore));
       } else {
         // Add future meeting
-        futureMeetings.put(id, new FutureMeetingImpl(id, date, contacts));
+        putFutureMeeting(new FutureMeetingImpl(id, date, endDate, zone,
+          meetingContacts));
       }
       
       // Update next meeting id
@@ -793,91 +3707,361 @@ public class ContactManagerImpl implements ContactManager {
       if (id > nextMeetingId)
         nextMeetingId = id;
     }
+    
+    public void recurrence(int id, long date, Period interval, int count,
+                           int next, int[] contactIds, int contactCount) {
+      Set<Contact> seriesContacts = knownContacts(contacts, contactIds,
+        contactCount);
+      if (id <= 0 || seriesContacts.isEmpty())
+        return;
+      
+      // Add or advance the series, or drop it once finished
+      putRecurrence(new RecurringMeeting(id, date, zone, interval, count,
+        next, seriesContacts));
+      
+      // Update next meeting id past the occurrences
+      if (id + (long)count > nextMeetingId)
+        nextMeetingId = id + count;
+    }
+    
+    public void contactRemoved(int id) {
+      ContactImpl contact = contacts.get(id);
+      if (contact != null) {
+        replaceAttendees(Set.of(id), null);
+        dropContact(contact);
+      }
+      
+      // Keep the ID of the removed contact used until the next snapshot,
+      // which saves the next IDs
+      if (id >= nextContactId)
+        nextContactId = id + 1;
+    }
+    
+    public void meetingRemoved(int id) {
+      FutureMeetingImpl futureMeeting = futureMeetings.get(id);
+      if (futureMeeting != null)
+        removeFutureMeeting(futureMeeting);
+      PastMeetingImpl pastMeeting = pastMeetings.get(id);
+      if (pastMeeting != null)
+        removePastMeeting(pastMeeting);
+      // the archive is loaded afterwards and skips the meeting if sealed
+      archive.remove(id);
+      
+      // Keep the ID of the removed meeting used until the next snapshot,
+      // which saves the next IDs
+      if (id >= nextMeetingId)
+        nextMeetingId = id + 1;
+    }
+    
+    public void nextIds(int contactId, int meetingId) {
+      // The IDs of the records removed before the snapshot stay used
+      if (contactId > nextContactId)
+        nextContactId = contactId;
+      if (meetingId > nextMeetingId)
+        nextMeetingId = meetingId;
+    }
+    
+    // Replaces a contact updated since the snapshot. Its notes may be the
+    // length of the indexed ones without extending them, so they are
+    // indexed again.
+    private void replace(ContactImpl contact, String name, String notes) {
+      contactText.remove(contact.getId());
+      putContact(new ContactImpl(contact.getId(), name, notes, notesStore));
+    }
   }
   
-  // Reads element characters.
-  private String readText(XMLStreamReader reader) throws XMLStreamException {
-    StringBuilder result = new StringBuilder();
-    boolean done = false;
+  /**
+   * Indexes the sealed meetings read from the archive, whose notes are left
+   * in the archive.
+   */
+  private class SealedLoader implements ContactsReader.Handler {
+    public void contact(int id, String name, String notes) {
+    }
+    
+    public void meeting(int id, long date, String notes, int[] contactIds,
+                        int contactCount) {
+      meeting(id, date, date, notes, contactIds, contactCount);
+    }
     
-    while (!done && reader.hasNext()) {
-      switch (reader.next()) {
-        case XMLStreamReader.CHARACTERS:
-          result.append(reader.getText());
-          break;
-        case XMLStreamReader.END_ELEMENT:
-          done = true;
-          break;
-        default:
-          break;
+    public void meeting(int id, long date, long endDate, String notes,
+                        int[] contactIds, int contactCount) {
+      // the copy in the database file is newer
+      if (pastMeetings.containsKey(id) || futureMeetings.containsKey(id)) {
+        archive.supersede(id);
+        return;
+      }
+      Set<Contact> meetingContacts = knownContacts(contacts, contactIds,
+        contactCount);
+      if (meetingContacts.isEmpty()) {
+        archive.remove(id);
+        return;
       }
+      
+      // only the attendance and collaborations of the meeting are kept
+      PastMeetingImpl pastMeeting = new PastMeetingImpl(id, date, endDate,
+        zone, meetingContacts, "", null);
+      addAttendance(pastMeeting);
+      collaborations.add(pastMeeting);
+      
+      // Update next meeting id
+      if (id >= nextMeetingId)
+        nextMeetingId = id + 1;
+    }
+    
+    public void nextIds(int contactId, int meetingId) {
+      // The IDs of the sealed meetings removed since stay used
+      if (meetingId > nextMeetingId)
+        nextMeetingId = meetingId;
     }
-    return result.toString();
   }
   
-  // Reads element as Calendar.
-  private Calendar readDate(XMLStreamReader reader) throws XMLStreamException {
-    SimpleDateFormat formatter = new SimpleDateFormat("dd-MM-yyyy HH:mm:ss");
-    try {
-      Calendar date = Calendar.getInstance();
-      date.setTime(formatter.parse(readText(reader)));
-      return date;
-    } catch (Exception e) {
-      return null;
+  /**
+   * The busy intervals of a contact, with the position of the next one, in
+   * the order of the start of the next one.
+   */
+  private static class Busy implements Comparable<Busy> {
+    /**
+     * The meetings with an end date, sorted by time.
+     */
+    final List<MeetingImpl> meetings;
+    
+    /**
+     * The index of the next meeting.
+     */
+    int index = 0;
+    
+    // Creates busy intervals.
+    Busy(List<MeetingImpl> meetings) {
+      this.meetings = meetings;
+    }
+    
+    public int compareTo(Busy other) {
+      return Long.compare(meetings.get(index).getTime(),
+        other.meetings.get(other.index).getTime());
     }
   }
   
-  // Reads the set of contacts for a meeting.
-  private Set<Contact> readMeetingContacts(XMLStreamReader reader)
-    throws XMLStreamException
+  /**
+   * A chronological source of meetings, with its next meeting, in the order
+   * of its next meeting.
+   */
+  private static class Cursor<T extends MeetingImpl>
+    implements Comparable<Cursor<T>>
   {
-    Set<Contact> contacts = new HashSet<>();
+    /**
+     * The meetings after the next one.
+     */
+    final Iterator<T> meetings;
     
-    boolean done = false;
-    while (!done && reader.hasNext()) {
-      switch (reader.next()) {
-        case XMLStreamReader.CHARACTERS:
-          contacts.add(readMeetingContact(reader));
-          break;
-        case XMLStreamReader.END_ELEMENT:
-          done = true;
-          break;
-        default:
-          break;
-      }
+    /**
+     * The next meeting.
+     */
+    T meeting;
+    
+    // Creates a cursor on a source with at least one meeting.
+    Cursor(Iterator<T> meetings) {
+      this.meetings = meetings;
+      this.meeting = meetings.next();
+    }
+    
+    // Moves to the meeting after the next one, if there is one.
+    boolean advance() {
+      if (!meetings.hasNext())
+        return false;
+      meeting = meetings.next();
+      return true;
+    }
+    
+    public int compareTo(Cursor<T> other) {
+      int comparison = Long.compare(meeting.getTime(),
+        other.meeting.getTime());
+      return (comparison != 0 ? comparison :
+        Integer.compare(meeting.getId(), other.meeting.getId()));
     }
-    return contacts;
   }
   
-  // Reads one contact in a meeting.
-  private Contact readMeetingContact(XMLStreamReader reader)
-    throws XMLStreamException
-  {
-    String string = null;
-  
-    boolean done = false;
-    while (!done && reader.hasNext()) {
-      switch (reader.next()) {
-        case XMLStreamReader.START_ELEMENT:
-          String elementName = reader.getLocalName();
-          if (elementName.equals("Id"))
-            string = readText(reader);
-          break;
-        case XMLStreamReader.END_ELEMENT:
-          done = true;
-          break;
-        default:
-          break;
-      }
+  /**
+   * An immutable view of the data at some point, published on each change.
+   */
+  static class View {
+    /**
+     * The contacts.
+     */
+    final PersistentTreeMap<Integer, ContactImpl> contacts;
+    
+    /**
+     * The words of the contact names.
+     */
+    final BkTree names;
+    
+    /**
+     * The future meetings.
+     */
+    final PersistentTreeMap<Integer, FutureMeetingImpl> futureMeetings;
+    
+    /**
+     * The past meetings.
+     */
+    final PersistentTreeMap<Integer, PastMeetingImpl> pastMeetings;
+    
+    /**
+     * The chronological index of future meetings.
+     */
+    final MeetingIndex<FutureMeetingImpl> futureIndex;
+    
+    /**
+     * The chronological index of past meetings.
+     */
+    final MeetingIndex<PastMeetingImpl> pastIndex;
+    
+    /**
+     * The IDs of the past meetings of each contact.
+     */
+    final PersistentTreeMap<Integer, IdBitmap> attendance;
+    
+    /**
+     * The graph of the contacts attending past meetings together.
+     */
+    final CollaborationGraph collaborations;
+    
+    /**
+     * The meetings with an end date of each contact, by time interval.
+     */
+    final PersistentTreeMap<Integer, IntervalTree<MeetingImpl>> schedules;
+    
+    /**
+     * The series of recurring meetings, by the ID of their first occurrence.
+     */
+    final PersistentTreeMap<Integer, RecurringMeeting> recurrences;
+    
+    /**
+     * The IDs of the first occurrences of the series of each contact.
+     */
+    final PersistentTreeMap<Integer, IdBitmap> contactRecurrences;
+    
+    /**
+     * The series, by the interval from their next occurrence to their last
+     * one.
+     */
+    final IntervalTree<RecurringMeeting> recurrenceSpans;
+    
+    /**
+     * The time of the next occurrence of any series.
+     */
+    final long nextRecurrenceTime;
+    
+    /**
+     * The inverted index of the notes of past meetings.
+     */
+    final TextIndex meetingText;
+    
+    /**
+     * The inverted index of the notes of contacts.
+     */
+    final TextIndex contactText;
+    
+    /**
+     * The generation of the last change to the meetings of each contact.
+     */
+    final PersistentTreeMap<Integer, Long> contactGenerations;
+    
+    /**
+     * The generation of the last change to the meetings held at each time.
+     */
+    final PersistentTreeMap<Long, Long> timeGenerations;
+    
+    /**
+     * The generation of the last change to the series.
+     */
+    final long recurrenceGeneration;
+    
+    /**
+     * The archive of sealed months.
+     */
+    final MeetingArchive archive;
+    
+    /**
+     * The generation of the contacts of the sealed meetings.
+     */
+    final long archiveGeneration;
+    
+    /**
+     * The next contact ID.
+     */
+    final int nextContactId;
+    
+    /**
+     * The next meeting ID.
+     */
+    final int nextMeetingId;
+    
+    /**
+     * Whether dates are saved in the precise format.
+     */
+    final boolean preciseDates;
+    
+    /**
+     * The number of records per compressed block or 0 to save as XML.
+     */
+    final int blockSize;
+    
+    // Takes a view of the data of a contact manager.
+    View(ContactManagerImpl manager) {
+      this.contacts = manager.contacts;
+      this.names = manager.names;
+      this.futureMeetings = manager.futureMeetings;
+      this.pastMeetings = manager.pastMeetings;
+      this.futureIndex = manager.futureIndex.snapshot();
+      this.pastIndex = manager.pastIndex.snapshot();
+      this.attendance = manager.attendance;
+      this.collaborations = manager.collaborations.snapshot();
+      this.schedules = manager.schedules;
+      this.recurrences = manager.recurrences;
+      this.contactRecurrences = manager.contactRecurrences;
+      this.recurrenceSpans = manager.recurrenceSpans;
+      this.nextRecurrenceTime = manager.nextRecurrenceTime;
+      this.meetingText = manager.meetingText.snapshot();
+      this.contactText = manager.contactText.snapshot();
+      this.contactGenerations = manager.contactGenerations;
+      this.timeGenerations = manager.timeGenerations;
+      this.recurrenceGeneration = manager.recurrenceGeneration;
+      this.archive = manager.archive.snapshot();
+      this.archiveGeneration = manager.archiveGeneration;
+      this.nextContactId = manager.nextContactId;
+      this.nextMeetingId = manager.nextMeetingId;
+      this.preciseDates = manager.preciseDates;
+      this.blockSize = manager.blockSize;
     }
     
-    if (string != null) {
-      try {
-        int id = Integer.parseInt(reader.getAttributeValue(null, "id"));
-        return contacts.get(id);
-      } catch (Exception e) {
+    // Returns the generation of the meetings of a contact.
+    long contactGeneration(int id) {
+      Long stamp = contactGenerations.get(id);
+      return (stamp == null ? 0 : stamp);
+    }
+    
+    // Returns the generation of the meetings held at a time.
+    long timeGeneration(long time) {
+      Long stamp = timeGenerations.get(time);
+      return (stamp == null ? 0 : stamp);
+    }
+    
+    // Returns the time of the first future meeting or occurrence, once
+    // passed the view is out of date, or Long.MAX_VALUE if there is none.
+    long nextPromotion() {
+      FutureMeetingImpl first = futureIndex.first();
+      return Math.min(first == null ? Long.MAX_VALUE : first.getTime(),
+        nextRecurrenceTime);
+    }
+    
+    // Returns the occurrence of a series with an ID, or null if the ID is
+    // not of an occurrence yet to take place.
+    FutureMeetingImpl occurrence(int id) {
+      RecurringMeeting series = recurrences.floorValue(id);
+      if (series == null || !series.contains(id) ||
+          id - series.getId() < series.getNext()) {
+        return null;
       }
+      return series.occurrence(id - series.getId());
     }
-    return null;
   }
 }
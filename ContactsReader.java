@@ -0,0 +1,139 @@
+import java.io.File;
+import java.io.IOException;
+import java.time.Period;
+
+/**
+ * A reader of the contact manager XML file.
+ *
+ * The file has the following structure:
+ *
+ * <pre>
+ * &lt;ContactManager nextContactId="2" nextMeetingId="12"&gt;
+ *   &lt;Contacts&gt;
+ *     &lt;Contact id="1"&gt;&lt;Name&gt;...&lt;/Name&gt;&lt;Notes&gt;...&lt;/Notes&gt;&lt;/Contact&gt;
+ *   &lt;/Contacts&gt;
+ *   &lt;Meetings&gt;
+ *     &lt;Meeting id="1"&gt;
+ *       &lt;Date&gt;...&lt;/Date&gt;&lt;End&gt;...&lt;/End&gt;
+ *       &lt;Notes&gt;...&lt;/Notes&gt;
+ *       &lt;Contacts&gt;&lt;Id&gt;1&lt;/Id&gt;&lt;/Contacts&gt;
+ *     &lt;/Meeting&gt;
+ *     &lt;Recurrence id="2"&gt;
+ *       &lt;Date&gt;...&lt;/Date&gt;&lt;Interval&gt;P1W&lt;/Interval&gt;
+ *       &lt;Count&gt;10&lt;/Count&gt;&lt;Next&gt;0&lt;/Next&gt;
+ *       &lt;Contacts&gt;&lt;Id&gt;1&lt;/Id&gt;&lt;/Contacts&gt;
+ *     &lt;/Recurrence&gt;
+ *   &lt;/Meetings&gt;
+ * &lt;/ContactManager&gt;
+ * </pre>
+ *
+ * The End element is only written for meetings with an end date. A
+ * Recurrence element is a series of meetings held at an ISO-8601 interval,
+ * whose occurrences that took place are written as Meeting elements. The
+ * attributes of the root element are the next IDs to assign, which older
+ * files don't have.
+ *
+ * Readers report each contact and meeting to a handler, in file order.
+ */
+public interface ContactsReader {
+  /**
+   * Receives the contacts and meetings read from a file.
+   */
+  interface Handler {
+    /**
+     * Receives a contact.
+     *
+     * @param id The contact ID.
+     * @param name The contact name.
+     * @param notes The contact notes or null if there are none.
+     */
+    void contact(int id, String name, String notes);
+
+    /**
+     * Receives a meeting.
+     *
+     * @param id The meeting ID.
+     * @param time The meeting time in milliseconds.
+     * @param notes The meeting notes or null if there are none.
+     * @param contactIds The IDs of the meeting contacts; the array may be
+     *        reused once this method returns.
+     * @param contactCount The number of contact IDs.
+     */
+    void meeting(int id, long time, String notes, int[] contactIds,
+                 int contactCount);
+
+    /**
+     * Receives a meeting with its end time. By default the end time is
+     * dropped, so handlers keeping end times must override this method.
+     *
+     * @param id The meeting ID.
+     * @param time The meeting time in milliseconds.
+     * @param endTime The meeting end time in milliseconds, or the meeting
+     *        time if the meeting has no end date.
+     * @param notes The meeting notes or null if there are none.
+     * @param contactIds The IDs of the meeting contacts; the array may be
+     *        reused once this method returns.
+     * @param contactCount The number of contact IDs.
+     */
+    default void meeting(int id, long time, long endTime, String notes,
+                         int[] contactIds, int contactCount) {
+      meeting(id, time, notes, contactIds, contactCount);
+    }
+
+    /**
+     * Receives a series of recurring meetings. By default the series is
+     * dropped, so handlers keeping series must override this method.
+     *
+     * @param id The ID of the first occurrence.
+     * @param time The time of the first occurrence in milliseconds.
+     * @param interval The interval between occurrences.
+     * @param count The number of occurrences.
+     * @param next The index of the next occurrence, yet to take place.
+     * @param contactIds The IDs of the contacts; the array may be reused
+     *        once this method returns.
+     * @param contactCount The number of contact IDs.
+     * @see RecurringMeeting
+     */
+    default void recurrence(int id, long time, Period interval, int count,
+                            int next, int[] contactIds, int contactCount) {
+    }
+
+    /**
+     * Receives the removal of a contact, which only journals record. By
+     * default the removal is ignored.
+     *
+     * @param id The contact ID.
+     */
+    default void contactRemoved(int id) {
+    }
+
+    /**
+     * Receives the removal of a meeting, which only journals record. By
+     * default the removal is ignored.
+     *
+     * @param id The meeting ID.
+     */
+    default void meetingRemoved(int id) {
+    }
+
+    /**
+     * Receives the next IDs to assign, which snapshots record so that the
+     * IDs of removed contacts and meetings are never assigned again. By
+     * default the IDs are ignored.
+     *
+     * @param contactId The next contact ID or 0 if unknown.
+     * @param meetingId The next meeting ID or 0 if unknown.
+     */
+    default void nextIds(int contactId, int meetingId) {
+    }
+  }
+
+  /**
+   * Reads a file.
+   *
+   * @param file The file.
+   * @param handler The handler receiving the contacts and meetings.
+   * @throws IOException If the file can't be read or is malformed.
+   */
+  void read(File file, Handler handler) throws IOException;
+}
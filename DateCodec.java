@@ -0,0 +1,373 @@
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.zone.ZoneRules;
+
+/**
+ * Encodes and decodes meeting dates as text.
+ *
+ * Two formats are supported:
+ *   - the legacy format "dd-MM-yyyy HH:mm:ss", in the codec time zone, which
+ *     drops the milliseconds;
+ *   - the precise ISO-8601 format "yyyy-MM-ddTHH:mm:ss.SSSZ", in UTC.
+ *
+ * Dates are converted from and to epoch milliseconds with plain digit
+ * arithmetic, so a codec is thread-safe and can be reused for any number of
+ * dates. Decoding detects the format, so files written with either format can
+ * be read back.
+ */
+public class DateCodec {
+  /**
+   * The number of milliseconds in a day.
+   */
+  private static final long MILLIS_PER_DAY = 86400000L;
+
+  /**
+   * The time zone of the legacy format.
+   */
+  private final ZoneId zone;
+
+  /**
+   * The rules of the time zone.
+   */
+  private final ZoneRules rules;
+
+  /**
+   * Whether the time zone has a fixed offset.
+   */
+  private final boolean fixed;
+
+  /**
+   * The offset in milliseconds of the time zone, if it is fixed.
+   */
+  private final long fixedOffset;
+
+  /**
+   * Creates a codec using the system default time zone.
+   */
+  public DateCodec() {
+    this(ZoneId.systemDefault());
+  }
+
+  /**
+   * Creates a codec using the specified time zone for the legacy format.
+   *
+   * @param zone The time zone.
+   * @throws NullPointerException If the time zone is null.
+   */
+  public DateCodec(ZoneId zone) {
+    if (zone == null)
+      throw new NullPointerException("zone must not be null");
+
+    this.zone = zone;
+    this.rules = zone.getRules();
+    this.fixed = rules.isFixedOffset();
+    this.fixedOffset = rules.getOffset(Instant.EPOCH).getTotalSeconds() *
+      1000L;
+  }
+
+  /**
+   * Encodes a time in the legacy format "dd-MM-yyyy HH:mm:ss".
+   *
+   * @param time The time in milliseconds.
+   * @return The encoded date.
+   */
+  public String format(long time) {
+    long local = time + offset(time);
+    long days = Math.floorDiv(local, MILLIS_PER_DAY);
+    int millisOfDay = (int)Math.floorMod(local, MILLIS_PER_DAY);
+    int[] date = civil(days);
+
+    StringBuilder builder = new StringBuilder(19);
+    append(builder, date[2], 2).append('-');
+    append(builder, date[1], 2).append('-');
+    append(builder, date[0], 4).append(' ');
+    appendTime(builder, millisOfDay);
+    return builder.toString();
+  }
+
+  /**
+   * Encodes a time in the precise format "yyyy-MM-ddTHH:mm:ss.SSSZ".
+   *
+   * @param time The time in milliseconds.
+   * @return The encoded date.
+   */
+  public String formatPrecise(long time) {
+    long days = Math.floorDiv(time, MILLIS_PER_DAY);
+    int millisOfDay = (int)Math.floorMod(time, MILLIS_PER_DAY);
+    int[] date = civil(days);
+
+    StringBuilder builder = new StringBuilder(24);
+    append(builder, date[0], 4).append('-');
+    append(builder, date[1], 2).append('-');
+    append(builder, date[2], 2).append('T');
+    appendTime(builder, millisOfDay).append('.');
+    append(builder, millisOfDay % 1000, 3).append('Z');
+    return builder.toString();
+  }
+
+  /**
+   * Decodes a date in either format.
+   *
+   * @param text The encoded date.
+   * @return The time in milliseconds.
+   * @throws IllegalArgumentException If the text is not a valid date.
+   * @throws NullPointerException If the text is null.
+   */
+  public long parse(CharSequence text) {
+    Parser parser = new Parser(text);
+    return parser.parse();
+  }
+
+  /**
+   * Decodes a date in either format from ASCII bytes.
+   *
+   * @param bytes The bytes.
+   * @param offset The offset of the encoded date.
+   * @param length The length of the encoded date.
+   * @return The time in milliseconds.
+   * @throws IllegalArgumentException If the bytes are not a valid date.
+   */
+  public long parse(byte[] bytes, int offset, int length) {
+    Parser parser = new Parser(bytes, offset, length);
+    return parser.parse();
+  }
+
+  // Returns the offset in milliseconds of the time zone at an instant.
+  private long offset(long time) {
+    if (fixed)
+      return fixedOffset;
+    return rules.getOffset(Instant.ofEpochMilli(time)).getTotalSeconds() *
+      1000L;
+  }
+
+  // Converts a local date and time in the time zone to epoch milliseconds.
+  private long toEpochMillis(int year, int month, int day, int hour,
+                             int minute, int second, int millis) {
+    long local = days(year, month, day) * MILLIS_PER_DAY + hour * 3600000L +
+      minute * 60000L + second * 1000L + millis;
+    if (fixed)
+      return local - fixedOffset;
+
+    // let java.time resolve gaps and overlaps, like Calendar does: times in
+    // a gap are moved forward and times in an overlap use the later offset
+    LocalDateTime dateTime = LocalDateTime.of(year, month, day, hour, minute,
+      second, millis * 1000000);
+    return dateTime.atZone(zone).withLaterOffsetAtOverlap().toInstant()
+      .toEpochMilli();
+  }
+
+  // Appends the "HH:mm:ss" time of day.
+  private static StringBuilder appendTime(StringBuilder builder,
+                                          int millisOfDay) {
+    int seconds = millisOfDay / 1000;
+    append(builder, seconds / 3600, 2).append(':');
+    append(builder, seconds / 60 % 60, 2).append(':');
+    return append(builder, seconds % 60, 2);
+  }
+
+  // Appends a number padded with zeros to a minimum number of digits.
+  private static StringBuilder append(StringBuilder builder, int value,
+                                      int digits) {
+    if (value < 0) {
+      builder.append('-');
+      value = -value;
+    }
+    for (int limit = 10; digits > 1; digits--, limit *= 10) {
+      if (value < limit)
+        builder.append('0');
+    }
+    return builder.append(value);
+  }
+
+  // Returns the number of days since the epoch of a date (proleptic
+  // Gregorian calendar).
+  private static long days(long year, int month, int day) {
+    year -= (month <= 2 ? 1 : 0);
+    long era = Math.floorDiv(year, 400);
+    long yearOfEra = year - era * 400;
+    long dayOfYear = (153 * (month + (month > 2 ? -3 : 9)) + 2) / 5 + day - 1;
+    long dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 +
+      dayOfYear;
+    return era * 146097 + dayOfEra - 719468;
+  }
+
+  // Returns the {year, month, day} of a number of days since the epoch.
+  private static int[] civil(long days) {
+    days += 719468;
+    long era = Math.floorDiv(days, 146097);
+    long dayOfEra = days - era * 146097;
+    long yearOfEra = (dayOfEra - dayOfEra / 1460 + dayOfEra / 36524 -
+      dayOfEra / 146096) / 365;
+    long dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 -
+      yearOfEra / 100);
+    long monthIndex = (5 * dayOfYear + 2) / 153;
+    int day = (int)(dayOfYear - (153 * monthIndex + 2) / 5 + 1);
+    int month = (int)(monthIndex < 10 ? monthIndex + 3 : monthIndex - 9);
+    long year = yearOfEra + era * 400 + (month <= 2 ? 1 : 0);
+    return new int[] { (int)year, month, day };
+  }
+
+  // Returns the number of days in a month.
+  private static int lengthOfMonth(int year, int month) {
+    switch (month) {
+      case 2:
+        boolean leap = (year % 4 == 0 && (year % 100 != 0 || year % 400 == 0));
+        return (leap ? 29 : 28);
+      case 4:
+      case 6:
+      case 9:
+      case 11:
+        return 30;
+      default:
+        return 31;
+    }
+  }
+
+  /**
+   * Parses a date from characters or ASCII bytes.
+   */
+  private final class Parser {
+    private final CharSequence text;
+
+    private final byte[] bytes;
+
+    private int position;
+
+    private int end;
+
+    Parser(CharSequence text) {
+      this.text = text;
+      this.bytes = null;
+      this.position = 0;
+      this.end = text.length();
+      trim();
+    }
+
+    Parser(byte[] bytes, int offset, int length) {
+      if (offset < 0 || length < 0 || offset + length > bytes.length)
+        throw new IllegalArgumentException("date must be inside the bytes");
+
+      this.text = null;
+      this.bytes = bytes;
+      this.position = offset;
+      this.end = offset + length;
+      trim();
+    }
+
+    long parse() {
+      // the legacy format starts with the 2 digits day
+      if (end - position > 2 && charAt(position + 2) == '-')
+        return parseLegacy();
+      return parsePrecise();
+    }
+
+    // Parses "dd-MM-yyyy HH:mm:ss".
+    private long parseLegacy() {
+      int day = number(2);
+      expect('-');
+      int month = number(2);
+      expect('-');
+      int year = number(4, 9);
+      expect(' ');
+      int hour = number(2);
+      expect(':');
+      int minute = number(2);
+      expect(':');
+      int second = number(2);
+      done();
+
+      check(year, month, day, hour, minute, second);
+      return toEpochMillis(year, month, day, hour, minute, second, 0);
+    }
+
+    // Parses "yyyy-MM-ddTHH:mm:ss[.SSS](Z|+hh:mm|-hh:mm)".
+    private long parsePrecise() {
+      int year = number(4, 9);
+      expect('-');
+      int month = number(2);
+      expect('-');
+      int day = number(2);
+      expect('T');
+      int hour = number(2);
+      expect(':');
+      int minute = number(2);
+      expect(':');
+      int second = number(2);
+
+      int millis = 0;
+      if (position < end && charAt(position) == '.') {
+        position++;
+        millis = number(3);
+      }
+
+      long offset = 0;
+      char sign = (position < end ? charAt(position++) : 0);
+      if (sign == '+' || sign == '-') {
+        int offsetHours = number(2);
+        expect(':');
+        int offsetMinutes = number(2);
+        offset = (offsetHours * 3600000L + offsetMinutes * 60000L) *
+          (sign == '-' ? -1 : 1);
+      } else if (sign != 'Z') {
+        throw new IllegalArgumentException("date must have a time zone");
+      }
+      done();
+
+      check(year, month, day, hour, minute, second);
+      return days(year, month, day) * MILLIS_PER_DAY + hour * 3600000L +
+        minute * 60000L + second * 1000L + millis - offset;
+    }
+
+    private void trim() {
+      while (position < end && Character.isWhitespace(charAt(position)))
+        position++;
+      while (end > position && Character.isWhitespace(charAt(end - 1)))
+        end--;
+    }
+
+    private char charAt(int index) {
+      return (text != null ? text.charAt(index) : (char)(bytes[index] & 0xff));
+    }
+
+    private int number(int digits) {
+      return number(digits, digits);
+    }
+
+    private int number(int minDigits, int maxDigits) {
+      int value = 0;
+      int count = 0;
+      while (position < end && count < maxDigits) {
+        char c = charAt(position);
+        if (c < '0' || c > '9')
+          break;
+        value = value * 10 + (c - '0');
+        position++;
+        count++;
+      }
+      if (count < minDigits)
+        throw new IllegalArgumentException("date must have a number here");
+      return value;
+    }
+
+    private void expect(char c) {
+      if (position >= end || charAt(position) != c)
+        throw new IllegalArgumentException("date must have '" + c + "' here");
+      position++;
+    }
+
+    private void done() {
+      if (position != end)
+        throw new IllegalArgumentException("date must not have extra text");
+    }
+
+    private void check(int year, int month, int day, int hour, int minute,
+                       int second) {
+      if (month < 1 || month > 12 || day < 1 ||
+          day > lengthOfMonth(year, month) || hour > 23 || minute > 59 ||
+          second > 59) {
+        throw new IllegalArgumentException("date must be valid");
+      }
+    }
+  }
+}
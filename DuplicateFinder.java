@@ -0,0 +1,227 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * A batch job finding the contacts that are likely duplicates of each other,
+ * by MinHash locality-sensitive hashing over their names and notes.
+ *
+ * Each contact is reduced to a set of features: the three-letter shingles
+ * of its normalised name (lower-cased words separated by single spaces)
+ * and the words of its notes. Its signature holds, for each of bands * rows
+ * hash functions, the least hash of its features, so two signatures agree
+ * on a hash with a probability equal to the Jaccard similarity of the
+ * feature sets. Contacts whose signatures agree on all the rows of a band
+ * fall in the same bucket of that band, and each contact in a bucket is
+ * compared with the first one only, so the job takes time linear in the
+ * number of contacts rather than comparing every pair. Pairs whose
+ * estimated similarity reaches the threshold are joined into clusters.
+ *
+ * Signatures and bands are computed in parallel on a fork/join pool. The
+ * clusters are candidates: some duplicates may be missed and some clusters
+ * may hold distinct people with similar names, so they are meant to be
+ * reviewed before merging.
+ */
+public class DuplicateFinder {
+  /**
+   * The pool running the job.
+   */
+  private final ForkJoinPool pool;
+
+  /**
+   * The number of bands of the signatures.
+   */
+  private final int bands;
+
+  /**
+   * The number of hashes per band.
+   */
+  private final int rows;
+
+  /**
+   * The least estimated similarity of duplicates.
+   */
+  private final double threshold;
+
+  /**
+   * Creates a finder running in the common fork/join pool, with 20 bands
+   * of 5 hashes and a threshold of 0.6.
+   */
+  public DuplicateFinder() {
+    this(ForkJoinPool.commonPool(), 20, 5, 0.6);
+  }
+
+  /**
+   * Creates a finder.
+   *
+   * More bands find more duplicates and more rows per band find fewer
+   * false candidates: a pair of similarity s shares a bucket with a
+   * probability of 1 - (1 - s^rows)^bands.
+   *
+   * @param pool The pool running the job.
+   * @param bands The number of bands of the signatures.
+   * @param rows The number of hashes per band.
+   * @param threshold The least estimated similarity of duplicates, between
+   *        0 and 1.
+   * @throws IllegalArgumentException If bands or rows is not positive or
+   *         the threshold is not between 0 and 1.
+   * @throws NullPointerException If the pool is null.
+   */
+  public DuplicateFinder(ForkJoinPool pool, int bands, int rows,
+                         double threshold) {
+    if (pool == null)
+      throw new NullPointerException("pool must not be null");
+    else if (bands <= 0 || rows <= 0)
+      throw new IllegalArgumentException("bands and rows must be positive");
+    else if (!(threshold >= 0 && threshold <= 1))
+      throw new IllegalArgumentException("threshold must be between 0 and 1");
+
+    this.pool = pool;
+    this.bands = bands;
+    this.rows = rows;
+    this.threshold = threshold;
+  }
+
+  /**
+   * Finds the clusters of likely duplicates among contacts.
+   *
+   * @param contacts The contacts.
+   * @return The clusters of two or more contacts, each sorted by ID, sorted
+   *         by the ID of their first contact (can be empty).
+   * @throws NullPointerException If the contacts or any contact is null.
+   */
+  public List<Set<Contact>> find(Collection<? extends Contact> contacts) {
+    Contact[] sorted = contacts.toArray(new Contact[0]);
+    Arrays.sort(sorted, Comparator.comparingInt(Contact::getId));
+
+    int[][] signatures = pool.submit(() -> IntStream.range(0, sorted.length)
+      .parallel()
+      .mapToObj(i -> signature(sorted[i]))
+      .toArray(int[][]::new)).join();
+    List<int[]> pairs = pool.submit(() -> IntStream.range(0, bands)
+      .parallel()
+      .mapToObj(band -> candidates(signatures, band))
+      .flatMap(List::stream)
+      .collect(Collectors.toList())).join();
+
+    // join the pairs into clusters, rooted at their lowest index
+    int[] parents = new int[sorted.length];
+    for (int i = 0; i < parents.length; i++)
+      parents[i] = i;
+    for (int[] pair : pairs) {
+      int root1 = root(parents, pair[0]);
+      int root2 = root(parents, pair[1]);
+      parents[Math.max(root1, root2)] = Math.min(root1, root2);
+    }
+
+    Map<Integer, Set<Contact>> clusters = new TreeMap<>();
+    for (int i = 0; i < sorted.length; i++) {
+      clusters.computeIfAbsent(root(parents, i), root -> new LinkedHashSet<>())
+        .add(sorted[i]);
+    }
+    List<Set<Contact>> duplicates = new ArrayList<>();
+    for (Set<Contact> cluster : clusters.values()) {
+      if (cluster.size() > 1)
+        duplicates.add(cluster);
+    }
+    return duplicates;
+  }
+
+  /**
+   * Returns the features of a contact: the shingles of its normalised name
+   * and the words of its notes.
+   *
+   * @param contact The contact.
+   * @return The hashes of the features.
+   */
+  static int[] features(Contact contact) {
+    String name = " " + String.join(" ", TextIndex.terms(contact.getName())) +
+      " ";
+    List<String> words = (contact.getNotes() == null ? List.of() :
+      TextIndex.terms(contact.getNotes()));
+
+    int[] features = new int[Math.max(name.length() - 2, 0) + words.size()];
+    int count = 0;
+    for (int i = 0; i + 3 <= name.length(); i++)
+      features[count++] = name.substring(i, i + 3).hashCode();
+    // words are told apart from shingles of the same letters
+    for (String word : words)
+      features[count++] = ("\0" + word).hashCode();
+    return features;
+  }
+
+  // Returns the MinHash signature of a contact, or null if it has no
+  // features.
+  private int[] signature(Contact contact) {
+    int[] features = features(contact);
+    if (features.length == 0)
+      return null;
+
+    int[] signature = new int[bands * rows];
+    Arrays.fill(signature, Integer.MAX_VALUE);
+    for (int feature : features) {
+      for (int i = 0; i < signature.length; i++)
+        signature[i] = Math.min(signature[i], hash(feature, i));
+    }
+    return signature;
+  }
+
+  // Returns the pairs of contacts sharing a bucket of a band whose
+  // estimated similarity reaches the threshold. Each contact is compared
+  // with the first contact of its bucket.
+  private List<int[]> candidates(int[][] signatures, int band) {
+    Map<Long, Integer> buckets = new HashMap<>();
+    List<int[]> pairs = new ArrayList<>();
+    for (int i = 0; i < signatures.length; i++) {
+      if (signatures[i] == null)
+        continue;
+
+      long key = 1;
+      for (int j = band * rows; j < (band + 1) * rows; j++)
+        key = key * 0x9e3779b97f4a7c15L + signatures[i][j];
+      Integer first = buckets.putIfAbsent(key, i);
+      if (first != null &&
+          similarity(signatures[first], signatures[i]) >= threshold) {
+        pairs.add(new int[] {first, i});
+      }
+    }
+    return pairs;
+  }
+
+  // Returns the estimated Jaccard similarity of two signatures.
+  private static double similarity(int[] signature1, int[] signature2) {
+    int equal = 0;
+    for (int i = 0; i < signature1.length; i++) {
+      if (signature1[i] == signature2[i])
+        equal++;
+    }
+    return (double)equal / signature1.length;
+  }
+
+  // Returns hash function i of a feature, by mixing both into 64 bits.
+  private static int hash(int feature, int i) {
+    long x = (feature & 0xffffffffL) | ((long)i << 32);
+    x = (x ^ (x >>> 33)) * 0xff51afd7ed558ccdL;
+    x = (x ^ (x >>> 33)) * 0xc4ceb9fe1a85ec53L;
+    return (int)(x ^ (x >>> 33));
+  }
+
+  // Returns the root of a cluster, halving the path to it.
+  private static int root(int[] parents, int i) {
+    while (parents[i] != i) {
+      parents[i] = parents[parents[i]];
+      i = parents[i];
+    }
+    return i;
+  }
+}
@@ -0,0 +1,153 @@
+/**
+ * When the changes made to a contact manager are saved to disk.
+ *
+ * A policy is one of:
+ *   - manual: changes are saved when flush() is called, which is the
+ *     default;
+ *   - every write: changes are saved before each change returns;
+ *   - group commit: a writer thread saves the changes in batches, every
+ *     interval or as soon as enough changes are pending, with one write and
+ *     one sync to disk per batch.
+ *
+ * Policies are immutable.
+ *
+ * @see ContactManagerImpl#setDurabilityPolicy(DurabilityPolicy)
+ */
+public final class DurabilityPolicy {
+  /**
+   * The modes of the policies.
+   */
+  public enum Mode {
+    /**
+     * Changes are saved when flush() is called.
+     */
+    MANUAL,
+
+    /**
+     * Changes are saved before each change returns.
+     */
+    EVERY_WRITE,
+
+    /**
+     * Changes are saved in batches by a writer thread.
+     */
+    GROUP_COMMIT
+  }
+
+  /**
+   * The manual policy.
+   */
+  private static final DurabilityPolicy MANUAL = new DurabilityPolicy(
+    Mode.MANUAL, 0, 0);
+
+  /**
+   * The every write policy.
+   */
+  private static final DurabilityPolicy EVERY_WRITE = new DurabilityPolicy(
+    Mode.EVERY_WRITE, 0, 1);
+
+  /**
+   * The policy mode.
+   */
+  private final Mode mode;
+
+  /**
+   * The maximum time in milliseconds a change waits to be saved.
+   */
+  private final long intervalMillis;
+
+  /**
+   * The number of pending changes that triggers a batch.
+   */
+  private final int maxChanges;
+
+  // Creates a policy.
+  private DurabilityPolicy(Mode mode, long intervalMillis, int maxChanges) {
+    this.mode = mode;
+    this.intervalMillis = intervalMillis;
+    this.maxChanges = maxChanges;
+  }
+
+  /**
+   * Returns the manual policy, where changes are saved when flush() is
+   * called.
+   *
+   * @return The manual policy.
+   */
+  public static DurabilityPolicy manual() {
+    return MANUAL;
+  }
+
+  /**
+   * Returns the every write policy, where changes are saved before each
+   * change returns.
+   *
+   * @return The every write policy.
+   */
+  public static DurabilityPolicy everyWrite() {
+    return EVERY_WRITE;
+  }
+
+  /**
+   * Returns a group commit policy, where a writer thread saves the changes
+   * in batches.
+   *
+   * @param intervalMillis The maximum time in milliseconds a change waits to
+   *        be saved.
+   * @param maxChanges The number of pending changes that triggers a batch
+   *        before the interval is over.
+   * @return The group commit policy.
+   * @throws IllegalArgumentException If the interval or the number of
+   *         changes is not positive.
+   */
+  public static DurabilityPolicy groupCommit(long intervalMillis,
+                                             int maxChanges) {
+    if (intervalMillis <= 0 || maxChanges <= 0) {
+      throw new IllegalArgumentException(
+        "intervalMillis and maxChanges must be greater than 0");
+    }
+    return new DurabilityPolicy(Mode.GROUP_COMMIT, intervalMillis,
+      maxChanges);
+  }
+
+  /**
+   * Returns the policy mode.
+   *
+   * @return The policy mode.
+   */
+  public Mode getMode() {
+    return mode;
+  }
+
+  /**
+   * Returns the maximum time in milliseconds a change waits to be saved, for
+   * group commit policies.
+   *
+   * @return The interval in milliseconds or 0 for other policies.
+   */
+  public long getIntervalMillis() {
+    return intervalMillis;
+  }
+
+  /**
+   * Returns the number of pending changes that triggers a batch, for group
+   * commit policies.
+   *
+   * @return The number of changes, 1 for the every write policy or 0 for
+   *         the manual policy.
+   */
+  public int getMaxChanges() {
+    return maxChanges;
+  }
+
+  /**
+   * Returns a string representation of the policy.
+   *
+   * @return A string representation of the policy.
+   */
+  public String toString() {
+    if (mode == Mode.GROUP_COMMIT)
+      return mode + "(" + intervalMillis + "ms, " + maxChanges + " changes)";
+    return mode.toString();
+  }
+}
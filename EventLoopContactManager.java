@@ -0,0 +1,469 @@
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Supplier;
+
+/**
+ * A contact manager whose changes are made by a single writer thread.
+ *
+ * Changes are submitted to a ring buffer, without taking a lock, and the
+ * writer applies them in batches to an underlying ContactManagerImpl, which
+ * no other thread uses. After each batch, the writer appends the changes to
+ * the journal with a single flush and publishes the immutable view of the
+ * data of the underlying contact manager. Reads use the latest published view
+ * and never wait for the writer, except for converting future meetings to
+ * past meetings once their date has passed, which the writer does. Like the
+ * underlying contact manager, reads create the occurrences of recurring
+ * meetings and read sealed meetings from the archive on demand.
+ *
+ * A change returns once it is saved and visible to reads. Errors thrown by
+ * the underlying contact manager are thrown by the method making the change,
+ * and errors thrown while saving a batch by every change of the batch.
+ *
+ * @see RingBuffer
+ */
+public class EventLoopContactManager implements ContactManager, AutoCloseable {
+  /**
+   * The default capacity of the ring buffer.
+   */
+  public static final int DEFAULT_CAPACITY = 1024;
+
+  /**
+   * The contact manager, used by the writer thread only.
+   */
+  private final ContactManagerImpl manager;
+
+  /**
+   * The ring buffer of the submitted events.
+   */
+  private final RingBuffer<Event> ring;
+
+  /**
+   * The writer thread.
+   */
+  private final Thread writer;
+
+  /**
+   * The latest published view.
+   */
+  private volatile ContactManagerImpl.View version;
+
+  /**
+   * Whether the contact manager was closed.
+   */
+  private volatile boolean closed = false;
+
+  /**
+   * Constructs a contact manager loading the database file.
+   */
+  public EventLoopContactManager() {
+    this(new ContactManagerImpl(), DEFAULT_CAPACITY);
+  }
+
+  /**
+   * Constructs a contact manager over the specified contact manager, which
+   * must not be used directly afterwards.
+   *
+   * @param manager The contact manager.
+   * @param capacity The capacity of the ring buffer, a power of two.
+   * @throws IllegalArgumentException If the capacity is not a positive power
+   *         of two.
+   * @throws NullPointerException If the contact manager is null.
+   */
+  public EventLoopContactManager(ContactManagerImpl manager, int capacity) {
+    if (manager == null)
+      throw new NullPointerException("manager must not be null");
+
+    this.manager = manager;
+    this.ring = new RingBuffer<>(capacity);
+
+    // publish the loaded data
+    promoteMeetings();
+    publish();
+
+    this.writer = new Thread(this::runWriter, "ContactManager event loop");
+    this.writer.setDaemon(true);
+    this.writer.start();
+  }
+
+  /**
+   * Adds a meeting to be held in the future.
+   *
+   * @param contacts A set of contacts that will participate in the meeting.
+   * @param date The date on which the meeting will take place.
+   * @return The meeting ID.
+   * @throws IllegalArgumentException If the meeting is set for a time
+   *         in the past or if any contact is unknown.
+   * @throws NullPointerException If the contacts or date are null.
+   * @see ContactManagerImpl#addFutureMeeting(Set, Calendar)
+   */
+  public int addFutureMeeting(Set<Contact> contacts, Calendar date) {
+    return (Integer)submit(() -> manager.addFutureMeeting(contacts, date));
+  }
+
+  /**
+   * Returns the past meeting with the specified ID, or null if there is none.
+   *
+   * @param id The meeting ID.
+   * @return The meeting with the specified ID or null if there is none.
+   * @throws IllegalArgumentException If there is a meeting with that ID
+   *         happening in the future.
+   * @see ContactManagerImpl#getPastMeeting(int)
+   */
+  public PastMeeting getPastMeeting(int id) {
+    return manager.getPastMeeting(current(), id);
+  }
+
+  /**
+   * Returns the future meeting with the specified ID or null if there is
+   * none.
+   *
+   * @param id The meeting ID.
+   * @return The meeting with the specified ID or null if there is none.
+   * @throws IllegalArgumentException If there is a meeting with that ID
+   *         happening in the past.
+   * @see ContactManagerImpl#getFutureMeeting(int)
+   */
+  public FutureMeeting getFutureMeeting(int id) {
+    return manager.getFutureMeeting(current(), id);
+  }
+
+  /**
+   * Returns the meeting with the specified ID or null if there is none.
+   *
+   * @param id The meeting ID.
+   * @return The meeting with the requested ID or null if there is none.
+   */
+  public Meeting getMeeting(int id) {
+    return manager.getMeeting(current(), id);
+  }
+
+  /**
+   * Returns a list of future meetings scheduled for this contact.
+   *
+   * @param contact The contact.
+   * @return A chronological list of future meeting(s) scheduled for this
+   *         contact (can be empty).
+   * @throws IllegalArgumentException If the contact does not exist.
+   * @throws NullPointerException If the contact is null.
+   * @see ContactManagerImpl#getFutureMeetingList(Contact)
+   */
+  public List<Meeting> getFutureMeetingList(Contact contact) {
+    return manager.getFutureMeetingList(current(), contact);
+  }
+
+  /**
+   * Returns a list of meetings scheduled for or that took place on the
+   * specified date.
+   *
+   * @param date The date.
+   * @return A list of meeting(s) sorted by ID (can be empty).
+   * @throws NullPointerException If the date is null.
+   * @see ContactManagerImpl#getMeetingListOn(Calendar)
+   */
+  public List<Meeting> getMeetingListOn(Calendar date) {
+    return manager.getMeetingListOn(current(), date);
+  }
+
+  /**
+   * Returns a list of past meetings in which this contact participated.
+   *
+   * @param contact The contact.
+   * @return A chronological list of past meeting(s) in which the contact
+   *         participated (can be empty).
+   * @throws IllegalArgumentException If the contact does not exist.
+   * @throws NullPointerException If the contact is null.
+   * @see ContactManagerImpl#getPastMeetingListFor(Contact)
+   */
+  public List<PastMeeting> getPastMeetingListFor(Contact contact) {
+    return manager.getPastMeetingListFor(current(), contact);
+  }
+
+  /**
+   * Adds a new record for a meeting held in the past.
+   *
+   * @param contacts A set of participants.
+   * @param date The date on which the meeting took place.
+   * @param notes Notes to be added about the meeting.
+   * @throws IllegalArgumentException If the list of contacts is empty or any
+   *         of the contacts does not exist.
+   * @throws NullPointerException If any of the arguments are null.
+   * @see ContactManagerImpl#addNewPastMeeting(Set, Calendar, String)
+   */
+  public void addNewPastMeeting(Set<Contact> contacts, Calendar date,
+                                String notes) {
+    submit(() -> {
+      manager.addNewPastMeeting(contacts, date, notes);
+      return null;
+    });
+  }
+
+  /**
+   * Adds notes to a meeting.
+   *
+   * @param id The meeting ID.
+   * @param notes Meeting notes to be added.
+   * @return The past meeting.
+   * @throws IllegalArgumentException If the meeting does not exist.
+   * @throws IllegalStateException If the meeting is set for a date in the
+   *         future.
+   * @throws NullPointerException If the notes is null.
+   * @see ContactManagerImpl#addMeetingNotes(int, String)
+   */
+  public PastMeeting addMeetingNotes(int id, String notes) {
+    return (PastMeeting)submit(() -> manager.addMeetingNotes(id, notes));
+  }
+
+  /**
+   * Adds a new contact with the specified name and notes.
+   *
+   * @param name Contact name.
+   * @param notes Contact notes to be added.
+   * @return The contact id.
+   * @throws IllegalArgumentException If the name or the notes are empty
+   *         strings.
+   * @throws NullPointerException If the name or notes are null.
+   * @see ContactManagerImpl#addNewContact(String, String)
+   */
+  public int addNewContact(String name, String notes) {
+    return (Integer)submit(() -> manager.addNewContact(name, notes));
+  }
+
+  /**
+   * Returns a set with the contacts whose name contains a specified string.
+   *
+   * @param name The search string.
+   * @return A set with the contacts whose name contains the specified
+   *         string.
+   * @throws NullPointerException If the name is null.
+   * @see ContactManagerImpl#getContacts(String)
+   */
+  public Set<Contact> getContacts(String name) {
+    if (name == null)
+      throw new NullPointerException("name must not be null");
+
+    Set<Contact> newContacts = new HashSet<Contact>();
+    String search = name.toLowerCase();
+    for (Contact contact : version.contacts.values()) {
+      if (contact.getName().toLowerCase().contains(search))
+        newContacts.add(contact);
+    }
+    return newContacts;
+  }
+
+  /**
+   * Returns a set containing the contacts that correspond to the IDs.
+   *
+   * @param ids An arbitrary number of contact IDs.
+   * @return A set containing the contacts that correspond to the IDs.
+   * @throws IllegalArgumentException If no IDs are provided or if any of the
+   *         provided IDs do not correspond to a real contact.
+   * @see ContactManagerImpl#getContacts(int...)
+   */
+  public Set<Contact> getContacts(int... ids) {
+    if (ids == null)
+      throw new NullPointerException("ids must not be null");
+
+    PersistentTreeMap<Integer, ContactImpl> contacts = version.contacts;
+    Set<Contact> newContacts = new HashSet<Contact>();
+    for (int id : ids) {
+      Contact contact = contacts.get(id);
+      if (contact != null)
+        newContacts.add(contact);
+    }
+
+    if (newContacts.isEmpty()) {
+      throw new IllegalArgumentException(
+        "no id provided or non existing contact");
+    }
+    return newContacts;
+  }
+
+  /**
+   * Saves all data to disk.
+   *
+   * Changes are saved as they are made, so this only saves the notes added
+   * directly to contacts and past meetings.
+   */
+  public void flush() {
+    submit(() -> {
+      manager.flush();
+      return null;
+    });
+  }
+
+  /**
+   * Makes the submitted changes, saves all data and stops the writer thread.
+   * Changes can't be made afterwards. An interrupt doesn't stop the wait for
+   * the writer thread, it's kept as the interrupt status of the thread
+   * instead.
+   */
+  public void close() {
+    if (closed)
+      return;
+
+    closed = true;
+    ring.put(new Event(null));
+    boolean interrupted = false;
+    while (writer.isAlive()) {
+      try {
+        writer.join();
+      } catch (InterruptedException e) {
+        interrupted = true;
+      }
+    }
+    failPending();
+    manager.close();
+    if (interrupted)
+      Thread.currentThread().interrupt();
+  }
+
+  // Submits an event and waits for its result, throwing its error.
+  private Object submit(Supplier<Object> action) {
+    if (closed)
+      throw new IllegalStateException("contact manager is closed");
+
+    Event event = new Event(action);
+    ring.put(event);
+    if (closed && !writer.isAlive())
+      failPending();
+
+    try {
+      return event.join();
+    } catch (CompletionException e) {
+      if (e.getCause() instanceof RuntimeException)
+        throw (RuntimeException)e.getCause();
+      else if (e.getCause() instanceof Error)
+        throw (Error)e.getCause();
+      throw e;
+    }
+  }
+
+  // Fails the events submitted after the writer thread stopped.
+  private void failPending() {
+    synchronized (ring) {
+      List<Event> events = new ArrayList<>();
+      ring.drainTo(events, Integer.MAX_VALUE);
+      for (Event event : events) {
+        event.completeExceptionally(new IllegalStateException(
+          "contact manager is closed"));
+      }
+    }
+  }
+
+  // Returns the latest version, once the future meetings whose date has
+  // passed are converted to past meetings by the writer.
+  private ContactManagerImpl.View current() {
+    ContactManagerImpl.View current = version;
+    if (current.nextPromotion() < System.currentTimeMillis() && !closed) {
+      submit(() -> null);
+      current = version;
+    }
+    return current;
+  }
+
+  // Runs the writer thread, which applies the events in batches. Every
+  // event is completed whatever is thrown, so that no caller waits forever.
+  private void runWriter() {
+    List<Event> batch = new ArrayList<>(ring.capacity());
+    boolean running = true;
+    while (running) {
+      try {
+        ring.await();
+      } catch (InterruptedException e) {
+        break;
+      }
+      ring.drainTo(batch, ring.capacity());
+
+      Throwable failure = null;
+      try {
+        promoteMeetings();
+        for (Event event : batch) {
+          if (event.action == null) {
+            running = false;
+          } else if (!running) {
+            event.error = new IllegalStateException(
+              "contact manager is closed");
+          } else {
+            try {
+              event.result = event.action.get();
+            } catch (Throwable e) {
+              event.error = e;
+            }
+          }
+        }
+        promoteMeetings();
+
+        // save the batch with a single flush, then make it visible; the
+        // contact manager publishes a new view on each change
+        if (manager.getView() != version)
+          manager.flush();
+        publish();
+      } catch (Throwable e) {
+        failure = e;
+      }
+
+      for (Event event : batch) {
+        if (event.action == null)
+          event.complete(null);
+        else if (failure != null)
+          event.completeExceptionally(failure);
+        else if (event.error != null)
+          event.completeExceptionally(event.error);
+        else
+          event.complete(event.result);
+      }
+      batch.clear();
+    }
+
+    // fail the events nobody will apply if the writer stopped unexpectedly
+    if (running) {
+      closed = true;
+      failPending();
+    }
+  }
+
+  // Converts the future meetings and occurrences whose date has passed to
+  // past meetings.
+  private void promoteMeetings() {
+    // listing meetings makes the contact manager convert them
+    if (manager.getView().nextPromotion() < System.currentTimeMillis())
+      manager.getMeetingListOn(Calendar.getInstance());
+  }
+
+  // Publishes the view of the contact manager. Its maps and indexes are
+  // persistent, so this takes constant time however many meetings and
+  // occurrences there are.
+  private void publish() {
+    version = manager.getView();
+  }
+
+  /**
+   * An event submitted to the writer thread, completed with its result.
+   */
+  private static class Event extends CompletableFuture<Object> {
+    /**
+     * The action of the event or null to stop the writer.
+     */
+    final Supplier<Object> action;
+
+    /**
+     * The result of the action.
+     */
+    Object result;
+
+    /**
+     * The error thrown by the action.
+     */
+    Throwable error;
+
+    // Creates an event.
+    Event(Supplier<Object> action) {
+      this.action = action;
+    }
+  }
+}
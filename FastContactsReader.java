@@ -0,0 +1,626 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.time.Period;
+import java.time.format.DateTimeParseException;
+import java.util.Arrays;
+
+/**
+ * A fast reader of the contact manager XML file.
+ *
+ * Unlike a generic XML parser, this reader only understands the exact
+ * structure written by the contact manager, in UTF-8. It works directly on
+ * the bytes of the memory-mapped file: IDs are parsed as numbers and dates
+ * are decoded without creating intermediate strings, and only names and
+ * notes are decoded to strings.
+ *
+ * Any other content (unknown elements or attributes, CDATA sections, other
+ * encodings...) makes it fail with an IOException, in which case the file
+ * can still be read with a StaxContactsReader.
+ *
+ * @see StaxContactsReader
+ */
+public class FastContactsReader implements ContactsReader {
+  /**
+   * The number of bits of the size of each mapped chunk of the file.
+   */
+  private static final int CHUNK_BITS = 30;
+
+  /**
+   * The size of each mapped chunk of the file.
+   */
+  private static final long CHUNK_SIZE = 1L << CHUNK_BITS;
+
+  /**
+   * The codec of meeting dates.
+   */
+  private final DateCodec dateCodec;
+
+  /**
+   * The mapped chunks of the file being read.
+   */
+  private MappedByteBuffer[] chunks;
+
+  /**
+   * The current chunk.
+   */
+  private MappedByteBuffer chunk;
+
+  /**
+   * The offset of the current chunk in the file.
+   */
+  private long chunkStart;
+
+  /**
+   * The position in the file.
+   */
+  private long position;
+
+  /**
+   * The size of the file.
+   */
+  private long size;
+
+  /**
+   * The buffer used to decode text.
+   */
+  private byte[] text = new byte[256];
+
+  /**
+   * The IDs of the contacts of the meeting being read.
+   */
+  private int[] contactIds = new int[16];
+
+  /**
+   * Creates a new reader.
+   *
+   * @param dateCodec The codec of meeting dates.
+   * @throws NullPointerException If the codec is null.
+   */
+  public FastContactsReader(DateCodec dateCodec) {
+    if (dateCodec == null)
+      throw new NullPointerException("dateCodec must not be null");
+
+    this.dateCodec = dateCodec;
+  }
+
+  /**
+   * Reads a file.
+   *
+   * @param file The file.
+   * @param handler The handler receiving the contacts and meetings.
+   * @throws IOException If the file can't be read or has content this reader
+   *         does not understand.
+   */
+  public void read(File file, Handler handler) throws IOException {
+    try (FileChannel channel = FileChannel.open(file.toPath(),
+           StandardOpenOption.READ)) {
+      size = channel.size();
+      chunks = new MappedByteBuffer[(int)((size + CHUNK_SIZE - 1) /
+        CHUNK_SIZE)];
+      for (int i = 0; i < chunks.length; i++) {
+        long start = i * CHUNK_SIZE;
+        chunks[i] = channel.map(FileChannel.MapMode.READ_ONLY, start,
+          Math.min(CHUNK_SIZE, size - start));
+      }
+
+      position = 0;
+      chunk = null;
+      readDocument(handler);
+    } finally {
+      chunks = null;
+      chunk = null;
+    }
+  }
+
+  // Reads the document.
+  private void readDocument(Handler handler) throws IOException {
+    // skip byte order mark
+    if (size >= 3 && byteAt(0) == (byte)0xef && byteAt(1) == (byte)0xbb &&
+        byteAt(2) == (byte)0xbf) {
+      position = 3;
+    }
+    readDeclaration();
+    skipMisc();
+
+    boolean root = startTag("ContactManager", false);
+    if (!root && startTag("ContactManager", true)) {
+      readNextIds(handler);
+      root = true;
+    }
+    if (root) {
+      boolean contactsRead = false;
+      boolean meetingsRead = false;
+
+      while (!endTag("ContactManager")) {
+        if (!contactsRead && startTag("Contacts", true)) {
+          if (!emptyTag())
+            readContacts(handler);
+          contactsRead = true;
+        } else if (!meetingsRead && startTag("Meetings", true)) {
+          if (!emptyTag())
+            readMeetings(handler);
+          meetingsRead = true;
+        } else {
+          throw unexpected();
+        }
+      }
+    }
+    skipMisc();
+
+    if (position != size)
+      throw unexpected();
+  }
+
+  private void readContacts(Handler handler) throws IOException {
+    while (!endTag("Contacts")) {
+      if (!startTag("Contact", true))
+        throw unexpected();
+      int id = readIdAttribute();
+      if (emptyTag())
+        continue;
+
+      String name = null, notes = null;
+      while (!endTag("Contact")) {
+        if (startTag("Name", false)) {
+          String value = readText("Name");
+          if (name == null)
+            name = value;
+        } else if (startTag("Notes", false)) {
+          String value = readText("Notes");
+          if (notes == null)
+            notes = value;
+        } else {
+          throw unexpected();
+        }
+      }
+
+      if (name != null)
+        handler.contact(id, name, notes);
+    }
+  }
+
+  private void readMeetings(Handler handler) throws IOException {
+    while (!endTag("Meetings")) {
+      if (startTag("Recurrence", true)) {
+        readRecurrence(handler);
+        continue;
+      } else if (!startTag("Meeting", true)) {
+        throw unexpected();
+      }
+      int id = readIdAttribute();
+      if (emptyTag())
+        continue;
+
+      boolean dateRead = false, endRead = false, contactsRead = false;
+      long date = 0, endDate = 0;
+      String notes = null;
+      int contactCount = 0;
+
+      while (!endTag("Meeting")) {
+        if (startTag("Date", false)) {
+          long value = readDate("Date");
+          if (!dateRead)
+            date = value;
+          dateRead = true;
+        } else if (startTag("End", false)) {
+          long value = readDate("End");
+          if (!endRead)
+            endDate = value;
+          endRead = true;
+        } else if (startTag("Notes", false)) {
+          String value = readText("Notes");
+          if (notes == null)
+            notes = value;
+        } else if (startTag("Contacts", true)) {
+          int count = (emptyTag() ? 0 : readMeetingContacts(contactsRead));
+          if (!contactsRead)
+            contactCount = count;
+          contactsRead = true;
+        } else {
+          throw unexpected();
+        }
+      }
+
+      if (dateRead && contactsRead) {
+        long endTime = (!endRead || endDate < date ? date : endDate);
+        handler.meeting(id, date, endTime, notes, contactIds, contactCount);
+      }
+    }
+  }
+
+  // Reads a series of recurring meetings, skipping it if it is incomplete.
+  private void readRecurrence(Handler handler) throws IOException {
+    int id = readIdAttribute();
+    if (emptyTag())
+      return;
+
+    boolean dateRead = false, contactsRead = false;
+    long date = 0;
+    Period interval = null;
+    int count = -1, next = -1;
+    int contactCount = 0;
+
+    while (!endTag("Recurrence")) {
+      if (startTag("Date", false)) {
+        long value = readDate("Date");
+        if (!dateRead)
+          date = value;
+        dateRead = true;
+      } else if (startTag("Interval", false)) {
+        Period value = readPeriod("Interval");
+        if (interval == null)
+          interval = value;
+      } else if (startTag("Count", false)) {
+        int value = readNumber("Count");
+        if (count < 0)
+          count = value;
+      } else if (startTag("Next", false)) {
+        int value = readNumber("Next");
+        if (next < 0)
+          next = value;
+      } else if (startTag("Contacts", true)) {
+        int number = (emptyTag() ? 0 : readMeetingContacts(contactsRead));
+        if (!contactsRead)
+          contactCount = number;
+        contactsRead = true;
+      } else {
+        throw unexpected();
+      }
+    }
+
+    if (dateRead && interval != null && count >= 0 && next >= 0 &&
+        contactsRead) {
+      handler.recurrence(id, date, interval, count, next, contactIds,
+        contactCount);
+    }
+  }
+
+  // Reads the IDs of the contacts of a meeting, into contactIds unless they
+  // must be skipped.
+  private int readMeetingContacts(boolean skip) throws IOException {
+    int count = 0;
+
+    while (!endTag("Contacts")) {
+      if (!startTag("Id", false))
+        throw unexpected();
+
+      skipWhitespace();
+      int id = readNumber();
+      skipWhitespace();
+      if (!endTag("Id"))
+        throw unexpected();
+
+      if (!skip) {
+        if (count == contactIds.length)
+          contactIds = Arrays.copyOf(contactIds, count * 2);
+        contactIds[count++] = id;
+      }
+    }
+    return count;
+  }
+
+  // Reads the text of a date element as a time in milliseconds.
+  private long readDate(String name) throws IOException {
+    int length = readRawText();
+    if (!endTag(name))
+      throw unexpected();
+
+    try {
+      return dateCodec.parse(text, 0, length);
+    } catch (IllegalArgumentException e) {
+      throw new IOException("invalid date at byte " + position, e);
+    }
+  }
+
+  // Reads the text of a period element.
+  private Period readPeriod(String name) throws IOException {
+    try {
+      return Period.parse(readText(name).trim());
+    } catch (DateTimeParseException e) {
+      throw new IOException("invalid period at byte " + position, e);
+    }
+  }
+
+  // Reads the text of a number element and its end tag.
+  private int readNumber(String name) throws IOException {
+    skipWhitespace();
+    int value = readNumber();
+    skipWhitespace();
+    if (!endTag(name))
+      throw unexpected();
+    return value;
+  }
+
+  // Reads the text of an element and its end tag.
+  private String readText(String name) throws IOException {
+    if (emptyTag())
+      return "";
+
+    int length = readRawText();
+    if (!endTag(name))
+      throw unexpected();
+    return new String(text, 0, length, StandardCharsets.UTF_8);
+  }
+
+  // Reads text up to the next tag into the text buffer, decoding entities,
+  // and returns its length.
+  private int readRawText() throws IOException {
+    int length = 0;
+
+    while (position < size) {
+      byte b = byteAt(position);
+      if (b == '<')
+        return length;
+
+      if (length + 4 > text.length)
+        text = Arrays.copyOf(text, text.length * 2);
+
+      if (b == '&') {
+        length = readEntity(length);
+      } else if (b == '\r') {
+        // normalise line breaks like XML parsers do
+        text[length++] = '\n';
+        position++;
+        if (position < size && byteAt(position) == '\n')
+          position++;
+      } else {
+        text[length++] = b;
+        position++;
+      }
+    }
+    throw unexpected();
+  }
+
+  // Decodes an entity into the text buffer and returns the new length.
+  private int readEntity(int length) throws IOException {
+    long start = position;
+    StringBuilder name = new StringBuilder();
+
+    for (position++; position < size && byteAt(position) != ';'; position++) {
+      if (position - start > 10)
+        throw unexpected();
+      name.append((char)byteAt(position));
+    }
+    if (position >= size)
+      throw unexpected();
+    position++;
+
+    String entity = name.toString();
+    int codePoint;
+    switch (entity) {
+      case "lt":
+        codePoint = '<';
+        break;
+      case "gt":
+        codePoint = '>';
+        break;
+      case "amp":
+        codePoint = '&';
+        break;
+      case "quot":
+        codePoint = '"';
+        break;
+      case "apos":
+        codePoint = '\'';
+        break;
+      default:
+        try {
+          if (entity.startsWith("#x"))
+            codePoint = Integer.parseInt(entity.substring(2), 16);
+          else if (entity.startsWith("#"))
+            codePoint = Integer.parseInt(entity.substring(1));
+          else
+            throw unexpected();
+        } catch (NumberFormatException e) {
+          throw unexpected();
+        }
+        break;
+    }
+
+    if (!Character.isValidCodePoint(codePoint))
+      throw unexpected();
+    byte[] bytes = new String(Character.toChars(codePoint)).getBytes(
+      StandardCharsets.UTF_8);
+    System.arraycopy(bytes, 0, text, length, bytes.length);
+    return length + bytes.length;
+  }
+
+  // Reads the id attribute of a start tag, up to the closing '>' or '/>'.
+  private int readIdAttribute() throws IOException {
+    int id = readAttribute("id");
+    skipWhitespace();
+
+    if (position < size && byteAt(position) == '>') {
+      position++;
+    } else if (!match("/>")) {
+      throw unexpected();
+    } else {
+      // let emptyTag() know the element is empty
+      position -= 2;
+    }
+    return id;
+  }
+
+  // Reads the attributes of the root element, the next IDs to assign, and
+  // the end of its start tag.
+  private void readNextIds(Handler handler) throws IOException {
+    int contactId = readAttribute("nextContactId");
+    int meetingId = readAttribute("nextMeetingId");
+    skipWhitespace();
+    if (!match(">"))
+      throw unexpected();
+    handler.nextIds(contactId, meetingId);
+  }
+
+  // Reads an int attribute, after any whitespace.
+  private int readAttribute(String name) throws IOException {
+    skipWhitespace();
+    if (!match(name))
+      throw unexpected();
+    skipWhitespace();
+    if (!match("="))
+      throw unexpected();
+    skipWhitespace();
+
+    byte quote = (position < size ? byteAt(position) : 0);
+    if (quote != '"' && quote != '\'')
+      throw unexpected();
+    position++;
+
+    int value = readNumber();
+    if (position >= size || byteAt(position) != quote)
+      throw unexpected();
+    position++;
+    return value;
+  }
+
+  // Reads an int.
+  private int readNumber() throws IOException {
+    boolean negative = match("-");
+    long value = 0;
+    int digits = 0;
+
+    while (position < size) {
+      byte b = byteAt(position);
+      if (b < '0' || b > '9')
+        break;
+      value = value * 10 + (b - '0');
+      if (value > Integer.MAX_VALUE)
+        throw unexpected();
+      position++;
+      digits++;
+    }
+    if (digits == 0)
+      throw unexpected();
+    return (int)(negative ? -value : value);
+  }
+
+  // Skips the XML declaration, which must declare UTF-8 if it has an
+  // encoding.
+  private void readDeclaration() throws IOException {
+    if (!match("<?xml"))
+      return;
+
+    long start = position;
+    while (position < size && byteAt(position) != '>')
+      position++;
+    if (position >= size)
+      throw unexpected();
+
+    byte[] bytes = new byte[(int)Math.min(position - start, 256)];
+    for (int i = 0; i < bytes.length; i++)
+      bytes[i] = byteAt(start + i);
+    String declaration = new String(bytes, StandardCharsets.US_ASCII)
+      .toLowerCase();
+    if (declaration.contains("encoding") && !declaration.contains("utf-8"))
+      throw new IOException("encoding must be UTF-8");
+    position++;
+  }
+
+  // Skips whitespace, comments and processing instructions.
+  private void skipMisc() throws IOException {
+    while (true) {
+      skipWhitespace();
+      if (match("<!--"))
+        skipPast("-->");
+      else if (match("<?"))
+        skipPast("?>");
+      else
+        return;
+    }
+  }
+
+  // Skips up to and including a string.
+  private void skipPast(String end) throws IOException {
+    while (position < size) {
+      if (match(end))
+        return;
+      position++;
+    }
+    throw unexpected();
+  }
+
+  // Skips whitespace.
+  private void skipWhitespace() {
+    while (position < size) {
+      byte b = byteAt(position);
+      if (b != ' ' && b != '\n' && b != '\r' && b != '\t')
+        return;
+      position++;
+    }
+  }
+
+  // Consumes the start tag of an element, after any whitespace or comments.
+  // If the tag has attributes, only its name is consumed.
+  private boolean startTag(String name, boolean hasAttributes)
+    throws IOException
+  {
+    skipMisc();
+    long start = position;
+    if (match("<") && match(name)) {
+      byte b = (position < size ? byteAt(position) : 0);
+      if (b == '>') {
+        position++;
+        return true;
+      } else if (b == '/' && match("/>")) {
+        position -= 2;
+        return true;
+      } else if (hasAttributes && (b == ' ' || b == '\t' || b == '\n' ||
+                                   b == '\r')) {
+        return true;
+      }
+    }
+    position = start;
+    return false;
+  }
+
+  // Consumes the "/>" of an empty element, if it is there.
+  private boolean emptyTag() {
+    return match("/>");
+  }
+
+  // Consumes the end tag of an element, after any whitespace or comments.
+  private boolean endTag(String name) throws IOException {
+    skipMisc();
+    long start = position;
+    if (match("</") && match(name)) {
+      skipWhitespace();
+      if (match(">"))
+        return true;
+    }
+    position = start;
+    return false;
+  }
+
+  // Consumes an ASCII string if it is at the current position.
+  private boolean match(String string) {
+    if (position + string.length() > size)
+      return false;
+
+    for (int i = 0; i < string.length(); i++) {
+      if (byteAt(position + i) != string.charAt(i))
+        return false;
+    }
+    position += string.length();
+    return true;
+  }
+
+  // Returns the byte at a position of the file.
+  private byte byteAt(long index) {
+    if (chunk == null || index < chunkStart ||
+        index - chunkStart >= chunk.limit()) {
+      chunk = chunks[(int)(index >>> CHUNK_BITS)];
+      chunkStart = index & ~(CHUNK_SIZE - 1);
+    }
+    return chunk.get((int)(index - chunkStart));
+  }
+
+  // Returns the exception for content this reader does not understand.
+  private IOException unexpected() {
+    return new IOException("unexpected content at byte " + position);
+  }
+}
@@ -1,5 +1,6 @@
 import java.util.Calendar;
 import java.util.Set;
+import java.util.TimeZone;
 
 /**
  * A meeting to be held in the future.
@@ -21,4 +22,72 @@ public class FutureMeetingImpl extends MeetingImpl implements FutureMeeting {
   public FutureMeetingImpl(int id, Calendar date, Set<Contact> contacts) {
     super(id, date, contacts);
   }
+  
+  /**
+   * Creates a meeting to be held in the future from the meeting id, date,
+   * end date and a set of contacts.
+   *
+   * @param id The meeting id.
+   * @param date The meeting date.
+   * @param endDate The meeting end date or null if the meeting has none.
+   * @param contacts The set of contacts.
+   * @throws IllegalArgumentException If the id is invalid
+   *         (less than or equal to 0).
+   * @throws NullPointerException If the date or the set of contacts are null.
+   * @throws IllegalArgumentException If the set of contacts is empty or the
+   *         end date is before the date.
+   * @see Contact
+   */
+  public FutureMeetingImpl(int id, Calendar date, Calendar endDate,
+    Set<Contact> contacts)
+  {
+    super(id, date.getTimeInMillis(), (endDate == null ?
+      date.getTimeInMillis() : endDate.getTimeInMillis()),
+      date.getTimeZone(), contacts);
+  }
+  
+  /**
+   * Creates a meeting to be held in the future from the meeting id, time,
+   * time zone and a set of contacts.
+   *
+   * @param id The meeting id.
+   * @param time The meeting time in milliseconds.
+   * @param zone The meeting time zone.
+   * @param contacts The set of contacts.
+   * @throws IllegalArgumentException If the id is invalid
+   *         (less than or equal to 0).
+   * @throws NullPointerException If the time zone or the set of contacts are
+   *         null.
+   * @throws IllegalArgumentException If the set of contacts is empty.
+   * @see Contact
+   */
+  public FutureMeetingImpl(int id, long time, TimeZone zone,
+    Set<Contact> contacts)
+  {
+    super(id, time, zone, contacts);
+  }
+  
+  /**
+   * Creates a meeting to be held in the future from the meeting id, time,
+   * end time, time zone and a set of contacts.
+   *
+   * @param id The meeting id.
+   * @param time The meeting time in milliseconds.
+   * @param endTime The meeting end time in milliseconds, or the meeting time
+   *        if the meeting has no end date.
+   * @param zone The meeting time zone.
+   * @param contacts The set of contacts.
+   * @throws IllegalArgumentException If the id is invalid
+   *         (less than or equal to 0).
+   * @throws NullPointerException If the time zone or the set of contacts are
+   *         null.
+   * @throws IllegalArgumentException If the set of contacts is empty or the
+   *         end time is before the time.
+   * @see Contact
+   */
+  public FutureMeetingImpl(int id, long time, long endTime, TimeZone zone,
+    Set<Contact> contacts)
+  {
+    super(id, time, endTime, zone, contacts);
+  }
 }
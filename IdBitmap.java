@@ -0,0 +1,514 @@
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+
+/**
+ * An immutable compressed set of non-negative IDs.
+ *
+ * The IDs are split into chunks of 65536 by their upper 16 bits, as in
+ * roaring bitmaps. A chunk holding few IDs keeps them in a sorted array of
+ * their lower 16 bits, and a chunk holding more than 4096 IDs keeps a bitmap
+ * of 1024 words, so a set never takes more than 2 bytes per ID. Adding or
+ * removing an ID copies a single chunk, and intersections and unions combine
+ * the chunks pairwise, bitmaps a word at a time.
+ */
+public final class IdBitmap {
+  /**
+   * The maximum number of IDs of an array chunk.
+   */
+  private static final int MAX_ARRAY_SIZE = 4096;
+
+  /**
+   * The number of words of a bitmap chunk.
+   */
+  private static final int BITMAP_WORDS = 1024;
+
+  /**
+   * The empty set.
+   */
+  private static final IdBitmap EMPTY = new IdBitmap(new char[0],
+    new Object[0], 0);
+
+  /**
+   * The upper 16 bits of the IDs of each chunk, sorted.
+   */
+  private final char[] keys;
+
+  /**
+   * The chunks, each a sorted char[] of lower 16 bits or a long[] bitmap.
+   */
+  private final Object[] chunks;
+
+  /**
+   * The number of IDs.
+   */
+  private final int cardinality;
+
+  // Creates a set.
+  private IdBitmap(char[] keys, Object[] chunks, int cardinality) {
+    this.keys = keys;
+    this.chunks = chunks;
+    this.cardinality = cardinality;
+  }
+
+  /**
+   * Returns the empty set.
+   *
+   * @return The empty set.
+   */
+  public static IdBitmap empty() {
+    return EMPTY;
+  }
+
+  /**
+   * Returns a set of IDs.
+   *
+   * @param ids The IDs.
+   * @return The set.
+   * @throws IllegalArgumentException If an ID is negative.
+   */
+  public static IdBitmap of(int... ids) {
+    IdBitmap bitmap = EMPTY;
+    for (int id : ids)
+      bitmap = bitmap.add(id);
+    return bitmap;
+  }
+
+  /**
+   * Returns the number of IDs.
+   *
+   * @return The number of IDs.
+   */
+  public int cardinality() {
+    return cardinality;
+  }
+
+  /**
+   * Returns whether the set is empty.
+   *
+   * @return true if the set is empty, false otherwise.
+   */
+  public boolean isEmpty() {
+    return (cardinality == 0);
+  }
+
+  /**
+   * Returns the smallest ID.
+   *
+   * @return The smallest ID, or -1 if the set is empty.
+   */
+  public int first() {
+    if (cardinality == 0)
+      return -1;
+
+    int high = keys[0] << 16;
+    if (chunks[0] instanceof char[])
+      return high | ((char[])chunks[0])[0];
+    long[] words = (long[])chunks[0];
+    int w = 0;
+    while (words[w] == 0)
+      w++;
+    return high | (w << 6) | Long.numberOfTrailingZeros(words[w]);
+  }
+
+  /**
+   * Returns whether an ID is in the set.
+   *
+   * @param id The ID.
+   * @return true if the ID is in the set, false otherwise.
+   */
+  public boolean contains(int id) {
+    if (id < 0)
+      return false;
+
+    int index = Arrays.binarySearch(keys, high(id));
+    return (index >= 0 && contains(chunks[index], low(id)));
+  }
+
+  /**
+   * Returns a set with an ID added.
+   *
+   * @param id The ID.
+   * @return The new set, or this set if the ID is in it already.
+   * @throws IllegalArgumentException If the ID is negative.
+   */
+  public IdBitmap add(int id) {
+    if (id < 0)
+      throw new IllegalArgumentException("id must not be negative");
+
+    int index = Arrays.binarySearch(keys, high(id));
+    if (index >= 0) {
+      Object chunk = add(chunks[index], low(id));
+      if (chunk == chunks[index])
+        return this;
+      Object[] newChunks = chunks.clone();
+      newChunks[index] = chunk;
+      return new IdBitmap(keys, newChunks, cardinality + 1);
+    }
+
+    // insert a new chunk
+    index = -index - 1;
+    char[] newKeys = new char[keys.length + 1];
+    Object[] newChunks = new Object[chunks.length + 1];
+    System.arraycopy(keys, 0, newKeys, 0, index);
+    System.arraycopy(chunks, 0, newChunks, 0, index);
+    newKeys[index] = high(id);
+    newChunks[index] = new char[] { low(id) };
+    System.arraycopy(keys, index, newKeys, index + 1, keys.length - index);
+    System.arraycopy(chunks, index, newChunks, index + 1,
+      chunks.length - index);
+    return new IdBitmap(newKeys, newChunks, cardinality + 1);
+  }
+
+  /**
+   * Returns a set with an ID removed.
+   *
+   * @param id The ID.
+   * @return The new set, or this set if the ID is not in it.
+   */
+  public IdBitmap remove(int id) {
+    if (id < 0)
+      return this;
+
+    int index = Arrays.binarySearch(keys, high(id));
+    if (index < 0)
+      return this;
+
+    Object chunk = remove(chunks[index], low(id));
+    if (chunk == chunks[index])
+      return this;
+    if (chunk != null) {
+      Object[] newChunks = chunks.clone();
+      newChunks[index] = chunk;
+      return new IdBitmap(keys, newChunks, cardinality - 1);
+    }
+
+    // drop the empty chunk
+    if (cardinality == 1)
+      return EMPTY;
+    char[] newKeys = new char[keys.length - 1];
+    Object[] newChunks = new Object[chunks.length - 1];
+    System.arraycopy(keys, 0, newKeys, 0, index);
+    System.arraycopy(chunks, 0, newChunks, 0, index);
+    System.arraycopy(keys, index + 1, newKeys, index,
+      keys.length - index - 1);
+    System.arraycopy(chunks, index + 1, newChunks, index,
+      chunks.length - index - 1);
+    return new IdBitmap(newKeys, newChunks, cardinality - 1);
+  }
+
+  /**
+   * Returns the intersection of this set and another one.
+   *
+   * @param other The other set.
+   * @return The IDs in both sets.
+   */
+  public IdBitmap and(IdBitmap other) {
+    int length = Math.min(keys.length, other.keys.length);
+    char[] newKeys = new char[length];
+    Object[] newChunks = new Object[length];
+    int count = 0;
+    int size = 0;
+
+    int i = 0;
+    int j = 0;
+    while (i < keys.length && j < other.keys.length) {
+      if (keys[i] < other.keys[j]) {
+        i++;
+      } else if (keys[i] > other.keys[j]) {
+        j++;
+      } else {
+        Object chunk = and(chunks[i], other.chunks[j]);
+        if (chunk != null) {
+          newKeys[count] = keys[i];
+          newChunks[count++] = chunk;
+          size += cardinality(chunk);
+        }
+        i++;
+        j++;
+      }
+    }
+
+    if (size == 0)
+      return EMPTY;
+    return new IdBitmap(Arrays.copyOf(newKeys, count),
+      Arrays.copyOf(newChunks, count), size);
+  }
+
+  /**
+   * Returns the union of this set and another one.
+   *
+   * @param other The other set.
+   * @return The IDs in either set.
+   */
+  public IdBitmap or(IdBitmap other) {
+    if (other.isEmpty())
+      return this;
+    if (isEmpty())
+      return other;
+
+    int length = keys.length + other.keys.length;
+    char[] newKeys = new char[length];
+    Object[] newChunks = new Object[length];
+    int count = 0;
+    int size = 0;
+
+    int i = 0;
+    int j = 0;
+    while (i < keys.length || j < other.keys.length) {
+      Object chunk;
+      if (j == other.keys.length ||
+          (i < keys.length && keys[i] < other.keys[j])) {
+        newKeys[count] = keys[i];
+        chunk = chunks[i++];
+      } else if (i == keys.length || keys[i] > other.keys[j]) {
+        newKeys[count] = other.keys[j];
+        chunk = other.chunks[j++];
+      } else {
+        newKeys[count] = keys[i];
+        chunk = or(chunks[i++], other.chunks[j++]);
+      }
+      newChunks[count++] = chunk;
+      size += cardinality(chunk);
+    }
+
+    return new IdBitmap(Arrays.copyOf(newKeys, count),
+      Arrays.copyOf(newChunks, count), size);
+  }
+
+  /**
+   * Performs an action for each ID, in increasing order.
+   *
+   * @param action The action.
+   */
+  public void forEach(IntConsumer action) {
+    for (int i = 0; i < keys.length; i++) {
+      int high = keys[i] << 16;
+      Object chunk = chunks[i];
+      if (chunk instanceof char[]) {
+        for (char low : (char[])chunk)
+          action.accept(high | low);
+      } else {
+        long[] words = (long[])chunk;
+        for (int w = 0; w < words.length; w++) {
+          for (long word = words[w]; word != 0; word &= word - 1)
+            action.accept(high | (w << 6) | Long.numberOfTrailingZeros(word));
+        }
+      }
+    }
+  }
+
+  /**
+   * Returns the IDs in increasing order.
+   *
+   * @return An array of the IDs.
+   */
+  public int[] toArray() {
+    int[] ids = new int[cardinality];
+    int[] count = new int[1];
+    forEach(id -> ids[count[0]++] = id);
+    return ids;
+  }
+
+  /**
+   * Returns a string representation of the set.
+   *
+   * @return A string representation of the set.
+   */
+  public String toString() {
+    return Arrays.toString(toArray());
+  }
+
+  // Returns the chunk key of an ID.
+  private static char high(int id) {
+    return (char)(id >>> 16);
+  }
+
+  // Returns the position of an ID in its chunk.
+  private static char low(int id) {
+    return (char)id;
+  }
+
+  // Returns the number of IDs of a chunk.
+  private static int cardinality(Object chunk) {
+    if (chunk instanceof char[])
+      return ((char[])chunk).length;
+
+    int count = 0;
+    for (long word : (long[])chunk)
+      count += Long.bitCount(word);
+    return count;
+  }
+
+  // Returns whether a chunk holds a position.
+  private static boolean contains(Object chunk, char low) {
+    if (chunk instanceof char[])
+      return (Arrays.binarySearch((char[])chunk, low) >= 0);
+    return ((((long[])chunk)[low >>> 6] & (1L << low)) != 0);
+  }
+
+  // Returns a chunk with a position added, or the same chunk if it holds
+  // the position already.
+  private static Object add(Object chunk, char low) {
+    if (chunk instanceof long[]) {
+      long[] words = (long[])chunk;
+      if ((words[low >>> 6] & (1L << low)) != 0)
+        return chunk;
+      words = words.clone();
+      words[low >>> 6] |= 1L << low;
+      return words;
+    }
+
+    char[] values = (char[])chunk;
+    int index = Arrays.binarySearch(values, low);
+    if (index >= 0)
+      return chunk;
+    if (values.length == MAX_ARRAY_SIZE) {
+      long[] words = toBitmap(values);
+      words[low >>> 6] |= 1L << low;
+      return words;
+    }
+
+    index = -index - 1;
+    char[] newValues = new char[values.length + 1];
+    System.arraycopy(values, 0, newValues, 0, index);
+    newValues[index] = low;
+    System.arraycopy(values, index, newValues, index + 1,
+      values.length - index);
+    return newValues;
+  }
+
+  // Returns a chunk with a position removed, the same chunk if it does not
+  // hold the position or null if the chunk would be empty.
+  private static Object remove(Object chunk, char low) {
+    if (chunk instanceof long[]) {
+      long[] words = (long[])chunk;
+      if ((words[low >>> 6] & (1L << low)) == 0)
+        return chunk;
+      words = words.clone();
+      words[low >>> 6] &= ~(1L << low);
+      return compact(words);
+    }
+
+    char[] values = (char[])chunk;
+    int index = Arrays.binarySearch(values, low);
+    if (index < 0)
+      return chunk;
+    if (values.length == 1)
+      return null;
+
+    char[] newValues = new char[values.length - 1];
+    System.arraycopy(values, 0, newValues, 0, index);
+    System.arraycopy(values, index + 1, newValues, index,
+      values.length - index - 1);
+    return newValues;
+  }
+
+  // Returns the intersection of two chunks or null if it is empty.
+  private static Object and(Object chunk, Object other) {
+    if (chunk instanceof char[] && other instanceof char[]) {
+      char[] values = (char[])chunk;
+      char[] otherValues = (char[])other;
+      char[] result = new char[Math.min(values.length, otherValues.length)];
+      int count = 0;
+      int i = 0;
+      int j = 0;
+      while (i < values.length && j < otherValues.length) {
+        if (values[i] < otherValues[j]) {
+          i++;
+        } else if (values[i] > otherValues[j]) {
+          j++;
+        } else {
+          result[count++] = values[i];
+          i++;
+          j++;
+        }
+      }
+      return (count == 0 ? null : Arrays.copyOf(result, count));
+    } else if (chunk instanceof char[] || other instanceof char[]) {
+      // keep the positions of the array found in the bitmap
+      char[] values = (char[])(chunk instanceof char[] ? chunk : other);
+      long[] words = (long[])(chunk instanceof char[] ? other : chunk);
+      char[] result = new char[values.length];
+      int count = 0;
+      for (char value : values) {
+        if ((words[value >>> 6] & (1L << value)) != 0)
+          result[count++] = value;
+      }
+      return (count == 0 ? null : Arrays.copyOf(result, count));
+    }
+
+    long[] words = (long[])chunk;
+    long[] otherWords = (long[])other;
+    long[] result = new long[BITMAP_WORDS];
+    for (int i = 0; i < BITMAP_WORDS; i++)
+      result[i] = words[i] & otherWords[i];
+    return compact(result);
+  }
+
+  // Returns the union of two chunks.
+  private static Object or(Object chunk, Object other) {
+    if (chunk instanceof char[] && other instanceof char[]) {
+      char[] values = (char[])chunk;
+      char[] otherValues = (char[])other;
+      char[] result = new char[values.length + otherValues.length];
+      int count = 0;
+      int i = 0;
+      int j = 0;
+      while (i < values.length || j < otherValues.length) {
+        if (j == otherValues.length ||
+            (i < values.length && values[i] < otherValues[j])) {
+          result[count++] = values[i++];
+        } else if (i == values.length || values[i] > otherValues[j]) {
+          result[count++] = otherValues[j++];
+        } else {
+          result[count++] = values[i++];
+          j++;
+        }
+      }
+      if (count > MAX_ARRAY_SIZE)
+        return toBitmap(Arrays.copyOf(result, count));
+      return Arrays.copyOf(result, count);
+    } else if (chunk instanceof char[] || other instanceof char[]) {
+      // set the positions of the array in a copy of the bitmap
+      char[] values = (char[])(chunk instanceof char[] ? chunk : other);
+      long[] words = ((long[])(chunk instanceof char[] ? other : chunk))
+        .clone();
+      for (char value : values)
+        words[value >>> 6] |= 1L << value;
+      return words;
+    }
+
+    long[] words = (long[])chunk;
+    long[] otherWords = (long[])other;
+    long[] result = new long[BITMAP_WORDS];
+    for (int i = 0; i < BITMAP_WORDS; i++)
+      result[i] = words[i] | otherWords[i];
+    return result;
+  }
+
+  // Returns the bitmap of the positions of an array chunk.
+  private static long[] toBitmap(char[] values) {
+    long[] words = new long[BITMAP_WORDS];
+    for (char value : values)
+      words[value >>> 6] |= 1L << value;
+    return words;
+  }
+
+  // Returns a bitmap chunk as an array chunk if it holds few enough
+  // positions, or null if it is empty.
+  private static Object compact(long[] words) {
+    int count = cardinality(words);
+    if (count == 0)
+      return null;
+    if (count > MAX_ARRAY_SIZE)
+      return words;
+
+    char[] values = new char[count];
+    int index = 0;
+    for (int w = 0; w < words.length; w++) {
+      for (long word = words[w]; word != 0; word &= word - 1)
+        values[index++] = (char)((w << 6) | Long.numberOfTrailingZeros(word));
+    }
+    return values;
+  }
+}
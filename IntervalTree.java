@@ -0,0 +1,276 @@
+import java.util.function.Consumer;
+
+/**
+ * An immutable set of time intervals, sharing structure between versions.
+ *
+ * The intervals are half-open, [start, end), and identified by an ID. They
+ * are kept in an AVL tree sorted by start and then by ID, whose nodes also
+ * record the latest end of their subtree, so finding the intervals
+ * overlapping a given one skips every subtree ending before it and takes
+ * O(log n + k) time for k overlapping intervals. Like PersistentTreeMap,
+ * adding or removing an interval copies O(log n) nodes, so a version can be
+ * read by any number of threads while newer versions are created.
+ *
+ * @param <T> The type of the values of the intervals.
+ * @see PersistentTreeMap
+ */
+public final class IntervalTree<T> {
+  /**
+   * The empty tree.
+   */
+  @SuppressWarnings("rawtypes")
+  private static final IntervalTree EMPTY = new IntervalTree<>(null);
+
+  /**
+   * The root or null if the tree is empty.
+   */
+  private final Node<T> root;
+
+  // Creates a tree.
+  private IntervalTree(Node<T> root) {
+    this.root = root;
+  }
+
+  /**
+   * Returns the empty tree.
+   *
+   * @param <T> The type of the values of the intervals.
+   * @return The empty tree.
+   */
+  @SuppressWarnings("unchecked")
+  public static <T> IntervalTree<T> empty() {
+    return (IntervalTree<T>)EMPTY;
+  }
+
+  /**
+   * Returns the number of intervals.
+   *
+   * @return The number of intervals.
+   */
+  public int size() {
+    return size(root);
+  }
+
+  /**
+   * Returns whether the tree is empty.
+   *
+   * @return true if the tree is empty, false otherwise.
+   */
+  public boolean isEmpty() {
+    return (root == null);
+  }
+
+  /**
+   * Returns a tree with an interval added, or replaced if the tree has an
+   * interval with the same start and ID.
+   *
+   * @param start The start of the interval.
+   * @param end The end of the interval, excluded.
+   * @param id The ID of the interval.
+   * @param value The value of the interval.
+   * @return The new tree.
+   * @throws IllegalArgumentException If the interval ends before it starts.
+   * @throws NullPointerException If the value is null.
+   */
+  public IntervalTree<T> add(long start, long end, int id, T value) {
+    if (end < start)
+      throw new IllegalArgumentException("end must not be before start");
+    else if (value == null)
+      throw new NullPointerException("value must not be null");
+
+    return new IntervalTree<>(add(root, start, end, id, value));
+  }
+
+  /**
+   * Returns a tree without an interval.
+   *
+   * @param start The start of the interval.
+   * @param id The ID of the interval.
+   * @return The new tree, or this tree if it has no such interval.
+   */
+  public IntervalTree<T> remove(long start, int id) {
+    Node<T> newRoot = remove(root, start, id);
+    if (newRoot == root)
+      return this;
+    return (newRoot == null ? empty() : new IntervalTree<>(newRoot));
+  }
+
+  /**
+   * Reports the values of the intervals overlapping an interval, sorted by
+   * start and then by ID.
+   *
+   * @param start The start of the interval.
+   * @param end The end of the interval, excluded.
+   * @param action The action receiving the values.
+   */
+  public void forEachOverlapping(long start, long end,
+                                 Consumer<? super T> action) {
+    if (start < end)
+      forEachOverlapping(root, start, end, action);
+  }
+
+  // Reports the overlapping intervals of a subtree in order.
+  private static <T> void forEachOverlapping(Node<T> node, long start,
+                                             long end,
+                                             Consumer<? super T> action) {
+    if (node == null || node.maxEnd <= start)
+      return;
+
+    forEachOverlapping(node.left, start, end, action);
+    if (node.start >= end)
+      return;
+    if (node.end > start && node.start < node.end)
+      action.accept(node.value);
+    forEachOverlapping(node.right, start, end, action);
+  }
+
+  // Compares the (start, ID) key of a node with a key.
+  private static int compare(Node<?> node, long start, int id) {
+    int comparison = Long.compare(start, node.start);
+    return (comparison != 0 ? comparison : Integer.compare(id, node.id));
+  }
+
+  // Returns the number of nodes of a tree.
+  private static int size(Node<?> node) {
+    return (node == null ? 0 : node.size);
+  }
+
+  // Returns the height of a tree.
+  private static int height(Node<?> node) {
+    return (node == null ? 0 : node.height);
+  }
+
+  // Returns the latest end of a tree.
+  private static long maxEnd(Node<?> node) {
+    return (node == null ? Long.MIN_VALUE : node.maxEnd);
+  }
+
+  // Adds or replaces an interval in a tree.
+  private static <T> Node<T> add(Node<T> node, long start, long end, int id,
+                                 T value) {
+    if (node == null)
+      return new Node<>(start, end, id, value, null, null);
+
+    int comparison = compare(node, start, id);
+    if (comparison == 0)
+      return new Node<>(start, end, id, value, node.left, node.right);
+    else if (comparison < 0)
+      return balance(node, add(node.left, start, end, id, value), node.right);
+    return balance(node, node.left, add(node.right, start, end, id, value));
+  }
+
+  // Removes an interval from a tree.
+  private static <T> Node<T> remove(Node<T> node, long start, int id) {
+    if (node == null)
+      return null;
+
+    int comparison = compare(node, start, id);
+    if (comparison < 0) {
+      Node<T> left = remove(node.left, start, id);
+      return (left == node.left ? node : balance(node, left, node.right));
+    } else if (comparison > 0) {
+      Node<T> right = remove(node.right, start, id);
+      return (right == node.right ? node : balance(node, node.left, right));
+    } else if (node.left == null) {
+      return node.right;
+    } else if (node.right == null) {
+      return node.left;
+    }
+
+    // replace the node by the lowest node of its right tree
+    Node<T> lowest = node.right;
+    while (lowest.left != null)
+      lowest = lowest.left;
+    return balance(lowest, node.left,
+      remove(node.right, lowest.start, lowest.id));
+  }
+
+  // Creates a node with the interval of another node, rotating it if its
+  // trees differ in height by two.
+  private static <T> Node<T> balance(Node<T> interval, Node<T> left,
+                                     Node<T> right) {
+    int difference = height(left) - height(right);
+    if (difference > 1) {
+      if (height(left.left) >= height(left.right))
+        return copy(left, left.left, copy(interval, left.right, right));
+      return copy(left.right, copy(left, left.left, left.right.left),
+        copy(interval, left.right.right, right));
+    } else if (difference < -1) {
+      if (height(right.right) >= height(right.left))
+        return copy(right, copy(interval, left, right.left), right.right);
+      return copy(right.left, copy(interval, left, right.left.left),
+        copy(right, right.left.right, right.right));
+    }
+    return copy(interval, left, right);
+  }
+
+  // Creates a node with the interval of another node and new trees.
+  private static <T> Node<T> copy(Node<T> interval, Node<T> left,
+                                  Node<T> right) {
+    return new Node<>(interval.start, interval.end, interval.id,
+      interval.value, left, right);
+  }
+
+  /**
+   * A node of the tree.
+   */
+  private static final class Node<T> {
+    /**
+     * The start of the interval.
+     */
+    final long start;
+
+    /**
+     * The end of the interval, excluded.
+     */
+    final long end;
+
+    /**
+     * The ID of the interval.
+     */
+    final int id;
+
+    /**
+     * The value of the interval.
+     */
+    final T value;
+
+    /**
+     * The tree of the lower intervals.
+     */
+    final Node<T> left;
+
+    /**
+     * The tree of the greater intervals.
+     */
+    final Node<T> right;
+
+    /**
+     * The latest end of the tree.
+     */
+    final long maxEnd;
+
+    /**
+     * The height of the tree.
+     */
+    final int height;
+
+    /**
+     * The number of nodes of the tree.
+     */
+    final int size;
+
+    // Creates a node.
+    Node(long start, long end, int id, T value, Node<T> left, Node<T> right) {
+      this.start = start;
+      this.end = end;
+      this.id = id;
+      this.value = value;
+      this.left = left;
+      this.right = right;
+      this.maxEnd = Math.max(end, Math.max(maxEnd(left), maxEnd(right)));
+      this.height = Math.max(height(left), height(right)) + 1;
+      this.size = size(left) + size(right) + 1;
+    }
+  }
+}
@@ -0,0 +1,379 @@
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.Period;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32C;
+
+/**
+ * An append-only journal of the records changed since the last snapshot.
+ *
+ * Flushing a few changed records to the journal is much cheaper than writing
+ * a new snapshot, and loading replays the journal over the snapshot. The
+ * journal has the following structure (all numbers are big-endian):
+ *
+ * <pre>
+ * "CMJ1", long snapshotSize, long snapshotModified       header
+ * (int length, int crc, record)...                       entries
+ * </pre>
+ *
+ * where records are encoded by RecordCodec, each with the CRC32C checksum of
+ * its bytes. The header identifies the snapshot the journal applies to, so a
+ * journal left behind by an older snapshot is ignored. An entry torn by a
+ * crash while appending is ignored, as well as anything after it.
+ *
+ * Removed contacts and meetings are journaled as tombstones, so removing a
+ * record doesn't need a new snapshot; the next snapshot leaves the removed
+ * records out, which reclaims their space.
+ *
+ * @see RecordCodec
+ */
+public class Journal {
+  /**
+   * The magic number at the start of a journal ("CMJ1").
+   */
+  private static final int MAGIC = 0x434d4a31;
+
+  /**
+   * The size of the header.
+   */
+  private static final int HEADER_SIZE = 20;
+
+  /**
+   * The journal file.
+   */
+  private final Path file;
+
+  /**
+   * The snapshot file the journal applies to.
+   */
+  private final Path snapshot;
+
+  /**
+   * The length of the valid entries of the journal or 0 if it must be
+   * created again before appending.
+   */
+  private long validLength;
+
+  /**
+   * The number of records in the journal.
+   */
+  private int recordCount;
+
+  /**
+   * Creates a journal.
+   *
+   * @param file The journal file.
+   * @param snapshot The snapshot file the journal applies to.
+   * @throws NullPointerException If a file is null.
+   */
+  public Journal(File file, File snapshot) {
+    if (file == null || snapshot == null)
+      throw new NullPointerException("file or snapshot must not be null");
+
+    this.file = file.toPath();
+    this.snapshot = snapshot.toPath();
+  }
+
+  /**
+   * Returns the journal file.
+   *
+   * @return The journal file.
+   */
+  public File getFile() {
+    return file.toFile();
+  }
+
+  /**
+   * Returns the number of records in the journal, as last read or appended.
+   *
+   * @return The number of records.
+   */
+  public int getRecordCount() {
+    return recordCount;
+  }
+
+  /**
+   * Reads the records of the journal, if it applies to the current snapshot.
+   *
+   * @param handler The handler receiving the records.
+   * @return The number of records read.
+   * @throws IOException If the journal can't be read or a record is corrupt.
+   */
+  public int read(ContactsReader.Handler handler) throws IOException {
+    validLength = 0;
+    recordCount = 0;
+    if (!Files.exists(file) || !Files.exists(snapshot))
+      return 0;
+
+    byte[] bytes = Files.readAllBytes(file);
+    ByteBuffer buffer = ByteBuffer.wrap(bytes);
+    long[] tag = tag();
+    if (bytes.length < HEADER_SIZE || buffer.getInt() != MAGIC ||
+        buffer.getLong() != tag[0] || buffer.getLong() != tag[1]) {
+      return 0;
+    }
+
+    RecordCodec codec = new RecordCodec();
+    CRC32C crc = new CRC32C();
+    int count = 0;
+    while (buffer.remaining() >= 8) {
+      int length = buffer.getInt();
+      int checksum = buffer.getInt();
+      if (length < 0 || length > buffer.remaining())
+        break;
+
+      crc.reset();
+      crc.update(bytes, buffer.position(), length);
+      if ((int)crc.getValue() != checksum)
+        break;
+
+      ByteBuffer record = ByteBuffer.wrap(bytes, buffer.position(), length)
+        .slice();
+      codec.read(record, handler);
+      if (record.hasRemaining())
+        throw new IOException("journal record " + count + " is corrupt");
+
+      buffer.position(buffer.position() + length);
+      validLength = buffer.position();
+      count++;
+    }
+
+    if (validLength == 0)
+      validLength = HEADER_SIZE;
+    recordCount = count;
+    return count;
+  }
+
+  /**
+   * Appends a batch of records to the journal with a single write, and
+   * forces them to disk.
+   *
+   * If the journal was not read since the last snapshot, it is created
+   * again. If appending fails, the journal is left ending before the batch.
+   *
+   * @param batch The batch of records.
+   * @throws IOException If the journal can't be written.
+   */
+  public void append(Batch batch) throws IOException {
+    try (FileChannel channel = FileChannel.open(file,
+           StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+      if (validLength == 0) {
+        long[] tag = tag();
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.putInt(MAGIC).putLong(tag[0]).putLong(tag[1]).flip();
+        channel.truncate(0);
+        while (header.hasRemaining())
+          channel.write(header);
+        channel.force(false);
+        validLength = HEADER_SIZE;
+        recordCount = 0;
+      } else {
+        // drop any torn entry
+        channel.truncate(validLength);
+        channel.position(validLength);
+      }
+
+      ByteBuffer entries = ByteBuffer.wrap(batch.entries.toByteArray());
+      while (entries.hasRemaining())
+        channel.write(entries);
+      channel.force(false);
+
+      validLength = channel.position();
+      recordCount += batch.count;
+    }
+  }
+
+  /**
+   * Deletes the journal, once a new snapshot holds all its records.
+   *
+   * @throws IOException If the journal can't be deleted.
+   */
+  public void reset() throws IOException {
+    validLength = 0;
+    recordCount = 0;
+    Files.deleteIfExists(file);
+  }
+
+  // Returns the size and modification time of the snapshot.
+  private long[] tag() throws IOException {
+    BasicFileAttributes attributes = Files.readAttributes(snapshot,
+      BasicFileAttributes.class);
+    return new long[] {
+      attributes.size(),
+      attributes.lastModifiedTime().to(TimeUnit.MICROSECONDS)
+    };
+  }
+
+  /**
+   * A batch of records to append to the journal, encoded in memory.
+   *
+   * As the handler methods can't throw IOException, encoding errors are
+   * thrown as UncheckedIOException.
+   */
+  public static class Batch implements ContactsReader.Handler {
+    /**
+     * The encoded entries.
+     */
+    private final ByteArrayOutputStream entries = new ByteArrayOutputStream();
+
+    /**
+     * The output of the entries.
+     */
+    private final DataOutputStream output = new DataOutputStream(entries);
+
+    /**
+     * The bytes of the record being encoded.
+     */
+    private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+    /**
+     * The output of the record being encoded.
+     */
+    private final DataOutputStream record = new DataOutputStream(bytes);
+
+    /**
+     * The checksum calculator.
+     */
+    private final CRC32C crc = new CRC32C();
+
+    /**
+     * The number of records in the batch.
+     */
+    private int count;
+
+    /**
+     * Adds a contact to the batch.
+     *
+     * @param id The contact ID.
+     * @param name The contact name.
+     * @param notes The contact notes or null if there are none.
+     */
+    public void contact(int id, String name, String notes) {
+      try {
+        RecordCodec.writeContact(record, id, name, notes);
+        add();
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    }
+
+    /**
+     * Adds a meeting to the batch.
+     *
+     * @param id The meeting ID.
+     * @param time The meeting time in milliseconds.
+     * @param notes The meeting notes or null if there are none.
+     * @param contactIds The IDs of the meeting contacts.
+     * @param contactCount The number of contact IDs.
+     */
+    public void meeting(int id, long time, String notes, int[] contactIds,
+                        int contactCount) {
+      meeting(id, time, time, notes, contactIds, contactCount);
+    }
+
+    /**
+     * Adds a meeting to the batch with its end time.
+     *
+     * @param id The meeting ID.
+     * @param time The meeting time in milliseconds.
+     * @param endTime The meeting end time in milliseconds, or the meeting
+     *        time if the meeting has no end date.
+     * @param notes The meeting notes or null if there are none.
+     * @param contactIds The IDs of the meeting contacts.
+     * @param contactCount The number of contact IDs.
+     */
+    public void meeting(int id, long time, long endTime, String notes,
+                        int[] contactIds, int contactCount) {
+      try {
+        RecordCodec.writeMeeting(record, id, time, endTime, notes, contactIds,
+          contactCount);
+        add();
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    }
+
+    /**
+     * Adds a series of recurring meetings to the batch.
+     *
+     * @param id The ID of the first occurrence.
+     * @param time The time of the first occurrence in milliseconds.
+     * @param interval The interval between occurrences.
+     * @param count The number of occurrences.
+     * @param next The index of the next occurrence, yet to take place.
+     * @param contactIds The IDs of the contacts.
+     * @param contactCount The number of contact IDs.
+     */
+    public void recurrence(int id, long time, Period interval, int count,
+                           int next, int[] contactIds, int contactCount) {
+      try {
+        RecordCodec.writeRecurrence(record, id, time, interval, count, next,
+          contactIds, contactCount);
+        add();
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    }
+
+    /**
+     * Adds the tombstone of a removed contact to the batch.
+     *
+     * @param id The contact ID.
+     */
+    public void contactRemoved(int id) {
+      try {
+        RecordCodec.writeRemovedContact(record, id);
+        add();
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    }
+
+    /**
+     * Adds the tombstone of a removed meeting to the batch.
+     *
+     * @param id The meeting ID.
+     */
+    public void meetingRemoved(int id) {
+      try {
+        RecordCodec.writeRemovedMeeting(record, id);
+        add();
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    }
+
+    /**
+     * Returns the number of records in the batch.
+     *
+     * @return The number of records.
+     */
+    public int size() {
+      return count;
+    }
+
+    // Adds the current record with its length and checksum.
+    private void add() throws IOException {
+      record.flush();
+      byte[] data = bytes.toByteArray();
+      bytes.reset();
+
+      crc.reset();
+      crc.update(data);
+      output.writeInt(data.length);
+      output.writeInt((int)crc.getValue());
+      output.write(data);
+      output.flush();
+      count++;
+    }
+  }
+}
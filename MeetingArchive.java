@@ -0,0 +1,662 @@
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.time.Instant;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.TimeZone;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * An archive of the past meetings of sealed months, kept in files of their
+ * own instead of the database file.
+ *
+ * The meetings of a month are sealed into a segment: a block file of their
+ * records, written once and never modified, next to a summary holding the
+ * same records without their notes. A manifest lists the segments, one per
+ * month, the IDs of the sealed meetings removed since and the next meeting
+ * ID, so that the ID of a removed meeting is never assigned again even if
+ * an older snapshot is loaded. It has the following structure (all numbers
+ * are big-endian):
+ *
+ * <pre>
+ * "CMA1", int nextMeetingId                                header
+ * int segmentCount, (int month, int sequence)...           segments
+ * int removedCount, int id...                              removed meetings
+ * int crc                                                  checksum
+ * </pre>
+ *
+ * and is replaced atomically like a snapshot, keeping the previous one. The
+ * files of a segment are written before the manifest listing it, so a crash
+ * leaves either segment unlisted.
+ *
+ * A sealed meeting that changes is superseded: its copy in the database
+ * file wins over the sealed one, and sealing its month again writes a new
+ * segment holding the current meetings of the previous one, which replaces
+ * it. Each segment keeps the IDs of its current meetings, so superseded and
+ * removed meetings are skipped.
+ *
+ * Like TextIndex, the archive is backed by persistent maps, so a snapshot
+ * costs nothing and stays unchanged while the archive is modified. Reading
+ * the meetings of segments is left to the contact manager, which caches
+ * them.
+ *
+ * @see BlockContactsWriter
+ */
+public class MeetingArchive {
+  /**
+   * The magic number at the start of a manifest ("CMA1").
+   */
+  private static final int MAGIC = 0x434d4131;
+
+  /**
+   * The directory of the archive files.
+   */
+  private final File directory;
+
+  /**
+   * The manifest file.
+   */
+  private final SnapshotFile manifest;
+
+  /**
+   * The time zone of the months.
+   */
+  private final TimeZone zone;
+
+  /**
+   * The segments by month.
+   */
+  private PersistentTreeMap<Integer, Segment> segments;
+
+  /**
+   * The IDs of the removed meetings, which may be sealed in a segment.
+   */
+  private IdBitmap removed;
+
+  /**
+   * Whether the manifest could not be loaded, in which case the archive is
+   * not written to, so that its files are left for recovery.
+   */
+  private boolean failed;
+
+  /**
+   * Creates an empty archive.
+   *
+   * @param directory The directory of the archive files.
+   * @param zone The time zone of the months.
+   * @throws NullPointerException If the directory or time zone is null.
+   */
+  public MeetingArchive(File directory, TimeZone zone) {
+    if (directory == null || zone == null)
+      throw new NullPointerException("directory or zone must not be null");
+
+    this.directory = directory;
+    this.manifest = new SnapshotFile(new File(directory, "manifest"));
+    this.zone = zone;
+    this.segments = PersistentTreeMap.empty();
+    this.removed = IdBitmap.empty();
+  }
+
+  // Creates a snapshot of an archive.
+  private MeetingArchive(MeetingArchive archive) {
+    this.directory = archive.directory;
+    this.manifest = archive.manifest;
+    this.zone = archive.zone;
+    this.segments = archive.segments;
+    this.removed = archive.removed;
+    this.failed = archive.failed;
+  }
+
+  /**
+   * Returns a snapshot of the archive, which the changes made to the
+   * archive afterwards don't affect. Taking a snapshot takes constant time.
+   *
+   * @return The snapshot.
+   */
+  public MeetingArchive snapshot() {
+    return new MeetingArchive(this);
+  }
+
+  /**
+   * Returns the month of a time, counted from year 0.
+   *
+   * @param time The time in milliseconds.
+   * @return The month, 12 * year + month of year - 1.
+   */
+  public int monthOf(long time) {
+    ZonedDateTime date = Instant.ofEpochMilli(time).atZone(zone.toZoneId());
+    return date.getYear() * 12 + date.getMonthValue() - 1;
+  }
+
+  /**
+   * Returns the time a month starts.
+   *
+   * @param month The month, as returned by monthOf().
+   * @return The time in milliseconds of the start of its first day.
+   */
+  public long startOf(int month) {
+    return ZonedDateTime.of(Math.floorDiv(month, 12),
+      Math.floorMod(month, 12) + 1, 1, 0, 0, 0, 0, zone.toZoneId())
+      .toInstant().toEpochMilli();
+  }
+
+  /**
+   * Returns whether the archive could not be loaded, in which case it is
+   * not written to.
+   *
+   * @return true if the archive is read-only, false otherwise.
+   */
+  public boolean isReadOnly() {
+    return failed;
+  }
+
+  /**
+   * Returns whether the archive has no segments.
+   *
+   * @return true if no month is sealed, false otherwise.
+   */
+  public boolean isEmpty() {
+    return segments.isEmpty();
+  }
+
+  /**
+   * Returns the segment of a month.
+   *
+   * @param month The month.
+   * @return The segment or null if the month is not sealed.
+   */
+  public Segment getSegment(int month) {
+    return segments.get(month);
+  }
+
+  /**
+   * Returns a stream of the segments, by month, from a month on.
+   *
+   * @param fromMonth The first month.
+   * @return The stream of segments.
+   */
+  public Stream<Segment> segments(int fromMonth) {
+    return segments.tailValues(fromMonth, true);
+  }
+
+  /**
+   * Returns the segment holding the current copy of a meeting. There are
+   * few segments, so they are scanned.
+   *
+   * @param id The meeting ID.
+   * @return The segment or null if the meeting is not sealed.
+   */
+  public Segment segmentOf(int id) {
+    for (Segment segment : segments.values()) {
+      if (segment.ids.contains(id))
+        return segment;
+    }
+    return null;
+  }
+
+  /**
+   * Returns whether the current copy of a meeting is sealed.
+   *
+   * @param id The meeting ID.
+   * @return true if the meeting is sealed, false otherwise.
+   */
+  public boolean contains(int id) {
+    return (segmentOf(id) != null);
+  }
+
+  /**
+   * Returns whether a meeting was sealed, whether its sealed copy is still
+   * current or was superseded since. There are few segments, so they are
+   * scanned.
+   *
+   * @param id The meeting ID.
+   * @return true if a segment holds a copy of the meeting, false otherwise.
+   */
+  public boolean wasSealed(int id) {
+    for (Segment segment : segments.values()) {
+      if (segment.sealedIds.contains(id))
+        return true;
+    }
+    return false;
+  }
+
+  /**
+   * Returns the IDs of the sealed meetings.
+   *
+   * @return The IDs of the current meetings of all the segments.
+   */
+  public IdBitmap ids() {
+    IdBitmap ids = IdBitmap.empty();
+    for (Segment segment : segments.values())
+      ids = ids.or(segment.ids);
+    return ids;
+  }
+
+  /**
+   * Records that the sealed copy of a meeting is superseded by a copy in
+   * the database file.
+   *
+   * @param id The meeting ID.
+   */
+  public void supersede(int id) {
+    Segment segment = segmentOf(id);
+    if (segment != null) {
+      segments = segments.put(segment.month, new Segment(segment.month,
+        segment.sequence, segment.sealedIds, segment.ids.remove(id)));
+    }
+  }
+
+  /**
+   * Records that a meeting was removed, so that its sealed copy, if any, is
+   * skipped from then on, once the manifest is saved.
+   *
+   * @param id The meeting ID.
+   */
+  public void remove(int id) {
+    supersede(id);
+    removed = removed.add(id);
+  }
+
+  /**
+   * Adds a segment written by write(), replacing the segment of its month.
+   *
+   * @param segment The segment.
+   */
+  public void put(Segment segment) {
+    segments = segments.put(segment.month, segment);
+  }
+
+  /**
+   * Writes the segment of a month, holding the meetings to seal and the
+   * current meetings of the previous segment of the month. The segment is
+   * not added to the archive.
+   *
+   * @param month The month.
+   * @param meetings The meetings of the month.
+   * @return The segment, all of whose meetings are current.
+   * @throws IOException If the segment can't be written.
+   */
+  public Segment write(int month, Collection<PastMeetingImpl> meetings)
+    throws IOException
+  {
+    if (failed)
+      throw new IOException("archive could not be loaded");
+
+    Segment previous = segments.get(month);
+    Segment segment = new Segment(month,
+      (previous == null ? 1 : previous.sequence + 1), IdBitmap.empty(),
+      IdBitmap.empty());
+    Files.createDirectories(directory.toPath());
+    write(segment.file(directory, ".seg"), meetings, true);
+    write(segment.file(directory, ".sum"), meetings, false);
+
+    IdBitmap ids = IdBitmap.empty();
+    for (PastMeetingImpl meeting : meetings)
+      ids = ids.add(meeting.getId());
+    return new Segment(month, segment.sequence, ids, ids);
+  }
+
+  /**
+   * Reads the meetings of a segment, with their notes.
+   *
+   * @param segment The segment.
+   * @param handler The handler receiving the meetings, whether current or
+   *        not.
+   * @throws IOException If the segment can't be read or is corrupt.
+   */
+  public void read(Segment segment, ContactsReader.Handler handler)
+    throws IOException
+  {
+    new BlockContactsReader().read(segment.file(directory, ".seg"), handler);
+  }
+
+  /**
+   * Deletes the files of a segment replaced by a newer one.
+   *
+   * @param segment The segment.
+   */
+  public void delete(Segment segment) {
+    segment.file(directory, ".seg").delete();
+    segment.file(directory, ".sum").delete();
+  }
+
+  /**
+   * Loads the manifest, or the previous one if it is corrupt, and the
+   * summaries of its segments, newest first.
+   *
+   * The current meetings of each segment, those not removed nor sealed in
+   * a newer segment, are reported to the handler without notes once all the
+   * segments are added, so that the handler can supersede or remove them,
+   * after the next meeting ID. If the archive can't be loaded, it is left
+   * empty and read-only.
+   *
+   * @param handler The handler receiving the next meeting ID and the current
+   *        meetings.
+   * @throws IOException If no manifest or a summary can't be read.
+   */
+  public void load(ContactsReader.Handler handler) throws IOException {
+    File file = manifest.getFile();
+    if (!file.exists())
+      return;
+
+    DataInputStream input;
+    try {
+      input = readManifest(file);
+    } catch (IOException e) {
+      File previous = manifest.getPreviousFile();
+      if (!previous.exists()) {
+        failed = true;
+        throw e;
+      }
+      try {
+        input = readManifest(previous);
+      } catch (IOException e2) {
+        failed = true;
+        throw e;
+      }
+    }
+
+    try {
+      int nextMeetingId = input.readInt();
+      List<Segment> listed = new ArrayList<>();
+      int segmentCount = input.readInt();
+      for (int i = 0; i < segmentCount; i++) {
+        listed.add(new Segment(input.readInt(), input.readInt(),
+          IdBitmap.empty(), IdBitmap.empty()));
+      }
+      int removedCount = input.readInt();
+      for (int i = 0; i < removedCount; i++)
+        removed = removed.add(input.readInt());
+
+      // all the summaries are read before any segment is added, so that a
+      // corrupt one leaves the archive empty
+      List<Summary> summaries = new ArrayList<>();
+      IdBitmap loaded = IdBitmap.empty();
+      for (int i = listed.size() - 1; i >= 0; i--) {
+        Summary summary = readSummary(listed.get(i), loaded);
+        summaries.add(summary);
+        loaded = loaded.or(summary.segment.sealedIds);
+      }
+      // the meetings removed before they were sealed are forgotten
+      removed = removed.and(loaded);
+      for (Summary summary : summaries)
+        put(summary.segment);
+
+      handler.nextIds(0, nextMeetingId);
+      for (Summary summary : summaries) {
+        for (int i = 0; i < summary.ids.length; i++) {
+          if (summary.segment.ids.contains(summary.ids[i])) {
+            handler.meeting(summary.ids[i], summary.times[i],
+              summary.endTimes[i], null, summary.attendees[i],
+              summary.attendees[i].length);
+          }
+        }
+      }
+    } catch (IOException | UncheckedIOException e) {
+      failed = true;
+      segments = PersistentTreeMap.empty();
+      throw (e instanceof UncheckedIOException ?
+        ((UncheckedIOException)e).getCause() : (IOException)e);
+    }
+  }
+
+  /**
+   * Saves the manifest. The removed meetings not sealed in any segment are
+   * left out, and the manifest is deleted once there are no segments.
+   *
+   * @param nextMeetingId The next meeting ID to assign.
+   * @throws IOException If the manifest can't be written.
+   */
+  public void save(int nextMeetingId) throws IOException {
+    if (failed)
+      return;
+
+    File file = manifest.getFile();
+    if (segments.isEmpty()) {
+      Files.deleteIfExists(file.toPath());
+      Files.deleteIfExists(manifest.getPreviousFile().toPath());
+      return;
+    }
+
+    IdBitmap sealed = IdBitmap.empty();
+    for (Segment segment : segments.values())
+      sealed = sealed.or(segment.sealedIds);
+    IdBitmap saved = removed.and(sealed);
+
+    Files.createDirectories(directory.toPath());
+    manifest.write(output -> {
+      CheckedOutputStream checked = new CheckedOutputStream(output,
+        new CRC32C());
+      DataOutputStream data = new DataOutputStream(checked);
+      data.writeInt(MAGIC);
+      data.writeInt(nextMeetingId);
+      data.writeInt(segments.size());
+      for (Segment segment : segments.values()) {
+        data.writeInt(segment.month);
+        data.writeInt(segment.sequence);
+      }
+      data.writeInt(saved.cardinality());
+      for (int id : saved.toArray())
+        data.writeInt(id);
+      data.flush();
+      data.writeInt((int)checked.getChecksum().getValue());
+      data.flush();
+    }, true);
+  }
+
+  // Writes the meetings of a segment to a block file, with or without their
+  // notes.
+  private static void write(File file, Collection<PastMeetingImpl> meetings,
+                            boolean notes) throws IOException {
+    new SnapshotFile(file).write(output -> {
+      try (BlockContactsWriter writer = new BlockContactsWriter(output,
+             BlockContactsWriter.DEFAULT_BLOCK_SIZE)) {
+        int[] contactIds = new int[16];
+        for (PastMeetingImpl meeting : meetings) {
+          Set<Contact> contacts = meeting.getContacts();
+          if (contactIds.length < contacts.size())
+            contactIds = new int[contacts.size()];
+          int count = 0;
+          for (Contact contact : contacts)
+            contactIds[count++] = contact.getId();
+          writer.meeting(meeting.getId(), meeting.getTime(),
+            meeting.getEndTime(), (notes ? meeting.getNotes() : null),
+            contactIds, count);
+        }
+      } catch (UncheckedIOException e) {
+        throw e.getCause();
+      }
+    }, false);
+  }
+
+  // Reads a manifest, verifying its checksum, and returns its contents
+  // after the magic number.
+  private static DataInputStream readManifest(File file) throws IOException {
+    byte[] bytes = Files.readAllBytes(file.toPath());
+    if (bytes.length < 20)
+      throw new IOException("manifest is truncated");
+    CRC32C crc = new CRC32C();
+    crc.update(bytes, 0, bytes.length - 4);
+    if ((int)crc.getValue() != ByteBuffer.wrap(bytes).getInt(
+          bytes.length - 4)) {
+      throw new IOException("checksum mismatch");
+    }
+
+    DataInputStream input = new DataInputStream(new ByteArrayInputStream(
+      bytes, 0, bytes.length - 4));
+    if (input.readInt() != MAGIC)
+      throw new IOException("not a manifest");
+    return input;
+  }
+
+  // Reads the summary of a listed segment, whose current meetings are
+  // those not removed nor loaded from a newer segment.
+  private Summary readSummary(Segment listed, IdBitmap loaded)
+    throws IOException
+  {
+    List<long[]> meetings = new ArrayList<>();
+    List<int[]> attendees = new ArrayList<>();
+    new BlockContactsReader().read(listed.file(directory, ".sum"),
+      new ContactsReader.Handler() {
+        public void contact(int id, String name, String notes) {
+        }
+
+        public void meeting(int id, long time, String notes,
+                            int[] contactIds, int contactCount) {
+          meeting(id, time, time, notes, contactIds, contactCount);
+        }
+
+        public void meeting(int id, long time, long endTime, String notes,
+                            int[] contactIds, int contactCount) {
+          meetings.add(new long[] {id, time, endTime});
+          attendees.add(Arrays.copyOf(contactIds, contactCount));
+        }
+      });
+
+    Summary summary = new Summary(meetings.size());
+    IdBitmap sealedIds = IdBitmap.empty();
+    IdBitmap ids = IdBitmap.empty();
+    for (int i = 0; i < meetings.size(); i++) {
+      int id = (int)meetings.get(i)[0];
+      summary.ids[i] = id;
+      summary.times[i] = meetings.get(i)[1];
+      summary.endTimes[i] = meetings.get(i)[2];
+      summary.attendees[i] = attendees.get(i);
+      sealedIds = sealedIds.add(id);
+      if (!loaded.contains(id) && !removed.contains(id))
+        ids = ids.add(id);
+    }
+    summary.segment = new Segment(listed.month, listed.sequence, sealedIds,
+      ids);
+    return summary;
+  }
+
+  /**
+   * The segment of a sealed month.
+   */
+  public static final class Segment {
+    /**
+     * The month.
+     */
+    private final int month;
+
+    /**
+     * The sequence number, which increases each time the month is sealed.
+     */
+    private final int sequence;
+
+    /**
+     * The IDs of all the meetings of the segment files.
+     */
+    private final IdBitmap sealedIds;
+
+    /**
+     * The IDs of the current meetings.
+     */
+    private final IdBitmap ids;
+
+    // Creates a segment.
+    private Segment(int month, int sequence, IdBitmap sealedIds,
+                    IdBitmap ids) {
+      this.month = month;
+      this.sequence = sequence;
+      this.sealedIds = sealedIds;
+      this.ids = ids;
+    }
+
+    /**
+     * Returns the month.
+     *
+     * @return The month.
+     */
+    public int getMonth() {
+      return month;
+    }
+
+    /**
+     * Returns the sequence number, which increases each time the month is
+     * sealed.
+     *
+     * @return The sequence number.
+     */
+    public int getSequence() {
+      return sequence;
+    }
+
+    /**
+     * Returns the IDs of the current meetings of the segment.
+     *
+     * @return The IDs of the meetings neither superseded nor removed.
+     */
+    public IdBitmap getIds() {
+      return ids;
+    }
+
+    /**
+     * Returns a copy of the segment with other current meetings.
+     *
+     * @param ids The IDs of the current meetings, among those sealed.
+     * @return The segment.
+     */
+    public Segment withIds(IdBitmap ids) {
+      return new Segment(month, sequence, sealedIds, ids);
+    }
+
+    // Returns a file of the segment, named after its month and sequence.
+    private File file(File directory, String extension) {
+      return new File(directory, String.format("%04d-%02d.%d%s",
+        Math.floorDiv(month, 12), Math.floorMod(month, 12) + 1, sequence,
+        extension));
+    }
+  }
+
+  /**
+   * The meetings of the summary of a segment, without notes.
+   */
+  private static final class Summary {
+    /**
+     * The segment, with its current meetings.
+     */
+    Segment segment;
+
+    /**
+     * The meeting IDs.
+     */
+    final int[] ids;
+
+    /**
+     * The meeting times.
+     */
+    final long[] times;
+
+    /**
+     * The meeting end times.
+     */
+    final long[] endTimes;
+
+    /**
+     * The contact IDs of the meetings.
+     */
+    final int[][] attendees;
+
+    // Creates an empty summary of a number of meetings.
+    Summary(int size) {
+      this.ids = new int[size];
+      this.times = new long[size];
+      this.endTimes = new long[size];
+      this.attendees = new int[size][];
+    }
+  }
+}
@@ -1,10 +1,21 @@
 import java.util.Calendar;
+import java.util.Collections;
+import java.util.LinkedHashSet;
 import java.util.Set;
+import java.util.TimeZone;
 
 /**
  * A class to represent meetings
  *
  * Meetings have unique IDs, scheduled date and a list of participating contacts
+ *
+ * A meeting may also have an end date, after which it is over. A meeting
+ * without an end date is held at an instant, and its end time is its time.
+ *
+ * The ID, date and contacts of a meeting are immutable: the date is stored
+ * as a time in milliseconds and a time zone, and the contacts as an
+ * unmodifiable set, so meetings can be shared between threads without
+ * copying them.
  */
 public abstract class MeetingImpl implements Meeting {
   /**
@@ -13,15 +24,32 @@ public abstract class MeetingImpl implements Meeting {
   private final int id;
   
   /**
-   * The meeting data.
+   * The meeting time in milliseconds.
+   */
+  private final long time;
+  
+  /**
+   * The meeting end time in milliseconds, equal to the time if the meeting
+   * has no end date.
    */
-  private final Calendar date;
+  private final long endTime;
+  
+  /**
+   * The meeting time zone.
+   */
+  private final TimeZone zone;
   
   /**
    * The set of meeting contacts.
    */
   private final Set<Contact> contacts;
   
+  /**
+   * The last time zone used by a meeting, shared by the meetings in the same
+   * time zone.
+   */
+  private static volatile TimeZone sharedZone = TimeZone.getDefault();
+  
   /**
    * Creates a new meeting by passing the meeting id, date and a set of
    * contacts.
@@ -36,16 +64,70 @@ public abstract class MeetingImpl implements Meeting {
    * @see Contact
    */
   public MeetingImpl(int id, Calendar date, Set<Contact> contacts) {
+    this(id, timeOf(date), date.getTimeZone(), contacts);
+  }
+  
+  /**
+   * Creates a new meeting by passing the meeting id, time, time zone and a
+   * set of contacts.
+   *
+   * @param id The meeting id.
+   * @param time The meeting time in milliseconds.
+   * @param zone The meeting time zone.
+   * @param contacts The set of contacts.
+   * @throws IllegalArgumentException If the id is invalid
+   * (less than or equal to 0).
+   * @throws NullPointerException If the time zone or the set of contacts are
+   *         null.
+   * @throws IllegalArgumentException If the set of contacts is empty.
+   * @see Contact
+   */
+  public MeetingImpl(int id, long time, TimeZone zone, Set<Contact> contacts) {
+    this(id, time, time, zone, contacts);
+  }
+  
+  /**
+   * Creates a new meeting by passing the meeting id, time, end time, time
+   * zone and a set of contacts.
+   *
+   * @param id The meeting id.
+   * @param time The meeting time in milliseconds.
+   * @param endTime The meeting end time in milliseconds, or the meeting time
+   *        if the meeting has no end date.
+   * @param zone The meeting time zone.
+   * @param contacts The set of contacts.
+   * @throws IllegalArgumentException If the id is invalid
+   * (less than or equal to 0).
+   * @throws NullPointerException If the time zone or the set of contacts are
+   *         null.
+   * @throws IllegalArgumentException If the set of contacts is empty or the
+   *         end time is before the time.
+   * @see Contact
+   */
+  public MeetingImpl(int id, long time, long endTime, TimeZone zone,
+    Set<Contact> contacts)
+  {
     if (id <= 0)
       throw new IllegalArgumentException("id must be greater than 0");
-    else if (date == null || contacts == null)
+    else if (zone == null || contacts == null)
       throw new NullPointerException("date or contacts must not be null");
     else if (contacts.isEmpty())
       throw new IllegalArgumentException("contacts must not be empty");
+    else if (endTime < time)
+      throw new IllegalArgumentException("end must not be before date");
     
     this.id = id;
-    this.date = date;
-    this.contacts = contacts;
+    this.time = time;
+    this.endTime = endTime;
+    this.zone = share(zone);
+    
+    // attendee sets are immutable already
+    if (contacts instanceof AttendeeSet) {
+      this.contacts = contacts;
+    } else {
+      this.contacts = Collections.unmodifiableSet(
+        new LinkedHashSet<>(contacts));
+    }
   }
   
   /**
@@ -60,12 +142,71 @@ public abstract class MeetingImpl implements Meeting {
   /**
    * Returns the meeting date.
    *
+   * The returned calendar is a new instance, so it may be modified freely.
+   *
    * @return The meeting date.
    */
   public Calendar getDate() {
+    Calendar date = Calendar.getInstance((TimeZone)zone.clone());
+    date.setTimeInMillis(time);
     return date;
   }
   
+  /**
+   * Returns the meeting time zone.
+   *
+   * The returned time zone is a new instance, so it may be modified freely.
+   *
+   * @return The meeting time zone.
+   */
+  public TimeZone getTimeZone() {
+    return (TimeZone)zone.clone();
+  }
+  
+  /**
+   * Returns the meeting time, without creating a calendar.
+   *
+   * @return The meeting time in milliseconds.
+   */
+  public long getTime() {
+    return time;
+  }
+  
+  /**
+   * Returns the meeting end date.
+   *
+   * The returned calendar is a new instance, so it may be modified freely.
+   *
+   * @return The meeting end date or null if the meeting has no end date.
+   */
+  public Calendar getEndDate() {
+    if (!hasEndDate())
+      return null;
+    
+    Calendar date = Calendar.getInstance((TimeZone)zone.clone());
+    date.setTimeInMillis(endTime);
+    return date;
+  }
+  
+  /**
+   * Returns the meeting end time, without creating a calendar.
+   *
+   * @return The meeting end time in milliseconds, or the meeting time if the
+   *         meeting has no end date.
+   */
+  public long getEndTime() {
+    return endTime;
+  }
+  
+  /**
+   * Returns whether the meeting has an end date, and so lasts some time.
+   *
+   * @return true if the meeting has an end date, false otherwise.
+   */
+  public boolean hasEndDate() {
+    return (endTime != time);
+  }
+  
   /**
    * Returns the details of the people attending the meeting.
    *
@@ -73,7 +214,7 @@ public abstract class MeetingImpl implements Meeting {
    * just two people: the user and the contact) and may contain an
    * arbitrary number of them.
    *
-   * @return The set of meeting contacts.
+   * @return The unmodifiable set of meeting contacts.
    * @see Contact
    */
   public Set<Contact> getContacts() {
@@ -90,7 +231,8 @@ public abstract class MeetingImpl implements Meeting {
   public boolean equals(Object object) {
     if (object instanceof MeetingImpl) {
       MeetingImpl meeting = (MeetingImpl)object;
-      return (this.date.equals(meeting.date) &&
+      return (this.time == meeting.time && this.endTime == meeting.endTime &&
+        this.zone.equals(meeting.zone) &&
         this.contacts.equals(meeting.contacts));
     }
     return false;
@@ -102,6 +244,24 @@ public abstract class MeetingImpl implements Meeting {
    * @return A hash code value for this object.
    */
   public int hashCode() {
-    return date.hashCode() ^ contacts.hashCode();
+    return Long.hashCode(time) ^ contacts.hashCode();
+  }
+  
+  // Returns the time of a date, which must not be null.
+  private static long timeOf(Calendar date) {
+    if (date == null)
+      throw new NullPointerException("date or contacts must not be null");
+    return date.getTimeInMillis();
+  }
+  
+  // Returns a private copy of a time zone, shared with the previous meeting
+  // if it was in the same time zone.
+  private static TimeZone share(TimeZone zone) {
+    TimeZone shared = sharedZone;
+    if (!shared.equals(zone)) {
+      shared = (TimeZone)zone.clone();
+      sharedZone = shared;
+    }
+    return shared;
   }
 }
@@ -0,0 +1,259 @@
+import java.util.Map;
+import java.util.stream.Stream;
+
+/**
+ * A chronological index of meetings.
+ *
+ * Meetings are ordered by date and then by ID, both over all meetings and
+ * per attending contact, so that queries can walk the index lazily starting
+ * right after a given (date, ID) key instead of scanning every meeting.
+ *
+ * The index is backed by persistent maps, so a snapshot of the index costs
+ * nothing and stays unchanged, and safe to read from any thread, while the
+ * index is modified.
+ *
+ * @param <T> The meeting type.
+ */
+public class MeetingIndex<T extends MeetingImpl> {
+  /**
+   * All indexed meetings, grouped by time in milliseconds and then by ID.
+   */
+  private PersistentTreeMap<Long, PersistentTreeMap<Integer, T>> byDate;
+
+  /**
+   * The indexed meetings of each contact, grouped like byDate.
+   */
+  private PersistentTreeMap<Integer,
+    PersistentTreeMap<Long, PersistentTreeMap<Integer, T>>> byContact;
+
+  /**
+   * The number of indexed meetings.
+   */
+  private int size;
+
+  /**
+   * Creates an empty index.
+   */
+  public MeetingIndex() {
+    clear();
+  }
+
+  // Creates a snapshot of an index.
+  private MeetingIndex(MeetingIndex<T> index) {
+    this.byDate = index.byDate;
+    this.byContact = index.byContact;
+    this.size = index.size;
+  }
+
+  /**
+   * Adds a meeting to the index.
+   *
+   * @param meeting The meeting.
+   */
+  public void add(T meeting) {
+    long time = meeting.getTime();
+
+    PersistentTreeMap<Integer, T> group = byDate.get(time);
+    if (group == null || !group.containsKey(meeting.getId()))
+      size++;
+    byDate = add(byDate, time, meeting);
+
+    for (Contact contact : meeting.getContacts()) {
+      PersistentTreeMap<Long, PersistentTreeMap<Integer, T>> groups =
+        byContact.get(contact.getId());
+      if (groups == null)
+        groups = PersistentTreeMap.empty();
+      byContact = byContact.put(contact.getId(), add(groups, time, meeting));
+    }
+  }
+
+  /**
+   * Removes a meeting from the index.
+   *
+   * @param meeting The meeting.
+   */
+  public void remove(T meeting) {
+    long time = meeting.getTime();
+
+    PersistentTreeMap<Long, PersistentTreeMap<Integer, T>> newByDate =
+      remove(byDate, time, meeting);
+    if (newByDate == byDate)
+      return;
+    byDate = newByDate;
+    size--;
+
+    for (Contact contact : meeting.getContacts()) {
+      PersistentTreeMap<Long, PersistentTreeMap<Integer, T>> groups =
+        byContact.get(contact.getId());
+      if (groups != null) {
+        groups = remove(groups, time, meeting);
+        if (groups.isEmpty())
+          byContact = byContact.remove(contact.getId());
+        else
+          byContact = byContact.put(contact.getId(), groups);
+      }
+    }
+  }
+
+  /**
+   * Removes all meetings from the index.
+   */
+  public void clear() {
+    byDate = PersistentTreeMap.empty();
+    byContact = PersistentTreeMap.empty();
+    size = 0;
+  }
+
+  /**
+   * Returns a snapshot of the index, which the changes made to the index
+   * afterwards don't affect. Taking a snapshot takes constant time.
+   *
+   * @return The snapshot.
+   */
+  public MeetingIndex<T> snapshot() {
+    return new MeetingIndex<>(this);
+  }
+
+  /**
+   * Returns the number of indexed meetings.
+   *
+   * @return The number of indexed meetings.
+   */
+  public int size() {
+    return size;
+  }
+
+  /**
+   * Returns the earliest indexed meeting or null if there is none.
+   *
+   * @return The earliest meeting or null if the index is empty.
+   */
+  public T first() {
+    Map.Entry<Long, PersistentTreeMap<Integer, T>> entry =
+      byDate.firstEntry();
+    return (entry == null ? null : entry.getValue().firstEntry().getValue());
+  }
+
+  /**
+   * Returns a lazy stream of all meetings sorted by date and ID, starting
+   * right after the specified key.
+   *
+   * @param afterTime The time in milliseconds of the key.
+   * @param afterId The ID of the key; use 0 to include every meeting held at
+   *        afterTime.
+   * @return The stream of meetings.
+   */
+  public Stream<T> stream(long afterTime, int afterId) {
+    return stream(byDate, afterTime, afterId);
+  }
+
+  /**
+   * Returns a lazy stream of the meetings attended by a contact sorted by
+   * date and ID, starting right after the specified key.
+   *
+   * Meetings equal to a meeting held at the same time with a lower ID are
+   * skipped, so the stream does not contain any duplicates.
+   *
+   * @param contactId The contact ID.
+   * @param afterTime The time in milliseconds of the key.
+   * @param afterId The ID of the key; use 0 to include every meeting held at
+   *        afterTime.
+   * @return The stream of meetings.
+   */
+  public Stream<T> streamFor(int contactId, long afterTime, int afterId) {
+    PersistentTreeMap<Long, PersistentTreeMap<Integer, T>> groups =
+      byContact.get(contactId);
+    if (groups == null)
+      return Stream.empty();
+
+    return distinct(stream(groups, afterTime, afterId), groups);
+  }
+
+  /**
+   * Returns a lazy stream of all the meetings attended by a contact sorted
+   * by date and ID, including the meetings equal to another one.
+   *
+   * @param contactId The contact ID.
+   * @return The stream of meetings.
+   */
+  public Stream<T> streamAllFor(int contactId) {
+    PersistentTreeMap<Long, PersistentTreeMap<Integer, T>> groups =
+      byContact.get(contactId);
+    if (groups == null)
+      return Stream.empty();
+
+    return groups.values().stream().flatMap(group -> group.values().stream());
+  }
+
+  /**
+   * Returns a lazy stream of the meetings held at the specified time sorted
+   * by ID, starting right after the specified ID.
+   *
+   * Meetings equal to a meeting with a lower ID are skipped, so the stream
+   * does not contain any duplicates.
+   *
+   * @param time The time in milliseconds.
+   * @param afterId The ID to start after; use 0 to include every meeting.
+   * @return The stream of meetings.
+   */
+  public Stream<T> streamOn(long time, int afterId) {
+    PersistentTreeMap<Integer, T> group = byDate.get(time);
+    if (group == null)
+      return Stream.empty();
+
+    return distinct(group.tailValues(afterId, false), byDate);
+  }
+
+  // Returns the time groups with a meeting added to its group.
+  private static <T extends MeetingImpl>
+    PersistentTreeMap<Long, PersistentTreeMap<Integer, T>> add(
+      PersistentTreeMap<Long, PersistentTreeMap<Integer, T>> groups,
+      long time, T meeting)
+  {
+    PersistentTreeMap<Integer, T> group = groups.get(time);
+    if (group == null)
+      group = PersistentTreeMap.empty();
+    return groups.put(time, group.put(meeting.getId(), meeting));
+  }
+
+  // Returns the time groups with a meeting removed from its group, or the
+  // same groups if there is no meeting with its ID in the group.
+  private static <T extends MeetingImpl>
+    PersistentTreeMap<Long, PersistentTreeMap<Integer, T>> remove(
+      PersistentTreeMap<Long, PersistentTreeMap<Integer, T>> groups,
+      long time, T meeting)
+  {
+    PersistentTreeMap<Integer, T> group = groups.get(time);
+    if (group == null || !group.containsKey(meeting.getId()))
+      return groups;
+
+    group = group.remove(meeting.getId());
+    return (group.isEmpty() ? groups.remove(time) : groups.put(time, group));
+  }
+
+  // Streams the time groups starting right after (afterTime, afterId).
+  private static <T extends MeetingImpl> Stream<T> stream(
+    PersistentTreeMap<Long, PersistentTreeMap<Integer, T>> groups,
+    long afterTime, int afterId)
+  {
+    return groups.tailEntries(afterTime, true).flatMap(entry -> {
+      PersistentTreeMap<Integer, T> group = entry.getValue();
+      if (entry.getKey() == afterTime)
+        return group.tailValues(afterId, false);
+      return group.values().stream();
+    });
+  }
+
+  // Skips meetings equal to an earlier meeting held at the same time. Only
+  // the time group of each meeting is looked at, so the check stays cheap and
+  // also works across pages.
+  private static <T extends MeetingImpl> Stream<T> distinct(Stream<T> stream,
+    PersistentTreeMap<Long, PersistentTreeMap<Integer, T>> groups)
+  {
+    return stream.filter(meeting -> {
+      PersistentTreeMap<Integer, T> group = groups.get(meeting.getTime());
+      return (group == null || group.headValues(meeting.getId(), false)
+        .noneMatch(other -> other.equals(meeting)));
+    });
+  }
+}
@@ -0,0 +1,186 @@
+import java.lang.ref.SoftReference;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Notes text that can be appended to in constant time.
+ *
+ * The text is stored as a list of segments which are only joined when the
+ * whole text is requested. The joined text is cached (and replaces the
+ * segments) until the next note is appended.
+ *
+ * If a notes store is given, the segments are kept in the store instead of
+ * the heap and only their numbers are held here. The joined text is then
+ * cached through a soft reference, so it can be evicted by the garbage
+ * collector after use.
+ */
+public class Notes {
+  /**
+   * The store holding the segments or null if they are kept on the heap.
+   */
+  private final NotesStore store;
+
+  /**
+   * The text segments, if they are kept on the heap.
+   */
+  private final ArrayList<String> segments = new ArrayList<>();
+
+  /**
+   * The numbers of the segments in the store, if there's one.
+   */
+  private int[] storeSegments;
+
+  /**
+   * The number of segments in the store.
+   */
+  private int storeSegmentCount;
+
+  /**
+   * The text length.
+   */
+  private int length;
+
+  /**
+   * The cached text or null if the segments changed since it was joined.
+   */
+  private String text;
+
+  /**
+   * The cached text if the segments are in a store.
+   */
+  private SoftReference<String> cachedText;
+
+  /**
+   * Creates notes with the specified initial text.
+   *
+   * @param text The initial text.
+   * @throws NullPointerException If the text is null.
+   */
+  public Notes(String text) {
+    this(text, null);
+  }
+
+  /**
+   * Creates notes with the specified initial text, whose segments are kept
+   * in the specified store.
+   *
+   * @param text The initial text.
+   * @param store The notes store or null to keep the segments on the heap.
+   * @throws NullPointerException If the text is null.
+   */
+  public Notes(String text, NotesStore store) {
+    if (text == null)
+      throw new NullPointerException("text must not be null");
+
+    this.store = store;
+    if (store != null)
+      this.storeSegments = new int[1];
+
+    addSegment(text);
+  }
+
+  /**
+   * Appends a note.
+   *
+   * The note will be prefixed with an end of line character ('\n') if
+   * there's text already stored.
+   *
+   * @param note The note to append.
+   * @throws NullPointerException If the note is null.
+   */
+  public synchronized void append(String note) {
+    if (note == null)
+      throw new NullPointerException("note must not be null");
+
+    if (store != null) {
+      // store the separator with the note to use a single segment
+      addSegment(length > 0 ? "\n" + note : note);
+    } else {
+      if (length > 0)
+        addSegment("\n");
+      addSegment(note);
+    }
+  }
+
+  /**
+   * Returns the text length.
+   *
+   * @return The text length.
+   */
+  public synchronized int length() {
+    return length;
+  }
+
+  /**
+   * Returns the text segments, which concatenated form the whole text.
+   *
+   * This allows the text to be written out without joining it first.
+   *
+   * @return An unmodifiable list of the text segments.
+   */
+  public synchronized List<String> getSegments() {
+    if (store == null)
+      return Collections.unmodifiableList(new ArrayList<>(segments));
+
+    String[] texts = new String[storeSegmentCount];
+    for (int i = 0; i < storeSegmentCount; i++)
+      texts[i] = store.get(storeSegments[i]);
+    return Collections.unmodifiableList(Arrays.asList(texts));
+  }
+
+  /**
+   * Drops the cached text of notes kept in a store.
+   */
+  public synchronized void evict() {
+    cachedText = null;
+  }
+
+  /**
+   * Returns the whole text.
+   *
+   * @return The text.
+   */
+  public synchronized String toString() {
+    if (store != null) {
+      String result = (cachedText == null ? null : cachedText.get());
+      if (result == null) {
+        result = String.join("", getSegments());
+        cachedText = new SoftReference<>(result);
+      }
+      return result;
+    }
+
+    if (text == null) {
+      StringBuilder builder = new StringBuilder(length);
+      for (String segment : segments)
+        builder.append(segment);
+      text = builder.toString();
+
+      // keep the joined text as the only segment
+      segments.clear();
+      segments.add(text);
+    }
+    return text;
+  }
+
+  // Adds a segment to the heap or to the store.
+  private void addSegment(String segment) {
+    if (segment.isEmpty())
+      return;
+
+    if (store != null) {
+      if (storeSegmentCount == storeSegments.length) {
+        storeSegments = Arrays.copyOf(storeSegments,
+          storeSegmentCount * 2);
+      }
+      storeSegments[storeSegmentCount++] = store.put(segment);
+      cachedText = null;
+    } else {
+      segments.add(segment);
+      text = null;
+    }
+    length += segment.length();
+  }
+}
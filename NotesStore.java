@@ -0,0 +1,173 @@
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * An append-only store that keeps notes text outside the Java heap.
+ *
+ * Text is UTF-8 encoded either into direct byte buffers or into a
+ * memory-mapped scratch file, and is referenced by a segment number. Only the
+ * offsets of the segments are kept on the heap. The store only lives as long
+ * as the process; notes are still saved by the contact manager when it is
+ * flushed.
+ */
+public class NotesStore implements Closeable {
+  /**
+   * The size of each chunk of memory.
+   */
+  private static final int CHUNK_SIZE = 1 << 20;
+
+  /**
+   * The channel of the mapped file or null if using direct buffers.
+   */
+  private final FileChannel channel;
+
+  /**
+   * The chunks of memory, each CHUNK_SIZE bytes long.
+   */
+  private final ArrayList<ByteBuffer> chunks = new ArrayList<>();
+
+  /**
+   * The offsets of the stored segments.
+   */
+  private long[] offsets = new long[1024];
+
+  /**
+   * The number of stored segments.
+   */
+  private int count;
+
+  /**
+   * The offset of the next segment to be stored.
+   */
+  private long size;
+
+  /**
+   * Creates a store backed by direct (off-heap) byte buffers.
+   */
+  public NotesStore() {
+    this.channel = null;
+  }
+
+  /**
+   * Creates a store backed by a memory-mapped file.
+   *
+   * The file is truncated, as its content is only meaningful to this store.
+   *
+   * @param file The file.
+   * @throws IOException If the file can't be opened.
+   * @throws NullPointerException If the file is null.
+   */
+  public NotesStore(File file) throws IOException {
+    if (file == null)
+      throw new NullPointerException("file must not be null");
+
+    this.channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+      StandardOpenOption.READ, StandardOpenOption.WRITE,
+      StandardOpenOption.TRUNCATE_EXISTING);
+  }
+
+  /**
+   * Returns the number of bytes stored.
+   *
+   * @return The number of bytes stored.
+   */
+  public synchronized long size() {
+    return size;
+  }
+
+  /**
+   * Stores a text as a new segment.
+   *
+   * @param text The text.
+   * @return The segment number.
+   * @throws NullPointerException If the text is null.
+   * @throws UncheckedIOException If the mapped file can't be extended.
+   */
+  public synchronized int put(String text) {
+    byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+
+    if (count == offsets.length)
+      offsets = Arrays.copyOf(offsets, count * 2);
+    offsets[count] = size;
+
+    int written = 0;
+    while (written < bytes.length) {
+      ByteBuffer chunk = chunk(size);
+      int position = (int)(size % CHUNK_SIZE);
+      int length = Math.min(bytes.length - written, CHUNK_SIZE - position);
+
+      chunk.position(position);
+      chunk.put(bytes, written, length);
+
+      written += length;
+      size += length;
+    }
+    return count++;
+  }
+
+  /**
+   * Returns the text of a segment.
+   *
+   * @param segment The segment number.
+   * @return The text.
+   * @throws IllegalArgumentException If the segment does not exist.
+   */
+  public synchronized String get(int segment) {
+    if (segment < 0 || segment >= count)
+      throw new IllegalArgumentException("segment must exist");
+
+    long offset = offsets[segment];
+    long end = (segment + 1 < count ? offsets[segment + 1] : size);
+    byte[] bytes = new byte[(int)(end - offset)];
+
+    int read = 0;
+    while (read < bytes.length) {
+      ByteBuffer chunk = chunks.get((int)((offset + read) / CHUNK_SIZE));
+      int position = (int)((offset + read) % CHUNK_SIZE);
+      int length = Math.min(bytes.length - read, CHUNK_SIZE - position);
+
+      chunk.position(position);
+      chunk.get(bytes, read, length);
+
+      read += length;
+    }
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  /**
+   * Closes the store, releasing the mapped file.
+   *
+   * @throws IOException If the file can't be closed.
+   */
+  public synchronized void close() throws IOException {
+    chunks.clear();
+    if (channel != null)
+      channel.close();
+  }
+
+  // Returns the chunk holding an offset, allocating it if needed.
+  private ByteBuffer chunk(long offset) {
+    int index = (int)(offset / CHUNK_SIZE);
+    while (chunks.size() <= index) {
+      if (channel == null) {
+        chunks.add(ByteBuffer.allocateDirect(CHUNK_SIZE));
+      } else {
+        try {
+          chunks.add(channel.map(FileChannel.MapMode.READ_WRITE,
+            (long)chunks.size() * CHUNK_SIZE, CHUNK_SIZE));
+        } catch (IOException e) {
+          throw new UncheckedIOException(e);
+        }
+      }
+    }
+    return chunks.get(index);
+  }
+}
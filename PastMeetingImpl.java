@@ -1,5 +1,8 @@
 import java.util.Calendar;
+import java.util.List;
 import java.util.Set;
+import java.util.TimeZone;
+import java.util.function.ObjIntConsumer;
 
 /**
  * A meeting held in the past.
@@ -10,7 +13,12 @@ public class PastMeetingImpl extends MeetingImpl implements PastMeeting {
   /**
    * The past meeting notes.
    */
-  private String notes;
+  private final Notes notes;
+  
+  /**
+   * The listener notified when notes are added or null if there is none.
+   */
+  private volatile ObjIntConsumer<String> notesListener;
   
   /**
    * Creates a meeting held in the past from the meeting id, date, a set of
@@ -29,13 +37,93 @@ public class PastMeetingImpl extends MeetingImpl implements PastMeeting {
    */
   public PastMeetingImpl(int id, Calendar date, Set<Contact> contacts,
     String notes)
+  {
+    this(id, date, contacts, notes, null);
+  }
+  
+  /**
+   * Creates a meeting held in the past from the meeting id, date, a set of
+   * contacts, notes and the store in which to keep the notes.
+   *
+   * @param id The meeting id.
+   * @param date The meeting date.
+   * @param contacts The set of contacts.
+   * @param notes The meeting notes.
+   * @param notesStore The notes store or null to keep the notes on the heap.
+   * @throws IllegalArgumentException if the id is invalid
+   *         (less than or equal to 0).
+   * @throws NullPointerException If the date, the set of contacts or the
+   *         notes are null.
+   * @throws IllegalArgumentException If the set of contacts is empty.
+   * @see Contact
+   * @see NotesStore
+   */
+  public PastMeetingImpl(int id, Calendar date, Set<Contact> contacts,
+    String notes, NotesStore notesStore)
   {
     super(id, date, contacts);
     
     if (notes == null)
       throw new NullPointerException();
     
-    this.notes = notes;
+    this.notes = new Notes(notes, notesStore);
+  }
+  
+  /**
+   * Creates a meeting held in the past from the meeting id, time, time zone,
+   * a set of contacts, notes and the store in which to keep the notes.
+   *
+   * @param id The meeting id.
+   * @param time The meeting time in milliseconds.
+   * @param zone The meeting time zone.
+   * @param contacts The set of contacts.
+   * @param notes The meeting notes.
+   * @param notesStore The notes store or null to keep the notes on the heap.
+   * @throws IllegalArgumentException if the id is invalid
+   *         (less than or equal to 0).
+   * @throws NullPointerException If the time zone, the set of contacts or
+   *         the notes are null.
+   * @throws IllegalArgumentException If the set of contacts is empty.
+   * @see Contact
+   * @see NotesStore
+   */
+  public PastMeetingImpl(int id, long time, TimeZone zone,
+    Set<Contact> contacts, String notes, NotesStore notesStore)
+  {
+    this(id, time, time, zone, contacts, notes, notesStore);
+  }
+  
+  /**
+   * Creates a meeting held in the past from the meeting id, time, end time,
+   * time zone, a set of contacts, notes and the store in which to keep the
+   * notes.
+   *
+   * @param id The meeting id.
+   * @param time The meeting time in milliseconds.
+   * @param endTime The meeting end time in milliseconds, or the meeting time
+   *        if the meeting has no end date.
+   * @param zone The meeting time zone.
+   * @param contacts The set of contacts.
+   * @param notes The meeting notes.
+   * @param notesStore The notes store or null to keep the notes on the heap.
+   * @throws IllegalArgumentException if the id is invalid
+   *         (less than or equal to 0).
+   * @throws NullPointerException If the time zone, the set of contacts or
+   *         the notes are null.
+   * @throws IllegalArgumentException If the set of contacts is empty or the
+   *         end time is before the time.
+   * @see Contact
+   * @see NotesStore
+   */
+  public PastMeetingImpl(int id, long time, long endTime, TimeZone zone,
+    Set<Contact> contacts, String notes, NotesStore notesStore)
+  {
+    super(id, time, endTime, zone, contacts);
+    
+    if (notes == null)
+      throw new NullPointerException();
+    
+    this.notes = new Notes(notes, notesStore);
   }
   
   /**
@@ -46,7 +134,26 @@ public class PastMeetingImpl extends MeetingImpl implements PastMeeting {
    * @return The past meeting notes.
    */
   public String getNotes() {
-    return notes;
+    return notes.toString();
+  }
+  
+  /**
+   * Returns the length of the past meeting notes, without joining them.
+   *
+   * @return The length of the notes.
+   */
+  public int getNotesLength() {
+    return notes.length();
+  }
+  
+  /**
+   * Returns the past meeting notes as text segments, which concatenated form
+   * the notes.
+   *
+   * @return An unmodifiable list of the past meeting notes segments.
+   */
+  public List<String> getNoteSegments() {
+    return notes.getSegments();
   }
   
   /**
@@ -56,11 +163,25 @@ public class PastMeetingImpl extends MeetingImpl implements PastMeeting {
    * notes already stored.
    *
    * @param notes The notes to add.
+   * @throws NullPointerException If the notes are null.
    */
   public void addNotes(String notes) {
-    if (!this.notes.equals(""))
-      this.notes += "\n";
+    this.notes.append(notes);
     
-    this.notes += notes;
+    ObjIntConsumer<String> listener = notesListener;
+    if (listener != null)
+      listener.accept(notes, getId());
+  }
+  
+  /**
+   * Sets the listener notified when notes are added about the meeting.
+   *
+   * The listener receives the added notes and the meeting ID, after the
+   * notes are added.
+   *
+   * @param listener The listener or null to remove it.
+   */
+  public void setNotesListener(ObjIntConsumer<String> listener) {
+    this.notesListener = listener;
   }
 }
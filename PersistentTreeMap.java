@@ -0,0 +1,463 @@
+import java.util.AbstractCollection;
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Function;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * An immutable sorted map, sharing structure between versions.
+ *
+ * The map is an AVL tree whose nodes are never modified: adding or removing
+ * a key copies the O(log n) nodes on the path to the key and shares all the
+ * other nodes with the previous version. A version can therefore be read by
+ * any number of threads without locking while newer versions are created,
+ * and keeping a version costs nothing.
+ *
+ * Keys are sorted in their natural order and neither keys nor values may be
+ * null.
+ *
+ * @param <K> The type of the keys.
+ * @param <V> The type of the values.
+ */
+public final class PersistentTreeMap<K extends Comparable<? super K>, V> {
+  /**
+   * The empty map.
+   */
+  @SuppressWarnings("rawtypes")
+  private static final PersistentTreeMap EMPTY = new PersistentTreeMap<>(
+    null);
+
+  /**
+   * The root of the tree or null if the map is empty.
+   */
+  private final Node<K, V> root;
+
+  // Creates a map.
+  private PersistentTreeMap(Node<K, V> root) {
+    this.root = root;
+  }
+
+  /**
+   * Returns the empty map.
+   *
+   * @param <K> The type of the keys.
+   * @param <V> The type of the values.
+   * @return The empty map.
+   */
+  @SuppressWarnings("unchecked")
+  public static <K extends Comparable<? super K>, V> PersistentTreeMap<K, V>
+    empty()
+  {
+    return (PersistentTreeMap<K, V>)EMPTY;
+  }
+
+  /**
+   * Returns the number of entries.
+   *
+   * @return The number of entries.
+   */
+  public int size() {
+    return size(root);
+  }
+
+  /**
+   * Returns whether the map is empty.
+   *
+   * @return true if the map is empty, false otherwise.
+   */
+  public boolean isEmpty() {
+    return (root == null);
+  }
+
+  /**
+   * Returns the value of a key.
+   *
+   * @param key The key.
+   * @return The value or null if the key is not in the map.
+   */
+  public V get(K key) {
+    Node<K, V> node = root;
+    while (node != null) {
+      int comparison = key.compareTo(node.key);
+      if (comparison == 0)
+        return node.value;
+      node = (comparison < 0 ? node.left : node.right);
+    }
+    return null;
+  }
+
+  /**
+   * Returns the value of the greatest key lower than or equal to a key.
+   *
+   * @param key The key.
+   * @return The value or null if there is no such key.
+   */
+  public V floorValue(K key) {
+    V floor = null;
+    Node<K, V> node = root;
+    while (node != null) {
+      int comparison = key.compareTo(node.key);
+      if (comparison == 0)
+        return node.value;
+      if (comparison > 0)
+        floor = node.value;
+      node = (comparison < 0 ? node.left : node.right);
+    }
+    return floor;
+  }
+
+  /**
+   * Returns whether a key is in the map.
+   *
+   * @param key The key.
+   * @return true if the key is in the map, false otherwise.
+   */
+  public boolean containsKey(K key) {
+    return (get(key) != null);
+  }
+
+  /**
+   * Returns a map with a key set to a value.
+   *
+   * @param key The key.
+   * @param value The value.
+   * @return The new map, or this map if the key is already set to the value.
+   * @throws NullPointerException If the key or the value is null.
+   */
+  public PersistentTreeMap<K, V> put(K key, V value) {
+    if (key == null || value == null)
+      throw new NullPointerException("key or value must not be null");
+
+    Node<K, V> newRoot = put(root, key, value);
+    return (newRoot == root ? this : new PersistentTreeMap<>(newRoot));
+  }
+
+  /**
+   * Returns a map without a key.
+   *
+   * @param key The key.
+   * @return The new map, or this map if the key is not in the map.
+   */
+  public PersistentTreeMap<K, V> remove(K key) {
+    Node<K, V> newRoot = remove(root, key);
+    if (newRoot == root)
+      return this;
+    return (newRoot == null ? empty() : new PersistentTreeMap<>(newRoot));
+  }
+
+  /**
+   * Returns the entry with the lowest key.
+   *
+   * @return The first entry or null if the map is empty.
+   */
+  public Map.Entry<K, V> firstEntry() {
+    Node<K, V> node = root;
+    if (node == null)
+      return null;
+    while (node.left != null)
+      node = node.left;
+    return node;
+  }
+
+  /**
+   * Returns the values sorted by key.
+   *
+   * @return An unmodifiable collection of the values.
+   */
+  public Collection<V> values() {
+    return new AbstractCollection<V>() {
+      public Iterator<V> iterator() {
+        return new Values<>(new Entries<>(root, null, false, null, false));
+      }
+
+      public int size() {
+        return PersistentTreeMap.this.size();
+      }
+    };
+  }
+
+  /**
+   * Streams the entries with a key greater than a key, sorted by key.
+   *
+   * @param from The lowest key.
+   * @param inclusive Whether the entry of the lowest key is included.
+   * @return A stream of the entries.
+   */
+  public Stream<Map.Entry<K, V>> tailEntries(K from, boolean inclusive) {
+    return stream(new Entries<>(root, from, inclusive, null, false),
+      entry -> entry);
+  }
+
+  /**
+   * Streams the values of the keys greater than a key, sorted by key.
+   *
+   * @param from The lowest key.
+   * @param inclusive Whether the value of the lowest key is included.
+   * @return A stream of the values.
+   */
+  public Stream<V> tailValues(K from, boolean inclusive) {
+    return stream(new Entries<>(root, from, inclusive, null, false),
+      Map.Entry::getValue);
+  }
+
+  /**
+   * Streams the values of the keys lower than a key, sorted by key.
+   *
+   * @param to The highest key.
+   * @param inclusive Whether the value of the highest key is included.
+   * @return A stream of the values.
+   */
+  public Stream<V> headValues(K to, boolean inclusive) {
+    return stream(new Entries<>(root, null, false, to, inclusive),
+      Map.Entry::getValue);
+  }
+
+  // Streams the entries of an iterator, mapped.
+  private static <K, V, T> Stream<T> stream(Iterator<Map.Entry<K, V>> entries,
+    Function<Map.Entry<K, V>, T> mapper)
+  {
+    return StreamSupport.stream(Spliterators.spliteratorUnknownSize(entries,
+      Spliterator.ORDERED | Spliterator.NONNULL | Spliterator.IMMUTABLE),
+      false).map(mapper);
+  }
+
+  // Returns the number of nodes of a tree.
+  private static int size(Node<?, ?> node) {
+    return (node == null ? 0 : node.size);
+  }
+
+  // Returns the height of a tree.
+  private static int height(Node<?, ?> node) {
+    return (node == null ? 0 : node.height);
+  }
+
+  // Adds or replaces a key in a tree.
+  private static <K extends Comparable<? super K>, V> Node<K, V> put(
+    Node<K, V> node, K key, V value)
+  {
+    if (node == null)
+      return new Node<>(key, value, null, null);
+
+    int comparison = key.compareTo(node.key);
+    if (comparison == 0) {
+      if (node.value == value)
+        return node;
+      return new Node<>(key, value, node.left, node.right);
+    } else if (comparison < 0) {
+      Node<K, V> left = put(node.left, key, value);
+      return (left == node.left ? node : balance(node.key, node.value, left,
+        node.right));
+    } else {
+      Node<K, V> right = put(node.right, key, value);
+      return (right == node.right ? node : balance(node.key, node.value,
+        node.left, right));
+    }
+  }
+
+  // Removes a key from a tree.
+  private static <K extends Comparable<? super K>, V> Node<K, V> remove(
+    Node<K, V> node, K key)
+  {
+    if (node == null)
+      return null;
+
+    int comparison = key.compareTo(node.key);
+    if (comparison < 0) {
+      Node<K, V> left = remove(node.left, key);
+      return (left == node.left ? node : balance(node.key, node.value, left,
+        node.right));
+    } else if (comparison > 0) {
+      Node<K, V> right = remove(node.right, key);
+      return (right == node.right ? node : balance(node.key, node.value,
+        node.left, right));
+    } else if (node.left == null) {
+      return node.right;
+    } else if (node.right == null) {
+      return node.left;
+    }
+
+    // replace the node by the lowest node of its right tree
+    Node<K, V> lowest = node.right;
+    while (lowest.left != null)
+      lowest = lowest.left;
+    return balance(lowest.key, lowest.value, node.left,
+      remove(node.right, lowest.key));
+  }
+
+  // Creates a node, rotating it if its trees differ in height by two.
+  private static <K, V> Node<K, V> balance(K key, V value, Node<K, V> left,
+                                           Node<K, V> right) {
+    int difference = height(left) - height(right);
+    if (difference > 1) {
+      if (height(left.left) >= height(left.right)) {
+        return new Node<>(left.key, left.value, left.left,
+          new Node<>(key, value, left.right, right));
+      }
+      return new Node<>(left.right.key, left.right.value,
+        new Node<>(left.key, left.value, left.left, left.right.left),
+        new Node<>(key, value, left.right.right, right));
+    } else if (difference < -1) {
+      if (height(right.right) >= height(right.left)) {
+        return new Node<>(right.key, right.value,
+          new Node<>(key, value, left, right.left), right.right);
+      }
+      return new Node<>(right.left.key, right.left.value,
+        new Node<>(key, value, left, right.left.left),
+        new Node<>(right.key, right.value, right.left.right, right.right));
+    }
+    return new Node<>(key, value, left, right);
+  }
+
+  /**
+   * A node of the tree, which is also an entry of the map.
+   */
+  private static final class Node<K, V> implements Map.Entry<K, V> {
+    /**
+     * The key.
+     */
+    final K key;
+
+    /**
+     * The value.
+     */
+    final V value;
+
+    /**
+     * The tree of the lower keys.
+     */
+    final Node<K, V> left;
+
+    /**
+     * The tree of the greater keys.
+     */
+    final Node<K, V> right;
+
+    /**
+     * The height of the tree.
+     */
+    final int height;
+
+    /**
+     * The number of nodes of the tree.
+     */
+    final int size;
+
+    // Creates a node.
+    Node(K key, V value, Node<K, V> left, Node<K, V> right) {
+      this.key = key;
+      this.value = value;
+      this.left = left;
+      this.right = right;
+      this.height = Math.max(height(left), height(right)) + 1;
+      this.size = size(left) + size(right) + 1;
+    }
+
+    public K getKey() {
+      return key;
+    }
+
+    public V getValue() {
+      return value;
+    }
+
+    public V setValue(V value) {
+      throw new UnsupportedOperationException("entries are immutable");
+    }
+
+    public String toString() {
+      return key + "=" + value;
+    }
+  }
+
+  /**
+   * An in-order iterator over the nodes with keys in a range.
+   */
+  private static final class Entries<K extends Comparable<? super K>, V>
+    implements Iterator<Map.Entry<K, V>>
+  {
+    /**
+     * The nodes whose key and right tree are still to visit.
+     */
+    private final ArrayDeque<Node<K, V>> stack = new ArrayDeque<>();
+
+    /**
+     * The highest key or null if there is no upper bound.
+     */
+    private final K to;
+
+    /**
+     * Whether the highest key is included.
+     */
+    private final boolean toInclusive;
+
+    // Creates an iterator over the keys between two keys, null meaning no
+    // bound.
+    Entries(Node<K, V> root, K from, boolean fromInclusive, K to,
+            boolean toInclusive) {
+      this.to = to;
+      this.toInclusive = toInclusive;
+
+      // push the path to the lowest key in range
+      Node<K, V> node = root;
+      while (node != null) {
+        int comparison = (from == null ? 1 : node.key.compareTo(from));
+        if (comparison > 0 || (comparison == 0 && fromInclusive)) {
+          stack.push(node);
+          node = node.left;
+        } else {
+          node = node.right;
+        }
+      }
+    }
+
+    public boolean hasNext() {
+      Node<K, V> node = stack.peek();
+      if (node == null)
+        return false;
+      if (to == null)
+        return true;
+
+      int comparison = node.key.compareTo(to);
+      return (comparison < 0 || (comparison == 0 && toInclusive));
+    }
+
+    public Map.Entry<K, V> next() {
+      if (!hasNext())
+        throw new NoSuchElementException();
+
+      Node<K, V> node = stack.pop();
+      for (Node<K, V> child = node.right; child != null; child = child.left)
+        stack.push(child);
+      return node;
+    }
+  }
+
+  /**
+   * An iterator over the values of entries.
+   */
+  private static final class Values<K, V> implements Iterator<V> {
+    /**
+     * The entries.
+     */
+    private final Iterator<Map.Entry<K, V>> entries;
+
+    // Creates an iterator.
+    Values(Iterator<Map.Entry<K, V>> entries) {
+      this.entries = entries;
+    }
+
+    public boolean hasNext() {
+      return entries.hasNext();
+    }
+
+    public V next() {
+      return entries.next().getValue();
+    }
+  }
+}
@@ -0,0 +1,233 @@
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A bounded cache of query results, evicting the least recently used.
+ *
+ * Each result is cached with the generation of the data it was computed
+ * from, and is only returned for that same generation, so a result is
+ * invalidated as soon as the data it depends on changes, without having to
+ * find and remove it.
+ *
+ * @param <K> The type of the query keys.
+ * @param <V> The type of the results.
+ */
+public class QueryCache<K, V> {
+  /**
+   * The maximum number of cached results.
+   */
+  private final int capacity;
+
+  /**
+   * The cached results in access order.
+   */
+  private final LinkedHashMap<K, Entry<V>> entries;
+
+  /**
+   * The number of results found up to date.
+   */
+  private long hits;
+
+  /**
+   * The number of results missing or out of date.
+   */
+  private long misses;
+
+  /**
+   * The number of results evicted to make room for others.
+   */
+  private long evictions;
+
+  /**
+   * Creates a cache.
+   *
+   * @param capacity The maximum number of cached results.
+   * @throws IllegalArgumentException If the capacity is not positive.
+   */
+  public QueryCache(int capacity) {
+    if (capacity <= 0)
+      throw new IllegalArgumentException("capacity must be greater than 0");
+
+    this.capacity = capacity;
+    this.entries = new LinkedHashMap<K, Entry<V>>(16, 0.75f, true) {
+      protected boolean removeEldestEntry(Map.Entry<K, Entry<V>> eldest) {
+        if (size() <= QueryCache.this.capacity)
+          return false;
+        evictions++;
+        return true;
+      }
+    };
+  }
+
+  /**
+   * Returns the result of a query, if it was computed from the specified
+   * generation of the data.
+   *
+   * @param key The query key.
+   * @param generation The current generation of the data of the query.
+   * @return The result or null if it is not cached or out of date.
+   */
+  public synchronized V get(K key, long generation) {
+    Entry<V> entry = entries.get(key);
+    if (entry == null || entry.generation != generation) {
+      misses++;
+      return null;
+    }
+    hits++;
+    return entry.value;
+  }
+
+  /**
+   * Caches the result of a query.
+   *
+   * @param key The query key.
+   * @param generation The generation of the data the result was computed
+   *        from.
+   * @param value The result.
+   */
+  public synchronized void put(K key, long generation, V value) {
+    entries.put(key, new Entry<>(generation, value));
+  }
+
+  /**
+   * Removes all cached results.
+   */
+  public synchronized void clear() {
+    entries.clear();
+  }
+
+  /**
+   * Returns the statistics of the cache.
+   *
+   * @return The statistics.
+   */
+  public synchronized Stats getStats() {
+    return new Stats(hits, misses, evictions, entries.size(), capacity);
+  }
+
+  /**
+   * A cached result.
+   */
+  private static class Entry<V> {
+    /**
+     * The generation of the data the result was computed from.
+     */
+    final long generation;
+
+    /**
+     * The result.
+     */
+    final V value;
+
+    // Creates an entry.
+    Entry(long generation, V value) {
+      this.generation = generation;
+      this.value = value;
+    }
+  }
+
+  /**
+   * The statistics of a cache at some point.
+   */
+  public static final class Stats {
+    /**
+     * The number of hits.
+     */
+    private final long hitCount;
+
+    /**
+     * The number of misses.
+     */
+    private final long missCount;
+
+    /**
+     * The number of evictions.
+     */
+    private final long evictionCount;
+
+    /**
+     * The number of cached results.
+     */
+    private final int size;
+
+    /**
+     * The maximum number of cached results.
+     */
+    private final int capacity;
+
+    // Creates statistics.
+    private Stats(long hitCount, long missCount, long evictionCount, int size,
+                  int capacity) {
+      this.hitCount = hitCount;
+      this.missCount = missCount;
+      this.evictionCount = evictionCount;
+      this.size = size;
+      this.capacity = capacity;
+    }
+
+    /**
+     * Returns the number of results found up to date.
+     *
+     * @return The number of hits.
+     */
+    public long getHitCount() {
+      return hitCount;
+    }
+
+    /**
+     * Returns the number of results missing or out of date.
+     *
+     * @return The number of misses.
+     */
+    public long getMissCount() {
+      return missCount;
+    }
+
+    /**
+     * Returns the number of results evicted to make room for others.
+     *
+     * @return The number of evictions.
+     */
+    public long getEvictionCount() {
+      return evictionCount;
+    }
+
+    /**
+     * Returns the number of cached results.
+     *
+     * @return The number of cached results.
+     */
+    public int getSize() {
+      return size;
+    }
+
+    /**
+     * Returns the maximum number of cached results.
+     *
+     * @return The capacity.
+     */
+    public int getCapacity() {
+      return capacity;
+    }
+
+    /**
+     * Returns the ratio of hits to lookups.
+     *
+     * @return The hit ratio or 0 if there was no lookup.
+     */
+    public double getHitRatio() {
+      long lookups = hitCount + missCount;
+      return (lookups == 0 ? 0 : (double)hitCount / lookups);
+    }
+
+    /**
+     * Returns a string representation of the statistics.
+     *
+     * @return A string representation of the statistics.
+     */
+    public String toString() {
+      return String.format("%d hits, %d misses, %d evictions, %d/%d entries",
+        hitCount, missCount, evictionCount, size, capacity);
+    }
+  }
+}
@@ -0,0 +1,316 @@
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Period;
+import java.time.format.DateTimeParseException;
+
+/**
+ * The binary encoding of contact and meeting records.
+ *
+ * Each record is either:
+ *
+ * <pre>
+ * byte 1, int id, string name, string notes           contact
+ * byte 2, int id, long time, string notes,
+ *   int contactCount, int contactId...                meeting
+ * byte 3, int id, long time, long endTime,
+ *   string notes, int contactCount, int contactId...  meeting with an end
+ * byte 4, int id, long time, string interval,
+ *   int count, int next,
+ *   int contactCount, int contactId...                recurring meetings
+ * byte 5, int id                                      removed contact
+ * byte 6, int id                                      removed meeting
+ * byte 7, int contactId, int meetingId                next IDs
+ * </pre>
+ *
+ * where numbers are big-endian and strings are the length of their UTF-8
+ * bytes followed by the bytes, or -1 for null.
+ *
+ * A codec holds the buffer of the contact IDs of the last decoded meeting,
+ * so it must not be shared between threads.
+ */
+public class RecordCodec {
+  /**
+   * The type of contact records.
+   */
+  static final byte CONTACT = 1;
+
+  /**
+   * The type of meeting records.
+   */
+  static final byte MEETING = 2;
+
+  /**
+   * The type of records of meetings with an end date.
+   */
+  static final byte TIMED_MEETING = 3;
+
+  /**
+   * The type of records of series of recurring meetings.
+   */
+  static final byte RECURRENCE = 4;
+
+  /**
+   * The type of the tombstones of removed contacts.
+   */
+  static final byte REMOVED_CONTACT = 5;
+
+  /**
+   * The type of the tombstones of removed meetings.
+   */
+  static final byte REMOVED_MEETING = 6;
+
+  /**
+   * The type of the records of the next IDs to assign.
+   */
+  static final byte NEXT_IDS = 7;
+
+  /**
+   * The IDs of the contacts of the meeting being decoded.
+   */
+  private int[] contactIds = new int[16];
+
+  /**
+   * Encodes a contact.
+   *
+   * @param output The output.
+   * @param id The contact ID.
+   * @param name The contact name.
+   * @param notes The contact notes or null if there are none.
+   * @throws IOException If the output can't be written.
+   */
+  public static void writeContact(DataOutput output, int id, String name,
+                                  String notes) throws IOException {
+    output.writeByte(CONTACT);
+    output.writeInt(id);
+    writeString(output, name);
+    writeString(output, notes);
+  }
+
+  /**
+   * Encodes a meeting.
+   *
+   * @param output The output.
+   * @param id The meeting ID.
+   * @param time The meeting time in milliseconds.
+   * @param notes The meeting notes or null if there are none.
+   * @param contactIds The IDs of the meeting contacts.
+   * @param contactCount The number of contact IDs.
+   * @throws IOException If the output can't be written.
+   */
+  public static void writeMeeting(DataOutput output, int id, long time,
+                                  String notes, int[] contactIds,
+                                  int contactCount) throws IOException {
+    writeMeeting(output, id, time, time, notes, contactIds, contactCount);
+  }
+
+  /**
+   * Encodes a meeting with its end time. Meetings without an end date are
+   * encoded as meeting records, so older readers can still read them.
+   *
+   * @param output The output.
+   * @param id The meeting ID.
+   * @param time The meeting time in milliseconds.
+   * @param endTime The meeting end time in milliseconds, or the meeting time
+   *        if the meeting has no end date.
+   * @param notes The meeting notes or null if there are none.
+   * @param contactIds The IDs of the meeting contacts.
+   * @param contactCount The number of contact IDs.
+   * @throws IOException If the output can't be written.
+   */
+  public static void writeMeeting(DataOutput output, int id, long time,
+                                  long endTime, String notes,
+                                  int[] contactIds, int contactCount)
+    throws IOException
+  {
+    output.writeByte(endTime == time ? MEETING : TIMED_MEETING);
+    output.writeInt(id);
+    output.writeLong(time);
+    if (endTime != time)
+      output.writeLong(endTime);
+    writeString(output, notes);
+    output.writeInt(contactCount);
+    for (int i = 0; i < contactCount; i++)
+      output.writeInt(contactIds[i]);
+  }
+
+  /**
+   * Encodes a series of recurring meetings.
+   *
+   * @param output The output.
+   * @param id The ID of the first occurrence.
+   * @param time The time of the first occurrence in milliseconds.
+   * @param interval The interval between occurrences.
+   * @param count The number of occurrences.
+   * @param next The index of the next occurrence, yet to take place.
+   * @param contactIds The IDs of the contacts.
+   * @param contactCount The number of contact IDs.
+   * @throws IOException If the output can't be written.
+   */
+  public static void writeRecurrence(DataOutput output, int id, long time,
+                                     Period interval, int count, int next,
+                                     int[] contactIds, int contactCount)
+    throws IOException
+  {
+    output.writeByte(RECURRENCE);
+    output.writeInt(id);
+    output.writeLong(time);
+    writeString(output, interval.toString());
+    output.writeInt(count);
+    output.writeInt(next);
+    output.writeInt(contactCount);
+    for (int i = 0; i < contactCount; i++)
+      output.writeInt(contactIds[i]);
+  }
+
+  /**
+   * Encodes the tombstone of a removed contact.
+   *
+   * @param output The output.
+   * @param id The contact ID.
+   * @throws IOException If the output can't be written.
+   */
+  public static void writeRemovedContact(DataOutput output, int id)
+    throws IOException
+  {
+    output.writeByte(REMOVED_CONTACT);
+    output.writeInt(id);
+  }
+
+  /**
+   * Encodes the tombstone of a removed meeting.
+   *
+   * @param output The output.
+   * @param id The meeting ID.
+   * @throws IOException If the output can't be written.
+   */
+  public static void writeRemovedMeeting(DataOutput output, int id)
+    throws IOException
+  {
+    output.writeByte(REMOVED_MEETING);
+    output.writeInt(id);
+  }
+
+  /**
+   * Encodes the next IDs to assign.
+   *
+   * @param output The output.
+   * @param contactId The next contact ID.
+   * @param meetingId The next meeting ID.
+   * @throws IOException If the output can't be written.
+   */
+  public static void writeNextIds(DataOutput output, int contactId,
+                                  int meetingId) throws IOException {
+    output.writeByte(NEXT_IDS);
+    output.writeInt(contactId);
+    output.writeInt(meetingId);
+  }
+
+  /**
+   * Decodes the record at the position of a buffer and reports it to a
+   * handler.
+   *
+   * @param buffer The buffer, backed by an array.
+   * @param handler The handler or null to skip the record.
+   * @throws IOException If the record is corrupt.
+   */
+  public void read(ByteBuffer buffer, ContactsReader.Handler handler)
+    throws IOException
+  {
+    try {
+      byte type = buffer.get();
+      int id = buffer.getInt();
+
+      if (type == CONTACT) {
+        String name = readString(buffer, handler == null);
+        String notes = readString(buffer, handler == null);
+        if (name == null)
+          throw new IOException("contact " + id + " has no name");
+        if (handler != null)
+          handler.contact(id, name, notes);
+      } else if (type == MEETING || type == TIMED_MEETING) {
+        long time = buffer.getLong();
+        long endTime = (type == TIMED_MEETING ? buffer.getLong() : time);
+        String notes = readString(buffer, handler == null);
+        int contactCount = readContactIds(buffer, id);
+        if (handler != null) {
+          handler.meeting(id, time, endTime, notes, contactIds,
+            contactCount);
+        }
+      } else if (type == RECURRENCE) {
+        long time = buffer.getLong();
+        String interval = readString(buffer, handler == null);
+        int count = buffer.getInt();
+        int next = buffer.getInt();
+        int contactCount = readContactIds(buffer, id);
+        if (interval == null)
+          throw new IOException("series " + id + " has no interval");
+        if (handler != null) {
+          handler.recurrence(id, time, Period.parse(interval), count, next,
+            contactIds, contactCount);
+        }
+      } else if (type == REMOVED_CONTACT) {
+        if (handler != null)
+          handler.contactRemoved(id);
+      } else if (type == REMOVED_MEETING) {
+        if (handler != null)
+          handler.meetingRemoved(id);
+      } else if (type == NEXT_IDS) {
+        int meetingId = buffer.getInt();
+        if (handler != null)
+          handler.nextIds(id, meetingId);
+      } else {
+        throw new IOException("unknown record type " + type);
+      }
+    } catch (BufferUnderflowException | IllegalArgumentException |
+             DateTimeParseException e) {
+      throw new IOException("record is corrupt", e);
+    }
+  }
+
+  // Decodes the contact IDs of a meeting into the buffer, growing it if
+  // needed, and returns their number.
+  private int readContactIds(ByteBuffer buffer, int id) throws IOException {
+    int contactCount = buffer.getInt();
+    if (contactCount < 0 || contactCount > buffer.remaining() / 4)
+      throw new IOException("meeting " + id + " is corrupt");
+    if (contactCount > contactIds.length)
+      contactIds = new int[Math.max(contactCount, contactIds.length * 2)];
+    for (int i = 0; i < contactCount; i++)
+      contactIds[i] = buffer.getInt();
+    return contactCount;
+  }
+
+  // Encodes a nullable string.
+  private static void writeString(DataOutput output, String string)
+    throws IOException
+  {
+    if (string == null) {
+      output.writeInt(-1);
+    } else {
+      byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+      output.writeInt(bytes.length);
+      output.write(bytes);
+    }
+  }
+
+  // Decodes a nullable string, or skips it.
+  private static String readString(ByteBuffer buffer, boolean skip)
+    throws IOException
+  {
+    int length = buffer.getInt();
+    if (length == -1)
+      return null;
+    else if (length < -1 || length > buffer.remaining())
+      throw new IOException("string is corrupt");
+
+    int position = buffer.position();
+    buffer.position(position + length);
+    if (skip)
+      return "";
+    return new String(buffer.array(), buffer.arrayOffset() + position, length,
+      StandardCharsets.UTF_8);
+  }
+}
@@ -0,0 +1,354 @@
+import java.time.DateTimeException;
+import java.time.Instant;
+import java.time.Period;
+import java.time.ZonedDateTime;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.TimeZone;
+
+/**
+ * A series of meetings held at a regular interval, stored as a rule.
+ *
+ * Occurrence i of the series is held at the start date plus i intervals, in
+ * the time zone of the start date, and has the ID of the first occurrence
+ * plus i, so a series takes the same space however many occurrences it has.
+ * The occurrences from the next one on are yet to take place, and are only
+ * created when they are read; the ones before it took place and are kept as
+ * past meetings.
+ *
+ * Occurrences are sorted by time and by ID alike, so an occurrence is found
+ * by binary search. Series are immutable.
+ */
+public final class RecurringMeeting {
+  /**
+   * The ID of the first occurrence.
+   */
+  private final int id;
+
+  /**
+   * The date of the first occurrence.
+   */
+  private final ZonedDateTime start;
+
+  /**
+   * The time zone of the occurrences.
+   */
+  private final TimeZone zone;
+
+  /**
+   * The interval between occurrences.
+   */
+  private final Period interval;
+
+  /**
+   * The number of occurrences.
+   */
+  private final int count;
+
+  /**
+   * The index of the next occurrence, yet to take place.
+   */
+  private final int next;
+
+  /**
+   * The contacts attending every occurrence.
+   */
+  private final Set<Contact> contacts;
+
+  /**
+   * Creates a series of meetings.
+   *
+   * @param id The ID of the first occurrence.
+   * @param time The time of the first occurrence in milliseconds.
+   * @param zone The time zone of the occurrences.
+   * @param interval The interval between occurrences.
+   * @param count The number of occurrences.
+   * @param next The index of the next occurrence, yet to take place, or the
+   *        count if they all took place.
+   * @param contacts The contacts attending every occurrence.
+   * @throws IllegalArgumentException If the ID is not positive, the interval
+   *         is not positive, the count is not positive, the IDs or dates
+   *         of the occurrences overflow, the next index is out of range or
+   *         the set of contacts is empty.
+   * @throws NullPointerException If the time zone, interval or contacts are
+   *         null.
+   */
+  public RecurringMeeting(int id, long time, TimeZone zone, Period interval,
+                          int count, int next, Set<Contact> contacts) {
+    if (zone == null || interval == null || contacts == null) {
+      throw new NullPointerException(
+        "zone, interval or contacts must not be null");
+    } else if (id <= 0) {
+      throw new IllegalArgumentException("id must be greater than 0");
+    } else if (interval.isZero() || interval.isNegative()) {
+      throw new IllegalArgumentException("interval must be positive");
+    } else if (count <= 0 || id - 1 > Integer.MAX_VALUE - count) {
+      throw new IllegalArgumentException("count must be positive");
+    } else if (next < 0 || next > count) {
+      throw new IllegalArgumentException("next must be within the count");
+    } else if (contacts.isEmpty()) {
+      throw new IllegalArgumentException("contacts must not be empty");
+    }
+
+    this.id = id;
+    this.zone = (TimeZone)zone.clone();
+    this.start = ZonedDateTime.ofInstant(Instant.ofEpochMilli(time),
+      zone.toZoneId());
+    this.interval = interval;
+    this.count = count;
+    this.next = next;
+    this.contacts = contacts;
+
+    // the binary searches rely on every occurrence having a date
+    if (!heldUntil(start, interval, count - 1, Long.MAX_VALUE))
+      throw new IllegalArgumentException("occurrences must have a date");
+  }
+
+  /**
+   * Returns the number of occurrences of a series held until a time.
+   *
+   * @param time The time of the first occurrence in milliseconds.
+   * @param zone The time zone of the occurrences.
+   * @param interval The interval between occurrences.
+   * @param until The time of the last occurrence in milliseconds, included.
+   * @return The number of occurrences, at most Integer.MAX_VALUE.
+   * @throws IllegalArgumentException If the interval is not positive.
+   */
+  public static int countUntil(long time, TimeZone zone, Period interval,
+                               long until) {
+    if (interval.isZero() || interval.isNegative())
+      throw new IllegalArgumentException("interval must be positive");
+    if (until < time)
+      return 0;
+
+    ZonedDateTime start = ZonedDateTime.ofInstant(Instant.ofEpochMilli(time),
+      zone.toZoneId());
+
+    // double the bound, then search the last occurrence held until then
+    int low = 0;
+    int high = 1;
+    while (high < Integer.MAX_VALUE &&
+           heldUntil(start, interval, high, until)) {
+      low = high;
+      high = (high > Integer.MAX_VALUE / 2 ? Integer.MAX_VALUE : high * 2);
+    }
+    while (high - low > 1) {
+      int middle = (low + high) >>> 1;
+      if (heldUntil(start, interval, middle, until))
+        low = middle;
+      else
+        high = middle;
+    }
+    return low + 1;
+  }
+
+  /**
+   * Returns the ID of the first occurrence.
+   *
+   * @return The ID of the first occurrence.
+   */
+  public int getId() {
+    return id;
+  }
+
+  /**
+   * Returns the time of the first occurrence.
+   *
+   * @return The time in milliseconds.
+   */
+  public long getTime() {
+    return start.toInstant().toEpochMilli();
+  }
+
+  /**
+   * Returns the time zone of the occurrences.
+   *
+   * @return The time zone.
+   */
+  public TimeZone getTimeZone() {
+    return (TimeZone)zone.clone();
+  }
+
+  /**
+   * Returns the interval between occurrences.
+   *
+   * @return The interval.
+   */
+  public Period getInterval() {
+    return interval;
+  }
+
+  /**
+   * Returns the number of occurrences.
+   *
+   * @return The number of occurrences.
+   */
+  public int getCount() {
+    return count;
+  }
+
+  /**
+   * Returns the index of the next occurrence, yet to take place.
+   *
+   * @return The index, or the count if all occurrences took place.
+   */
+  public int getNext() {
+    return next;
+  }
+
+  /**
+   * Returns the contacts attending every occurrence.
+   *
+   * @return The contacts.
+   */
+  public Set<Contact> getContacts() {
+    return contacts;
+  }
+
+  /**
+   * Returns whether all the occurrences took place.
+   *
+   * @return true if there is no next occurrence, false otherwise.
+   */
+  public boolean isFinished() {
+    return (next >= count);
+  }
+
+  /**
+   * Returns whether an ID is the ID of an occurrence.
+   *
+   * @param meetingId The meeting ID.
+   * @return true if the ID belongs to the series, false otherwise.
+   */
+  public boolean contains(int meetingId) {
+    return (meetingId >= id && meetingId - id < count);
+  }
+
+  /**
+   * Returns the time of an occurrence.
+   *
+   * @param index The index of the occurrence.
+   * @return The time in milliseconds.
+   */
+  public long timeOf(int index) {
+    return timeOf(start, interval, index);
+  }
+
+  /**
+   * Returns the time of the next occurrence.
+   *
+   * @return The time in milliseconds, or Long.MAX_VALUE if all occurrences
+   *         took place.
+   */
+  public long nextTime() {
+    return (isFinished() ? Long.MAX_VALUE : timeOf(next));
+  }
+
+  /**
+   * Creates an occurrence as a future meeting. Occurrences are not stored,
+   * so each call creates a new instance.
+   *
+   * @param index The index of the occurrence.
+   * @return The occurrence.
+   */
+  public FutureMeetingImpl occurrence(int index) {
+    return new FutureMeetingImpl(id + index, timeOf(index), zone, contacts);
+  }
+
+  /**
+   * Returns the series once its next occurrence took place.
+   *
+   * @return The new series.
+   * @throws IllegalStateException If all occurrences took place.
+   */
+  public RecurringMeeting advance() {
+    if (isFinished())
+      throw new IllegalStateException("series must not be finished");
+
+    return new RecurringMeeting(id, getTime(), zone, interval, count,
+      next + 1, contacts);
+  }
+
+  /**
+   * Returns the index of the next occurrence held at a time.
+   *
+   * @param time The time in milliseconds.
+   * @return The index, or -1 if no occurrence yet to take place is held then.
+   */
+  public int indexAt(long time) {
+    int index = indexAfter(time, id - 1);
+    return (index < count && timeOf(index) == time ? index : -1);
+  }
+
+  /**
+   * Iterates over the occurrences yet to take place after the meeting
+   * identified by a time and an ID, chronologically.
+   *
+   * @param afterTime The time of the meeting in milliseconds.
+   * @param afterId The ID of the meeting.
+   * @return An iterator over the occurrences.
+   */
+  public Iterator<FutureMeetingImpl> iterator(long afterTime, int afterId) {
+    int first = indexAfter(afterTime, afterId);
+    return new Iterator<FutureMeetingImpl>() {
+      private int index = first;
+
+      public boolean hasNext() {
+        return (index < count);
+      }
+
+      public FutureMeetingImpl next() {
+        if (index >= count)
+          throw new NoSuchElementException();
+        return occurrence(index++);
+      }
+    };
+  }
+
+  /**
+   * Returns a string representation of the series.
+   *
+   * @return A string representation of the series.
+   */
+  public String toString() {
+    return "RecurringMeeting[id=" + id + ", start=" + start.toInstant() +
+      ", interval=" + interval + ", count=" + count + ", next=" + next + "]";
+  }
+
+  // Returns the index of the first occurrence yet to take place whose
+  // (time, ID) key is greater than a key, or the count if there is none.
+  private int indexAfter(long afterTime, int afterId) {
+    int low = next;
+    int high = count;
+    while (low < high) {
+      int middle = (low + high) >>> 1;
+      long time = timeOf(middle);
+      if (time > afterTime || (time == afterTime && id + middle > afterId))
+        high = middle;
+      else
+        low = middle + 1;
+    }
+    return low;
+  }
+
+  // Returns the time of an occurrence of a series. Intervals are added to
+  // the start date rather than to each other, so an occurrence on the 31st
+  // of a month stays on the last day of shorter months.
+  private static long timeOf(ZonedDateTime start, Period interval,
+                            int index) {
+    return start.plus(interval.multipliedBy(index)).toInstant()
+      .toEpochMilli();
+  }
+
+  // Returns whether an occurrence of a series is held until a time, which
+  // it isn't if its date overflows.
+  private static boolean heldUntil(ZonedDateTime start, Period interval,
+                                   int index, long until) {
+    try {
+      return (timeOf(start, interval, index) <= until);
+    } catch (ArithmeticException | DateTimeException e) {
+      return false;
+    }
+  }
+}
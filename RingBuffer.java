@@ -0,0 +1,154 @@
+import java.util.Collection;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A bounded ring buffer with many producers and a single consumer.
+ *
+ * Producers claim a slot by incrementing a shared sequence, so they never
+ * take a lock, and wait only when the buffer is full. Each slot records the
+ * sequence of the element it holds, so the consumer sees the elements in the
+ * order they were claimed, once they are fully written. The consumer parks
+ * while the buffer is empty and is woken up by the next producer.
+ *
+ * @param <T> The type of the elements.
+ */
+public class RingBuffer<T> {
+  /**
+   * The slots.
+   */
+  private final Object[] slots;
+
+  /**
+   * The sequence of the element in each slot plus one, or the sequence of
+   * an older element if the slot is not written yet.
+   */
+  private final AtomicLongArray published;
+
+  /**
+   * The mask giving the slot of a sequence.
+   */
+  private final int mask;
+
+  /**
+   * The sequence of the next slot to claim.
+   */
+  private final AtomicLong tail = new AtomicLong();
+
+  /**
+   * The sequence of the next element to consume, written by the consumer
+   * only.
+   */
+  private volatile long head;
+
+  /**
+   * The consumer, while it waits for an element.
+   */
+  private volatile Thread waiting;
+
+  /**
+   * Creates a ring buffer.
+   *
+   * @param capacity The number of slots, a power of two.
+   * @throws IllegalArgumentException If the capacity is not a positive power
+   *         of two.
+   */
+  public RingBuffer(int capacity) {
+    if (capacity <= 0 || Integer.bitCount(capacity) != 1) {
+      throw new IllegalArgumentException(
+        "capacity must be a positive power of two");
+    }
+
+    this.slots = new Object[capacity];
+    this.published = new AtomicLongArray(capacity);
+    this.mask = capacity - 1;
+  }
+
+  /**
+   * Returns the number of slots.
+   *
+   * @return The capacity.
+   */
+  public int capacity() {
+    return slots.length;
+  }
+
+  /**
+   * Adds an element, waiting for a free slot if the buffer is full.
+   *
+   * @param element The element.
+   * @throws NullPointerException If the element is null.
+   */
+  public void put(T element) {
+    if (element == null)
+      throw new NullPointerException("element must not be null");
+
+    long sequence = tail.getAndIncrement();
+    while (sequence - head >= slots.length)
+      LockSupport.parkNanos(1000);
+
+    int index = (int)sequence & mask;
+    slots[index] = element;
+    published.set(index, sequence + 1);
+
+    Thread consumer = waiting;
+    if (consumer != null)
+      LockSupport.unpark(consumer);
+  }
+
+  /**
+   * Moves the available elements to a collection, in order. It must only be
+   * called by the consumer.
+   *
+   * @param collection The collection.
+   * @param max The maximum number of elements to move.
+   * @return The number of elements moved.
+   */
+  public int drainTo(Collection<? super T> collection, int max) {
+    long sequence = head;
+    int count = 0;
+    while (count < max) {
+      int index = (int)sequence & mask;
+      if (published.get(index) != sequence + 1)
+        break;
+
+      @SuppressWarnings("unchecked")
+      T element = (T)slots[index];
+      slots[index] = null;
+      collection.add(element);
+      sequence++;
+      count++;
+    }
+    head = sequence;
+    return count;
+  }
+
+  /**
+   * Waits until an element is available. It must only be called by the
+   * consumer.
+   *
+   * @throws InterruptedException If interrupted while waiting.
+   */
+  public void await() throws InterruptedException {
+    waiting = Thread.currentThread();
+    try {
+      while (published.get((int)head & mask) != head + 1) {
+        LockSupport.park(this);
+        if (Thread.interrupted())
+          throw new InterruptedException();
+      }
+    } finally {
+      waiting = null;
+    }
+  }
+
+  /**
+   * Returns whether the buffer holds no element ready to be consumed.
+   *
+   * @return true if no element is available, false otherwise.
+   */
+  public boolean isEmpty() {
+    return published.get((int)head & mask) != head + 1;
+  }
+}
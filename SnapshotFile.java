@@ -0,0 +1,138 @@
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A file replaced atomically by snapshots, keeping the previous snapshot.
+ *
+ * A new snapshot is written to a temporary file next to the file, forced to
+ * disk and then renamed over the file, so a crash leaves either the old or
+ * the new snapshot in place, never a mix of both. Just before the rename, the
+ * current snapshot is kept as the previous one (as a hard link where the file
+ * system supports it, as a copy otherwise), to fall back on if the current
+ * one turns out to be corrupt.
+ */
+public class SnapshotFile {
+  /**
+   * Writes the contents of a snapshot.
+   */
+  public interface Contents {
+    /**
+     * Writes the contents of a snapshot to a stream.
+     *
+     * @param output The stream, which may be closed once written.
+     * @throws IOException If the stream can't be written.
+     */
+    void writeTo(OutputStream output) throws IOException;
+  }
+
+  /**
+   * The file.
+   */
+  private final Path file;
+
+  /**
+   * The previous snapshot.
+   */
+  private final Path previous;
+
+  /**
+   * The temporary file a new snapshot is written to.
+   */
+  private final Path temporary;
+
+  /**
+   * Creates a snapshot file.
+   *
+   * @param file The file.
+   * @throws NullPointerException If the file is null.
+   */
+  public SnapshotFile(File file) {
+    if (file == null)
+      throw new NullPointerException("file must not be null");
+
+    this.file = file.toPath();
+    this.previous = this.file.resolveSibling(file.getName() + ".prev");
+    this.temporary = this.file.resolveSibling(file.getName() + ".tmp");
+  }
+
+  /**
+   * Returns the file.
+   *
+   * @return The file.
+   */
+  public File getFile() {
+    return file.toFile();
+  }
+
+  /**
+   * Returns the previous snapshot.
+   *
+   * @return The previous snapshot, which may not exist.
+   */
+  public File getPreviousFile() {
+    return previous.toFile();
+  }
+
+  /**
+   * Writes a new snapshot.
+   *
+   * @param contents The contents of the snapshot.
+   * @param keepCurrent Whether the current snapshot becomes the previous one;
+   *        it should not if it is known to be corrupt, so that the previous
+   *        snapshot stays usable.
+   * @throws IOException If the snapshot can't be written, in which case the
+   *         file is left unchanged.
+   */
+  public void write(Contents contents, boolean keepCurrent) throws IOException {
+    try (OutputStream output = new BufferedOutputStream(
+           Files.newOutputStream(temporary), 65536)) {
+      contents.writeTo(output);
+    } catch (IOException | RuntimeException e) {
+      Files.deleteIfExists(temporary);
+      throw e;
+    }
+    sync(temporary, StandardOpenOption.WRITE);
+
+    if (keepCurrent && Files.exists(file)) {
+      Files.deleteIfExists(previous);
+      try {
+        Files.createLink(previous, file);
+      } catch (IOException | UnsupportedOperationException e) {
+        Files.copy(file, previous, StandardCopyOption.REPLACE_EXISTING);
+        sync(previous, StandardOpenOption.WRITE);
+      }
+    }
+
+    try {
+      Files.move(temporary, file, StandardCopyOption.ATOMIC_MOVE);
+    } catch (AtomicMoveNotSupportedException e) {
+      Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    // make the rename itself durable, where directories can be synced
+    try {
+      Path directory = file.toAbsolutePath().getParent();
+      if (directory != null)
+        sync(directory, StandardOpenOption.READ);
+    } catch (IOException e) {
+      // not supported on this platform
+    }
+  }
+
+  // Forces a file to disk.
+  private static void sync(Path path, StandardOpenOption option)
+    throws IOException
+  {
+    try (FileChannel channel = FileChannel.open(path, option)) {
+      channel.force(true);
+    }
+  }
+}
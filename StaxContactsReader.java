@@ -0,0 +1,388 @@
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.Period;
+import java.time.format.DateTimeParseException;
+import java.util.Arrays;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+/**
+ * A reader of the contact manager XML file using StAX.
+ *
+ * This reader accepts any well-formed XML document, whatever its encoding or
+ * formatting, and ignores unknown elements.
+ */
+public class StaxContactsReader implements ContactsReader {
+  /**
+   * The codec of meeting dates.
+   */
+  private final DateCodec dateCodec;
+
+  /**
+   * The IDs of the contacts of the meeting being read.
+   */
+  private int[] contactIds = new int[16];
+
+  /**
+   * The number of contact IDs of the meeting being read.
+   */
+  private int contactCount;
+
+  /**
+   * Creates a new reader.
+   *
+   * @param dateCodec The codec of meeting dates.
+   * @throws NullPointerException If the codec is null.
+   */
+  public StaxContactsReader(DateCodec dateCodec) {
+    if (dateCodec == null)
+      throw new NullPointerException("dateCodec must not be null");
+
+    this.dateCodec = dateCodec;
+  }
+
+  /**
+   * Reads a file.
+   *
+   * @param file The file.
+   * @param handler The handler receiving the contacts and meetings.
+   * @throws IOException If the file can't be read or is malformed.
+   */
+  public void read(File file, Handler handler) throws IOException {
+    try (InputStream input = new FileInputStream(file)) {
+      read(input, handler);
+    }
+  }
+
+  /**
+   * Reads a stream.
+   *
+   * @param input The stream.
+   * @param handler The handler receiving the contacts and meetings.
+   * @throws IOException If the stream can't be read or is malformed.
+   */
+  public void read(InputStream input, Handler handler) throws IOException {
+    XMLInputFactory factory = XMLInputFactory.newInstance();
+    XMLStreamReader reader = null;
+
+    try {
+      reader = factory.createXMLStreamReader(input);
+
+      // Skip start of document and validate root object
+      reader.next();
+      if (reader.getLocalName().equals("ContactManager")) {
+        readNextIds(reader, handler);
+        readDocument(reader, handler);
+      }
+    } catch (XMLStreamException e) {
+      throw new IOException(e);
+    } finally {
+      if (reader != null) {
+        try {
+          reader.close();
+        } catch (XMLStreamException e) {
+          e.printStackTrace();
+        }
+      }
+    }
+  }
+
+  // Reads the next IDs to assign, the attributes of the root element.
+  private void readNextIds(XMLStreamReader reader, Handler handler) {
+    String contactId = reader.getAttributeValue(null, "nextContactId");
+    String meetingId = reader.getAttributeValue(null, "nextMeetingId");
+    try {
+      if (contactId != null && meetingId != null) {
+        handler.nextIds(Integer.parseInt(contactId),
+          Integer.parseInt(meetingId));
+      }
+    } catch (NumberFormatException e) {
+      // skip invalid IDs
+    }
+  }
+
+  // Reads the contacts and meetings.
+  private void readDocument(XMLStreamReader reader, Handler handler)
+    throws XMLStreamException
+  {
+    boolean contactsRead = false;
+    boolean meetingsRead = false;
+
+    while (reader.hasNext()) {
+      switch (reader.next()) {
+        case XMLStreamReader.START_ELEMENT:
+          String elementName = reader.getLocalName();
+          if (elementName.equals("Contacts") && !contactsRead) {
+            readContacts(reader, handler);
+            contactsRead = true;
+          } else if (elementName.equals("Meetings") && !meetingsRead) {
+            readMeetings(reader, handler);
+            meetingsRead = true;
+          }
+          break;
+        case XMLStreamReader.END_ELEMENT:
+          break;
+        default:
+          break;
+      }
+    }
+  }
+
+  private void readContacts(XMLStreamReader reader, Handler handler)
+    throws XMLStreamException
+  {
+    while (reader.hasNext()) {
+      switch (reader.next()) {
+        case XMLStreamReader.START_ELEMENT:
+          String name = reader.getLocalName();
+          if (name.equals("Contact"))
+            readContact(reader, handler);
+          break;
+        case XMLStreamReader.END_ELEMENT:
+          return;
+        default:
+          break;
+      }
+    }
+  }
+
+  private void readContact(XMLStreamReader reader, Handler handler)
+    throws XMLStreamException
+  {
+    String name = null, notes = null;
+    int id = -1;
+
+    try {
+      id = Integer.parseInt(reader.getAttributeValue(null, "id"));
+    } catch (Exception e) {
+      return;
+    }
+
+    boolean done = false;
+    while (!done && reader.hasNext()) {
+      switch (reader.next()) {
+        case XMLStreamReader.START_ELEMENT:
+          String elementName = reader.getLocalName();
+          if (elementName.equals("Name") && name == null)
+            name = readText(reader);
+          else if (elementName.equals("Notes") && notes == null)
+            notes = readText(reader);
+          break;
+        case XMLStreamReader.END_ELEMENT:
+          done = true;
+          break;
+        default:
+          break;
+      }
+    }
+
+    if (name != null)
+      handler.contact(id, name, notes);
+  }
+
+  private void readMeetings(XMLStreamReader reader, Handler handler)
+    throws XMLStreamException
+  {
+    while (reader.hasNext()) {
+      switch (reader.next()) {
+        case XMLStreamReader.START_ELEMENT:
+          String name = reader.getLocalName();
+          if (name.equals("Meeting"))
+            readMeeting(reader, handler);
+          else if (name.equals("Recurrence"))
+            readRecurrence(reader, handler);
+          break;
+        case XMLStreamReader.END_ELEMENT:
+          break;
+        default:
+          break;
+      }
+    }
+  }
+
+  private void readMeeting(XMLStreamReader reader, Handler handler)
+    throws XMLStreamException
+  {
+    boolean contactsRead = false;
+    Long date = null;
+    Long endDate = null;
+    String notes = null;
+    int id = -1;
+
+    try {
+      id = Integer.parseInt(reader.getAttributeValue(null, "id"));
+    } catch (Exception e) {
+      return;
+    }
+
+    boolean done = false;
+    while (!done && reader.hasNext()) {
+      switch (reader.next()) {
+        case XMLStreamReader.START_ELEMENT:
+          String elementName = reader.getLocalName();
+          if (elementName.equals("Date") && date == null) {
+            date = readDate(reader);
+          } else if (elementName.equals("End") && endDate == null) {
+            endDate = readDate(reader);
+          } else if (elementName.equals("Notes") && notes == null) {
+            notes = readText(reader);
+          } else if (elementName.equals("Contacts") && !contactsRead) {
+            readMeetingContacts(reader);
+            contactsRead = true;
+          }
+          break;
+        case XMLStreamReader.END_ELEMENT:
+          done = true;
+          break;
+        default:
+          break;
+      }
+    }
+
+    if (date != null && contactsRead) {
+      long endTime = (endDate == null || endDate < date ? date : endDate);
+      handler.meeting(id, date, endTime, notes, contactIds, contactCount);
+    }
+  }
+
+  // Reads a series of recurring meetings, skipping it if it is incomplete.
+  private void readRecurrence(XMLStreamReader reader, Handler handler)
+    throws XMLStreamException
+  {
+    boolean contactsRead = false;
+    Long date = null;
+    Period interval = null;
+    Integer count = null, next = null;
+    int id = -1;
+
+    try {
+      id = Integer.parseInt(reader.getAttributeValue(null, "id"));
+    } catch (Exception e) {
+      return;
+    }
+
+    boolean done = false;
+    while (!done && reader.hasNext()) {
+      switch (reader.next()) {
+        case XMLStreamReader.START_ELEMENT:
+          String elementName = reader.getLocalName();
+          if (elementName.equals("Date") && date == null) {
+            date = readDate(reader);
+          } else if (elementName.equals("Interval") && interval == null) {
+            interval = readInterval(reader);
+          } else if (elementName.equals("Count") && count == null) {
+            count = readNumber(reader);
+          } else if (elementName.equals("Next") && next == null) {
+            next = readNumber(reader);
+          } else if (elementName.equals("Contacts") && !contactsRead) {
+            readMeetingContacts(reader);
+            contactsRead = true;
+          }
+          break;
+        case XMLStreamReader.END_ELEMENT:
+          done = true;
+          break;
+        default:
+          break;
+      }
+    }
+
+    if (date != null && interval != null && count != null && next != null &&
+        contactsRead) {
+      handler.recurrence(id, date, interval, count, next, contactIds,
+        contactCount);
+    }
+  }
+
+  // Reads element characters.
+  private String readText(XMLStreamReader reader) throws XMLStreamException {
+    StringBuilder result = new StringBuilder();
+    boolean done = false;
+
+    while (!done && reader.hasNext()) {
+      switch (reader.next()) {
+        case XMLStreamReader.CHARACTERS:
+          result.append(reader.getText());
+          break;
+        case XMLStreamReader.END_ELEMENT:
+          done = true;
+          break;
+        default:
+          break;
+      }
+    }
+    return result.toString();
+  }
+
+  // Reads element as a time in milliseconds.
+  private Long readDate(XMLStreamReader reader) throws XMLStreamException {
+    try {
+      return dateCodec.parse(readText(reader));
+    } catch (IllegalArgumentException e) {
+      return null;
+    }
+  }
+
+  // Reads element as a period.
+  private Period readInterval(XMLStreamReader reader)
+    throws XMLStreamException
+  {
+    try {
+      return Period.parse(readText(reader).trim());
+    } catch (DateTimeParseException e) {
+      return null;
+    }
+  }
+
+  // Reads element as a number.
+  private Integer readNumber(XMLStreamReader reader)
+    throws XMLStreamException
+  {
+    try {
+      return Integer.parseInt(readText(reader).trim());
+    } catch (NumberFormatException e) {
+      return null;
+    }
+  }
+
+  // Reads the IDs of the contacts of a meeting.
+  private void readMeetingContacts(XMLStreamReader reader)
+    throws XMLStreamException
+  {
+    contactCount = 0;
+
+    boolean done = false;
+    while (!done && reader.hasNext()) {
+      switch (reader.next()) {
+        case XMLStreamReader.START_ELEMENT:
+          if (reader.getLocalName().equals("Id"))
+            readMeetingContact(reader);
+          break;
+        case XMLStreamReader.END_ELEMENT:
+          done = true;
+          break;
+        default:
+          break;
+      }
+    }
+  }
+
+  // Reads the ID of one contact in a meeting.
+  private void readMeetingContact(XMLStreamReader reader)
+    throws XMLStreamException
+  {
+    try {
+      int id = Integer.parseInt(readText(reader).trim());
+
+      if (contactCount == contactIds.length)
+        contactIds = Arrays.copyOf(contactIds, contactCount * 2);
+      contactIds[contactCount++] = id;
+    } catch (NumberFormatException e) {
+      // skip invalid IDs
+    }
+  }
+}
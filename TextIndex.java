@@ -0,0 +1,400 @@
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.function.IntConsumer;
+
+/**
+ * An inverted index of the words of texts identified by an ID, such as
+ * notes.
+ *
+ * Texts are split into terms, the lower-cased runs of letters and digits.
+ * Each term has a posting list of the IDs of the texts containing it, with
+ * the number of times it occurs in each, and each text keeps the counts of
+ * its terms, so a text can be appended to or removed by only updating the
+ * posting lists of its terms.
+ *
+ * Queries are terms which texts must all contain, in groups separated by
+ * OR of which texts must match any. Matches are ranked by TF-IDF: terms
+ * count more the more often they occur in the text and the fewer texts
+ * contain them.
+ *
+ * Like CollaborationGraph, the index is backed by persistent maps, so a
+ * snapshot costs nothing and stays unchanged while the index is modified.
+ *
+ * @see CollaborationGraph
+ */
+public class TextIndex {
+  /**
+   * The texts containing each term, with the number of occurrences.
+   */
+  private PersistentTreeMap<String, PersistentTreeMap<Integer, Integer>>
+    postings;
+
+  /**
+   * The indexed texts by ID.
+   */
+  private PersistentTreeMap<Integer, Document> documents;
+
+  /**
+   * Creates an empty index.
+   */
+  public TextIndex() {
+    clear();
+  }
+
+  // Creates a snapshot of an index.
+  private TextIndex(TextIndex index) {
+    this.postings = index.postings;
+    this.documents = index.documents;
+  }
+
+  /**
+   * Splits a text into terms.
+   *
+   * @param text The text.
+   * @return The terms, in text order.
+   */
+  public static List<String> terms(String text) {
+    List<String> terms = new ArrayList<>();
+    int start = -1;
+    for (int i = 0; i <= text.length(); i++) {
+      boolean letter = (i < text.length() &&
+                        Character.isLetterOrDigit(text.charAt(i)));
+      if (letter && start < 0) {
+        start = i;
+      } else if (!letter && start >= 0) {
+        terms.add(text.substring(start, i).toLowerCase(Locale.ROOT));
+        start = -1;
+      }
+    }
+    return terms;
+  }
+
+  /**
+   * Appends text to the text of an ID, which may not be indexed yet.
+   *
+   * @param id The ID.
+   * @param text The appended text.
+   */
+  public void add(int id, String text) {
+    Document document = documents.get(id);
+    if (document == null)
+      document = Document.EMPTY;
+
+    Map<String, Integer> counts = new HashMap<>();
+    for (String term : terms(text))
+      counts.merge(term, 1, Integer::sum);
+    for (Map.Entry<String, Integer> entry : counts.entrySet()) {
+      String term = entry.getKey();
+      PersistentTreeMap<Integer, Integer> posting = postings.get(term);
+      if (posting == null)
+        posting = PersistentTreeMap.empty();
+      postings = postings.put(term, posting.put(id,
+        document.count(term) + entry.getValue()));
+    }
+    documents = documents.put(id, document.add(counts, text.length()));
+  }
+
+  /**
+   * Replaces the text of an ID.
+   *
+   * @param id The ID.
+   * @param text The text; an empty text removes the ID from the index.
+   */
+  public void set(int id, String text) {
+    remove(id);
+    if (!text.isEmpty())
+      add(id, text);
+  }
+
+  /**
+   * Removes the text of an ID.
+   *
+   * @param id The ID.
+   */
+  public void remove(int id) {
+    Document document = documents.get(id);
+    if (document == null)
+      return;
+
+    for (String term : document.terms) {
+      PersistentTreeMap<Integer, Integer> posting = postings.get(term)
+        .remove(id);
+      postings = (posting.isEmpty() ? postings.remove(term) :
+        postings.put(term, posting));
+    }
+    documents = documents.remove(id);
+  }
+
+  /**
+   * Removes all texts from the index.
+   */
+  public void clear() {
+    postings = PersistentTreeMap.empty();
+    documents = PersistentTreeMap.empty();
+  }
+
+  /**
+   * Returns a snapshot of the index, which the changes made to the index
+   * afterwards don't affect. Taking a snapshot takes constant time.
+   *
+   * @return The snapshot.
+   */
+  public TextIndex snapshot() {
+    return new TextIndex(this);
+  }
+
+  /**
+   * Returns the number of indexed texts.
+   *
+   * @return The number of texts.
+   */
+  public int size() {
+    return documents.size();
+  }
+
+  /**
+   * Returns the length of the indexed text of an ID. As texts are only
+   * appended to, this tells whether the index is behind a text.
+   *
+   * @param id The ID.
+   * @return The length of the text or 0 if the ID is not indexed.
+   */
+  public int length(int id) {
+    Document document = documents.get(id);
+    return (document == null ? 0 : document.length);
+  }
+
+  /**
+   * Reports the indexed IDs, in ascending order.
+   *
+   * @param action The action receiving the IDs.
+   */
+  public void forEachId(IntConsumer action) {
+    documents.tailEntries(Integer.MIN_VALUE, true)
+      .forEach(entry -> action.accept(entry.getKey()));
+  }
+
+  /**
+   * Returns the IDs of the texts matching a query, ranked by decreasing
+   * relevance and then by ID.
+   *
+   * The query is a list of terms, of which texts must contain all; the
+   * word AND between terms is optional. Lists separated by the word OR are
+   * alternatives, of which texts must match any. Any other text is split
+   * into terms as texts are, so "e-mail" requires both "e" and "mail".
+   *
+   * @param query The query.
+   * @return The IDs of the matching texts (empty if the query has no
+   *         terms).
+   * @throws NullPointerException If the query is null.
+   */
+  public int[] search(String query) {
+    if (query == null)
+      throw new NullPointerException("query must not be null");
+
+    // parse the query as OR groups of terms
+    List<List<String>> groups = new ArrayList<>();
+    List<String> group = new ArrayList<>();
+    Set<String> queryTerms = new HashSet<>();
+    for (String word : query.trim().split("\\s+")) {
+      if (word.equals("OR")) {
+        groups.add(group);
+        group = new ArrayList<>();
+      } else if (!word.equals("AND")) {
+        group.addAll(terms(word));
+      }
+    }
+    groups.add(group);
+
+    // find the texts matching any group
+    Set<Integer> matches = new HashSet<>();
+    for (List<String> terms : groups) {
+      if (!terms.isEmpty()) {
+        queryTerms.addAll(terms);
+        matches.addAll(matchAll(terms));
+      }
+    }
+
+    // rank them by the sum of the TF-IDF weights of the query terms
+    Map<Integer, Double> scores = new HashMap<>();
+    for (int id : matches) {
+      double score = 0;
+      for (String term : queryTerms) {
+        PersistentTreeMap<Integer, Integer> posting = postings.get(term);
+        Integer count = (posting == null ? null : posting.get(id));
+        if (count != null) {
+          score += (1 + Math.log(count)) *
+            Math.log(1 + (double)documents.size() / posting.size());
+        }
+      }
+      scores.put(id, score);
+    }
+
+    List<Integer> ids = new ArrayList<>(matches);
+    ids.sort(Comparator.comparing((Integer id) -> -scores.get(id))
+      .thenComparing(id -> id));
+    int[] result = new int[ids.size()];
+    for (int i = 0; i < result.length; i++)
+      result[i] = ids.get(i);
+    return result;
+  }
+
+  /**
+   * Writes the index.
+   *
+   * Only the term counts of each text are written: the posting lists are
+   * rebuilt from them when the index is read, without the texts.
+   *
+   * @param output The output.
+   * @throws IOException If the output can't be written.
+   */
+  public void write(DataOutput output) throws IOException {
+    output.writeInt(documents.size());
+    Iterator<Map.Entry<Integer, Document>> entries = documents.tailEntries(
+      Integer.MIN_VALUE, true).iterator();
+    while (entries.hasNext()) {
+      Map.Entry<Integer, Document> entry = entries.next();
+      Document document = entry.getValue();
+      output.writeInt(entry.getKey());
+      output.writeInt(document.length);
+      output.writeInt(document.terms.length);
+      for (int i = 0; i < document.terms.length; i++) {
+        output.writeUTF(document.terms[i]);
+        output.writeInt(document.counts[i]);
+      }
+    }
+  }
+
+  /**
+   * Reads an index written by write().
+   *
+   * @param input The input.
+   * @return The index.
+   * @throws IOException If the input can't be read or is corrupt.
+   */
+  public static TextIndex read(DataInput input) throws IOException {
+    TextIndex index = new TextIndex();
+    Map<String, TreeMap<Integer, Integer>> postings = new HashMap<>();
+
+    int documentCount = input.readInt();
+    if (documentCount < 0)
+      throw new IOException("index is corrupt");
+    for (int i = 0; i < documentCount; i++) {
+      int id = input.readInt();
+      int length = input.readInt();
+      int termCount = input.readInt();
+      if (length < 0 || termCount < 0)
+        throw new IOException("index is corrupt");
+
+      Map<String, Integer> counts = new HashMap<>();
+      for (int j = 0; j < termCount; j++) {
+        String term = input.readUTF();
+        int count = input.readInt();
+        if (count <= 0)
+          throw new IOException("index is corrupt");
+        counts.put(term, count);
+        postings.computeIfAbsent(term, key -> new TreeMap<>()).put(id, count);
+      }
+      index.documents = index.documents.put(id,
+        Document.EMPTY.add(counts, length));
+    }
+
+    for (Map.Entry<String, TreeMap<Integer, Integer>> entry :
+         postings.entrySet()) {
+      PersistentTreeMap<Integer, Integer> posting = PersistentTreeMap.empty();
+      for (Map.Entry<Integer, Integer> count : entry.getValue().entrySet())
+        posting = posting.put(count.getKey(), count.getValue());
+      index.postings = index.postings.put(entry.getKey(), posting);
+    }
+    return index;
+  }
+
+  // Returns the IDs of the texts containing all the terms, walking the
+  // shortest posting list and looking its IDs up in the others.
+  private List<Integer> matchAll(List<String> terms) {
+    List<PersistentTreeMap<Integer, Integer>> lists = new ArrayList<>();
+    for (String term : terms) {
+      PersistentTreeMap<Integer, Integer> posting = postings.get(term);
+      if (posting == null)
+        return new ArrayList<>();
+      lists.add(posting);
+    }
+    lists.sort(Comparator.comparingInt(PersistentTreeMap::size));
+
+    List<Integer> ids = new ArrayList<>();
+    lists.get(0).tailEntries(Integer.MIN_VALUE, true).forEach(entry -> {
+      for (int i = 1; i < lists.size(); i++) {
+        if (!lists.get(i).containsKey(entry.getKey()))
+          return;
+      }
+      ids.add(entry.getKey());
+    });
+    return ids;
+  }
+
+  /**
+   * The terms of an indexed text.
+   */
+  private static final class Document {
+    /**
+     * The document without text.
+     */
+    static final Document EMPTY = new Document(new String[0], new int[0], 0);
+
+    /**
+     * The distinct terms, sorted.
+     */
+    final String[] terms;
+
+    /**
+     * The number of occurrences of each term.
+     */
+    final int[] counts;
+
+    /**
+     * The length of the text.
+     */
+    final int length;
+
+    // Creates a document.
+    Document(String[] terms, int[] counts, int length) {
+      this.terms = terms;
+      this.counts = counts;
+      this.length = length;
+    }
+
+    // Returns the number of occurrences of a term.
+    int count(String term) {
+      int index = Arrays.binarySearch(terms, term);
+      return (index < 0 ? 0 : counts[index]);
+    }
+
+    // Returns the document with text appended, given its term counts.
+    Document add(Map<String, Integer> added, int addedLength) {
+      TreeMap<String, Integer> merged = new TreeMap<>(added);
+      for (int i = 0; i < terms.length; i++)
+        merged.merge(terms[i], counts[i], Integer::sum);
+
+      String[] newTerms = new String[merged.size()];
+      int[] newCounts = new int[merged.size()];
+      int i = 0;
+      for (Map.Entry<String, Integer> entry : merged.entrySet()) {
+        newTerms[i] = entry.getKey();
+        newCounts[i++] = entry.getValue();
+      }
+      return new Document(newTerms, newCounts, length + addedLength);
+    }
+  }
+}
@@ -0,0 +1,134 @@
+import java.util.Calendar;
+import java.util.TimeZone;
+
+/**
+ * A half-open interval of time, [start, end).
+ *
+ * Time slots are immutable: the start and end are stored as times in
+ * milliseconds and a time zone.
+ */
+public final class TimeSlot {
+  /**
+   * The start time in milliseconds.
+   */
+  private final long startTime;
+
+  /**
+   * The end time in milliseconds, excluded.
+   */
+  private final long endTime;
+
+  /**
+   * The time zone.
+   */
+  private final TimeZone zone;
+
+  /**
+   * Creates a time slot.
+   *
+   * @param startTime The start time in milliseconds.
+   * @param endTime The end time in milliseconds, excluded.
+   * @param zone The time zone of the start and end dates.
+   * @throws IllegalArgumentException If the slot ends before it starts.
+   * @throws NullPointerException If the time zone is null.
+   */
+  public TimeSlot(long startTime, long endTime, TimeZone zone) {
+    if (zone == null)
+      throw new NullPointerException("zone must not be null");
+    else if (endTime < startTime)
+      throw new IllegalArgumentException("end must not be before start");
+
+    this.startTime = startTime;
+    this.endTime = endTime;
+    this.zone = (TimeZone)zone.clone();
+  }
+
+  /**
+   * Returns the start date.
+   *
+   * The returned calendar is a new instance, so it may be modified freely.
+   *
+   * @return The start date.
+   */
+  public Calendar getStart() {
+    return dateOf(startTime);
+  }
+
+  /**
+   * Returns the end date, which is not part of the slot.
+   *
+   * The returned calendar is a new instance, so it may be modified freely.
+   *
+   * @return The end date.
+   */
+  public Calendar getEnd() {
+    return dateOf(endTime);
+  }
+
+  /**
+   * Returns the start time, without creating a calendar.
+   *
+   * @return The start time in milliseconds.
+   */
+  public long getStartTime() {
+    return startTime;
+  }
+
+  /**
+   * Returns the end time, without creating a calendar.
+   *
+   * @return The end time in milliseconds.
+   */
+  public long getEndTime() {
+    return endTime;
+  }
+
+  /**
+   * Returns the length of the slot.
+   *
+   * @return The length in milliseconds.
+   */
+  public long getLength() {
+    return endTime - startTime;
+  }
+
+  /**
+   * Indicates whether some other object is "equal to" this one.
+   *
+   * @param object The reference object with which to compare.
+   * @return true If the object is a time slot with the same start and end
+   *         times, false otherwise.
+   */
+  public boolean equals(Object object) {
+    if (object instanceof TimeSlot) {
+      TimeSlot slot = (TimeSlot)object;
+      return (startTime == slot.startTime && endTime == slot.endTime);
+    }
+    return false;
+  }
+
+  /**
+   * Returns a hash code value for the object.
+   *
+   * @return A hash code value for this object.
+   */
+  public int hashCode() {
+    return Long.hashCode(startTime) * 31 + Long.hashCode(endTime);
+  }
+
+  /**
+   * Returns a string representation of the slot.
+   *
+   * @return A string representation of the slot.
+   */
+  public String toString() {
+    return "[" + getStart().toInstant() + ", " + getEnd().toInstant() + ")";
+  }
+
+  // Returns the date of a time in the time zone of the slot.
+  private Calendar dateOf(long time) {
+    Calendar date = Calendar.getInstance((TimeZone)zone.clone());
+    date.setTimeInMillis(time);
+    return date;
+  }
+}
@@ -0,0 +1,134 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32C;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * A CRC32C checksum of an XML file, kept in a comment at its end.
+ *
+ * The comment is "&lt;!-- crc32c=XXXXXXXX --&gt;" on its own line after the
+ * document, and the checksum covers every byte before that line, so XML
+ * readers ignore it while a truncated or partially written file is detected.
+ */
+public class XmlChecksum {
+  /**
+   * The start of the comment.
+   */
+  private static final String PREFIX = "\n<!-- crc32c=";
+
+  /**
+   * The end of the comment.
+   */
+  private static final String SUFFIX = " -->\n";
+
+  /**
+   * The length of the comment.
+   */
+  private static final int LENGTH = PREFIX.length() + 8 + SUFFIX.length();
+
+  /**
+   * The stream whose bytes are checksummed.
+   */
+  private final CheckedOutputStream checked;
+
+  /**
+   * The underlying stream.
+   */
+  private final OutputStream output;
+
+  /**
+   * Starts checksumming an XML file.
+   *
+   * @param output The stream the file is written to.
+   */
+  public XmlChecksum(OutputStream output) {
+    this.output = output;
+    this.checked = new CheckedOutputStream(output, new CRC32C());
+  }
+
+  /**
+   * Returns the stream the XML document must be written to.
+   *
+   * @return The stream.
+   */
+  public OutputStream getOutputStream() {
+    return checked;
+  }
+
+  /**
+   * Writes the checksum comment, once the XML document is written.
+   *
+   * @throws IOException If the stream can't be written.
+   */
+  public void finish() throws IOException {
+    checked.flush();
+    String comment = String.format("%s%08x%s", PREFIX,
+      checked.getChecksum().getValue(), SUFFIX);
+    output.write(comment.getBytes(StandardCharsets.US_ASCII));
+    output.flush();
+  }
+
+  /**
+   * Verifies the checksum of an XML file, if it has one.
+   *
+   * Files without a checksum comment, such as files written before
+   * checksums were added, are accepted as they are.
+   *
+   * @param file The file.
+   * @return true if the file has a valid checksum, false if it has none.
+   * @throws IOException If the file can't be read or the checksum is wrong.
+   */
+  public static boolean verify(File file) throws IOException {
+    long size;
+    String comment;
+
+    try (FileChannel channel = FileChannel.open(file.toPath(),
+           StandardOpenOption.READ)) {
+      size = channel.size();
+      if (size < LENGTH)
+        return false;
+
+      ByteBuffer buffer = ByteBuffer.allocate(LENGTH);
+      while (buffer.hasRemaining()) {
+        if (channel.read(buffer, size - LENGTH + buffer.position()) < 0)
+          return false;
+      }
+      comment = new String(buffer.array(), StandardCharsets.US_ASCII);
+    }
+    if (!comment.startsWith(PREFIX) || !comment.endsWith(SUFFIX))
+      return false;
+
+    long expected;
+    try {
+      expected = Long.parseLong(comment.substring(PREFIX.length(),
+        PREFIX.length() + 8), 16);
+    } catch (NumberFormatException e) {
+      return false;
+    }
+
+    CRC32C crc = new CRC32C();
+    try (InputStream input = Files.newInputStream(file.toPath())) {
+      byte[] buffer = new byte[65536];
+      long remaining = size - LENGTH;
+      while (remaining > 0) {
+        int read = input.read(buffer, 0, (int)Math.min(buffer.length,
+          remaining));
+        if (read < 0)
+          throw new IOException(file + " is truncated");
+        crc.update(buffer, 0, read);
+        remaining -= read;
+      }
+    }
+
+    if (crc.getValue() != expected)
+      throw new IOException(file + " has an invalid checksum");
+    return true;
+  }
+}
@@ -0,0 +1,115 @@
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the throughput of the asynchronous contact manager with many
+ * concurrent callers.
+ *
+ * Usage: java AsyncContactManagerBenchmark [CALLERS] [OPERATIONS] [RUNS]
+ *
+ * Each of the callers (10000 by default) chains the specified number of
+ * operations (20 by default), one change for every nine reads, through the
+ * asynchronous facade. The same operations are then made by blocking calls
+ * from a pool of threads, for comparison. The contact manager writes
+ * contacts.txt in the current directory, which is deleted afterwards.
+ */
+public class AsyncContactManagerBenchmark {
+  /**
+   * The number of threads making blocking calls.
+   */
+  private static final int THREADS = 64;
+
+  /**
+   * Runs the benchmark.
+   *
+   * @param args The number of callers, of operations and of runs.
+   * @throws Exception If the benchmark fails.
+   */
+  public static void main(String[] args) throws Exception {
+    int callers = (args.length > 0 ? Integer.parseInt(args[0]) : 10000);
+    int operations = (args.length > 1 ? Integer.parseInt(args[1]) : 20);
+    int runs = (args.length > 2 ? Integer.parseInt(args[2]) : 3);
+
+    File file = new File("contacts.txt");
+    try {
+      for (int run = 1; run <= runs; run++) {
+        file.delete();
+        timeAsync(callers, operations);
+        file.delete();
+        timeBlocking(callers, operations);
+      }
+    } finally {
+      file.delete();
+      new File("contacts.txt.journal").delete();
+      new File("contacts.txt.prev").delete();
+    }
+  }
+
+  // Runs the callers through the asynchronous facade.
+  private static void timeAsync(int callers, int operations)
+    throws Exception
+  {
+    try (AsyncContactManager manager = new AsyncContactManager(
+           new ContactManagerImpl())) {
+      long start = System.nanoTime();
+      List<CompletableFuture<?>> futures = new ArrayList<>(callers);
+      for (int caller = 0; caller < callers; caller++) {
+        String name = "Contact " + caller;
+        CompletableFuture<Integer> future = manager.addNewContact(name,
+          "notes");
+        for (int i = 1; i < operations; i++) {
+          if (i % 10 == 0) {
+            future = future.thenCompose(id -> manager.addNewContact(name,
+              "more notes"));
+          } else {
+            future = future.thenCompose(id -> manager.getContacts(id)
+              .thenApply(contacts -> id));
+          }
+        }
+        futures.add(future);
+      }
+      CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0]))
+        .join();
+      manager.flush().join();
+      print("async", callers, operations, System.nanoTime() - start);
+    }
+  }
+
+  // Runs the callers as blocking calls from a pool of threads.
+  private static void timeBlocking(int callers, int operations)
+    throws Exception
+  {
+    ContactManagerImpl manager = new ContactManagerImpl();
+    ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+    long start = System.nanoTime();
+    for (int caller = 0; caller < callers; caller++) {
+      String name = "Contact " + caller;
+      executor.execute(() -> {
+        int id = manager.addNewContact(name, "notes");
+        for (int i = 1; i < operations; i++) {
+          if (i % 10 == 0)
+            id = manager.addNewContact(name, "more notes");
+          else
+            manager.getContacts(id);
+        }
+      });
+    }
+    executor.shutdown();
+    executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+    manager.flush();
+    print("blocking", callers, operations, System.nanoTime() - start);
+  }
+
+  // Prints the time taken and the throughput of a run.
+  private static void print(String name, int callers, int operations,
+                            long elapsed) {
+    long count = (long)callers * operations;
+    System.out.printf("%s: %d callers, %d operations in %d ms (%.0f ops/s)%n",
+      name, callers, count, elapsed / 1000000, count / (elapsed / 1e9));
+  }
+}
@@ -0,0 +1,117 @@
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Compares the fast and StAX readers of the contact manager XML file.
+ *
+ * Usage: java ContactsReaderBenchmark [SIZE IN MB] [RUNS]
+ *
+ * A file of about the specified size (1024 MB by default) is generated in the
+ * temporary directory, then read by each reader the specified number of
+ * times (3 by default). The file is also converted to a block-compressed
+ * file, which is read with the block reader.
+ */
+public class ContactsReaderBenchmark {
+  /**
+   * The number of contacts in the generated file.
+   */
+  private static final int CONTACTS = 100000;
+
+  /**
+   * Runs the benchmark.
+   *
+   * @param args The file size in MB and the number of runs.
+   * @throws IOException If the file can't be written or read.
+   */
+  public static void main(String[] args) throws IOException {
+    long size = (args.length > 0 ? Long.parseLong(args[0]) : 1024) << 20;
+    int runs = (args.length > 1 ? Integer.parseInt(args[1]) : 3);
+
+    File file = File.createTempFile("contacts", ".txt");
+    file.deleteOnExit();
+    generate(file, size);
+    System.out.printf("file: %d MB%n", file.length() >> 20);
+
+    DateCodec codec = new DateCodec();
+    File blockFile = File.createTempFile("contacts", ".blk");
+    blockFile.deleteOnExit();
+    try (BlockContactsWriter writer = new BlockContactsWriter(blockFile)) {
+      new FastContactsReader(codec).read(file, writer);
+    }
+    System.out.printf("block file: %d MB%n", blockFile.length() >> 20);
+
+    for (int run = 1; run <= runs; run++) {
+      time("fast", new FastContactsReader(codec), file, file.length());
+      time("stax", new StaxContactsReader(codec), file, file.length());
+      time("block", new BlockContactsReader(), blockFile, file.length());
+    }
+  }
+
+  // Reads a file and prints the time taken and the throughput relative to a
+  // size of data.
+  private static void time(String name, ContactsReader reader, File file,
+                           long size) throws IOException
+  {
+    long[] counts = new long[2];
+    ContactsReader.Handler handler = new ContactsReader.Handler() {
+      public void contact(int id, String name, String notes) {
+        counts[0]++;
+      }
+
+      public void meeting(int id, long time, String notes, int[] contactIds,
+                          int contactCount) {
+        counts[1]++;
+      }
+    };
+
+    long start = System.nanoTime();
+    reader.read(file, handler);
+    long elapsed = System.nanoTime() - start;
+
+    System.out.printf("%s: %d contacts, %d meetings in %d ms (%.1f MB/s)%n",
+      name, counts[0], counts[1], elapsed / 1000000,
+      (size / 1048576.0) / (elapsed / 1e9));
+  }
+
+  // Writes a file of contacts and meetings of about the specified size.
+  private static void generate(File file, long size) throws IOException {
+    DateCodec codec = new DateCodec();
+    long time = System.currentTimeMillis() - 365L * 86400000L;
+
+    try (Writer writer = new BufferedWriter(new OutputStreamWriter(
+           new FileOutputStream(file), StandardCharsets.UTF_8), 1 << 16)) {
+      writer.write("<?xml version=\"1.0\" encoding=\"utf-8\"?>");
+      writer.write("<ContactManager><Contacts>");
+      long written = 64;
+      for (int id = 1; id <= CONTACTS; id++) {
+        String contact = "<Contact id=\"" + id + "\"><Name>Contact " + id +
+          "</Name><Notes>Notes about contact " + id + " &amp; more</Notes>" +
+          "</Contact>";
+        writer.write(contact);
+        written += contact.length();
+      }
+      writer.write("</Contacts><Meetings>");
+
+      for (int id = 1; written < size; id++) {
+        StringBuilder meeting = new StringBuilder(256);
+        meeting.append("<Meeting id=\"").append(id).append("\"><Date>")
+          .append(codec.format(time + id * 60000L)).append("</Date>")
+          .append("<Notes>Notes of meeting ").append(id).append("</Notes>")
+          .append("<Contacts>");
+        for (int i = 0; i < 4; i++) {
+          meeting.append("<Id>").append((id * 7 + i * 13) % CONTACTS + 1)
+            .append("</Id>");
+        }
+        meeting.append("</Contacts></Meeting>");
+        writer.append(meeting);
+        written += meeting.length();
+      }
+      writer.write("</Meetings></ContactManager>");
+    }
+  }
+}
@@ -0,0 +1,117 @@
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * AsyncContactManager unit test.
+ */
+public class AsyncContactManagerTest {
+  /**
+   * The database file.
+   */
+  private File file = new File("contacts.txt");
+
+  /**
+   * The facade.
+   */
+  private AsyncContactManager contactManager;
+
+  @Before
+  public void setUp() {
+    deleteDatabase();
+    contactManager = new AsyncContactManager(new ContactManagerImpl());
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    contactManager.close();
+    deleteDatabase();
+  }
+
+  // Deletes the database file and the files saved next to it.
+  private void deleteDatabase() {
+    file.delete();
+    for (String suffix : List.of(".prev", ".journal", ".index"))
+      new File(file.getPath() + suffix).delete();
+  }
+
+  @Test
+  public void testReadsChanges() throws Exception {
+    int id = contactManager.addNewContact("John Doe", "a note")
+      .get(10, TimeUnit.SECONDS);
+    assertEquals("John Doe", contactManager.getContacts(id)
+      .get(10, TimeUnit.SECONDS).iterator().next().getName());
+
+    Calendar date = Calendar.getInstance();
+    date.add(Calendar.DATE, 1);
+    int meetingId = contactManager.getContacts(id)
+      .thenCompose(contacts -> contactManager.addFutureMeeting(contacts, date))
+      .get(10, TimeUnit.SECONDS);
+    assertEquals(meetingId, contactManager.getFutureMeeting(meetingId)
+      .get(10, TimeUnit.SECONDS).getId());
+  }
+
+  @Test
+  public void testMakesChangesInOrder() throws Exception {
+    List<CompletableFuture<Integer>> futures = new ArrayList<>();
+    for (int i = 0; i < 100; i++)
+      futures.add(contactManager.addNewContact("Contact " + i, "notes"));
+
+    for (int i = 0; i < futures.size(); i++)
+      assertEquals(i + 1, (int)futures.get(i).get(10, TimeUnit.SECONDS));
+  }
+
+  @Test
+  public void testCompletesExceptionally() throws Exception {
+    try {
+      contactManager.addNewContact("", "notes").get(10, TimeUnit.SECONDS);
+      fail();
+    } catch (ExecutionException e) {
+      assertTrue(e.getCause() instanceof IllegalArgumentException);
+    }
+
+    try {
+      contactManager.getContacts(42).join();
+      fail();
+    } catch (CompletionException e) {
+      assertTrue(e.getCause() instanceof IllegalArgumentException);
+    }
+  }
+
+  @Test
+  public void testFlushesSubmittedChanges() throws Exception {
+    contactManager.addNewContact("John Doe", "a note");
+    contactManager.flush().get(10, TimeUnit.SECONDS);
+
+    assertEquals(1, new ContactManagerImpl().getContacts("John").size());
+  }
+
+  @Test
+  public void testRunsReadsOnExecutor() throws Exception {
+    AtomicInteger reads = new AtomicInteger();
+    Executor executor = runnable -> {
+      reads.incrementAndGet();
+      runnable.run();
+    };
+    try (AsyncContactManager manager = new AsyncContactManager(
+           new ContactManagerImpl(), executor)) {
+      manager.getContacts("").get(10, TimeUnit.SECONDS);
+      manager.getMeeting(1).get(10, TimeUnit.SECONDS);
+      assertEquals(2, reads.get());
+    }
+  }
+}
@@ -0,0 +1,68 @@
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+/**
+ * AttendeePool and AttendeeSet unit testing.
+ *
+ * Test cases:
+ *   - sets with the same contacts are interned to the same instance;
+ *   - attendee sets are equal to other sets with the same contacts;
+ *   - attendee sets can't be modified.
+ */
+public class AttendeePoolTest {
+  private final Contact john = new ContactImpl(1, "John Doe");
+
+  private final Contact jane = new ContactImpl(2, "Jane Doe");
+
+  private final Contact james = new ContactImpl(3, "James Bond");
+
+  @Test
+  public void testInterningSetsWithSameContacts() {
+    AttendeePool pool = new AttendeePool();
+
+    AttendeeSet first = pool.intern(new HashSet<Contact>(
+      Arrays.asList(john, jane)));
+    AttendeeSet second = pool.intern(new HashSet<Contact>(
+      Arrays.asList(jane, john)));
+    AttendeeSet third = pool.intern(new HashSet<Contact>(
+      Arrays.asList(john, james)));
+
+    assertSame(first, second);
+    assertFalse(first.equals(third));
+    assertSame(first, pool.intern(first));
+  }
+
+  @Test
+  public void testAttendeeSetEqualsOtherSets() {
+    Set<Contact> contacts = new HashSet<Contact>(Arrays.asList(james, john));
+    AttendeeSet set = new AttendeeSet(contacts);
+
+    assertEquals(contacts, set);
+    assertEquals(set, contacts);
+    assertEquals(contacts.hashCode(), set.hashCode());
+
+    assertTrue(set.contains(john));
+    assertTrue(set.containsId(3));
+    assertFalse(set.contains(jane));
+    assertFalse(set.contains(new ContactImpl(1, "John Doe")));
+  }
+
+  @Test(expected=UnsupportedOperationException.class)
+  public void testModifyingAttendeeSetShouldThrow() {
+    AttendeeSet set = new AttendeeSet(new HashSet<Contact>(
+      Arrays.asList(john)));
+    set.add(jane);
+  }
+
+  @Test(expected=IllegalArgumentException.class)
+  public void testAttendeeSetWithDuplicateIdsShouldThrow() {
+    new AttendeeSet(new HashSet<Contact>(
+      Arrays.asList(john, new ContactImpl(1, "John Doe"))));
+  }
+}
@@ -0,0 +1,58 @@
+import java.util.Map;
+import java.util.TreeMap;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+/**
+ * BkTree unit test.
+ */
+public class BkTreeTest {
+  @Test
+  public void testComputesDistances() {
+    assertEquals(0, BkTree.distance("john", "john"));
+    assertEquals(1, BkTree.distance("john", "jon"));
+    assertEquals(2, BkTree.distance("john", "jhon"));
+    assertEquals(3, BkTree.distance("kitten", "sitting"));
+    assertEquals(4, BkTree.distance("", "jane"));
+  }
+
+  @Test
+  public void testFindsTermsWithinDistance() {
+    BkTree tree = BkTree.empty()
+      .add("john", 1)
+      .add("jon", 2)
+      .add("joan", 3)
+      .add("jane", 4)
+      .add("smith", 5)
+      .add("john", 6);
+
+    assertEquals(Map.of(1, 0, 6, 0), within(tree, "john", 0));
+    assertEquals(Map.of(1, 0, 2, 1, 3, 1, 6, 0), within(tree, "john", 1));
+    assertEquals(Map.of(2, 2, 3, 2, 4, 0), within(tree, "jane", 2));
+    assertTrue(within(tree, "smyth", -1).isEmpty());
+    assertTrue(within(BkTree.empty(), "john", 3).isEmpty());
+  }
+
+  @Test
+  public void testRemovesIds() {
+    BkTree tree = BkTree.empty().add("john", 1).add("jon", 2).add("jo", 3);
+    BkTree removed = tree.remove("john", 1);
+
+    // the node of the term is kept for its children
+    assertEquals(Map.of(2, 1, 3, 2), within(removed, "john", 2));
+    assertEquals(Map.of(1, 0, 2, 1, 3, 2), within(tree, "john", 2));
+    assertEquals(removed, removed.remove("john", 1));
+    assertEquals(removed, removed.remove("jane", 2));
+  }
+
+  // Returns the IDs within a distance of a term, with their distance.
+  private static Map<Integer, Integer> within(BkTree tree, String term,
+                                              int maxDistance) {
+    Map<Integer, Integer> ids = new TreeMap<>();
+    tree.forEachWithin(term, maxDistance, (bitmap, distance) ->
+      bitmap.forEach(id -> ids.put(id, distance)));
+    return ids;
+  }
+}
@@ -0,0 +1,114 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+/**
+ * BlockContactsReader unit test.
+ */
+public class BlockContactsReaderTest {
+  // Records what a reader reports.
+  private static class Recorder implements ContactsReader.Handler {
+    final List<String> events = new ArrayList<>();
+
+    public void contact(int id, String name, String notes) {
+      events.add("contact " + id + " " + name + " " + notes);
+    }
+
+    public void meeting(int id, long time, String notes, int[] contactIds,
+                        int contactCount) {
+      events.add("meeting " + id + " " + time + " " + notes + " " +
+        Arrays.toString(Arrays.copyOf(contactIds, contactCount)));
+    }
+  }
+
+  // Writes 10 contacts and 25 meetings in blocks of 4 records.
+  private File write(Recorder expected) throws IOException {
+    File file = File.createTempFile("contacts", ".blk");
+    file.deleteOnExit();
+
+    try (BlockContactsWriter writer = new BlockContactsWriter(file, 4)) {
+      for (int id = 1; id <= 10; id++) {
+        String notes = (id % 3 == 0 ? null : "notes \u00e9 " + id);
+        writer.contact(id, "Contact " + id, notes);
+        expected.contact(id, "Contact " + id, notes);
+      }
+      for (int id = 1; id <= 25; id++) {
+        int[] contactIds = { id % 10 + 1, (id + 3) % 10 + 1, 99 };
+        String notes = (id % 2 == 0 ? null : "meeting " + id);
+        writer.meeting(id, id * 1000L, notes, contactIds, id % 3 + 1);
+        expected.meeting(id, id * 1000L, notes, contactIds, id % 3 + 1);
+      }
+    }
+    return file;
+  }
+
+  @Test
+  public void testReadsWrittenRecords() throws IOException {
+    Recorder expected = new Recorder();
+    File file = write(expected);
+
+    assertTrue(BlockContactsReader.isBlockFile(file));
+    assertFalse(BlockContactsReader.isBlockFile(new File(
+      "valid_contacts.txt")));
+
+    Recorder actual = new Recorder();
+    new BlockContactsReader().read(file, actual);
+    assertEquals(expected.events, actual.events);
+  }
+
+  @Test
+  public void testReadsRangeOfRecords() throws IOException {
+    Recorder expected = new Recorder();
+    File file = write(expected);
+
+    Recorder actual = new Recorder();
+    new BlockContactsReader().read(file, 6, 9, actual);
+    assertEquals(expected.events.subList(6, 15), actual.events);
+
+    actual = new Recorder();
+    new BlockContactsReader().read(file, 33, 100, actual);
+    assertEquals(expected.events.subList(33, 35), actual.events);
+
+    actual = new Recorder();
+    new BlockContactsReader().read(file, 40, 1, actual);
+    assertTrue(actual.events.isEmpty());
+  }
+
+  @Test
+  public void testReadsEmptyFile() throws IOException {
+    File file = File.createTempFile("contacts", ".blk");
+    file.deleteOnExit();
+    new BlockContactsWriter(file).close();
+
+    Recorder actual = new Recorder();
+    new BlockContactsReader().read(file, actual);
+    assertTrue(actual.events.isEmpty());
+  }
+
+  @Test(expected = IOException.class)
+  public void testFailsOnCorruptBlock() throws IOException {
+    File file = write(new Recorder());
+    try (RandomAccessFile output = new RandomAccessFile(file, "rw")) {
+      output.seek(10);
+      output.write(new byte[8]);
+    }
+    new BlockContactsReader().read(file, new Recorder());
+  }
+
+  @Test(expected = IOException.class)
+  public void testFailsOnTruncatedFile() throws IOException {
+    File file = write(new Recorder());
+    try (RandomAccessFile output = new RandomAccessFile(file, "rw")) {
+      output.setLength(output.length() - 1);
+    }
+    new BlockContactsReader().read(file, new Recorder());
+  }
+}
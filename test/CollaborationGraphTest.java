@@ -0,0 +1,60 @@
+import java.util.Calendar;
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import org.junit.Test;
+
+/**
+ * CollaborationGraph unit test.
+ */
+public class CollaborationGraphTest {
+  @Test
+  public void testCountsMeetingsTogether() {
+    CollaborationGraph graph = new CollaborationGraph();
+    graph.add(meeting(1, 1, 2, 3));
+    graph.add(meeting(2, 1, 2));
+
+    assertEquals(2, graph.weight(1, 2));
+    assertEquals(2, graph.weight(2, 1));
+    assertEquals(1, graph.weight(3, 1));
+    assertEquals(0, graph.weight(1, 1));
+    assertEquals(0, graph.weight(4, 1));
+  }
+
+  @Test
+  public void testRanksByWeightThenId() {
+    CollaborationGraph graph = new CollaborationGraph();
+    graph.add(meeting(1, 1, 4, 3));
+    graph.add(meeting(2, 1, 3));
+    graph.add(meeting(3, 1, 2));
+
+    assertArrayEquals(new int[] { 3, 2, 4 }, graph.top(1, 5));
+    assertArrayEquals(new int[] { 3 }, graph.top(1, 1));
+    assertArrayEquals(new int[0], graph.top(5, 3));
+  }
+
+  @Test
+  public void testRemovesMeetings() {
+    CollaborationGraph graph = new CollaborationGraph();
+    Meeting meeting = meeting(1, 1, 2);
+    graph.add(meeting);
+    graph.add(meeting(2, 1, 3));
+    graph.add(meeting(3, 1, 3));
+    CollaborationGraph snapshot = graph.snapshot();
+    graph.remove(meeting);
+
+    assertArrayEquals(new int[] { 3 }, graph.top(1, 5));
+    assertArrayEquals(new int[0], graph.top(2, 5));
+    assertArrayEquals(new int[] { 3, 2 }, snapshot.top(1, 5));
+  }
+
+  // Creates a meeting of contacts.
+  private static Meeting meeting(int id, int... contactIds) {
+    Set<Contact> contacts = new HashSet<>();
+    for (int contactId : contactIds)
+      contacts.add(new ContactImpl(contactId, "Contact " + contactId));
+    return new PastMeetingImpl(id, Calendar.getInstance(), contacts, "");
+  }
+}
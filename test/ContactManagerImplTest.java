@@ -1,18 +1,30 @@
 import java.io.File;
+import java.nio.ByteBuffer;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.Period;
 import java.util.Calendar;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.TimeZone;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotEquals;
 import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
+import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 
@@ -48,6 +60,11 @@ public class ContactManagerImplTest {
    */
   private File file = new File("contacts.txt");
   
+  /**
+   * The directory of the sealed meetings.
+   */
+  private File archiveDirectory = new File("contacts.txt.archive");
+  
   public ContactManagerImplTest() {
     presentDate = Calendar.getInstance();
     
@@ -61,11 +78,30 @@ public class ContactManagerImplTest {
   @Before
   public void setUp() {
     // make sure we start fresh by deleting any previous database file
-    file.delete();
+    deleteDatabase();
     
     contactManager = new ContactManagerImpl();
   }
   
+  @After
+  public void tearDown() {
+    deleteDatabase();
+  }
+  
+  // Deletes the database file and the files saved next to it, including
+  // the archive of sealed meetings.
+  private void deleteDatabase() {
+    file.delete();
+    for (String suffix : List.of(".prev", ".journal", ".index"))
+      new File(file.getPath() + suffix).delete();
+    File[] archived = archiveDirectory.listFiles();
+    if (archived != null) {
+      for (File archivedFile : archived)
+        archivedFile.delete();
+    }
+    archiveDirectory.delete();
+  }
+  
   // future meeting tests
   
   @Test(expected=NullPointerException.class)
@@ -407,6 +443,70 @@ public class ContactManagerImplTest {
       contactManager.addMeetingNotes(id, "meeting notes"));
   }
   
+  // pagination tests
+
+  @Test(expected=IllegalArgumentException.class)
+  public void testGettingPastMeetingPageWithNegativeLimitShouldThrow() {
+    int id = contactManager.addNewContact("John Doe", "a note");
+    contactManager.getPastMeetingListFor(contactManager.getContact(id), null,
+      0, -1);
+  }
+
+  @Test
+  public void testGettingPastMeetingListInPages() {
+    int id = contactManager.addNewContact("John Doe", "a note");
+    Contact contact = contactManager.getContact(id);
+    Set<Contact> contacts = contactManager.getContacts(id);
+
+    // add five past meetings, one per day
+    for (int i = 5; i > 0; i--) {
+      Calendar date = Calendar.getInstance();
+      date.add(Calendar.DATE, -i);
+      contactManager.addNewPastMeeting(contacts, date, "meeting notes");
+    }
+    List<PastMeeting> all = contactManager.getPastMeetingListFor(contact);
+    assertEquals(5, all.size());
+
+    // assert walking the pages returns the same meetings in the same order
+    List<PastMeeting> page = contactManager.getPastMeetingListFor(contact,
+      null, 0, 2);
+    assertEquals(all.subList(0, 2), page);
+
+    PastMeeting last = page.get(page.size() - 1);
+    page = contactManager.getPastMeetingListFor(contact, last.getDate(),
+      last.getId(), 2);
+    assertEquals(all.subList(2, 4), page);
+
+    last = page.get(page.size() - 1);
+    page = contactManager.getPastMeetingListFor(contact, last.getDate(),
+      last.getId(), 2);
+    assertEquals(all.subList(4, 5), page);
+
+    // assert the stream variant returns the same meetings
+    assertEquals(all, contactManager.streamPastMeetingListFor(contact)
+      .collect(Collectors.toList()));
+  }
+
+  @Test
+  public void testGettingContactsInPages() {
+    final int[] ids = {
+      contactManager.addNewContact("John Doe", "a note"),
+      contactManager.addNewContact("James Bond", "vodka martini"),
+      contactManager.addNewContact("Jane Doe", "another note")
+    };
+
+    List<Contact> page = contactManager.getContacts("doe", 0, 1);
+    assertEquals(1, page.size());
+    assertEquals(ids[0], page.get(0).getId());
+
+    page = contactManager.getContacts("doe", page.get(0).getId(), 1);
+    assertEquals(1, page.size());
+    assertEquals(ids[2], page.get(0).getId());
+
+    page = contactManager.getContacts("doe", page.get(0).getId(), 1);
+    assertTrue(page.isEmpty());
+  }
+
   // contact tests
   
   @Test(expected=NullPointerException.class)
@@ -577,6 +677,1213 @@ public class ContactManagerImplTest {
     assertTrue(file.isFile());
   }
   
+  @Test
+  public void testFlushesAndLoadsCompressedBlocks() {
+    contactManager.setCompressedBlocks(2);
+    
+    // add contacts
+    int johnId = contactManager.addNewContact("John Doe", "a note");
+    contactManager.addNewContact("Jane Doe", "another note");
+    contactManager.addNewContact("Joe Bloggs", "more notes");
+    Set<Contact> contacts = contactManager.getContacts("Doe");
+    
+    // add meetings
+    contactManager.addNewPastMeeting(contacts, pastDate, "meeting notes");
+    int futureId = contactManager.addFutureMeeting(contacts, futureDate);
+    
+    contactManager.flush();
+    assertTrue(BlockContactsReader.isBlockFile(file));
+    
+    contactManager = new ContactManagerImpl();
+    assertEquals(futureId, contactManager.getLastMeetingId());
+    assertEquals(3, contactManager.getContacts("").size());
+    assertEquals("a note", contactManager.getContact(johnId).getNotes());
+    
+    contacts = contactManager.getContacts("Doe");
+    assertPastMeetingEquals(
+      contactManager.getPastMeetingListFor(contacts.iterator().next()).get(0),
+      pastDate, contacts, "meeting notes");
+    assertFutureMeetingEquals(contactManager.getFutureMeeting(futureId),
+      futureId, futureDate, contacts);
+  }
+  
+  @Test
+  public void testLoadsPreviousSnapshotOfCorruptDatabase() throws Exception {
+    contactManager.addNewContact("John Doe", "a note");
+    contactManager.compact();
+    contactManager.addNewContact("Jane Doe", "another note");
+    contactManager.compact();
+    
+    // loads the last snapshot
+    contactManager = new ContactManagerImpl();
+    assertEquals(2, contactManager.getContacts("").size());
+    
+    // corrupt one byte of the last snapshot
+    byte[] bytes = Files.readAllBytes(file.toPath());
+    bytes[bytes.length / 2] ^= 1;
+    Files.write(file.toPath(), bytes);
+    
+    contactManager = new ContactManagerImpl();
+    assertEquals(1, contactManager.getContacts("").size());
+    
+    // the previous snapshot stays when the corrupt one is replaced
+    contactManager.addNewContact("Joe Bloggs", "more notes");
+    contactManager.flush();
+    assertEquals(2, new ContactManagerImpl().getContacts("").size());
+    
+    Files.write(file.toPath(), bytes);
+    assertEquals(1, new ContactManagerImpl().getContacts("").size());
+  }
+  
+  @Test
+  public void testFlushesChangesToJournal() throws Exception {
+    int johnId = contactManager.addNewContact("John Doe", "a note");
+    int janeId = contactManager.addNewContact("Jane Doe", "another note");
+    contactManager.addNewContact("Joe Bloggs", "more notes");
+    contactManager.flush();
+    long modified = file.lastModified();
+    
+    // nothing changed
+    File journal = new File("contacts.txt.journal");
+    contactManager.flush();
+    assertFalse(journal.exists());
+    
+    // a few changes are journaled
+    contactManager.getContact(johnId).addNotes("new note");
+    contactManager.addNewPastMeeting(contactManager.getContacts(janeId),
+      pastDate, "meeting notes");
+    contactManager.flush();
+    assertTrue(journal.exists());
+    assertEquals(modified, file.lastModified());
+    
+    contactManager = new ContactManagerImpl();
+    assertEquals("a note\nnew note",
+      contactManager.getContact(johnId).getNotes());
+    assertEquals(1, contactManager.getLastMeetingId());
+    assertEquals("meeting notes", contactManager.getPastMeeting(1).getNotes());
+    
+    // notes added to a loaded meeting are journaled too
+    contactManager.addMeetingNotes(1, "more meeting notes");
+    contactManager.flush();
+    
+    contactManager = new ContactManagerImpl();
+    assertEquals("meeting notes\nmore meeting notes",
+      contactManager.getPastMeeting(1).getNotes());
+    
+    // compacting replaces the journal with a snapshot
+    contactManager.compact();
+    assertFalse(journal.exists());
+    contactManager = new ContactManagerImpl();
+    assertEquals("meeting notes\nmore meeting notes",
+      contactManager.getPastMeeting(1).getNotes());
+  }
+  
+  @Test
+  public void testKeepsJournalRecordsBeforeCorruptOne() throws Exception {
+    contactManager.addNewContact("John Doe", "a note");
+    contactManager.addNewContact("Jane Doe", "another note");
+    contactManager.addNewContact("Joe Bloggs", "more notes");
+    contactManager.compact();
+    contactManager.addNewContact("Mary Major", "a note");
+    contactManager.flush();
+    File journal = new File("contacts.txt.journal");
+    assertTrue(journal.exists());
+    
+    // a record with a valid checksum but an unknown type
+    byte[] record = {0x7f, 0, 0, 0, 1};
+    CRC32C crc = new CRC32C();
+    crc.update(record);
+    ByteBuffer entry = ByteBuffer.allocate(8 + record.length);
+    entry.putInt(record.length).putInt((int)crc.getValue()).put(record);
+    Files.write(journal.toPath(), entry.array(), StandardOpenOption.APPEND);
+    
+    contactManager = new ContactManagerImpl();
+    assertEquals(4, contactManager.getContacts("").size());
+    
+    // the next flush writes a snapshot rather than journal the changes
+    contactManager.addNewContact("John Smith", "notes");
+    contactManager.flush();
+    assertFalse(journal.exists());
+    assertEquals(5, new ContactManagerImpl().getContacts("").size());
+  }
+  
+  @Test
+  public void testSavesEveryWrite() {
+    contactManager.setDurabilityPolicy(DurabilityPolicy.everyWrite());
+    int id = contactManager.addNewContact("John Doe", "a note");
+    assertTrue(contactManager.sync().isDone());
+    contactManager.getContact(id).addNotes("new note");
+    assertTrue(contactManager.sync().isDone());
+    
+    contactManager = new ContactManagerImpl();
+    assertEquals("a note\nnew note", contactManager.getContact(id).getNotes());
+  }
+  
+  @Test
+  public void testSavesGroupCommits() throws Exception {
+    contactManager.setDurabilityPolicy(DurabilityPolicy.groupCommit(10, 100));
+    int id = contactManager.addNewContact("John Doe", "a note");
+    contactManager.addNewPastMeeting(contactManager.getContacts(id), pastDate,
+      "meeting notes");
+    contactManager.sync().get(10, TimeUnit.SECONDS);
+    
+    ContactManagerImpl loaded = new ContactManagerImpl();
+    assertEquals("a note", loaded.getContact(id).getNotes());
+    assertEquals("meeting notes", loaded.getPastMeeting(1).getNotes());
+    
+    // the pending changes are saved when closing
+    contactManager.setDurabilityPolicy(
+      DurabilityPolicy.groupCommit(60000, 100));
+    contactManager.addMeetingNotes(1, "more notes");
+    contactManager.close();
+    assertTrue(contactManager.sync().isDone());
+    
+    loaded = new ContactManagerImpl();
+    assertEquals("meeting notes\nmore notes",
+      loaded.getPastMeeting(1).getNotes());
+  }
+  
+  @Test
+  public void testSavesConcurrentChanges() throws Exception {
+    contactManager.setDurabilityPolicy(DurabilityPolicy.groupCommit(5, 10));
+    Thread[] threads = new Thread[4];
+    for (int i = 0; i < threads.length; i++) {
+      String name = "Contact " + i;
+      threads[i] = new Thread(() -> {
+        for (int j = 0; j < 50; j++)
+          contactManager.addNewContact(name, "note " + j);
+      });
+      threads[i].start();
+    }
+    for (Thread thread : threads)
+      thread.join();
+    contactManager.sync().get(10, TimeUnit.SECONDS);
+    contactManager.close();
+    
+    contactManager = new ContactManagerImpl();
+    assertEquals(200, contactManager.getContacts("").size());
+  }
+  
+  @Test
+  public void testStreamsSnapshotOfContacts() {
+    contactManager.addNewContact("John Doe", "a note");
+    Stream<Contact> stream = contactManager.streamContacts("");
+    contactManager.addNewContact("Jane Doe", "another note");
+    
+    assertEquals(1, stream.count());
+    assertEquals(2, contactManager.streamContacts("").count());
+  }
+  
+  @Test
+  public void testReadsWhileChanging() throws Exception {
+    int id = contactManager.addNewContact("John Doe", "a note");
+    Contact contact = contactManager.getContact(id);
+    Thread writer = new Thread(() -> {
+      for (int i = 0; i < 500; i++) {
+        contactManager.addNewContact("Contact " + i, "notes");
+        Calendar date = (Calendar)futureDate.clone();
+        date.add(Calendar.MINUTE, i);
+        contactManager.addFutureMeeting(contactManager.getContacts(id), date);
+      }
+    });
+    writer.start();
+    
+    // reads see consistent snapshots without waiting for the writer
+    while (writer.isAlive()) {
+      int meetings = contactManager.getFutureMeetingList(contact).size();
+      assertTrue(meetings <= contactManager.getLastMeetingId());
+    }
+    writer.join();
+    assertEquals(500, contactManager.getFutureMeetingList(contact).size());
+    assertEquals(501, contactManager.getContacts("").size());
+  }
+  
+  @Test
+  public void testGetsPastMeetingsOfAllOrAnyContacts() {
+    int id1 = contactManager.addNewContact("John Doe", "a note");
+    int id2 = contactManager.addNewContact("Jane Doe", "another note");
+    int id3 = contactManager.addNewContact("Jim Doe", "a third note");
+    Calendar earlierDate = (Calendar)pastDate.clone();
+    earlierDate.add(Calendar.HOUR, -1);
+    contactManager.addNewPastMeeting(contactManager.getContacts(id1, id2),
+      pastDate, "both");
+    contactManager.addNewPastMeeting(contactManager.getContacts(id1),
+      earlierDate, "first");
+    contactManager.addNewPastMeeting(contactManager.getContacts(id2),
+      earlierDate, "second");
+    
+    List<PastMeeting> all = contactManager.getPastMeetingListForAll(
+      contactManager.getContacts(id1, id2));
+    assertEquals(1, all.size());
+    assertEquals("both", all.get(0).getNotes());
+    
+    List<PastMeeting> any = contactManager.getPastMeetingListForAny(
+      contactManager.getContacts(id1, id2));
+    assertEquals(3, any.size());
+    assertEquals(pastDate, any.get(2).getDate());
+    assertTrue(any.get(0).getId() < any.get(1).getId());
+    
+    assertTrue(contactManager.getPastMeetingListForAll(
+      contactManager.getContacts(id1, id3)).isEmpty());
+    assertTrue(contactManager.getPastMeetingListForAny(
+      contactManager.getContacts(id3)).isEmpty());
+  }
+  
+  @Test(expected=IllegalArgumentException.class)
+  public void testGettingPastMeetingsOfAllUnknownContactsShouldThrow() {
+    contactManager.getPastMeetingListForAll(Set.of(new MockContact()));
+  }
+  
+  @Test(expected=NullPointerException.class)
+  public void testGettingPastMeetingsOfAnyNullContactsShouldThrow() {
+    contactManager.getPastMeetingListForAny(null);
+  }
+  
+  @Test
+  public void testRejectsOverlappingMeetings() {
+    int id1 = contactManager.addNewContact("John Doe", "a note");
+    int id2 = contactManager.addNewContact("Jane Doe", "another note");
+    Calendar endDate = (Calendar)futureDate.clone();
+    endDate.add(Calendar.HOUR, 1);
+    int meetingId = contactManager.addFutureMeeting(
+      contactManager.getContacts(id1), futureDate, endDate);
+    
+    // an overlapping meeting of another contact is allowed
+    contactManager.addFutureMeeting(contactManager.getContacts(id2),
+      futureDate, endDate);
+    
+    Calendar date = (Calendar)futureDate.clone();
+    date.add(Calendar.MINUTE, 30);
+    Calendar laterDate = (Calendar)endDate.clone();
+    laterDate.add(Calendar.MINUTE, 30);
+    List<Meeting> conflicts = contactManager.getConflicts(
+      contactManager.getContacts(id1), date, laterDate);
+    assertEquals(1, conflicts.size());
+    assertEquals(meetingId, conflicts.get(0).getId());
+    assertEquals(2, contactManager.getConflicts(
+      contactManager.getContacts(id1, id2), date, laterDate).size());
+    
+    // meetings ending when another starts don't overlap
+    assertTrue(contactManager.getConflicts(contactManager.getContacts(id1),
+      endDate, laterDate).isEmpty());
+    contactManager.addFutureMeeting(contactManager.getContacts(id1), endDate,
+      laterDate);
+    contactManager.addFutureMeeting(contactManager.getContacts(id1), date);
+    
+    try {
+      contactManager.addFutureMeeting(contactManager.getContacts(id1, id2),
+        date, date);
+      contactManager.addFutureMeeting(contactManager.getContacts(id1, id2),
+        date, laterDate);
+      fail("overlapping meeting was added");
+    } catch (IllegalArgumentException e) {
+      // expected
+    }
+  }
+  
+  @Test(expected=IllegalArgumentException.class)
+  public void testAddingMeetingEndingBeforeDateShouldThrow() {
+    int id = contactManager.addNewContact("John Doe", "a note");
+    contactManager.addFutureMeeting(contactManager.getContacts(id),
+      futureDate, presentDate);
+  }
+  
+  @Test
+  public void testFindsFreeSlotsOfAllContacts() {
+    int id1 = contactManager.addNewContact("John Doe", "a note");
+    int id2 = contactManager.addNewContact("Jane Doe", "another note");
+    long start = futureDate.getTimeInMillis();
+    long hour = 3600000;
+    addMeeting(id1, start + hour, start + 3 * hour);
+    addMeeting(id2, start + 2 * hour, start + 4 * hour);
+    addMeeting(id2, start + 5 * hour, start + 5 * hour + hour / 2);
+    addMeeting(id1, start + 7 * hour, start + 9 * hour);
+    
+    Calendar to = (Calendar)futureDate.clone();
+    to.setTimeInMillis(start + 8 * hour);
+    List<TimeSlot> slots = contactManager.findFreeSlots(
+      contactManager.getContacts(id1, id2), futureDate, to,
+      Duration.ofHours(1));
+    assertEquals(List.of(new TimeSlot(start, start + hour, zone()),
+      new TimeSlot(start + 4 * hour, start + 5 * hour, zone()),
+      new TimeSlot(start + 5 * hour + hour / 2, start + 7 * hour, zone())),
+      slots);
+    
+    // windows shorter than the length are skipped
+    assertEquals(1, contactManager.findFreeSlots(
+      contactManager.getContacts(id1, id2), futureDate, to,
+      Duration.ofMinutes(90)).size());
+    assertEquals(List.of(new TimeSlot(start, start + 8 * hour, zone())),
+      contactManager.findFreeSlots(new HashSet<>(), futureDate, to,
+      Duration.ofHours(1)));
+  }
+  
+  @Test(expected=IllegalArgumentException.class)
+  public void testFindingFreeSlotsOfZeroLengthShouldThrow() {
+    contactManager.findFreeSlots(new HashSet<>(), presentDate, futureDate,
+      Duration.ZERO);
+  }
+  
+  @Test
+  public void testExpandsRecurringMeetings() {
+    int id = contactManager.addNewContact("John Doe", "a note");
+    Contact contact = contactManager.getContact(id);
+    Set<Contact> contacts = contactManager.getContacts(id);
+    int seriesId = contactManager.addRecurringMeeting(contacts, futureDate,
+      Period.ofWeeks(1), 1000);
+    Calendar nextDay = (Calendar)futureDate.clone();
+    nextDay.add(Calendar.DATE, 1);
+    int meetingId = contactManager.addFutureMeeting(contacts, nextDay);
+    assertEquals(seriesId + 1000, meetingId);
+    assertEquals(meetingId, contactManager.getLastMeetingId());
+    
+    // occurrences are merged chronologically with the other meetings
+    List<Meeting> meetings = contactManager.getFutureMeetingList(contact);
+    assertEquals(1001, meetings.size());
+    assertEquals(seriesId, meetings.get(0).getId());
+    assertEquals(meetingId, meetings.get(1).getId());
+    assertEquals(seriesId + 1, meetings.get(2).getId());
+    assertEquals(seriesId + 999, meetings.get(1000).getId());
+    
+    Calendar thirdDate = contactManager.getMeeting(seriesId + 3).getDate();
+    Calendar expected = (Calendar)futureDate.clone();
+    expected.add(Calendar.DATE, 21);
+    assertEquals(expected.getTimeInMillis(), thirdDate.getTimeInMillis());
+    assertEquals(List.of(seriesId + 4, seriesId + 5), contactManager
+      .getFutureMeetingList(contact, thirdDate, seriesId + 3, 2).stream()
+      .map(Meeting::getId).collect(Collectors.toList()));
+    assertEquals(List.of(seriesId + 3), contactManager
+      .getMeetingListOn(thirdDate).stream().map(Meeting::getId)
+      .collect(Collectors.toList()));
+    assertEquals(seriesId + 999,
+      contactManager.getFutureMeeting(seriesId + 999).getId());
+    try {
+      contactManager.getPastMeeting(seriesId + 1);
+      fail();
+    } catch (IllegalArgumentException e) {
+      // expected
+    }
+  }
+  
+  @Test
+  public void testAddsRecurringMeetingsUntilDate() {
+    int id = contactManager.addNewContact("John Doe", "a note");
+    Calendar until = (Calendar)futureDate.clone();
+    until.add(Calendar.DATE, 21);
+    int seriesId = contactManager.addRecurringMeeting(
+      contactManager.getContacts(id), futureDate, Period.ofWeeks(1), until);
+    assertEquals(seriesId + 3, contactManager.getLastMeetingId());
+  }
+  
+  @Test(expected=IllegalArgumentException.class)
+  public void testAddingRecurringMeetingInPastShouldThrow() {
+    int id = contactManager.addNewContact("John Doe", "a note");
+    contactManager.addRecurringMeeting(contactManager.getContacts(id),
+      pastDate, Period.ofDays(1), 3);
+  }
+  
+  @Test(expected=IllegalStateException.class)
+  public void testAddingNotesToFutureOccurrenceShouldThrow() {
+    int id = contactManager.addNewContact("John Doe", "a note");
+    int seriesId = contactManager.addRecurringMeeting(
+      contactManager.getContacts(id), futureDate, Period.ofDays(1), 3);
+    contactManager.addMeetingNotes(seriesId + 1, "notes");
+  }
+  
+  @Test
+  public void testConvertsOccurrencesThatTookPlace() throws Exception {
+    int id = contactManager.addNewContact("John Doe", "a note");
+    Contact contact = contactManager.getContact(id);
+    Calendar date = Calendar.getInstance();
+    date.add(Calendar.MILLISECOND, 100);
+    int seriesId = contactManager.addRecurringMeeting(
+      contactManager.getContacts(id), date, Period.ofDays(1), 3);
+    Thread.sleep(200);
+    
+    assertEquals(List.of(seriesId), contactManager
+      .getPastMeetingListFor(contact).stream().map(Meeting::getId)
+      .collect(Collectors.toList()));
+    assertEquals(List.of(seriesId + 1, seriesId + 2), contactManager
+      .getFutureMeetingList(contact).stream().map(Meeting::getId)
+      .collect(Collectors.toList()));
+    assertEquals("went well",
+      contactManager.addMeetingNotes(seriesId, "went well").getNotes());
+    
+    // the series resumes from the next occurrence once reloaded
+    contactManager.flush();
+    contactManager = new ContactManagerImpl();
+    contact = contactManager.getContact(id);
+    assertEquals("went well",
+      contactManager.getPastMeeting(seriesId).getNotes());
+    assertEquals(1, contactManager.getPastMeetingListFor(contact).size());
+    assertEquals(2, contactManager.getFutureMeetingList(contact).size());
+  }
+  
+  @Test
+  public void testTracksOccurrencesOfSeveralSeries() throws Exception {
+    int id = contactManager.addNewContact("John Doe", "a note");
+    Contact contact = contactManager.getContact(id);
+    Set<Contact> contacts = contactManager.getContacts(id);
+    Set<Contact> both = contactManager.getContacts(id,
+      contactManager.addNewContact("Jane Doe", "a note"));
+    Calendar date = Calendar.getInstance();
+    date.add(Calendar.MILLISECOND, 100);
+    int daily = contactManager.addRecurringMeeting(contacts, date,
+      Period.ofDays(1), 3);
+    int weekly = contactManager.addRecurringMeeting(both, date,
+      Period.ofWeeks(1), 2);
+    Calendar later = (Calendar)date.clone();
+    later.add(Calendar.DATE, 2);
+    int once = contactManager.addRecurringMeeting(both, later,
+      Period.ofDays(1), 1);
+    
+    // only the series spanning a date have occurrences on it
+    assertEquals(List.of(daily + 2, once), contactManager
+      .getMeetingListOn(later).stream().map(Meeting::getId)
+      .collect(Collectors.toList()));
+    later.add(Calendar.DATE, 5);
+    assertEquals(List.of(weekly + 1), contactManager
+      .getMeetingListOn(later).stream().map(Meeting::getId)
+      .collect(Collectors.toList()));
+    
+    // the first occurrences of both series take place together
+    Thread.sleep(200);
+    assertEquals(List.of(daily, weekly), contactManager
+      .getPastMeetingListFor(contact).stream().map(Meeting::getId)
+      .sorted().collect(Collectors.toList()));
+    assertEquals(List.of(daily + 1, daily + 2, once, weekly + 1),
+      contactManager.getFutureMeetingList(contact).stream()
+      .map(Meeting::getId).collect(Collectors.toList()));
+  }
+  
+  @Test
+  public void testSavesRecurringMeetings() {
+    int id = contactManager.addNewContact("John Doe", "a note");
+    Set<Contact> contacts = contactManager.getContacts(id);
+    Calendar date = (Calendar)futureDate.clone();
+    date.set(Calendar.MILLISECOND, 0);
+    int xmlId = contactManager.addRecurringMeeting(contacts, date,
+      Period.ofWeeks(1), 5);
+    contactManager.flush();
+    
+    // journaled
+    int journalId = contactManager.addRecurringMeeting(contacts, futureDate,
+      Period.ofMonths(1), 3);
+    contactManager.flush();
+    
+    contactManager = new ContactManagerImpl();
+    Contact contact = contactManager.getContact(id);
+    assertEquals(8, contactManager.getFutureMeetingList(contact).size());
+    assertEquals(journalId + 2, contactManager.getLastMeetingId());
+    assertEquals(date.getTimeInMillis(),
+      contactManager.getFutureMeeting(xmlId).getDate().getTimeInMillis());
+    
+    // in compressed blocks
+    contactManager.setCompressedBlocks(2);
+    contactManager.flush();
+    contactManager = new ContactManagerImpl();
+    contact = contactManager.getContact(id);
+    assertEquals(8, contactManager.getFutureMeetingList(contact).size());
+    assertEquals(journalId + 2, contactManager.getLastMeetingId());
+  }
+  
+  // Adds a meeting of a contact with an end date.
+  private void addMeeting(int id, long time, long endTime) {
+    Calendar date = Calendar.getInstance();
+    date.setTimeInMillis(time);
+    Calendar endDate = Calendar.getInstance();
+    endDate.setTimeInMillis(endTime);
+    contactManager.addFutureMeeting(contactManager.getContacts(id), date,
+      endDate);
+  }
+  
+  // Returns the default time zone.
+  private static TimeZone zone() {
+    return TimeZone.getDefault();
+  }
+  
+  @Test
+  public void testSavesEndDates() {
+    int id = contactManager.addNewContact("John Doe", "a note");
+    Set<Contact> contacts = contactManager.getContacts(id);
+    Calendar endDate = (Calendar)futureDate.clone();
+    endDate.add(Calendar.HOUR, 1);
+    endDate.set(Calendar.MILLISECOND, 0);
+    int xmlId = contactManager.addFutureMeeting(contacts, futureDate,
+      endDate);
+    contactManager.flush();
+    
+    // journaled
+    endDate.add(Calendar.HOUR, 1);
+    int journalId = contactManager.addFutureMeeting(contacts, endDate,
+      endDate);
+    Calendar laterDate = (Calendar)endDate.clone();
+    laterDate.add(Calendar.HOUR, 1);
+    int laterId = contactManager.addFutureMeeting(contacts, endDate,
+      laterDate);
+    contactManager.flush();
+    
+    contactManager = new ContactManagerImpl();
+    MeetingImpl meeting = (MeetingImpl)contactManager.getMeeting(xmlId);
+    assertEquals(endDate.getTimeInMillis() - 3600000, meeting.getEndTime());
+    assertFalse(((MeetingImpl)contactManager.getMeeting(journalId))
+      .hasEndDate());
+    assertEquals(laterDate, ((MeetingImpl)contactManager.getMeeting(laterId))
+      .getEndDate());
+    
+    // in compressed blocks
+    contactManager.setCompressedBlocks(2);
+    contactManager.flush();
+    contactManager = new ContactManagerImpl();
+    assertEquals(laterDate, ((MeetingImpl)contactManager.getMeeting(laterId))
+      .getEndDate());
+    assertEquals(2, contactManager.getConflicts(contacts, futureDate,
+      laterDate).size());
+  }
+  
+  @Test
+  public void testGetsTopCollaborators() throws Exception {
+    int id1 = contactManager.addNewContact("John Doe", "a note");
+    int id2 = contactManager.addNewContact("Jane Doe", "another note");
+    int id3 = contactManager.addNewContact("Jim Doe", "a third note");
+    Contact contact = contactManager.getContact(id1);
+    contactManager.addNewPastMeeting(contactManager.getContacts(id1, id2,
+      id3), pastDate, "notes");
+    
+    // a meeting taking place counts once it is a past meeting
+    Calendar date = Calendar.getInstance();
+    date.add(Calendar.MILLISECOND, 50);
+    contactManager.addFutureMeeting(contactManager.getContacts(id1, id3),
+      date);
+    assertEquals(List.of(contactManager.getContact(id2),
+      contactManager.getContact(id3)),
+      contactManager.getTopCollaborators(contact, 5));
+    
+    Thread.sleep(100);
+    assertEquals(List.of(contactManager.getContact(id3)),
+      contactManager.getTopCollaborators(contact, 1));
+    assertTrue(contactManager.getTopCollaborators(contact, 0).isEmpty());
+  }
+  
+  @Test(expected=IllegalArgumentException.class)
+  public void testGettingTopCollaboratorsOfUnknownContactShouldThrow() {
+    contactManager.getTopCollaborators(new MockContact(), 3);
+  }
+  
+  @Test
+  public void testFindsContactsFuzzy() {
+    int id1 = contactManager.addNewContact("John Smith", "a note");
+    int id2 = contactManager.addNewContact("Jon Smyth", "a note");
+    int id3 = contactManager.addNewContact("Jane Doe", "a note");
+    Contact john = contactManager.getContact(id1);
+    Contact jon = contactManager.getContact(id2);
+    
+    assertEquals(List.of(john, jon),
+      contactManager.findContactsFuzzy("Jhn smith", 1, 10));
+    assertEquals(List.of(john),
+      contactManager.findContactsFuzzy("jhn smith", 1, 1));
+    assertEquals(List.of(contactManager.getContact(id3)),
+      contactManager.findContactsFuzzy("doe", 0, 10));
+    assertTrue(contactManager.findContactsFuzzy("jhn smith", 0, 10)
+      .isEmpty());
+    assertTrue(contactManager.findContactsFuzzy(" ", 2, 10).isEmpty());
+  }
+  
+  @Test(expected=IllegalArgumentException.class)
+  public void testFindingContactsFuzzyWithNegativeEditsShouldThrow() {
+    contactManager.findContactsFuzzy("john", -1, 10);
+  }
+  
+  @Test(expected=NullPointerException.class)
+  public void testFindingContactsFuzzyWithNullNameShouldThrow() {
+    contactManager.findContactsFuzzy(null, 1, 10);
+  }
+  
+  @Test
+  public void testFindsAndMergesDuplicateContacts() {
+    int id1 = contactManager.addNewContact("John Smith", "golf");
+    int id2 = contactManager.addNewContact("Jane Doe", "a note");
+    int id3 = contactManager.addNewContact("john smith", "chess");
+    Contact john = contactManager.getContact(id1);
+    Contact duplicate = contactManager.getContact(id3);
+    Contact jane = contactManager.getContact(id2);
+    contactManager.addNewPastMeeting(Set.of(duplicate, jane), pastDate,
+      "budget");
+    contactManager.addNewPastMeeting(Set.of(john, duplicate), pastDate,
+      "review");
+    int futureId = contactManager.addFutureMeeting(Set.of(duplicate),
+      futureDate);
+    
+    List<Set<Contact>> clusters = contactManager.findDuplicateContacts();
+    assertEquals(List.of(Set.of(john, duplicate)), clusters);
+    
+    assertSame(john, contactManager.mergeContacts(clusters.get(0)));
+    assertEquals(Set.of(john, jane), contactManager.getContacts(""));
+    assertEquals("golf\nchess", john.getNotes());
+    assertEquals(Set.of(john),
+      contactManager.getFutureMeeting(futureId).getContacts());
+    List<PastMeeting> pastMeetings =
+      contactManager.getPastMeetingListFor(john);
+    assertEquals(2, pastMeetings.size());
+    assertEquals(Set.of(john, jane), pastMeetings.stream()
+      .filter(meeting -> meeting.getNotes().equals("budget"))
+      .findFirst().get().getContacts());
+    assertEquals(Set.of(john), pastMeetings.stream()
+      .filter(meeting -> meeting.getNotes().equals("review"))
+      .findFirst().get().getContacts());
+    assertEquals(List.of(jane), contactManager.getTopCollaborators(john, 5));
+    assertTrue(contactManager.findContactsFuzzy("smith", 0, 10).size() == 1);
+    assertTrue(contactManager.findDuplicateContacts().isEmpty());
+    
+    // the merge is saved
+    contactManager.flush();
+    contactManager = new ContactManagerImpl();
+    assertEquals(2, contactManager.getContacts("").size());
+    assertEquals(2, contactManager.getPastMeetingListFor(
+      contactManager.getContact(id1)).size());
+  }
+  
+  @Test(expected=IllegalArgumentException.class)
+  public void testMergingUnknownContactsShouldThrow() {
+    contactManager.addNewContact("John Doe", "a note");
+    contactManager.mergeContacts(Set.of(new MockContact()));
+  }
+  
+  @Test
+  public void testUpdatesContacts() {
+    int id1 = contactManager.addNewContact("John Doe", "likes golf");
+    int id2 = contactManager.addNewContact("Jane Doe", "a note");
+    Contact old = contactManager.getContact(id1);
+    Contact jane = contactManager.getContact(id2);
+    contactManager.addNewPastMeeting(Set.of(old, jane), pastDate, "budget");
+    int futureId = contactManager.addFutureMeeting(Set.of(old), futureDate);
+    contactManager.flush();
+    
+    Contact contact = contactManager.updateContact(id1, "Jon Smith", "chess");
+    assertSame(contact, contactManager.getContact(id1));
+    assertEquals("Jon Smith", contact.getName());
+    assertEquals(Set.of(contact),
+      contactManager.getFutureMeeting(futureId).getContacts());
+    assertEquals(Set.of(contact, jane), contactManager.getPastMeetingListFor(
+      jane).get(0).getContacts());
+    assertTrue(contactManager.getContacts("John").isEmpty());
+    assertEquals(List.of(contact),
+      contactManager.findContactsFuzzy("smith", 0, 10));
+    assertEquals(List.of(contact), contactManager.searchContactNotes("chess"));
+    assertTrue(contactManager.searchContactNotes("golf").isEmpty());
+    
+    // the old instance is no longer known
+    try {
+      contactManager.addFutureMeeting(Set.of(old), futureDate);
+      fail();
+    } catch (IllegalArgumentException e) {
+    }
+    
+    // the update is journaled
+    contactManager.flush();
+    contactManager = new ContactManagerImpl();
+    contact = contactManager.getContact(id1);
+    assertEquals("Jon Smith", contact.getName());
+    assertEquals("chess", contact.getNotes());
+    assertSame(contact, contactManager.getFutureMeeting(futureId)
+      .getContacts().iterator().next());
+  }
+  
+  @Test
+  public void testReindexesUpdatedContactNotesWhenLoading() {
+    int id = contactManager.addNewContact("John Doe", "apple");
+    contactManager.addNewContact("Jane Doe", "a note");
+    contactManager.flush();
+    
+    // notes of the same length as the indexed ones are journaled
+    contactManager.updateContact(id, "John Doe", "grape");
+    contactManager.flush();
+    contactManager = new ContactManagerImpl();
+    assertEquals(1, contactManager.searchContactNotes("grape").size());
+    assertEquals(0, contactManager.searchContactNotes("apple").size());
+  }
+  
+  @Test
+  public void testUpdatesContactInEqualFutureMeetings() {
+    int id = contactManager.addNewContact("John Doe", "a note");
+    int firstId = contactManager.addFutureMeeting(
+      contactManager.getContacts(id), futureDate);
+    int secondId = contactManager.addFutureMeeting(
+      contactManager.getContacts(id), futureDate);
+    
+    Contact contact = contactManager.updateContact(id, "Jon Smith", "chess");
+    assertSame(contact, contactManager.getFutureMeeting(firstId)
+      .getContacts().iterator().next());
+    assertSame(contact, contactManager.getFutureMeeting(secondId)
+      .getContacts().iterator().next());
+  }
+  
+  @Test(expected=IllegalArgumentException.class)
+  public void testUpdatingContactWithEmptyNameShouldThrow() {
+    int id = contactManager.addNewContact("John Doe", "a note");
+    contactManager.updateContact(id, "", "a note");
+  }
+  
+  @Test(expected=IllegalArgumentException.class)
+  public void testUpdatingContactWithEmptyNotesShouldThrow() {
+    int id = contactManager.addNewContact("John Doe", "a note");
+    contactManager.updateContact(id, "John Doe", "");
+  }
+  
+  @Test(expected=IllegalArgumentException.class)
+  public void testUpdatingUnknownContactShouldThrow() {
+    contactManager.updateContact(1, "John Doe", "a note");
+  }
+  
+  @Test
+  public void testRemovesContacts() throws Exception {
+    int id1 = contactManager.addNewContact("John Doe", "a note");
+    int id2 = contactManager.addNewContact("Jane Doe", "another note");
+    Contact john = contactManager.getContact(id1);
+    Contact jane = contactManager.getContact(id2);
+    contactManager.addNewPastMeeting(Set.of(john, jane), pastDate, "budget");
+    int sharedId = contactManager.getLastMeetingId();
+    contactManager.addNewPastMeeting(Set.of(john), pastDate, "review");
+    int aloneId = contactManager.getLastMeetingId();
+    int futureId = contactManager.addFutureMeeting(Set.of(john), futureDate);
+    int seriesId = contactManager.addRecurringMeeting(Set.of(john),
+      futureDate, Period.ofWeeks(1), 3);
+    // enough other records for the removal to be journaled
+    for (int i = 0; i < 10; i++)
+      contactManager.addNewContact("Jim Doe", "a note");
+    contactManager.flush();
+    long snapshotLength = file.length();
+    
+    contactManager.removeContact(id1);
+    assertEquals(Set.of(jane), contactManager.getContacts("Jane"));
+    assertTrue(contactManager.getContacts("John").isEmpty());
+    assertEquals(Set.of(jane),
+      contactManager.getPastMeeting(sharedId).getContacts());
+    assertNull(contactManager.getPastMeeting(aloneId));
+    assertNull(contactManager.getFutureMeeting(futureId));
+    assertNull(contactManager.getMeeting(seriesId));
+    assertTrue(contactManager.getTopCollaborators(jane, 5).isEmpty());
+    assertTrue(contactManager.findContactsFuzzy("john", 0, 10).isEmpty());
+    assertTrue(contactManager.searchMeetingNotes("review").isEmpty());
+    
+    // the removal is journaled rather than rewriting the snapshot
+    contactManager.flush();
+    assertEquals(snapshotLength, file.length());
+    contactManager = new ContactManagerImpl();
+    assertEquals(11, contactManager.getContacts("").size());
+    assertNull(contactManager.getPastMeeting(aloneId));
+    assertNull(contactManager.getMeeting(seriesId));
+    assertEquals(1, contactManager.getPastMeeting(sharedId).getContacts()
+      .size());
+    
+    // compacting drops the removed records
+    contactManager.compact();
+    assertTrue(file.length() < snapshotLength);
+    contactManager = new ContactManagerImpl();
+    assertEquals(11, contactManager.getContacts("").size());
+  }
+  
+  @Test
+  public void testRemovesMeetings() {
+    int id = contactManager.addNewContact("John Doe", "a note");
+    Contact contact = contactManager.getContact(id);
+    contactManager.addNewPastMeeting(Set.of(contact), pastDate, "budget");
+    int pastId = contactManager.getLastMeetingId();
+    int futureId = contactManager.addFutureMeeting(Set.of(contact),
+      futureDate);
+    for (int i = 0; i < 10; i++)
+      contactManager.addNewContact("Jim Doe", "a note");
+    contactManager.flush();
+    
+    contactManager.removeMeeting(pastId);
+    contactManager.removeMeeting(futureId);
+    assertNull(contactManager.getMeeting(pastId));
+    assertNull(contactManager.getMeeting(futureId));
+    assertTrue(contactManager.getPastMeetingListFor(contact).isEmpty());
+    assertTrue(contactManager.getFutureMeetingList(contact).isEmpty());
+    assertTrue(contactManager.searchMeetingNotes("budget").isEmpty());
+    
+    contactManager.flush();
+    contactManager = new ContactManagerImpl();
+    assertNull(contactManager.getMeeting(pastId));
+    assertNull(contactManager.getMeeting(futureId));
+    assertEquals(futureId, contactManager.getLastMeetingId());
+  }
+  
+  @Test(expected=IllegalArgumentException.class)
+  public void testRemovingOccurrenceShouldThrow() {
+    int id = contactManager.addNewContact("John Doe", "a note");
+    int seriesId = contactManager.addRecurringMeeting(
+      contactManager.getContacts(id), futureDate, Period.ofDays(1), 3);
+    contactManager.removeMeeting(seriesId + 1);
+  }
+  
+  @Test
+  public void testReschedulesFutureMeetings() {
+    int id = contactManager.addNewContact("John Doe", "a note");
+    Set<Contact> contacts = contactManager.getContacts(id);
+    Calendar endDate = (Calendar)futureDate.clone();
+    endDate.add(Calendar.HOUR, 1);
+    int meetingId = contactManager.addFutureMeeting(contacts, futureDate,
+      endDate);
+    
+    // moving the meeting over itself is no conflict
+    Calendar date = (Calendar)futureDate.clone();
+    date.add(Calendar.MINUTE, 30);
+    contactManager.rescheduleFutureMeeting(meetingId, date);
+    Meeting meeting = contactManager.getFutureMeeting(meetingId);
+    assertEquals(date.getTimeInMillis(), meeting.getDate().getTimeInMillis());
+    assertEquals(date.getTimeInMillis() + 3600000L,
+      ((MeetingImpl)meeting).getEndTime());
+    assertTrue(contactManager.getMeetingListOn(date).contains(meeting));
+    
+    // but moving it over another meeting is
+    Calendar otherDate = (Calendar)futureDate.clone();
+    otherDate.add(Calendar.DATE, 1);
+    Calendar otherEndDate = (Calendar)otherDate.clone();
+    otherEndDate.add(Calendar.HOUR, 1);
+    contactManager.addFutureMeeting(contacts, otherDate, otherEndDate);
+    try {
+      contactManager.rescheduleFutureMeeting(meetingId, otherDate);
+      fail();
+    } catch (IllegalArgumentException e) {
+    }
+  }
+  
+  @Test(expected=IllegalArgumentException.class)
+  public void testReschedulingToPastShouldThrow() {
+    int id = contactManager.addNewContact("John Doe", "a note");
+    int meetingId = contactManager.addFutureMeeting(
+      contactManager.getContacts(id), futureDate);
+    contactManager.rescheduleFutureMeeting(meetingId, pastDate);
+  }
+  
+  @Test
+  public void testSearchesNotes() {
+    int id1 = contactManager.addNewContact("John Doe", "likes golf");
+    int id2 = contactManager.addNewContact("Jane Doe", "plays Golf and chess");
+    Contact contact1 = contactManager.getContact(id1);
+    Contact contact2 = contactManager.getContact(id2);
+    contactManager.addNewPastMeeting(contactManager.getContacts(id1),
+      pastDate, "budget review");
+    contactManager.addNewPastMeeting(contactManager.getContacts(id2),
+      pastDate, "hiring");
+    int id = contactManager.getLastMeetingId();
+    
+    assertEquals(List.of(contact2),
+      contactManager.searchContactNotes("golf chess"));
+    assertEquals(2, contactManager.searchContactNotes("GOLF").size());
+    assertEquals(List.of(contactManager.getPastMeeting(id - 1)),
+      contactManager.searchMeetingNotes("review AND budget"));
+    assertTrue(contactManager.searchMeetingNotes("budget hiring").isEmpty());
+    assertEquals(2,
+      contactManager.searchMeetingNotes("budget OR hiring").size());
+    
+    // added notes are searchable at once
+    contact1.addNotes("chess club");
+    contactManager.addMeetingNotes(id, "budget approved");
+    assertEquals(2, contactManager.searchContactNotes("golf chess").size());
+    assertEquals(List.of(contactManager.getPastMeeting(id)),
+      contactManager.searchMeetingNotes("hiring budget"));
+  }
+  
+  @Test
+  public void testSearchesNotesOfConvertedMeetings() throws Exception {
+    int id = contactManager.addNewContact("John Doe", "a note");
+    Calendar date = Calendar.getInstance();
+    date.add(Calendar.MILLISECOND, 50);
+    int meetingId = contactManager.addFutureMeeting(
+      contactManager.getContacts(id), date);
+    
+    Thread.sleep(100);
+    contactManager.addMeetingNotes(meetingId, "budget review");
+    assertEquals(List.of(contactManager.getPastMeeting(meetingId)),
+      contactManager.searchMeetingNotes("budget"));
+  }
+  
+  @Test(expected=NullPointerException.class)
+  public void testSearchingNotesWithNullQueryShouldThrow() {
+    contactManager.searchMeetingNotes(null);
+  }
+  
+  @Test
+  public void testSavesNotesIndexes() throws Exception {
+    int id = contactManager.addNewContact("John Doe", "likes golf");
+    contactManager.addNewPastMeeting(contactManager.getContacts(id),
+      pastDate, "budget review");
+    contactManager.flush();
+    File indexFile = new File("contacts.txt.index");
+    assertTrue(indexFile.exists());
+    
+    // notes journaled after the indexes were saved are indexed when loading
+    contactManager.getContact(id).addNotes("chess");
+    contactManager.flush();
+    contactManager = new ContactManagerImpl();
+    Contact contact = contactManager.getContact(id);
+    assertEquals(List.of(contact),
+      contactManager.searchContactNotes("golf chess"));
+    assertEquals(1, contactManager.searchMeetingNotes("budget").size());
+    
+    // corrupt indexes are ignored
+    Files.write(indexFile.toPath(), new byte[] {1, 2, 3});
+    contactManager = new ContactManagerImpl();
+    assertEquals(1, contactManager.searchContactNotes("chess").size());
+    assertEquals(1, contactManager.searchMeetingNotes("review").size());
+  }
+  
+  @Test
+  public void testCachesMeetingLists() {
+    int id1 = contactManager.addNewContact("John Doe", "a note");
+    int id2 = contactManager.addNewContact("Jane Doe", "another note");
+    Contact contact1 = contactManager.getContact(id1);
+    Contact contact2 = contactManager.getContact(id2);
+    contactManager.setQueryCacheSize(16);
+    contactManager.addFutureMeeting(contactManager.getContacts(id1),
+      futureDate);
+    
+    assertEquals(1, contactManager.getFutureMeetingList(contact1).size());
+    assertEquals(1, contactManager.getFutureMeetingList(contact1).size());
+    assertEquals(0, contactManager.getFutureMeetingList(contact2).size());
+    assertEquals(1, contactManager.getQueryCacheStats().getHitCount());
+    
+    // a meeting of the second contact leaves the first one's list cached
+    Calendar date = (Calendar)futureDate.clone();
+    date.add(Calendar.HOUR, 1);
+    contactManager.addFutureMeeting(contactManager.getContacts(id2), date);
+    assertEquals(1, contactManager.getFutureMeetingList(contact1).size());
+    assertEquals(1, contactManager.getFutureMeetingList(contact2).size());
+    assertEquals(2, contactManager.getQueryCacheStats().getHitCount());
+    
+    contactManager.addFutureMeeting(contactManager.getContacts(id1, id2),
+      date);
+    assertEquals(2, contactManager.getFutureMeetingList(contact1).size());
+    assertEquals(2, contactManager.getMeetingListOn(date).size());
+    assertEquals(2, contactManager.getMeetingListOn(date).size());
+    assertEquals(3, contactManager.getQueryCacheStats().getHitCount());
+  }
+  
+  @Test
+  public void testCachedListsAreNotShared() {
+    int id = contactManager.addNewContact("John Doe", "a note");
+    Contact contact = contactManager.getContact(id);
+    contactManager.setQueryCacheSize(16);
+    contactManager.addNewPastMeeting(contactManager.getContacts(id), pastDate,
+      "notes");
+    
+    contactManager.getPastMeetingListFor(contact).clear();
+    assertEquals(1, contactManager.getPastMeetingListFor(contact).size());
+    assertEquals(1, contactManager.getQueryCacheStats().getHitCount());
+  }
+  
+  @Test
+  public void testDisablesQueryCache() {
+    assertNull(contactManager.getQueryCacheStats());
+    contactManager.setQueryCacheSize(4);
+    contactManager.setQueryCacheSize(0);
+    assertNull(contactManager.getQueryCacheStats());
+  }
+  
+  @Test(expected=IllegalArgumentException.class)
+  public void testSettingNegativeQueryCacheSizeShouldThrow() {
+    contactManager.setQueryCacheSize(-1);
+  }
+  
+  @Test(expected=NullPointerException.class)
+  public void testSettingNullDurabilityPolicyShouldThrow() {
+    contactManager.setDurabilityPolicy(null);
+  }
+  
+  @Test
+  public void testSealsOldMeetingsIntoArchive() throws Exception {
+    int id1 = contactManager.addNewContact("John Doe", "a note");
+    int id2 = contactManager.addNewContact("Jane Doe", "another note");
+    Calendar lastYear = Calendar.getInstance();
+    lastYear.add(Calendar.YEAR, -1);
+    Calendar before = (Calendar)lastYear.clone();
+    before.add(Calendar.MONTH, -1);
+    contactManager.addNewPastMeeting(contactManager.getContacts(id1, id2),
+      lastYear, "budget review");
+    int sealedId = contactManager.getLastMeetingId();
+    contactManager.addNewPastMeeting(contactManager.getContacts(id1), before,
+      "hiring plan");
+    int olderId = contactManager.getLastMeetingId();
+    contactManager.addNewPastMeeting(contactManager.getContacts(id1),
+      pastDate, "recent notes");
+    int recentId = contactManager.getLastMeetingId();
+    
+    contactManager.setArchivePeriod(Period.ofDays(90));
+    contactManager.flush();
+    String saved = new String(Files.readAllBytes(file.toPath()), "UTF-8");
+    assertFalse(saved.contains("budget review"));
+    assertTrue(saved.contains("recent notes"));
+    assertTrue(new File(archiveDirectory, "manifest").exists());
+    
+    // sealed meetings are read back when queried, also once reloaded
+    for (int i = 0; i < 2; i++) {
+      Contact john = contactManager.getContact(id1);
+      Contact jane = contactManager.getContact(id2);
+      assertEquals("budget review",
+        contactManager.getPastMeeting(sealedId).getNotes());
+      assertEquals(List.of(olderId, sealedId, recentId),
+        contactManager.getPastMeetingListFor(john).stream()
+          .map(Meeting::getId).collect(Collectors.toList()));
+      assertEquals(List.of(sealedId),
+        contactManager.getPastMeetingListFor(john, before, olderId, 1)
+          .stream().map(Meeting::getId).collect(Collectors.toList()));
+      assertGetMeetingListEquals(lastYear, sealedId);
+      assertEquals(1, contactManager.getPastMeetingListForAll(
+        Set.of(john, jane)).size());
+      assertEquals(3, contactManager.getPastMeetingListForAny(
+        Set.of(john, jane)).size());
+      assertEquals(List.of(jane),
+        contactManager.getTopCollaborators(john, 1));
+      assertEquals(sealedId, contactManager.searchMeetingNotes("budget")
+        .get(0).getId());
+      assertEquals(2, contactManager.getArchiveCacheStats().getSize());
+      
+      contactManager = new ContactManagerImpl();
+    }
+    
+    // renamed contacts are read back in sealed meetings
+    contactManager.updateContact(id2, "Jane Smith", "another note");
+    assertEquals(Set.of("John Doe", "Jane Smith"),
+      contactManager.getPastMeeting(sealedId).getContacts().stream()
+        .map(Contact::getName).collect(Collectors.toSet()));
+    
+    // changed meetings are saved to the database file again
+    contactManager.addMeetingNotes(sealedId, "approved");
+    contactManager.removeMeeting(olderId);
+    contactManager.flush();
+    contactManager = new ContactManagerImpl();
+    assertEquals("budget review\napproved",
+      contactManager.getPastMeeting(sealedId).getNotes());
+    assertNull(contactManager.getMeeting(olderId));
+    assertEquals(2, contactManager.getPastMeetingListFor(
+      contactManager.getContact(id1)).size());
+    
+    // removals outlive the journal
+    contactManager.compact();
+    contactManager = new ContactManagerImpl();
+    assertNull(contactManager.getMeeting(olderId));
+    assertEquals(1, contactManager.searchMeetingNotes("approved").size());
+    assertEquals(0, contactManager.searchMeetingNotes("hiring").size());
+  }
+  
+  @Test
+  public void testSealsChangedMeetingsAgainWhenCompacting() throws Exception {
+    int id = contactManager.addNewContact("John Doe", "a note");
+    contactManager.addNewContact("Jane Doe", "another note");
+    Calendar lastYear = Calendar.getInstance();
+    lastYear.add(Calendar.YEAR, -1);
+    contactManager.addNewPastMeeting(contactManager.getContacts(id),
+      lastYear, "budget review");
+    int sealedId = contactManager.getLastMeetingId();
+    contactManager.addNewPastMeeting(contactManager.getContacts(id),
+      pastDate, "recent notes");
+    
+    File journal = new File("contacts.txt.journal");
+    contactManager.setArchivePeriod(Period.ofDays(90));
+    contactManager.flush();
+    Set<String> sealedFiles = Set.of(archiveDirectory.list());
+    
+    // the changed meeting is journaled, leaving the archive as is
+    contactManager.addMeetingNotes(sealedId, "approved");
+    contactManager.flush();
+    assertTrue(journal.exists());
+    assertEquals(sealedFiles, Set.of(archiveDirectory.list()));
+    contactManager = new ContactManagerImpl();
+    assertEquals("budget review\napproved",
+      contactManager.getPastMeeting(sealedId).getNotes());
+    
+    // compacting seals its month again
+    contactManager.setArchivePeriod(Period.ofDays(90));
+    contactManager.compact();
+    assertFalse(journal.exists());
+    String saved = new String(Files.readAllBytes(file.toPath()), "UTF-8");
+    assertFalse(saved.contains("approved"));
+    contactManager = new ContactManagerImpl();
+    assertEquals("budget review\napproved",
+      contactManager.getPastMeeting(sealedId).getNotes());
+  }
+  
+  @Test
+  public void testRemovingContactUnsealsTheirMeetings() throws Exception {
+    int id1 = contactManager.addNewContact("John Doe", "a note");
+    int id2 = contactManager.addNewContact("Jane Doe", "another note");
+    Calendar lastYear = Calendar.getInstance();
+    lastYear.add(Calendar.YEAR, -1);
+    // the unsealed meeting is saved in the default format, without millis
+    lastYear.set(Calendar.MILLISECOND, 0);
+    contactManager.addNewPastMeeting(contactManager.getContacts(id1, id2),
+      lastYear, "budget review");
+    int sharedId = contactManager.getLastMeetingId();
+    contactManager.addNewPastMeeting(contactManager.getContacts(id2),
+      lastYear, "hiring plan");
+    int janeId = contactManager.getLastMeetingId();
+    
+    contactManager.setArchivePeriod(Period.ofDays(90));
+    contactManager.flush();
+    contactManager.removeContact(id2);
+    contactManager.flush();
+    
+    contactManager = new ContactManagerImpl();
+    Contact john = contactManager.getContact(id1);
+    assertEquals(Set.of(john),
+      contactManager.getPastMeeting(sharedId).getContacts());
+    assertNull(contactManager.getMeeting(janeId));
+    assertGetMeetingListEquals(lastYear, sharedId);
+    assertEquals(List.of(), contactManager.getTopCollaborators(john, 1));
+  }
+  
+  @Test
+  public void testNeverReusesIdsOfRemovedRecords() throws Exception {
+    int johnId = contactManager.addNewContact("John Doe", "a note");
+    int janeId = contactManager.addNewContact("Jane Doe", "another note");
+    Calendar lastYear = Calendar.getInstance();
+    lastYear.add(Calendar.YEAR, -1);
+    contactManager.addNewPastMeeting(contactManager.getContacts(johnId),
+      lastYear, "budget review");
+    int sealedId = contactManager.getLastMeetingId();
+    contactManager.addNewPastMeeting(contactManager.getContacts(johnId),
+      pastDate, "recent notes");
+    int recentId = contactManager.getLastMeetingId();
+    
+    contactManager.setArchivePeriod(Period.ofDays(90));
+    contactManager.flush();
+    contactManager.removeMeeting(sealedId);
+    contactManager.removeMeeting(recentId);
+    contactManager.removeContact(janeId);
+    contactManager.compact();
+    
+    // the next IDs are saved in both formats
+    for (int blockSize : new int[] {0, 16}) {
+      contactManager = new ContactManagerImpl();
+      assertEquals(recentId, contactManager.getLastMeetingId());
+      contactManager.setCompressedBlocks(blockSize);
+      contactManager.compact();
+      contactManager = new ContactManagerImpl();
+      assertEquals(recentId, contactManager.getLastMeetingId());
+    }
+    
+    // the removed sealed meeting stays removed
+    contactManager.addNewPastMeeting(contactManager.getContacts(johnId),
+      lastYear, "hiring plan");
+    int newId = contactManager.getLastMeetingId();
+    assertEquals(recentId + 1, newId);
+    assertEquals(janeId + 1, contactManager.addNewContact("Joe Bloggs",
+      "more notes"));
+    contactManager.flush();
+    contactManager = new ContactManagerImpl();
+    assertNull(contactManager.getMeeting(sealedId));
+    assertEquals("hiring plan",
+      contactManager.getPastMeeting(newId).getNotes());
+  }
+  
+  @Test(expected=IllegalArgumentException.class)
+  public void testSettingNegativeArchivePeriodShouldThrow() {
+    contactManager.setArchivePeriod(Period.ofDays(-1));
+  }
+  
   @Test
   public void testLoadsFromEmptyDatabase() {
     // copy empty contacts database
@@ -0,0 +1,185 @@
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Period;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+/**
+ * ContactsReader unit test.
+ */
+public class ContactsReaderTest {
+  /**
+   * The codec of the dates.
+   */
+  private final DateCodec codec = new DateCodec(ZoneOffset.UTC);
+
+  // Records what a reader reports.
+  private static class Recorder implements ContactsReader.Handler {
+    final List<String> events = new ArrayList<>();
+
+    public void contact(int id, String name, String notes) {
+      events.add("contact " + id + " " + name + " " + notes);
+    }
+
+    public void meeting(int id, long time, String notes, int[] contactIds,
+                        int contactCount) {
+      events.add("meeting " + id + " " + time + " " + notes + " " +
+        Arrays.toString(Arrays.copyOf(contactIds, contactCount)));
+    }
+
+    public void recurrence(int id, long time, Period interval, int count,
+                           int next, int[] contactIds, int contactCount) {
+      events.add("recurrence " + id + " " + time + " " + interval + " " +
+        count + " " + next + " " +
+        Arrays.toString(Arrays.copyOf(contactIds, contactCount)));
+    }
+
+    public void nextIds(int contactId, int meetingId) {
+      events.add("next " + contactId + " " + meetingId);
+    }
+  }
+
+  private File write(String content) throws IOException {
+    File file = File.createTempFile("contacts", ".txt");
+    file.deleteOnExit();
+    try (OutputStream output = new FileOutputStream(file)) {
+      output.write(content.getBytes(StandardCharsets.UTF_8));
+    }
+    return file;
+  }
+
+  private List<String> read(ContactsReader reader, File file)
+    throws IOException
+  {
+    Recorder recorder = new Recorder();
+    reader.read(file, recorder);
+    return recorder.events;
+  }
+
+  private List<String> readBoth(String content) throws IOException {
+    File file = write(content);
+    List<String> events = read(new FastContactsReader(codec), file);
+    assertEquals(read(new StaxContactsReader(codec), file), events);
+    return events;
+  }
+
+  @Test
+  public void testReadsValidFile() throws IOException {
+    File file = new File("valid_contacts.txt");
+    List<String> events = read(new FastContactsReader(codec), file);
+
+    assertEquals(4, events.size());
+    assertEquals("contact 1 John Doe a note", events.get(0));
+    assertEquals("meeting 2 1457965540000 null [1, 2]", events.get(3));
+    assertEquals(read(new StaxContactsReader(codec), file), events);
+  }
+
+  @Test
+  public void testReadsEmptyFile() throws IOException {
+    assertTrue(read(new FastContactsReader(codec), write("")).isEmpty());
+  }
+
+  @Test
+  public void testReadsFormattedFile() throws IOException {
+    List<String> events = readBoth(
+      "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\r\n" +
+      "<ContactManager>\n" +
+      "  <!-- contacts -->\n" +
+      "  <Contacts>\n" +
+      "    <Contact id='7'>\n" +
+      "      <Notes>a &lt;b&gt; &amp; &#233;&#x20AC;\r\nc</Notes>\n" +
+      "      <Name>\u00c9milie</Name>\n" +
+      "    </Contact>\n" +
+      "    <Contact id=\"8\"/>\n" +
+      "  </Contacts>\n" +
+      "  <Meetings>\n" +
+      "    <Meeting id=\"3\">\n" +
+      "      <Contacts>\n" +
+      "        <Id> 7 </Id>\n" +
+      "        <Id>9</Id>\n" +
+      "      </Contacts>\n" +
+      "      <Date>2016-03-12T14:25:40.123Z</Date>\n" +
+      "      <Notes/>\n" +
+      "    </Meeting>\n" +
+      "  </Meetings>\n" +
+      "</ContactManager>\n");
+
+    assertEquals(2, events.size());
+    assertEquals("contact 7 \u00c9milie a <b> & \u00e9\u20ac\nc",
+      events.get(0));
+    assertEquals("meeting 3 1457792740123  [7, 9]", events.get(1));
+  }
+
+  @Test
+  public void testReadsNextIds() throws IOException {
+    List<String> events = readBoth(
+      "<ContactManager nextContactId=\"3\" nextMeetingId='12'>" +
+      "<Contacts><Contact id=\"1\"><Name>Ada</Name></Contact></Contacts>" +
+      "</ContactManager>");
+
+    assertEquals(List.of("next 3 12", "contact 1 Ada null"), events);
+  }
+
+  @Test
+  public void testSkipsIncompleteMeetings() throws IOException {
+    List<String> events = readBoth(
+      "<ContactManager><Meetings>" +
+      "<Meeting id=\"1\"><Date>12-03-2016 14:25:40</Date></Meeting>" +
+      "<Meeting id=\"2\"><Contacts><Id>1</Id></Contacts></Meeting>" +
+      "</Meetings></ContactManager>");
+
+    assertTrue(events.isEmpty());
+  }
+
+  @Test
+  public void testReadsRecurrences() throws IOException {
+    List<String> events = readBoth(
+      "<ContactManager><Meetings>" +
+      "<Meeting id=\"1\"><Date>01-01-1970 00:00:01</Date>" +
+      "<Contacts><Id>1</Id></Contacts></Meeting>" +
+      "<Recurrence id=\"2\"><Date>01-01-1970 00:00:02</Date>" +
+      "<Interval>P1W</Interval><Count> 10 </Count><Next>3</Next>" +
+      "<Contacts><Id>1</Id><Id>2</Id></Contacts></Recurrence>" +
+      "<Recurrence id=\"12\"><Date>01-01-1970 00:00:02</Date>" +
+      "<Contacts><Id>1</Id></Contacts></Recurrence>" +
+      "</Meetings></ContactManager>");
+
+    assertEquals(Arrays.asList("meeting 1 1000 null [1]",
+      "recurrence 2 2000 P7D 10 3 [1, 2]"), events);
+  }
+
+  @Test(expected = IOException.class)
+  public void testFailsOnUnknownElements() throws IOException {
+    read(new FastContactsReader(codec), write(
+      "<ContactManager><Contacts><Contact id=\"1\"><Name>a</Name>" +
+      "<Email>a@b.c</Email></Contact></Contacts></ContactManager>"));
+  }
+
+  @Test(expected = IOException.class)
+  public void testFailsOnCData() throws IOException {
+    read(new FastContactsReader(codec), write(
+      "<ContactManager><Contacts><Contact id=\"1\"><Name><![CDATA[a]]>" +
+      "</Name></Contact></Contacts></ContactManager>"));
+  }
+
+  @Test(expected = IOException.class)
+  public void testFailsOnOtherEncodings() throws IOException {
+    read(new FastContactsReader(codec), write(
+      "<?xml version=\"1.0\" encoding=\"ISO-8859-1\"?><ContactManager/>"));
+  }
+
+  @Test(expected = IOException.class)
+  public void testFailsOnTruncatedFile() throws IOException {
+    read(new FastContactsReader(codec), write(
+      "<ContactManager><Contacts><Contact id=\"1\"><Name>a"));
+  }
+}
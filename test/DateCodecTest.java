@@ -0,0 +1,78 @@
+import java.nio.charset.StandardCharsets;
+import java.text.SimpleDateFormat;
+import java.time.ZoneId;
+import java.util.Random;
+import java.util.TimeZone;
+import static org.junit.Assert.assertEquals;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * DateCodec unit testing.
+ *
+ * Test cases:
+ *   - the legacy format matches SimpleDateFormat("dd-MM-yyyy HH:mm:ss");
+ *   - the precise format keeps the milliseconds;
+ *   - IllegalArgumentException is thrown when decoding invalid dates.
+ */
+public class DateCodecTest {
+  /**
+   * The random number generator.
+   */
+  private static Random random;
+
+  /**
+   * The codec, in a time zone with daylight saving time.
+   */
+  private final DateCodec codec = new DateCodec(ZoneId.of("Europe/London"));
+
+  /**
+   * Generates the random seed number.
+   */
+  @BeforeClass
+  public static void generateSeed() {
+    random = new Random();
+  }
+
+  @Test
+  public void testLegacyFormatMatchesSimpleDateFormat() throws Exception {
+    SimpleDateFormat formatter = new SimpleDateFormat("dd-MM-yyyy HH:mm:ss");
+    formatter.setTimeZone(TimeZone.getTimeZone("Europe/London"));
+
+    for (int i = 0; i < 1000; i++) {
+      // a random time, in seconds, between 1970 and 2100
+      long time = Math.floorMod(random.nextLong(), 4102444800L) * 1000;
+      String text = formatter.format(time);
+
+      assertEquals(text, codec.format(time));
+      assertEquals(formatter.parse(text).getTime(), codec.parse(text));
+    }
+  }
+
+  @Test
+  public void testPreciseFormatKeepsMilliseconds() {
+    long time = 1457792740123L;
+    String text = codec.formatPrecise(time);
+
+    assertEquals("2016-03-12T14:25:40.123Z", text);
+    assertEquals(time, codec.parse(text));
+    assertEquals(time, codec.parse("2016-03-12T15:25:40.123+01:00"));
+  }
+
+  @Test
+  public void testParsingBytes() {
+    byte[] bytes = "<Date>12-03-2016 14:25:40</Date>".getBytes(
+      StandardCharsets.US_ASCII);
+    assertEquals(1457792740000L, codec.parse(bytes, 6, 19));
+  }
+
+  @Test(expected=IllegalArgumentException.class)
+  public void testParsingInvalidDateShouldThrow() {
+    codec.parse("30-02-2016 14:25:40");
+  }
+
+  @Test(expected=IllegalArgumentException.class)
+  public void testParsingMalformedDateShouldThrow() {
+    codec.parse("12-03-2016");
+  }
+}
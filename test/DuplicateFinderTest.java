@@ -0,0 +1,53 @@
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+/**
+ * DuplicateFinder unit test.
+ */
+public class DuplicateFinderTest {
+  @Test
+  public void testFindsDuplicates() {
+    Contact john1 = new ContactImpl(1, "John Smith", "");
+    Contact jane = new ContactImpl(2, "Jane Doe", "");
+    Contact john2 = new ContactImpl(3, "john  SMITH", "");
+    Contact john3 = new ContactImpl(4, "John Smith.", "");
+    Contact other = new ContactImpl(5, "Alice Cooper", "");
+
+    List<Set<Contact>> clusters = new DuplicateFinder().find(
+      List.of(other, john3, jane, john2, john1));
+    assertEquals(1, clusters.size());
+    assertEquals(List.of(john1, john2, john3),
+      List.copyOf(clusters.get(0)));
+  }
+
+  @Test
+  public void testFindsNearDuplicates() {
+    Contact contact1 = new ContactImpl(1, "Jonathan Smithson", "");
+    Contact contact2 = new ContactImpl(2, "Jonathan Smithsen", "");
+
+    // a low threshold and many bands catch small differences
+    DuplicateFinder finder = new DuplicateFinder(new ForkJoinPool(2), 50, 2,
+      0.5);
+    assertEquals(List.of(Set.of(contact1, contact2)),
+      finder.find(List.of(contact1, contact2)));
+    assertTrue(new DuplicateFinder(ForkJoinPool.commonPool(), 20, 5, 1)
+      .find(List.of(contact1, contact2)).isEmpty());
+  }
+
+  @Test
+  public void testFeaturesIncludeNameShinglesAndNoteWords() {
+    // " jo", "jo ", plus the note words
+    assertEquals(4, DuplicateFinder.features(new ContactImpl(1, "Jo",
+      "two words")).length);
+  }
+
+  @Test(expected=IllegalArgumentException.class)
+  public void testNewFinderWithInvalidThresholdShouldThrow() {
+    new DuplicateFinder(ForkJoinPool.commonPool(), 20, 5, 1.5);
+  }
+}
@@ -0,0 +1,42 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import org.junit.Test;
+
+/**
+ * DurabilityPolicy unit test.
+ */
+public class DurabilityPolicyTest {
+  @Test
+  public void testManual() {
+    DurabilityPolicy policy = DurabilityPolicy.manual();
+    assertEquals(DurabilityPolicy.Mode.MANUAL, policy.getMode());
+    assertEquals(0, policy.getMaxChanges());
+    assertSame(policy, DurabilityPolicy.manual());
+  }
+
+  @Test
+  public void testEveryWrite() {
+    DurabilityPolicy policy = DurabilityPolicy.everyWrite();
+    assertEquals(DurabilityPolicy.Mode.EVERY_WRITE, policy.getMode());
+    assertEquals(1, policy.getMaxChanges());
+  }
+
+  @Test
+  public void testGroupCommit() {
+    DurabilityPolicy policy = DurabilityPolicy.groupCommit(20, 64);
+    assertEquals(DurabilityPolicy.Mode.GROUP_COMMIT, policy.getMode());
+    assertEquals(20, policy.getIntervalMillis());
+    assertEquals(64, policy.getMaxChanges());
+    assertEquals("GROUP_COMMIT(20ms, 64 changes)", policy.toString());
+  }
+
+  @Test(expected=IllegalArgumentException.class)
+  public void testGroupCommitWithZeroIntervalShouldThrow() {
+    DurabilityPolicy.groupCommit(0, 64);
+  }
+
+  @Test(expected=IllegalArgumentException.class)
+  public void testGroupCommitWithZeroChangesShouldThrow() {
+    DurabilityPolicy.groupCommit(20, 0);
+  }
+}
@@ -0,0 +1,227 @@
+import java.io.File;
+import java.time.Period;
+import java.util.Calendar;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * EventLoopContactManager unit test.
+ */
+public class EventLoopContactManagerTest {
+  /**
+   * The database file.
+   */
+  private File file = new File("contacts.txt");
+
+  /**
+   * The directory of the sealed meetings.
+   */
+  private File archiveDirectory = new File("contacts.txt.archive");
+
+  /**
+   * The contact manager.
+   */
+  private EventLoopContactManager contactManager;
+
+  @Before
+  public void setUp() {
+    deleteDatabase();
+    contactManager = new EventLoopContactManager();
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    contactManager.close();
+    File[] archived = archiveDirectory.listFiles();
+    if (archived != null) {
+      for (File archivedFile : archived)
+        archivedFile.delete();
+    }
+    archiveDirectory.delete();
+    deleteDatabase();
+  }
+
+  // Deletes the database file and the files saved next to it.
+  private void deleteDatabase() {
+    file.delete();
+    for (String suffix : List.of(".prev", ".journal", ".index"))
+      new File(file.getPath() + suffix).delete();
+  }
+
+  @Test
+  public void testReadsChanges() {
+    int id = contactManager.addNewContact("John Doe", "a note");
+    Set<Contact> contacts = contactManager.getContacts(id);
+    assertEquals("John Doe", contacts.iterator().next().getName());
+    assertEquals(contacts, contactManager.getContacts("john"));
+
+    Calendar futureDate = Calendar.getInstance();
+    futureDate.add(Calendar.DATE, 1);
+    int futureId = contactManager.addFutureMeeting(contacts, futureDate);
+    Calendar pastDate = Calendar.getInstance();
+    pastDate.add(Calendar.DATE, -1);
+    contactManager.addNewPastMeeting(contacts, pastDate, "notes");
+
+    Contact contact = contacts.iterator().next();
+    List<Meeting> futureMeetings = contactManager.getFutureMeetingList(
+      contact);
+    assertEquals(1, futureMeetings.size());
+    assertEquals(futureId, futureMeetings.get(0).getId());
+    assertEquals(1, contactManager.getPastMeetingListFor(contact).size());
+    assertEquals(1, contactManager.getMeetingListOn(pastDate).size());
+    assertEquals("notes", contactManager.getPastMeeting(2).getNotes());
+    assertNull(contactManager.getMeeting(3));
+  }
+
+  @Test(expected=IllegalArgumentException.class)
+  public void testThrowsErrorsOfChanges() {
+    contactManager.addNewContact("", "a note");
+  }
+
+  @Test
+  public void testThrowsErrorsOfSavingBatch() throws Exception {
+    contactManager.close();
+    boolean[] failing = {true};
+    contactManager = new EventLoopContactManager(new ContactManagerImpl() {
+      public void flush() {
+        if (failing[0]) {
+          failing[0] = false;
+          throw new OutOfMemoryError("no memory");
+        }
+        super.flush();
+      }
+    }, 16);
+
+    try {
+      contactManager.addNewContact("John Doe", "a note");
+      fail("expected OutOfMemoryError");
+    } catch (OutOfMemoryError e) {
+      assertEquals("no memory", e.getMessage());
+    }
+    int id = contactManager.addNewContact("Jane Doe", "a note");
+    assertEquals(1, contactManager.getContacts(id).size());
+    assertEquals(2, contactManager.getContacts("doe").size());
+  }
+
+  @Test(expected=IllegalArgumentException.class)
+  public void testGettingPastMeetingOfFutureMeetingShouldThrow() {
+    int id = contactManager.addNewContact("John Doe", "a note");
+    Calendar futureDate = Calendar.getInstance();
+    futureDate.add(Calendar.DATE, 1);
+    int meetingId = contactManager.addFutureMeeting(
+      contactManager.getContacts(id), futureDate);
+    contactManager.getPastMeeting(meetingId);
+  }
+
+  @Test
+  public void testConvertsFutureMeetingsOncePassed() throws Exception {
+    int id = contactManager.addNewContact("John Doe", "a note");
+    Calendar date = Calendar.getInstance();
+    date.add(Calendar.MILLISECOND, 200);
+    int meetingId = contactManager.addFutureMeeting(
+      contactManager.getContacts(id), date);
+    assertTrue(contactManager.getMeeting(meetingId) instanceof FutureMeeting);
+
+    Thread.sleep(300);
+    assertTrue(contactManager.getMeeting(meetingId) instanceof PastMeeting);
+    assertEquals("notes", contactManager.addMeetingNotes(meetingId, "notes")
+      .getNotes());
+  }
+
+  @Test
+  public void testReadsOccurrencesOfRecurringMeetings() throws Exception {
+    contactManager.close();
+    ContactManagerImpl manager = new ContactManagerImpl();
+    int id = manager.addNewContact("John Doe", "a note");
+    Calendar date = Calendar.getInstance();
+    date.add(Calendar.DATE, 1);
+    int seriesId = manager.addRecurringMeeting(manager.getContacts(id), date,
+      Period.ofDays(1), 100000000);
+
+    // the occurrences are only created once read
+    contactManager = new EventLoopContactManager(manager, 16);
+    FutureMeeting last = contactManager.getFutureMeeting(seriesId + 99999999);
+    assertEquals(seriesId + 99999999, last.getId());
+    date.add(Calendar.DATE, 1);
+    assertEquals(List.of(contactManager.getMeeting(seriesId + 1)),
+      contactManager.getMeetingListOn(date));
+    int meetingId = contactManager.addFutureMeeting(
+      contactManager.getContacts(id), date);
+    assertEquals(seriesId + 100000000, meetingId);
+    assertEquals(2, contactManager.getMeetingListOn(date).size());
+  }
+
+  @Test
+  public void testReadsSealedMeetingsOnDemand() throws Exception {
+    contactManager.close();
+    ContactManagerImpl manager = new ContactManagerImpl();
+    int id = manager.addNewContact("John Doe", "a note");
+    Calendar lastYear = Calendar.getInstance();
+    lastYear.add(Calendar.YEAR, -1);
+    manager.addNewPastMeeting(manager.getContacts(id), lastYear,
+      "budget review");
+    int sealedId = manager.getLastMeetingId();
+    manager.setArchivePeriod(Period.ofDays(90));
+    manager.flush();
+
+    // the sealed month is only read once queried
+    manager = new ContactManagerImpl();
+    contactManager = new EventLoopContactManager(manager, 16);
+    assertEquals(0, manager.getArchiveCacheStats().getSize());
+    assertEquals("budget review",
+      contactManager.getPastMeeting(sealedId).getNotes());
+    assertEquals(List.of(sealedId), contactManager.getPastMeetingListFor(
+      manager.getContact(id)).stream().map(Meeting::getId)
+      .collect(Collectors.toList()));
+    assertEquals(1, manager.getArchiveCacheStats().getSize());
+  }
+
+  @Test
+  public void testSavesChanges() throws Exception {
+    int id = contactManager.addNewContact("John Doe", "a note");
+    Calendar pastDate = Calendar.getInstance();
+    pastDate.add(Calendar.DATE, -1);
+    contactManager.addNewPastMeeting(contactManager.getContacts(id), pastDate,
+      "notes");
+    contactManager.getContacts(id).iterator().next().addNotes("new note");
+    contactManager.close();
+
+    ContactManager loaded = new ContactManagerImpl();
+    assertEquals("a note\nnew note", loaded.getContacts(id).iterator().next()
+      .getNotes());
+    assertEquals("notes", loaded.getPastMeeting(1).getNotes());
+  }
+
+  @Test
+  public void testMakesConcurrentChanges() throws Exception {
+    Thread[] threads = new Thread[4];
+    for (int i = 0; i < threads.length; i++) {
+      String name = "Contact " + i;
+      threads[i] = new Thread(() -> {
+        for (int j = 0; j < 100; j++)
+          contactManager.addNewContact(name, "note " + j);
+      });
+      threads[i].start();
+    }
+    for (Thread thread : threads)
+      thread.join();
+
+    assertEquals(400, contactManager.getContacts("").size());
+    assertEquals(100, contactManager.getContacts("Contact 2").size());
+  }
+
+  @Test(expected=IllegalStateException.class)
+  public void testChangingOnceClosedShouldThrow() throws Exception {
+    contactManager.close();
+    contactManager.addNewContact("John Doe", "a note");
+  }
+}
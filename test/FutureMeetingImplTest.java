@@ -3,6 +3,11 @@ import java.util.Calendar;
 import java.util.HashSet;
 import java.util.Random;
 import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 import org.junit.BeforeClass;
 import org.junit.Test;
 
@@ -92,4 +97,28 @@ public class FutureMeetingImplTest {
   public void testNewFutureMeeting() {
     FutureMeeting futureMeeting = new FutureMeetingImpl(id, date, contacts);
   }
+  
+  @Test(expected=IllegalArgumentException.class)
+  public void testNewMeetingEndingBeforeDateShouldThrow() {
+    Calendar endDate = (Calendar)date.clone();
+    endDate.add(Calendar.HOUR, -1);
+    new FutureMeetingImpl(id, date, endDate, contacts);
+  }
+  
+  @Test
+  public void testNewFutureMeetingWithEndDate() {
+    Calendar endDate = (Calendar)date.clone();
+    endDate.add(Calendar.HOUR, 1);
+    FutureMeetingImpl futureMeeting = new FutureMeetingImpl(id, date, endDate,
+      contacts);
+    assertTrue(futureMeeting.hasEndDate());
+    assertEquals(endDate.getTimeInMillis(), futureMeeting.getEndTime());
+    assertEquals(endDate.getTimeInMillis(),
+      futureMeeting.getEndDate().getTimeInMillis());
+    
+    futureMeeting = new FutureMeetingImpl(id, date, null, contacts);
+    assertFalse(futureMeeting.hasEndDate());
+    assertNull(futureMeeting.getEndDate());
+    assertEquals(date.getTimeInMillis(), futureMeeting.getEndTime());
+  }
 }
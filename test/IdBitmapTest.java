@@ -0,0 +1,88 @@
+import java.util.Random;
+import java.util.TreeSet;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+/**
+ * IdBitmap unit test.
+ */
+public class IdBitmapTest {
+  @Test(expected=IllegalArgumentException.class)
+  public void testAddingNegativeIdShouldThrow() {
+    IdBitmap.empty().add(-1);
+  }
+
+  @Test
+  public void testAddsAndRemovesIds() {
+    IdBitmap bitmap = IdBitmap.of(3, 70000, 1);
+    assertEquals(3, bitmap.cardinality());
+    assertTrue(bitmap.contains(70000));
+    assertFalse(bitmap.contains(2));
+    assertArrayEquals(new int[] { 1, 3, 70000 }, bitmap.toArray());
+    assertEquals(1, bitmap.first());
+    assertSame(bitmap, bitmap.add(3));
+    assertSame(bitmap, bitmap.remove(2));
+
+    IdBitmap removed = bitmap.remove(70000).remove(1).remove(3);
+    assertTrue(removed.isEmpty());
+    assertEquals(-1, removed.first());
+    assertEquals(3, bitmap.cardinality());
+  }
+
+  @Test
+  public void testKeepsDenseChunks() {
+    IdBitmap bitmap = IdBitmap.empty();
+    for (int id = 0; id < 10000; id += 2)
+      bitmap = bitmap.add(id);
+    assertEquals(5000, bitmap.cardinality());
+    assertTrue(bitmap.contains(9998));
+    assertFalse(bitmap.contains(9999));
+
+    for (int id = 0; id < 2000; id += 2)
+      bitmap = bitmap.remove(id);
+    assertEquals(4000, bitmap.cardinality());
+    assertEquals(2000, bitmap.toArray()[0]);
+    assertEquals(2000, bitmap.first());
+  }
+
+  @Test
+  public void testCombinesLikeSets() {
+    Random random = new Random(42);
+    for (int round = 0; round < 20; round++) {
+      // mix sparse and dense chunks
+      int range = (round % 2 == 0 ? 200000 : 12000);
+      int count = random.nextInt(8000);
+      TreeSet<Integer> set = new TreeSet<>();
+      TreeSet<Integer> otherSet = new TreeSet<>();
+      IdBitmap bitmap = IdBitmap.empty();
+      IdBitmap other = IdBitmap.empty();
+      for (int i = 0; i < count; i++) {
+        int id = random.nextInt(range);
+        set.add(id);
+        bitmap = bitmap.add(id);
+        id = random.nextInt(range);
+        otherSet.add(id);
+        other = other.add(id);
+      }
+
+      TreeSet<Integer> intersection = new TreeSet<>(set);
+      intersection.retainAll(otherSet);
+      TreeSet<Integer> union = new TreeSet<>(set);
+      union.addAll(otherSet);
+      assertArrayEquals(toArray(intersection), bitmap.and(other).toArray());
+      assertArrayEquals(toArray(union), bitmap.or(other).toArray());
+      assertEquals(union.size(), bitmap.or(other).cardinality());
+      assertEquals(intersection.size(), other.and(bitmap).cardinality());
+    }
+  }
+
+  // Returns the elements of a set.
+  private static int[] toArray(TreeSet<Integer> set) {
+    return set.stream().mapToInt(Integer::intValue).toArray();
+  }
+}
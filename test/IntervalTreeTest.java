@@ -0,0 +1,84 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+/**
+ * IntervalTree unit test.
+ */
+public class IntervalTreeTest {
+  @Test(expected=IllegalArgumentException.class)
+  public void testAddingIntervalEndingBeforeStartShouldThrow() {
+    IntervalTree.<String>empty().add(10, 5, 1, "a");
+  }
+
+  @Test
+  public void testFindsOverlappingHalfOpenIntervals() {
+    IntervalTree<String> tree = IntervalTree.<String>empty()
+      .add(10, 20, 1, "a").add(20, 30, 2, "b").add(5, 40, 3, "c")
+      .add(15, 15, 4, "d");
+
+    assertEquals(List.of("c", "a"), overlapping(tree, 12, 20));
+    assertEquals(List.of("c", "a", "b"), overlapping(tree, 19, 21));
+    assertEquals(List.of(), overlapping(tree, 40, 50));
+    assertEquals(List.of(), overlapping(tree, 25, 25));
+  }
+
+  @Test
+  public void testRemovesIntervals() {
+    IntervalTree<String> tree = IntervalTree.<String>empty()
+      .add(10, 20, 1, "a").add(10, 30, 2, "b");
+    assertSame(tree, tree.remove(10, 3));
+
+    IntervalTree<String> removed = tree.remove(10, 2);
+    assertEquals(1, removed.size());
+    assertEquals(List.of("a"), overlapping(removed, 0, 100));
+    assertEquals(List.of("a", "b"), overlapping(tree, 0, 100));
+    assertTrue(removed.remove(10, 1).isEmpty());
+  }
+
+  @Test
+  public void testFindsOverlapsLikeScan() {
+    Random random = new Random(7);
+    IntervalTree<Integer> tree = IntervalTree.empty();
+    long[][] intervals = new long[2000][];
+    for (int id = 0; id < intervals.length; id++) {
+      long start = random.nextInt(100000);
+      intervals[id] = new long[] { start, start + random.nextInt(500) };
+      tree = tree.add(intervals[id][0], intervals[id][1], id, id);
+    }
+    for (int id = 0; id < intervals.length; id += 3) {
+      tree = tree.remove(intervals[id][0], id);
+      intervals[id] = null;
+    }
+
+    for (int query = 0; query < 200; query++) {
+      long start = random.nextInt(100000);
+      long end = start + random.nextInt(1000) + 1;
+      List<Integer> expected = new ArrayList<>();
+      for (int id = 0; id < intervals.length; id++) {
+        long[] interval = intervals[id];
+        if (interval != null && interval[0] < end && interval[1] > start &&
+            interval[0] < interval[1]) {
+          expected.add(id);
+        }
+      }
+      List<Integer> found = new ArrayList<>();
+      tree.forEachOverlapping(start, end, found::add);
+      found.sort(null);
+      assertEquals(expected, found);
+    }
+  }
+
+  // Returns the values of the intervals overlapping an interval.
+  private static <T> List<T> overlapping(IntervalTree<T> tree, long start,
+                                         long end) {
+    List<T> values = new ArrayList<>();
+    tree.forEachOverlapping(start, end, values::add);
+    return values;
+  }
+}
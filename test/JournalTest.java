@@ -0,0 +1,161 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Journal unit test.
+ */
+public class JournalTest {
+  /**
+   * The snapshot the journal follows.
+   */
+  private File snapshot;
+
+  /**
+   * The journal file.
+   */
+  private File file;
+
+  // Records what a journal reports.
+  private static class Recorder implements ContactsReader.Handler {
+    final List<String> events = new ArrayList<>();
+
+    public void contact(int id, String name, String notes) {
+      events.add("contact " + id + " " + name + " " + notes);
+    }
+
+    public void meeting(int id, long time, String notes, int[] contactIds,
+                        int contactCount) {
+      events.add("meeting " + id + " " + time + " " + notes + " " +
+        Arrays.toString(Arrays.copyOf(contactIds, contactCount)));
+    }
+
+    public void meeting(int id, long time, long endTime, String notes,
+                        int[] contactIds, int contactCount) {
+      meeting(id, time, notes, contactIds, contactCount);
+      if (endTime != time)
+        events.add("end " + id + " " + endTime);
+    }
+
+    public void contactRemoved(int id) {
+      events.add("removed contact " + id);
+    }
+
+    public void meetingRemoved(int id) {
+      events.add("removed meeting " + id);
+    }
+  }
+
+  @Before
+  public void setUp() throws IOException {
+    snapshot = File.createTempFile("snapshot", ".txt");
+    snapshot.deleteOnExit();
+    Files.write(snapshot.toPath(), new byte[] { 1, 2, 3 });
+    file = new File(snapshot.getPath() + ".journal");
+    file.deleteOnExit();
+  }
+
+  private List<String> read() throws IOException {
+    Recorder recorder = new Recorder();
+    new Journal(file, snapshot).read(recorder);
+    return recorder.events;
+  }
+
+  @Test
+  public void testAppendsRecords() throws IOException {
+    Journal journal = new Journal(file, snapshot);
+    Journal.Batch batch = new Journal.Batch();
+    batch.contact(1, "John Doe", "a note");
+    journal.append(batch);
+    batch = new Journal.Batch();
+    batch.meeting(2, 1000, null, new int[] { 1, 3 }, 1);
+    journal.append(batch);
+    assertEquals(2, journal.getRecordCount());
+
+    assertEquals(Arrays.asList("contact 1 John Doe a note",
+      "meeting 2 1000 null [1]"), read());
+  }
+
+  @Test
+  public void testAppendsMeetingsWithEndTime() throws IOException {
+    Journal journal = new Journal(file, snapshot);
+    Journal.Batch batch = new Journal.Batch();
+    batch.meeting(1, 1000, 2000, "notes", new int[] { 1, 2 }, 2);
+    batch.meeting(2, 3000, 3000, null, new int[] { 1 }, 1);
+    journal.append(batch);
+
+    assertEquals(Arrays.asList("meeting 1 1000 notes [1, 2]", "end 1 2000",
+      "meeting 2 3000 null [1]"), read());
+  }
+
+  @Test
+  public void testAppendsTombstones() throws IOException {
+    Journal journal = new Journal(file, snapshot);
+    Journal.Batch batch = new Journal.Batch();
+    batch.contact(1, "John Doe", null);
+    batch.meetingRemoved(2);
+    batch.contactRemoved(1);
+    journal.append(batch);
+    assertEquals(3, journal.getRecordCount());
+
+    assertEquals(Arrays.asList("contact 1 John Doe null", "removed meeting 2",
+      "removed contact 1"), read());
+  }
+
+  @Test
+  public void testIgnoresTornRecord() throws IOException {
+    Journal journal = new Journal(file, snapshot);
+    Journal.Batch batch = new Journal.Batch();
+    batch.contact(1, "John Doe", "a note");
+    batch.contact(2, "Jane Doe", "another note");
+    journal.append(batch);
+    try (RandomAccessFile output = new RandomAccessFile(file, "rw")) {
+      output.setLength(output.length() - 3);
+    }
+
+    journal = new Journal(file, snapshot);
+    Recorder recorder = new Recorder();
+    assertEquals(1, journal.read(recorder));
+
+    // the torn record is dropped when appending
+    batch = new Journal.Batch();
+    batch.contact(3, "Joe Bloggs", "more notes");
+    journal.append(batch);
+    assertEquals(Arrays.asList("contact 1 John Doe a note",
+      "contact 3 Joe Bloggs more notes"), read());
+  }
+
+  @Test
+  public void testIgnoresJournalOfOtherSnapshot() throws IOException {
+    Journal journal = new Journal(file, snapshot);
+    Journal.Batch batch = new Journal.Batch();
+    batch.contact(1, "John Doe", "a note");
+    journal.append(batch);
+
+    Files.write(snapshot.toPath(), new byte[] { 1, 2, 3, 4 });
+    assertTrue(read().isEmpty());
+  }
+
+  @Test
+  public void testResetsJournal() throws IOException {
+    Journal journal = new Journal(file, snapshot);
+    Journal.Batch batch = new Journal.Batch();
+    batch.contact(1, "John Doe", "a note");
+    journal.append(batch);
+    journal.reset();
+
+    assertFalse(file.exists());
+    assertEquals(0, journal.getRecordCount());
+    assertTrue(read().isEmpty());
+  }
+}
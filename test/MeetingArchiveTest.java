@@ -0,0 +1,231 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.TimeZone;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * MeetingArchive unit test.
+ */
+public class MeetingArchiveTest {
+  /**
+   * The time zone the archives split months in.
+   */
+  private static final TimeZone UTC = TimeZone.getTimeZone("UTC");
+
+  /**
+   * The month of January 2020, as months since year 0.
+   */
+  private static final int JANUARY = 2020 * 12;
+
+  /**
+   * The directory of the archive.
+   */
+  private File directory;
+
+  /**
+   * The contact of the meetings.
+   */
+  private Contact contact;
+
+  // Records the meetings an archive reports.
+  private static class Recorder implements ContactsReader.Handler {
+    final List<String> events = new ArrayList<>();
+
+    int nextMeetingId;
+
+    public void contact(int id, String name, String notes) {
+      events.add("contact " + id);
+    }
+
+    public void meeting(int id, long time, String notes, int[] contactIds,
+                        int contactCount) {
+      meeting(id, time, time, notes, contactIds, contactCount);
+    }
+
+    public void meeting(int id, long time, long endTime, String notes,
+                        int[] contactIds, int contactCount) {
+      events.add("meeting " + id + " " + notes + " " +
+        Arrays.toString(Arrays.copyOf(contactIds, contactCount)));
+    }
+
+    public void nextIds(int contactId, int meetingId) {
+      nextMeetingId = meetingId;
+    }
+  }
+
+  @Before
+  public void setUp() throws IOException {
+    directory = Files.createTempDirectory("archive").toFile();
+    contact = new ContactImpl(7, "Ada", "notes", null);
+  }
+
+  @After
+  public void tearDown() {
+    for (File file : directory.listFiles())
+      file.delete();
+    directory.delete();
+  }
+
+  private PastMeetingImpl meeting(int id, long time, String notes) {
+    return new PastMeetingImpl(id, time, time, UTC, Set.of(contact), notes,
+      null);
+  }
+
+  private List<String> load(MeetingArchive archive) throws IOException {
+    Recorder recorder = new Recorder();
+    archive.load(recorder);
+    return recorder.events;
+  }
+
+  private MeetingArchive.Segment seal(MeetingArchive archive, int month,
+                                      PastMeetingImpl... meetings)
+    throws IOException
+  {
+    MeetingArchive.Segment segment = archive.write(month,
+      Arrays.asList(meetings));
+    archive.put(segment);
+    archive.save(10);
+    return segment;
+  }
+
+  @Test
+  public void testSplitsTimesIntoMonths() {
+    MeetingArchive archive = new MeetingArchive(directory, UTC);
+    long start = archive.startOf(JANUARY);
+
+    assertEquals(1577836800000L, start);
+    assertEquals(JANUARY, archive.monthOf(start));
+    assertEquals(JANUARY - 1, archive.monthOf(start - 1));
+    assertEquals(31 * 86400000L, archive.startOf(JANUARY + 1) - start);
+    assertEquals(JANUARY - 12,
+      archive.monthOf(archive.startOf(JANUARY - 12)));
+  }
+
+  @Test
+  public void testLoadsSealedMeetingsWithoutNotes() throws IOException {
+    MeetingArchive archive = new MeetingArchive(directory, UTC);
+    long start = archive.startOf(JANUARY);
+    seal(archive, JANUARY, meeting(1, start, "budget"),
+      meeting(2, start + 1000, "review"));
+
+    MeetingArchive loaded = new MeetingArchive(directory, UTC);
+    assertEquals(List.of("meeting 1 null [7]", "meeting 2 null [7]"),
+      load(loaded));
+    assertTrue(loaded.contains(2));
+    assertFalse(loaded.contains(3));
+    assertEquals(2, loaded.ids().cardinality());
+
+    // the notes are read from the segment
+    Recorder recorder = new Recorder();
+    loaded.read(loaded.getSegment(JANUARY), recorder);
+    assertEquals(List.of("meeting 1 budget [7]", "meeting 2 review [7]"),
+      recorder.events);
+  }
+
+  @Test
+  public void testNewerSegmentsReplaceOlderOnes() throws IOException {
+    MeetingArchive archive = new MeetingArchive(directory, UTC);
+    long start = archive.startOf(JANUARY);
+    MeetingArchive.Segment first = seal(archive, JANUARY,
+      meeting(1, start, "budget"), meeting(2, start, "review"));
+    archive.supersede(1);
+    assertFalse(archive.contains(1));
+
+    MeetingArchive.Segment second = seal(archive, JANUARY,
+      meeting(1, start, "budget\nhiring"), meeting(2, start, "review"));
+    assertEquals(first.getSequence() + 1, second.getSequence());
+    archive.delete(first);
+
+    MeetingArchive loaded = new MeetingArchive(directory, UTC);
+    assertEquals(List.of("meeting 1 null [7]", "meeting 2 null [7]"),
+      load(loaded));
+    assertEquals(second.getSequence(),
+      loaded.getSegment(JANUARY).getSequence());
+  }
+
+  @Test
+  public void testSkipsRemovedMeetings() throws IOException {
+    MeetingArchive archive = new MeetingArchive(directory, UTC);
+    long start = archive.startOf(JANUARY);
+    seal(archive, JANUARY, meeting(1, start, ""));
+    seal(archive, JANUARY + 1, meeting(2, archive.startOf(JANUARY + 1), ""));
+    archive.remove(1);
+    archive.save(10);
+
+    MeetingArchive loaded = new MeetingArchive(directory, UTC);
+    assertEquals(List.of("meeting 2 null [7]"), load(loaded));
+    assertFalse(loaded.contains(1));
+    assertTrue(loaded.getSegment(JANUARY).getIds().isEmpty());
+  }
+
+  @Test
+  public void testLoadsNextMeetingId() throws IOException {
+    MeetingArchive archive = new MeetingArchive(directory, UTC);
+    seal(archive, JANUARY, meeting(1, archive.startOf(JANUARY), ""));
+    archive.remove(1);
+    archive.save(5);
+
+    Recorder recorder = new Recorder();
+    new MeetingArchive(directory, UTC).load(recorder);
+    assertTrue(recorder.events.isEmpty());
+    assertEquals(5, recorder.nextMeetingId);
+  }
+
+  @Test
+  public void testSnapshotsAreUnchanged() throws IOException {
+    MeetingArchive archive = new MeetingArchive(directory, UTC);
+    seal(archive, JANUARY, meeting(1, archive.startOf(JANUARY), ""));
+    MeetingArchive snapshot = archive.snapshot();
+    archive.remove(1);
+
+    assertTrue(snapshot.contains(1));
+    assertFalse(archive.contains(1));
+  }
+
+  @Test
+  public void testLoadsPreviousManifestIfCorrupt() throws IOException {
+    MeetingArchive archive = new MeetingArchive(directory, UTC);
+    long start = archive.startOf(JANUARY);
+    seal(archive, JANUARY, meeting(1, start, ""));
+    seal(archive, JANUARY + 1, meeting(2, archive.startOf(JANUARY + 1), ""));
+
+    try (RandomAccessFile manifest = new RandomAccessFile(
+           new File(directory, "manifest"), "rw")) {
+      manifest.seek(6);
+      manifest.write(0xff);
+    }
+    MeetingArchive loaded = new MeetingArchive(directory, UTC);
+    assertEquals(List.of("meeting 1 null [7]"), load(loaded));
+    assertFalse(loaded.isReadOnly());
+  }
+
+  @Test
+  public void testIsReadOnlyIfSegmentIsMissing() throws IOException {
+    MeetingArchive archive = new MeetingArchive(directory, UTC);
+    MeetingArchive.Segment segment = seal(archive, JANUARY,
+      meeting(1, archive.startOf(JANUARY), ""));
+    archive.delete(segment);
+
+    MeetingArchive loaded = new MeetingArchive(directory, UTC);
+    try {
+      loaded.load(new Recorder());
+      fail("expected IOException");
+    } catch (IOException e) {
+      assertTrue(loaded.isReadOnly());
+      assertTrue(loaded.isEmpty());
+    }
+  }
+}
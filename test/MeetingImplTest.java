@@ -105,4 +105,25 @@ public class MeetingImplTest {
     assertEquals(meeting, meetingCopy);
     assertEquals(meeting.hashCode(), meetingCopy.hashCode());
   }
+  
+  @Test
+  public void testModifyingDatesDoesNotChangeMeeting() {
+    Calendar date = Calendar.getInstance();
+    Meeting meeting = new MeetingMock(id, date, contacts);
+    Calendar expected = (Calendar)date.clone();
+    
+    // modify the calendar passed to the constructor
+    date.add(Calendar.DATE, 1);
+    assertEquals(expected, meeting.getDate());
+    
+    // modify the returned calendar
+    meeting.getDate().add(Calendar.DATE, 1);
+    assertEquals(expected, meeting.getDate());
+  }
+  
+  @Test(expected=UnsupportedOperationException.class)
+  public void testModifyingContactsShouldThrow() {
+    Meeting meeting = new MeetingMock(id, date, contacts);
+    meeting.getContacts().clear();
+  }
 }
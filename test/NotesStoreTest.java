@@ -0,0 +1,52 @@
+import java.io.File;
+import static org.junit.Assert.assertEquals;
+import org.junit.Test;
+
+/**
+ * NotesStore unit testing.
+ *
+ * Test cases:
+ *   - stored segments are returned unchanged, from memory or a mapped file;
+ *   - segments spanning several chunks are returned unchanged;
+ *   - IllegalArgumentException is thrown when getting an unknown segment.
+ */
+public class NotesStoreTest {
+  @Test
+  public void testPuttingAndGettingSegments() throws Exception {
+    try (NotesStore store = new NotesStore()) {
+      int first = store.put("first note");
+      int second = store.put("second note \u00e9\u4e2d");
+      int empty = store.put("");
+
+      assertEquals("first note", store.get(first));
+      assertEquals("second note \u00e9\u4e2d", store.get(second));
+      assertEquals("", store.get(empty));
+    }
+  }
+
+  @Test
+  public void testPuttingSegmentsInMappedFile() throws Exception {
+    File file = File.createTempFile("notes", ".bin");
+    file.deleteOnExit();
+
+    // build a text larger than a chunk
+    StringBuilder builder = new StringBuilder();
+    while (builder.length() < 3 * 1024 * 1024)
+      builder.append("a long call transcript ");
+    String text = builder.toString();
+
+    try (NotesStore store = new NotesStore(file)) {
+      int first = store.put("first note");
+      int second = store.put(text);
+
+      assertEquals("first note", store.get(first));
+      assertEquals(text, store.get(second));
+    }
+  }
+
+  @Test(expected=IllegalArgumentException.class)
+  public void testGettingUnknownSegmentShouldThrow() {
+    NotesStore store = new NotesStore();
+    store.get(0);
+  }
+}
@@ -0,0 +1,63 @@
+import java.util.Arrays;
+import static org.junit.Assert.assertEquals;
+import org.junit.Test;
+
+/**
+ * Notes unit testing.
+ *
+ * Test cases:
+ *   - NullPointerException is thrown when passing null as the text or note;
+ *   - appended notes are separated by an end of line character;
+ *   - the segments concatenated form the whole text.
+ */
+public class NotesTest {
+  @Test(expected=NullPointerException.class)
+  public void testNewNotesWithNullTextShouldThrow() {
+    Notes notes = new Notes(null);
+  }
+
+  @Test(expected=NullPointerException.class)
+  public void testAppendingNullNoteShouldThrow() {
+    Notes notes = new Notes("");
+    notes.append(null);
+  }
+
+  @Test
+  public void testAppendingNotes() {
+    Notes notes = new Notes("");
+    assertEquals("", notes.toString());
+
+    notes.append("first");
+    assertEquals("first", notes.toString());
+
+    notes.append("second");
+    notes.append("third");
+    assertEquals("first\nsecond\nthird", notes.toString());
+    assertEquals(notes.toString().length(), notes.length());
+  }
+
+  @Test
+  public void testGettingSegments() {
+    Notes notes = new Notes("first");
+    notes.append("second");
+    assertEquals(Arrays.asList("first", "\n", "second"), notes.getSegments());
+
+    // assert joining the text keeps it as the only segment
+    String text = notes.toString();
+    assertEquals(Arrays.asList(text), notes.getSegments());
+  }
+
+  @Test
+  public void testAppendingNotesInStore() {
+    Notes notes = new Notes("first", new NotesStore());
+    notes.append("second");
+    notes.append("");
+    assertEquals("first\nsecond\n", notes.toString());
+    assertEquals(Arrays.asList("first", "\nsecond", "\n"),
+      notes.getSegments());
+
+    // assert the text is decoded again once evicted
+    notes.evict();
+    assertEquals("first\nsecond\n", notes.toString());
+  }
+}
@@ -0,0 +1,108 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+/**
+ * PersistentTreeMap unit test.
+ */
+public class PersistentTreeMapTest {
+  @Test
+  public void testIsEmpty() {
+    PersistentTreeMap<Integer, String> map = PersistentTreeMap.empty();
+    assertTrue(map.isEmpty());
+    assertEquals(0, map.size());
+    assertNull(map.get(1));
+    assertNull(map.firstEntry());
+    assertTrue(map.values().isEmpty());
+  }
+
+  @Test
+  public void testKeepsPreviousVersions() {
+    PersistentTreeMap<Integer, String> empty = PersistentTreeMap.empty();
+    PersistentTreeMap<Integer, String> one = empty.put(1, "one");
+    PersistentTreeMap<Integer, String> two = one.put(2, "two");
+    PersistentTreeMap<Integer, String> changed = two.put(1, "uno");
+    PersistentTreeMap<Integer, String> removed = changed.remove(2);
+
+    assertTrue(empty.isEmpty());
+    assertEquals("one", one.get(1));
+    assertFalse(one.containsKey(2));
+    assertEquals("one", two.get(1));
+    assertEquals("uno", changed.get(1));
+    assertEquals(2, changed.size());
+    assertEquals(1, removed.size());
+    assertSame(removed, removed.remove(3));
+  }
+
+  @Test(expected=NullPointerException.class)
+  public void testPuttingNullValueShouldThrow() {
+    PersistentTreeMap.<Integer, String>empty().put(1, null);
+  }
+
+  @Test
+  public void testMatchesTreeMap() {
+    Random random = new Random(42);
+    TreeMap<Integer, Integer> expected = new TreeMap<>();
+    PersistentTreeMap<Integer, Integer> map = PersistentTreeMap.empty();
+    for (int i = 0; i < 20000; i++) {
+      int key = random.nextInt(1000);
+      if (random.nextInt(3) == 0) {
+        expected.remove(key);
+        map = map.remove(key);
+      } else {
+        expected.put(key, i);
+        map = map.put(key, i);
+      }
+    }
+
+    assertEquals(expected.size(), map.size());
+    assertEquals(new ArrayList<>(expected.values()),
+      new ArrayList<>(map.values()));
+    assertEquals(expected.firstKey(), map.firstEntry().getKey());
+    for (int key = 0; key < 1000; key++)
+      assertEquals(expected.get(key), map.get(key));
+  }
+
+  @Test
+  public void testStreamsRanges() {
+    PersistentTreeMap<Integer, Integer> map = PersistentTreeMap.empty();
+    for (int key = 0; key < 100; key += 10)
+      map = map.put(key, key);
+
+    assertEquals(List.of(50, 60, 70, 80, 90), map.tailValues(50, true)
+      .collect(Collectors.toList()));
+    assertEquals(List.of(60, 70, 80, 90), map.tailValues(50, false)
+      .collect(Collectors.toList()));
+    assertEquals(List.of(60, 70, 80, 90), map.tailValues(55, true)
+      .collect(Collectors.toList()));
+    assertEquals(List.of(0, 10, 20), map.headValues(30, false)
+      .collect(Collectors.toList()));
+    assertEquals(List.of(0, 10, 20, 30), map.headValues(30, true)
+      .collect(Collectors.toList()));
+    assertEquals(List.of(90), map.tailEntries(85, false)
+      .map(Map.Entry::getKey).collect(Collectors.toList()));
+  }
+
+  @Test
+  public void testFindsFloorValues() {
+    PersistentTreeMap<Integer, Integer> map = PersistentTreeMap.empty();
+    assertNull(map.floorValue(10));
+    for (int key = 10; key < 100; key += 10)
+      map = map.put(key, key);
+
+    assertNull(map.floorValue(5));
+    assertEquals(10, (int)map.floorValue(10));
+    assertEquals(40, (int)map.floorValue(45));
+    assertEquals(90, (int)map.floorValue(1000));
+  }
+}
@@ -0,0 +1,42 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import org.junit.Test;
+
+/**
+ * QueryCache unit test.
+ */
+public class QueryCacheTest {
+  @Test(expected=IllegalArgumentException.class)
+  public void testCreatingWithZeroCapacityShouldThrow() {
+    new QueryCache<String, String>(0);
+  }
+
+  @Test
+  public void testReturnsResultOfSameGeneration() {
+    QueryCache<String, String> cache = new QueryCache<>(4);
+    assertNull(cache.get("a", 0));
+    cache.put("a", 0, "result");
+    assertEquals("result", cache.get("a", 0));
+    assertNull(cache.get("a", 1));
+
+    QueryCache.Stats stats = cache.getStats();
+    assertEquals(1, stats.getHitCount());
+    assertEquals(2, stats.getMissCount());
+    assertEquals(1, stats.getSize());
+  }
+
+  @Test
+  public void testEvictsLeastRecentlyUsed() {
+    QueryCache<String, String> cache = new QueryCache<>(2);
+    cache.put("a", 0, "a");
+    cache.put("b", 0, "b");
+    cache.get("a", 0);
+    cache.put("c", 0, "c");
+
+    assertEquals("a", cache.get("a", 0));
+    assertNull(cache.get("b", 0));
+    assertEquals("c", cache.get("c", 0));
+    assertEquals(1, cache.getStats().getEvictionCount());
+    assertEquals(2, cache.getStats().getSize());
+  }
+}
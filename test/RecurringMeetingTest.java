@@ -0,0 +1,141 @@
+import java.time.Period;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.Iterator;
+import java.util.Set;
+import java.util.TimeZone;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+/**
+ * RecurringMeeting unit test.
+ */
+public class RecurringMeetingTest {
+  /**
+   * The time zone of the series.
+   */
+  private final TimeZone zone = TimeZone.getTimeZone("Europe/London");
+
+  /**
+   * The contacts of the series.
+   */
+  private final Set<Contact> contacts = Set.of(new MockContact(1, "John"));
+
+  @Test(expected=IllegalArgumentException.class)
+  public void testNewSeriesWithZeroIntervalShouldThrow() {
+    new RecurringMeeting(1, 0, zone, Period.ZERO, 3, 0, contacts);
+  }
+
+  @Test(expected=IllegalArgumentException.class)
+  public void testNewSeriesWithoutOccurrencesShouldThrow() {
+    new RecurringMeeting(1, 0, zone, Period.ofDays(1), 0, 0, contacts);
+  }
+
+  @Test(expected=IllegalArgumentException.class)
+  public void testNewSeriesWithOverflowingIdsShouldThrow() {
+    new RecurringMeeting(Integer.MAX_VALUE, 0, zone, Period.ofDays(1), 2, 0,
+      contacts);
+  }
+
+  @Test
+  public void testComputesOccurrences() {
+    long start = time(2030, 1, 31, 9);
+    RecurringMeeting series = new RecurringMeeting(10, start, zone,
+      Period.ofMonths(1), 4, 0, contacts);
+
+    // months are added to the start date, so the day is kept when it can be
+    assertEquals(time(2030, 2, 28, 9), series.timeOf(1));
+    assertEquals(time(2030, 3, 31, 9), series.timeOf(2));
+    assertEquals(time(2030, 4, 30, 9), series.timeOf(3));
+
+    FutureMeetingImpl occurrence = series.occurrence(2);
+    assertEquals(12, occurrence.getId());
+    assertEquals(time(2030, 3, 31, 9), occurrence.getTime());
+    assertEquals(contacts, occurrence.getContacts());
+    assertTrue(series.contains(13));
+    assertFalse(series.contains(14));
+  }
+
+  @Test
+  public void testKeepsLocalTimeAcrossDaylightSaving() {
+    long start = time(2030, 3, 25, 9);
+    RecurringMeeting series = new RecurringMeeting(1, start, zone,
+      Period.ofWeeks(1), 2, 0, contacts);
+    assertEquals(time(2030, 4, 1, 9), series.timeOf(1));
+    assertEquals(7 * 24 * 3600000L - 3600000L, series.timeOf(1) - start);
+  }
+
+  @Test
+  public void testAdvances() {
+    RecurringMeeting series = new RecurringMeeting(1, 1000, zone,
+      Period.ofDays(1), 2, 0, contacts);
+    assertEquals(1000, series.nextTime());
+
+    series = series.advance();
+    assertEquals(1, series.getNext());
+    assertEquals(1000 + 86400000L, series.nextTime());
+    assertFalse(series.isFinished());
+
+    series = series.advance();
+    assertTrue(series.isFinished());
+    assertEquals(Long.MAX_VALUE, series.nextTime());
+  }
+
+  @Test(expected=IllegalStateException.class)
+  public void testAdvancingFinishedSeriesShouldThrow() {
+    new RecurringMeeting(1, 1000, zone, Period.ofDays(1), 1, 1, contacts)
+      .advance();
+  }
+
+  @Test
+  public void testIteratesAfterMeeting() {
+    long day = 86400000L;
+    RecurringMeeting series = new RecurringMeeting(5, 0, zone,
+      Period.ofDays(1), 5, 1, contacts);
+
+    assertEquals(6, series.iterator(Long.MIN_VALUE, 0).next().getId());
+    assertEquals(7, series.iterator(day, 6).next().getId());
+    assertEquals(6, series.iterator(day, 5).next().getId());
+    assertEquals(8, series.iterator(2 * day + 1, 0).next().getId());
+    assertFalse(series.iterator(4 * day, 9).hasNext());
+
+    Iterator<FutureMeetingImpl> occurrences = series.iterator(2 * day, 7);
+    assertEquals(8, occurrences.next().getId());
+    assertEquals(9, occurrences.next().getId());
+    assertFalse(occurrences.hasNext());
+  }
+
+  @Test
+  public void testFindsOccurrenceAtTime() {
+    long day = 86400000L;
+    RecurringMeeting series = new RecurringMeeting(5, 0, zone,
+      Period.ofDays(1), 5, 1, contacts);
+    assertEquals(3, series.indexAt(3 * day));
+    assertEquals(-1, series.indexAt(3 * day + 1));
+    assertEquals(-1, series.indexAt(0));
+    assertEquals(-1, series.indexAt(5 * day));
+  }
+
+  @Test
+  public void testCountsOccurrencesUntilDate() {
+    long day = 86400000L;
+    Period interval = Period.ofDays(1);
+    assertEquals(0, RecurringMeeting.countUntil(day, zone, interval, 0));
+    assertEquals(1, RecurringMeeting.countUntil(0, zone, interval, 0));
+    assertEquals(1, RecurringMeeting.countUntil(0, zone, interval, day - 1));
+    assertEquals(11, RecurringMeeting.countUntil(0, zone, interval, 10 * day));
+
+    // occurrences whose date overflows are not counted
+    assertTrue(RecurringMeeting.countUntil(0, zone, interval,
+      Long.MAX_VALUE) > 0);
+  }
+
+  // Returns the time of a local date and hour in the time zone.
+  private long time(int year, int month, int day, int hour) {
+    return ZonedDateTime.of(year, month, day, hour, 0, 0, 0,
+      ZoneId.of(zone.getID())).toInstant().toEpochMilli();
+  }
+}
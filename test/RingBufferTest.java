@@ -0,0 +1,71 @@
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+/**
+ * RingBuffer unit test.
+ */
+public class RingBufferTest {
+  @Test(expected=IllegalArgumentException.class)
+  public void testCreatingWithCapacityNotPowerOfTwoShouldThrow() {
+    new RingBuffer<Integer>(12);
+  }
+
+  @Test(expected=NullPointerException.class)
+  public void testPuttingNullShouldThrow() {
+    new RingBuffer<Integer>(4).put(null);
+  }
+
+  @Test
+  public void testDrainsInOrder() {
+    RingBuffer<Integer> ring = new RingBuffer<>(4);
+    assertTrue(ring.isEmpty());
+    for (int i = 0; i < 3; i++)
+      ring.put(i);
+
+    List<Integer> elements = new ArrayList<>();
+    assertEquals(2, ring.drainTo(elements, 2));
+    ring.put(3);
+    ring.put(4);
+    assertEquals(3, ring.drainTo(elements, 10));
+    assertEquals(List.of(0, 1, 2, 3, 4), elements);
+    assertTrue(ring.isEmpty());
+  }
+
+  @Test
+  public void testDeliversElementsOfConcurrentProducers() throws Exception {
+    RingBuffer<Integer> ring = new RingBuffer<>(8);
+    int producers = 4;
+    int count = 10000;
+    Thread[] threads = new Thread[producers];
+    for (int i = 0; i < producers; i++) {
+      int producer = i;
+      threads[i] = new Thread(() -> {
+        for (int j = 0; j < count; j++)
+          ring.put(producer * count + j);
+      });
+      threads[i].start();
+    }
+
+    // each producer's elements arrive in order
+    int[] next = new int[producers];
+    List<Integer> elements = new ArrayList<>();
+    int received = 0;
+    while (received < producers * count) {
+      ring.await();
+      ring.drainTo(elements, 8);
+      for (int element : elements) {
+        int producer = element / count;
+        assertEquals(next[producer]++, element % count);
+      }
+      received += elements.size();
+      elements.clear();
+    }
+    for (Thread thread : threads)
+      thread.join();
+    assertTrue(ring.isEmpty());
+  }
+}
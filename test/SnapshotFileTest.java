@@ -0,0 +1,88 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.fail;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * SnapshotFile unit test.
+ */
+public class SnapshotFileTest {
+  /**
+   * The snapshot file.
+   */
+  private File file;
+
+  /**
+   * The snapshot.
+   */
+  private SnapshotFile snapshot;
+
+  @Before
+  public void setUp() throws IOException {
+    file = File.createTempFile("snapshot", ".txt");
+    file.delete();
+    file.deleteOnExit();
+    snapshot = new SnapshotFile(file);
+    snapshot.getPreviousFile().deleteOnExit();
+  }
+
+  private void write(String contents, boolean keepCurrent) throws IOException {
+    snapshot.write(output -> output.write(contents.getBytes(
+      StandardCharsets.UTF_8)), keepCurrent);
+  }
+
+  private String read(File file) throws IOException {
+    return new String(Files.readAllBytes(file.toPath()),
+      StandardCharsets.UTF_8);
+  }
+
+  @Test
+  public void testWritesSnapshots() throws IOException {
+    write("first", true);
+    assertEquals("first", read(file));
+    assertFalse(snapshot.getPreviousFile().exists());
+
+    write("second", true);
+    assertEquals("second", read(file));
+    assertEquals("first", read(snapshot.getPreviousFile()));
+
+    write("third", true);
+    assertEquals("third", read(file));
+    assertEquals("second", read(snapshot.getPreviousFile()));
+  }
+
+  @Test
+  public void testKeepsPreviousSnapshotOfCorruptFile() throws IOException {
+    write("good", true);
+    write("corrupt", true);
+
+    write("new", false);
+    assertEquals("new", read(file));
+    assertEquals("good", read(snapshot.getPreviousFile()));
+  }
+
+  @Test
+  public void testLeavesFileUnchangedOnError() throws IOException {
+    write("first", true);
+
+    try {
+      snapshot.write(output -> {
+        output.write(1);
+        throw new IOException("disk full");
+      }, true);
+      fail();
+    } catch (IOException e) {
+      assertEquals("disk full", e.getMessage());
+    }
+
+    assertEquals("first", read(file));
+    assertFalse(snapshot.getPreviousFile().exists());
+    assertFalse(new File(file.getPath() + ".tmp").exists());
+  }
+}
@@ -0,0 +1,112 @@
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import org.junit.Test;
+
+/**
+ * TextIndex unit test.
+ */
+public class TextIndexTest {
+  @Test
+  public void testSplitsTerms() {
+    assertEquals(List.of("budget", "q3", "e", "mail"),
+      TextIndex.terms("Budget, Q3: e-mail!"));
+    assertEquals(List.of(), TextIndex.terms(" ... "));
+  }
+
+  @Test
+  public void testMatchesAllTerms() {
+    TextIndex index = new TextIndex();
+    index.add(1, "budget review");
+    index.add(2, "Budget planning");
+    index.add(3, "review of the plan");
+
+    assertArrayEquals(new int[] {1}, index.search("budget review"));
+    assertArrayEquals(new int[] {1}, index.search("BUDGET AND review"));
+    assertArrayEquals(new int[] {}, index.search("budget holiday"));
+    assertArrayEquals(new int[] {}, index.search("  "));
+  }
+
+  @Test
+  public void testMatchesAnyGroup() {
+    TextIndex index = new TextIndex();
+    index.add(1, "budget review");
+    index.add(2, "budget planning");
+    index.add(3, "holiday");
+
+    assertArrayEquals(new int[] {1, 3},
+      index.search("budget review OR holiday"));
+    assertArrayEquals(new int[] {3}, index.search("OR holiday"));
+  }
+
+  @Test
+  public void testRanksByRelevance() {
+    TextIndex index = new TextIndex();
+    index.add(1, "budget");
+    index.add(2, "budget budget budget");
+    index.add(3, "budget and hiring");
+    index.add(4, "hiring");
+
+    // repeated terms weigh more, and rare terms more than common ones
+    assertArrayEquals(new int[] {3, 2, 4, 1},
+      index.search("budget OR hiring"));
+  }
+
+  @Test
+  public void testAppendsAndReplacesTexts() {
+    TextIndex index = new TextIndex();
+    index.add(1, "budget");
+    index.add(1, "\nreview");
+    assertArrayEquals(new int[] {1}, index.search("budget review"));
+    assertEquals(13, index.length(1));
+
+    index.set(1, "holiday");
+    assertArrayEquals(new int[] {}, index.search("budget"));
+    assertArrayEquals(new int[] {1}, index.search("holiday"));
+
+    index.set(1, "");
+    assertEquals(0, index.size());
+    assertEquals(0, index.length(1));
+  }
+
+  @Test
+  public void testSnapshotsAreUnchanged() {
+    TextIndex index = new TextIndex();
+    index.add(1, "budget");
+    TextIndex snapshot = index.snapshot();
+    index.add(2, "budget");
+    index.remove(1);
+
+    assertArrayEquals(new int[] {1}, snapshot.search("budget"));
+    assertArrayEquals(new int[] {2}, index.search("budget"));
+  }
+
+  @Test
+  public void testWritesAndReads() throws IOException {
+    TextIndex index = new TextIndex();
+    index.add(1, "budget review");
+    index.add(2, "budget budget");
+    index.add(3, "!!");
+
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    index.write(new DataOutputStream(bytes));
+    TextIndex read = TextIndex.read(new DataInputStream(
+      new ByteArrayInputStream(bytes.toByteArray())));
+
+    assertEquals(3, read.size());
+    assertEquals(2, read.length(3));
+    assertArrayEquals(index.search("budget"), read.search("budget"));
+    assertArrayEquals(new int[] {1}, read.search("review"));
+  }
+
+  @Test(expected=NullPointerException.class)
+  public void testSearchingNullQueryShouldThrow() {
+    new TextIndex().search(null);
+  }
+}
@@ -0,0 +1,31 @@
+import java.util.TimeZone;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import org.junit.Test;
+
+/**
+ * TimeSlot unit test.
+ */
+public class TimeSlotTest {
+  @Test(expected=IllegalArgumentException.class)
+  public void testNewSlotEndingBeforeStartShouldThrow() {
+    new TimeSlot(2000, 1000, TimeZone.getDefault());
+  }
+
+  @Test(expected=NullPointerException.class)
+  public void testNewSlotWithNullZoneShouldThrow() {
+    new TimeSlot(1000, 2000, null);
+  }
+
+  @Test
+  public void testNewSlot() {
+    TimeSlot slot = new TimeSlot(1000, 3000, TimeZone.getTimeZone("UTC"));
+    assertEquals(1000, slot.getStart().getTimeInMillis());
+    assertEquals(3000, slot.getEnd().getTimeInMillis());
+    assertEquals(2000, slot.getLength());
+    assertEquals("UTC", slot.getStart().getTimeZone().getID());
+    assertEquals(new TimeSlot(1000, 3000, TimeZone.getDefault()), slot);
+    assertNotEquals(new TimeSlot(1000, 2000, TimeZone.getDefault()), slot);
+  }
+}